@@ -137,6 +137,15 @@ public class ASTNodeDescriptor extends JJTreeNode
     return m_name.equals ("void");
   }
 
+  /**
+   * @return true if this descriptor was not written in the grammar but
+   *         derived from the production name.
+   */
+  boolean isImplicit ()
+  {
+    return m_faked;
+  }
+
   @Override
   public String toString ()
   {
@@ -193,12 +202,36 @@ public class ASTNodeDescriptor extends JJTreeNode
   }
 
   String closeNode (final String nodeVar)
+  {
+    return closeNode (nodeVar, "");
+  }
+
+  /**
+   * @param nodeVar
+   *        The variable of the node to close.
+   * @param extraArgs
+   *        Arguments appended to the call, starting with ", ", or "".
+   * @return The call that closes the node scope.
+   */
+  String closeNode (final String nodeVar, final String extraArgs)
   {
     if (m_expression == null)
-      return "jjtree.closeNodeScope(" + nodeVar + ", true);";
+      return "jjtree.closeNodeScope(" + nodeVar + ", true" + extraArgs + ");";
     if (m_isGT)
-      return "jjtree.closeNodeScope(" + nodeVar + ", jjtree.nodeArity() > " + expression_text () + ");";
-    return "jjtree.closeNodeScope(" + nodeVar + ", " + expression_text () + ");";
+      return "jjtree.closeNodeScope(" + nodeVar + ", jjtree.nodeArity() > " + expression_text () + extraArgs + ");";
+    return "jjtree.closeNodeScope(" + nodeVar + ", " + expression_text () + extraArgs + ");";
+  }
+
+  /**
+   * @return The condition under which the node of an elided scope is created.
+   *         A scope without an expression is only dropped if it has exactly
+   *         one child, so that leaf nodes are kept.
+   */
+  String createCondition ()
+  {
+    if (m_expression == null)
+      return "jjtree.nodeArity() != 1";
+    return "jjtree.nodeArity() > " + expression_text ();
   }
 
   @Override
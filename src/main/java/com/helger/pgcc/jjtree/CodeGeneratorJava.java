@@ -144,6 +144,10 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
 
       openJJTreeComment (io, node.m_node_scope.getNodeDescriptorText ());
       io.println ();
+      if (JJTreeOptions.isIncrementalParsing () && node.m_node_scope.isReusable ())
+      {
+        io.println (indent + "if (jjtReuse(" + node.m_node_scope.m_node_descriptor.getNodeId () + ")) return;");
+      }
       insertOpenNodeCode (node.m_node_scope, io, indent);
       closeJJTreeComment (io);
     }
@@ -367,7 +371,7 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
     insertOpenNodeCode (ns, io, indent);
   }
 
-  void insertOpenNodeCode (final NodeScope ns, final JJTreeIO io, final String indent)
+  private void insertNodeCreation (final NodeScope ns, final JJTreeIO io, final String indent)
   {
     final String type = ns.m_node_descriptor.getNodeType ();
     final String nodeClass;
@@ -416,12 +420,47 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
       {
         io.println ("new " + nodeClass + "(" + parserArg + ns.m_node_descriptor.getNodeId () + ");");
       }
+  }
+
+  void insertOpenNodeCode (final NodeScope ns, final JJTreeIO io, final String indent)
+  {
+    if (ns.isElidable ())
+    {
+      /*
+       * The node is created in insertCloseNodeCode, once it is known whether
+       * it is needed at all.
+       */
+      if (ns.usesCloseNodeVar ())
+      {
+        io.println (indent + "boolean " + ns.m_closedVar + " = true;");
+      }
+      io.println (indent + "jjtree.openNodeScope();");
+      if (JJTreeOptions.isTrackTokens ())
+      {
+        io.println (indent + "Token " + ns.m_firstTokenVar + " = getToken(1);");
+      }
+      return;
+    }
+
+    insertNodeCreation (ns, io, indent);
 
     if (ns.usesCloseNodeVar ())
     {
       io.println (indent + "boolean " + ns.m_closedVar + " = true;");
     }
-    io.println (indent + ns.m_node_descriptor.openNode (ns.m_nodeVar));
+    if (JJTreeOptions.isIncrementalParsing ())
+    {
+      io.println (indent + "jjtree.openNodeScope(" + ns.m_nodeVar + ", jjtTokenIndex());");
+    }
+    else
+      if (JJTreeOptions.isNodeStorageArena () && JJTreeOptions.isTrackTokens ())
+      {
+        io.println (indent + "jjtree.openNodeScope(" + ns.m_nodeVar + ", getToken(1));");
+      }
+      else
+      {
+        io.println (indent + ns.m_node_descriptor.openNode (ns.m_nodeVar));
+      }
     if (JJTreeOptions.isNodeScopeHook ())
     {
       io.println (indent + "jjtreeOpenNodeScope(" + ns.m_nodeVar + ");");
@@ -435,7 +474,47 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
 
   void insertCloseNodeCode (final NodeScope ns, final JJTreeIO io, final String indent, final boolean isFinal)
   {
-    final String closeNode = ns.m_node_descriptor.closeNode (ns.m_nodeVar);
+    if (ns.isElidable ())
+    {
+      io.println (indent + "if (" + ns.m_node_descriptor.createCondition () + ") {");
+      insertNodeCreation (ns, io, indent + "  ");
+      io.println (indent + "  " + ns.m_nodeVar + ".jjtOpen();");
+      if (JJTreeOptions.isTrackTokens ())
+      {
+        io.println (indent + "  " + ns.m_nodeVar + ".jjtSetFirstToken(" + ns.m_firstTokenVar + ");");
+      }
+      io.println (indent + "  jjtree.closeNodeScope(" + ns.m_nodeVar + ", true);");
+      if (JJTreeOptions.isTrackTokens ())
+      {
+        io.println (indent + "  " + ns.m_nodeVar + ".jjtSetLastToken(getToken(0));");
+      }
+      io.println (indent + "} else {");
+      io.println (indent + "  jjtree.closeNodeScope(null, false);");
+      io.println (indent + "}");
+      if (ns.usesCloseNodeVar () && !isFinal)
+      {
+        io.println (indent + ns.m_closedVar + " = false;");
+      }
+      return;
+    }
+
+    final String closeNode;
+    if (JJTreeOptions.isIncrementalParsing ())
+    {
+      if (ns.isReusable ())
+        closeNode = "jjtree.closeReusableNodeScope(" + ns.m_nodeVar + ", jjtTokenIndex(), jjtReachIndex());";
+      else
+        closeNode = ns.m_node_descriptor.closeNode (ns.m_nodeVar, ", jjtTokenIndex(), jjtReachIndex()");
+    }
+    else
+      if (JJTreeOptions.isNodeStorageArena () && JJTreeOptions.isTrackTokens ())
+      {
+        closeNode = ns.m_node_descriptor.closeNode (ns.m_nodeVar, ", getToken(0)");
+      }
+      else
+      {
+        closeNode = ns.m_node_descriptor.closeNode (ns.m_nodeVar);
+      }
     io.println (indent + closeNode);
     if (ns.usesCloseNodeVar () && !isFinal)
     {
@@ -480,7 +559,7 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
       if (ns.usesCloseNodeVar ())
       {
         io.println (indent + "  if (" + ns.m_closedVar + ") {");
-        io.println (indent + "    jjtree.clearNodeScope(" + ns.m_nodeVar + ");");
+        io.println (indent + "    jjtree.clearNodeScope(" + (ns.isElidable () ? "null" : ns.m_nodeVar) + ");");
         io.println (indent + "    " + ns.m_closedVar + " = false;");
         io.println (indent + "  } else {");
         io.println (indent + "    jjtree.popNode();");
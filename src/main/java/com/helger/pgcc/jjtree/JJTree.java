@@ -70,8 +70,10 @@ import javax.annotation.Nonnull;
 
 import com.helger.commons.state.ESuccess;
 import com.helger.pgcc.PGPrinter;
+import com.helger.pgcc.jjtree.output.JJTreeArenaJava;
 import com.helger.pgcc.jjtree.output.JJTreeStateCpp;
 import com.helger.pgcc.jjtree.output.JJTreeStateJava;
+import com.helger.pgcc.jjtree.output.JJTreeTreeFileJava;
 import com.helger.pgcc.jjtree.output.NodeFilesCpp;
 import com.helger.pgcc.jjtree.output.NodeFilesJava;
 import com.helger.pgcc.parser.JavaCCGlobals;
@@ -107,6 +109,9 @@ public class JJTree
     PGPrinter.info ("    NODE_USES_PARSER         (default false)");
     PGPrinter.info ("    BUILD_NODE_FILES         (default true)");
     PGPrinter.info ("    TRACK_TOKENS             (default false)");
+    PGPrinter.info ("    INCREMENTAL_PARSING      (default false)");
+    PGPrinter.info ("    ELIDE_UNARY_NODES        (default false)");
+    PGPrinter.info ("    TREE_FILE                (default false)");
     PGPrinter.info ("    VISITOR                  (default false)");
     PGPrinter.info ("");
     PGPrinter.info ("The string valued options are:");
@@ -117,6 +122,7 @@ public class JJTree
     PGPrinter.info ("    NODE_PACKAGE             (default \"\")");
     PGPrinter.info ("    NODE_EXTENDS             (default \"\")");
     PGPrinter.info ("    NODE_FACTORY             (default \"\")");
+    PGPrinter.info ("    NODE_STORAGE             (default \"OBJECT\")");
     PGPrinter.info ("    OUTPUT_FILE              (default remove input file suffix, add .jj)");
     PGPrinter.info ("    OUTPUT_DIRECTORY         (default \"\")");
     PGPrinter.info ("    JJTREE_OUTPUT_DIRECTORY  (default value of OUTPUT_DIRECTORY option)");
@@ -203,6 +209,7 @@ public class JJTree
       {
         final JJTreeParser parser = new JJTreeParser (new StreamProvider (io.getIn ()));
         parser.javacc_input ();
+        JJTreeOptions.validateGrammarOptions ();
 
         final ASTGrammar root = (ASTGrammar) parser.jjtree.rootNode ();
         if (Boolean.getBoolean ("jjtree-dump"))
@@ -229,7 +236,12 @@ public class JJTree
             NodeFilesJava.generateTreeConstants_java ();
             NodeFilesJava.generateVisitor_java ();
             NodeFilesJava.generateDefaultVisitor_java ();
+            NodeFilesJava.generateWalker_java ();
             JJTreeStateJava.generateTreeState_java ();
+            if (JJTreeOptions.isNodeStorageArena ())
+              JJTreeArenaJava.generateTreeArena_java ();
+            if (JJTreeOptions.isTreeFile ())
+              JJTreeTreeFileJava.generateTreeFile_java ();
             break;
           case CPP:
             NodeFilesCpp.generateTreeConstants ();
@@ -111,12 +111,16 @@ public class JJTreeGlobals
     s_jjtreeOptions.add ("NODE_PACKAGE");
     s_jjtreeOptions.add ("NODE_EXTENDS");
     s_jjtreeOptions.add ("NODE_CLASS");
+    s_jjtreeOptions.add ("NODE_STORAGE");
     s_jjtreeOptions.add ("NODE_STACK_SIZE");
     s_jjtreeOptions.add ("NODE_DEFAULT_VOID");
     s_jjtreeOptions.add ("OUTPUT_FILE");
     s_jjtreeOptions.add ("CHECK_DEFINITE_NODE");
     s_jjtreeOptions.add ("NODE_SCOPE_HOOK");
     s_jjtreeOptions.add ("TRACK_TOKENS");
+    s_jjtreeOptions.add ("INCREMENTAL_PARSING");
+    s_jjtreeOptions.add ("ELIDE_UNARY_NODES");
+    s_jjtreeOptions.add ("TREE_FILE");
     s_jjtreeOptions.add ("NODE_FACTORY");
     s_jjtreeOptions.add ("NODE_USES_PARSER");
     s_jjtreeOptions.add ("BUILD_NODE_FILES");
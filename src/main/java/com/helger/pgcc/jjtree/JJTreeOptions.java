@@ -65,9 +65,11 @@
 package com.helger.pgcc.jjtree;
 
 import java.io.File;
+import java.util.Locale;
 
 import com.helger.commons.string.StringHelper;
 import com.helger.pgcc.EJDKVersion;
+import com.helger.pgcc.output.EOutputLanguage;
 import com.helger.pgcc.parser.JavaCCErrors;
 import com.helger.pgcc.parser.Options;
 
@@ -99,12 +101,16 @@ public class JJTreeOptions extends Options
     Options.s_optionValues.put ("VISITOR", Boolean.FALSE);
     Options.s_optionValues.put ("VISITOR_METHOD_NAME_INCLUDES_TYPE_NAME", Boolean.FALSE);
     Options.s_optionValues.put ("TRACK_TOKENS", Boolean.FALSE);
+    Options.s_optionValues.put ("INCREMENTAL_PARSING", Boolean.FALSE);
+    Options.s_optionValues.put ("ELIDE_UNARY_NODES", Boolean.FALSE);
+    Options.s_optionValues.put ("TREE_FILE", Boolean.FALSE);
 
     Options.s_optionValues.put ("NODE_PREFIX", "AST");
     Options.s_optionValues.put ("NODE_PACKAGE", "");
     Options.s_optionValues.put ("NODE_EXTENDS", "");
     Options.s_optionValues.put ("NODE_CLASS", "");
     Options.s_optionValues.put ("NODE_FACTORY", "");
+    Options.s_optionValues.put ("NODE_STORAGE", "OBJECT");
     Options.s_optionValues.put ("NODE_INCLUDES", "");
     Options.s_optionValues.put ("OUTPUT_FILE", "");
     Options.s_optionValues.put ("VISITOR_DATA_TYPE", "");
@@ -146,6 +152,79 @@ public class JJTreeOptions extends Options
     }
   }
 
+  /**
+   * Check the options set in the grammar file for consistency
+   */
+  public static void validateGrammarOptions ()
+  {
+    final String sNodeStorage = getNodeStorage ();
+    if (!sNodeStorage.equals ("OBJECT") && !sNodeStorage.equals ("ARENA"))
+    {
+      JavaCCErrors.warning ("Invalid value \"" +
+                            sNodeStorage +
+                            "\" for NODE_STORAGE option. Allowed values are OBJECT and ARENA.");
+      Options.s_optionValues.put ("NODE_STORAGE", "OBJECT");
+    }
+    else
+      if (isNodeStorageArena () && getOutputLanguage () != EOutputLanguage.JAVA)
+      {
+        JavaCCErrors.warning ("NODE_STORAGE option will be ignored since ARENA is only supported for Java");
+        Options.s_optionValues.put ("NODE_STORAGE", "OBJECT");
+      }
+
+    if (isIncrementalParsing ())
+    {
+      if (getOutputLanguage () != EOutputLanguage.JAVA)
+      {
+        JavaCCErrors.warning ("INCREMENTAL_PARSING option will be ignored since it is only supported for Java");
+        Options.s_optionValues.put ("INCREMENTAL_PARSING", Boolean.FALSE);
+      }
+      else
+        if (!isIncrementalLexing () || isJavaUnicodeEscape () || isUserTokenManager ())
+        {
+          JavaCCErrors.warning ("INCREMENTAL_PARSING option will be ignored since INCREMENTAL_LEXING is false");
+          Options.s_optionValues.put ("INCREMENTAL_PARSING", Boolean.FALSE);
+        }
+        else
+          if (isNodeStorageArena ())
+          {
+            JavaCCErrors.warning ("INCREMENTAL_PARSING option will be ignored since NODE_STORAGE is ARENA");
+            Options.s_optionValues.put ("INCREMENTAL_PARSING", Boolean.FALSE);
+          }
+    }
+
+    if (isElideUnaryNodes ())
+    {
+      if (getOutputLanguage () != EOutputLanguage.JAVA)
+      {
+        JavaCCErrors.warning ("ELIDE_UNARY_NODES option will be ignored since it is only supported for Java");
+        Options.s_optionValues.put ("ELIDE_UNARY_NODES", Boolean.FALSE);
+      }
+      else
+        if (isIncrementalParsing () || isNodeStorageArena ())
+        {
+          JavaCCErrors.warning ("ELIDE_UNARY_NODES option will be ignored since " +
+                                (isIncrementalParsing () ? "INCREMENTAL_PARSING is true" : "NODE_STORAGE is ARENA"));
+          Options.s_optionValues.put ("ELIDE_UNARY_NODES", Boolean.FALSE);
+        }
+    }
+
+    if (isTreeFile ())
+    {
+      if (getOutputLanguage () != EOutputLanguage.JAVA)
+      {
+        JavaCCErrors.warning ("TREE_FILE option will be ignored since it is only supported for Java");
+        Options.s_optionValues.put ("TREE_FILE", Boolean.FALSE);
+      }
+      else
+        if (isNodeStorageArena ())
+        {
+          JavaCCErrors.warning ("TREE_FILE option will be ignored since NODE_STORAGE is ARENA");
+          Options.s_optionValues.put ("TREE_FILE", Boolean.FALSE);
+        }
+    }
+  }
+
   /**
    * Find the multi value.
    *
@@ -226,6 +305,65 @@ public class JJTreeOptions extends Options
     return booleanValue ("TRACK_TOKENS");
   }
 
+  /**
+   * Find the incremental parsing value. If true, the parser records the token
+   * range of every node and, when re-initialized with the token manager after
+   * a retokenize, reuses the nodes of productions whose tokens did not change.
+   *
+   * @return The requested incremental parsing value.
+   */
+  public static boolean isIncrementalParsing ()
+  {
+    return booleanValue ("INCREMENTAL_PARSING");
+  }
+
+  /**
+   * Find the elide unary nodes value. If true, the node of a production
+   * without an explicit node descriptor is only created if it does not end up
+   * with exactly one child, and the nodes of such scopes and of
+   * <code>#Name(&gt;n)</code> scopes are only allocated when the scope is
+   * closed.
+   *
+   * @return The requested elide unary nodes value.
+   */
+  public static boolean isElideUnaryNodes ()
+  {
+    return booleanValue ("ELIDE_UNARY_NODES");
+  }
+
+  /**
+   * Find the tree file value. If true, a <code>JJT&lt;Parser&gt;TreeFile</code>
+   * class is generated that writes trees to a compact binary file, reads them
+   * back and offers a read-only view of a memory-mapped tree file.
+   *
+   * @return The requested tree file value.
+   */
+  public static boolean isTreeFile ()
+  {
+    return booleanValue ("TREE_FILE");
+  }
+
+  /**
+   * Find the node storage value. Either <code>OBJECT</code> (default) for a
+   * tree of linked node objects or <code>ARENA</code> for a tree stored in
+   * the parallel arrays of the generated <code>JJT&lt;Parser&gt;Arena</code>
+   * class.
+   *
+   * @return The requested node storage value.
+   */
+  public static String getNodeStorage ()
+  {
+    return stringValue ("NODE_STORAGE").toUpperCase (Locale.US);
+  }
+
+  /**
+   * @return <code>true</code> if the node storage is <code>ARENA</code>.
+   */
+  public static boolean isNodeStorageArena ()
+  {
+    return getNodeStorage ().equals ("ARENA");
+  }
+
   /**
    * Find the node prefix value.
    *
@@ -43,6 +43,7 @@ public class NodeScope
   String m_closedVar;
   String m_exceptionVar;
   String m_nodeVar;
+  String m_firstTokenVar;
   int m_scopeNumber;
 
   NodeScope (final ASTProduction p, @Nullable final ASTNodeDescriptor n)
@@ -67,6 +68,7 @@ public class NodeScope
     m_nodeVar = constructVariable ("n");
     m_closedVar = constructVariable ("c");
     m_exceptionVar = constructVariable ("e");
+    m_firstTokenVar = constructVariable ("t");
   }
 
   boolean isVoid ()
@@ -74,6 +76,53 @@ public class NodeScope
     return m_node_descriptor.isVoid ();
   }
 
+  /**
+   * @return true if this is the scope of the node of a whole BNF production
+   *         that returns void and has no parameters, so that incremental
+   *         parsing can reuse the node.
+   */
+  boolean isReusable ()
+  {
+    if (isVoid () || m_node_descriptor.m_expression != null || m_scopeNumber != 0 || !(m_production instanceof ASTBNF))
+      return false;
+
+    final ASTBNF prod = (ASTBNF) m_production;
+    Token prev = null;
+    for (Token t = prod.getFirstToken (); t != null && t != prod.declBeginLoc; t = t.next)
+    {
+      if (t.image.equals (prod.m_name))
+        return prev != null && prev.image.equals ("void") && t.next.image.equals ("(") && t.next.next.image.equals (")");
+      prev = t;
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the node of this scope is only allocated when the scope is
+   *         closed and its condition holds. That is the case for the implicit
+   *         node of a production and for <code>#Name(&gt;n)</code> scopes if
+   *         ELIDE_UNARY_NODES is set and no action of the production refers
+   *         to <code>jjtThis</code>.
+   */
+  boolean isElidable ()
+  {
+    if (!JJTreeOptions.isElideUnaryNodes () || JJTreeOptions.isNodeScopeHook () || isVoid ())
+      return false;
+    if (!(m_production instanceof ASTBNF))
+      return false;
+    if (m_node_descriptor.m_expression == null ? !m_node_descriptor.isImplicit () : !m_node_descriptor.m_isGT)
+      return false;
+
+    for (Token t = m_production.getFirstToken (); t != null; t = t.next)
+    {
+      if (t.image.equals ("jjtThis"))
+        return false;
+      if (t == m_production.getLastToken ())
+        break;
+    }
+    return true;
+  }
+
   ASTNodeDescriptor getNodeDescriptor ()
   {
     return m_node_descriptor;
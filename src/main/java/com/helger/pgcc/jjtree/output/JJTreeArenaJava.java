@@ -0,0 +1,251 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.jjtree.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.pgcc.jjtree.JJTreeGlobals;
+import com.helger.pgcc.jjtree.JJTreeOptions;
+import com.helger.pgcc.output.OutputFile;
+
+/**
+ * Generate the arena that stores the tree in parallel arrays if the option
+ * <code>NODE_STORAGE</code> is <code>ARENA</code>.
+ */
+@Immutable
+public final class JJTreeArenaJava
+{
+  private JJTreeArenaJava ()
+  {}
+
+  @Nonnull
+  @Nonempty
+  public static String nameArena ()
+  {
+    return "JJT" + JJTreeGlobals.s_parserName + "Arena";
+  }
+
+  public static void generateTreeArena_java ()
+  {
+    final File aFile = new File (JJTreeOptions.getJJTreeOutputDirectory (), nameArena () + ".java");
+
+    try (final OutputFile aOutputFile = new OutputFile (aFile); final PrintWriter ostr = aOutputFile.getPrintWriter ())
+    {
+      NodeFilesJava.generatePrologue (ostr);
+      _insertArena (ostr);
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  private static void _insertArena (@Nonnull final PrintWriter ostr)
+  {
+    final boolean bTrackTokens = JJTreeOptions.isTrackTokens ();
+    final String sTokenArgs = bTrackTokens ? ", final Token first, final Token last" : "";
+
+    ostr.println ("/* The nodes of a tree stored in parallel arrays.  A node is an index");
+    ostr.println ("   into the arrays, -1 stands for no node.  Nodes are numbered in the");
+    ostr.println ("   order their scopes were closed, so children come before their");
+    ostr.println ("   parent and the root is the last node. */");
+    ostr.println ("public class " + nameArena () + " implements java.io.Serializable {");
+    ostr.println ("  private int[] ids;");
+    ostr.println ("  private int[] parents;");
+    ostr.println ("  private int[] firstChildren;");
+    ostr.println ("  private int[] nextSiblings;");
+    if (bTrackTokens)
+    {
+      ostr.println ("  private Token[] firstTokens;");
+      ostr.println ("  private Token[] lastTokens;");
+    }
+    ostr.println ("  /* number of nodes */");
+    ostr.println ("  private int size;");
+    ostr.println ();
+    ostr.println ("  public " + nameArena () + "() {");
+    ostr.println ("    this(256);");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public " + nameArena () + "(final int capacity) {");
+    ostr.println ("    final int n = Math.max(capacity, 1);");
+    ostr.println ("    ids = new int[n];");
+    ostr.println ("    parents = new int[n];");
+    ostr.println ("    firstChildren = new int[n];");
+    ostr.println ("    nextSiblings = new int[n];");
+    if (bTrackTokens)
+    {
+      ostr.println ("    firstTokens = new Token[n];");
+      ostr.println ("    lastTokens = new Token[n];");
+    }
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Returns the number of nodes. */");
+    ostr.println ("  public int size() {");
+    ostr.println ("    return size;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Returns the last node, which is the root after a successful parse,");
+    ostr.println ("     or -1 if there are no nodes. */");
+    ostr.println ("  public int root() {");
+    ostr.println ("    return size - 1;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public int getId(final int node) {");
+    ostr.println ("    return ids[node];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public String getName(final int node) {");
+    ostr.println ("    return " + NodeFilesJava.nodeConstants () + ".jjtNodeName[ids[node]];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public int getParent(final int node) {");
+    ostr.println ("    return parents[node];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public int getFirstChild(final int node) {");
+    ostr.println ("    return firstChildren[node];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public int getNextSibling(final int node) {");
+    ostr.println ("    return nextSiblings[node];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public int getNumChildren(final int node) {");
+    ostr.println ("    int n = 0;");
+    ostr.println ("    for (int c = firstChildren[node]; c >= 0; c = nextSiblings[c]) {");
+    ostr.println ("      n++;");
+    ostr.println ("    }");
+    ostr.println ("    return n;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Returns the child with the given zero-based index, or -1. */");
+    ostr.println ("  public int getChild(final int node, final int i) {");
+    ostr.println ("    int c = firstChildren[node];");
+    ostr.println ("    for (int k = i; k > 0 && c >= 0; k--) {");
+    ostr.println ("      c = nextSiblings[c];");
+    ostr.println ("    }");
+    ostr.println ("    return c;");
+    ostr.println ("  }");
+    if (bTrackTokens)
+    {
+      ostr.println ();
+      ostr.println ("  public Token getFirstToken(final int node) {");
+      ostr.println ("    return firstTokens[node];");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  public Token getLastToken(final int node) {");
+      ostr.println ("    return lastTokens[node];");
+      ostr.println ("  }");
+    }
+    ostr.println ();
+    ostr.println ("  /* Adds a node without parent and children and returns it. */");
+    ostr.println ("  public int add(final int id" + sTokenArgs + ") {");
+    ostr.println ("    if (size == ids.length) {");
+    ostr.println ("      grow();");
+    ostr.println ("    }");
+    ostr.println ("    ids[size] = id;");
+    ostr.println ("    parents[size] = -1;");
+    ostr.println ("    firstChildren[size] = -1;");
+    ostr.println ("    nextSiblings[size] = -1;");
+    if (bTrackTokens)
+    {
+      ostr.println ("    firstTokens[size] = first;");
+      ostr.println ("    lastTokens[size] = last;");
+    }
+    ostr.println ("    return size++;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Makes the nodes nodes[from] to nodes[from + num - 1] the children");
+    ostr.println ("     of node, in that order. */");
+    ostr.println ("  public void setChildren(final int node, final int[] nodes, final int from, final int num) {");
+    ostr.println ("    int next = -1;");
+    ostr.println ("    for (int i = from + num - 1; i >= from; i--) {");
+    ostr.println ("      final int c = nodes[i];");
+    ostr.println ("      parents[c] = node;");
+    ostr.println ("      nextSiblings[c] = next;");
+    ostr.println ("      next = c;");
+    ostr.println ("    }");
+    ostr.println ("    firstChildren[node] = next;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Releases the unused capacity of the arrays. */");
+    ostr.println ("  public void trimToSize() {");
+    ostr.println ("    if (size > 0 && size < ids.length) {");
+    ostr.println ("      resize(size);");
+    ostr.println ("    }");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Prints the subtree of node, like SimpleNode.dump(). */");
+    ostr.println ("  public void dump(final int node, final String prefix) {");
+    ostr.println ("    System.out.println(prefix + getName(node));");
+    ostr.println ("    for (int c = firstChildren[node]; c >= 0; c = nextSiblings[c]) {");
+    ostr.println ("      dump(c, prefix + \" \");");
+    ostr.println ("    }");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private void grow() {");
+    ostr.println ("    resize(ids.length * 2);");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private void resize(final int capacity) {");
+    ostr.println ("    ids = copyOf(ids, capacity);");
+    ostr.println ("    parents = copyOf(parents, capacity);");
+    ostr.println ("    firstChildren = copyOf(firstChildren, capacity);");
+    ostr.println ("    nextSiblings = copyOf(nextSiblings, capacity);");
+    if (bTrackTokens)
+    {
+      ostr.println ("    Token[] t = new Token[capacity];");
+      ostr.println ("    System.arraycopy(firstTokens, 0, t, 0, size);");
+      ostr.println ("    firstTokens = t;");
+      ostr.println ("    t = new Token[capacity];");
+      ostr.println ("    System.arraycopy(lastTokens, 0, t, 0, size);");
+      ostr.println ("    lastTokens = t;");
+    }
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private int[] copyOf(final int[] a, final int capacity) {");
+    ostr.println ("    final int[] b = new int[capacity];");
+    ostr.println ("    System.arraycopy(a, 0, b, 0, size);");
+    ostr.println ("    return b;");
+    ostr.println ("  }");
+    ostr.println ("}");
+  }
+}
@@ -42,7 +42,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
 
 import com.helger.commons.annotation.Nonempty;
-import com.helger.pgcc.EJDKVersion;
 import com.helger.pgcc.jjtree.JJTreeGlobals;
 import com.helger.pgcc.jjtree.JJTreeIO;
 import com.helger.pgcc.jjtree.JJTreeOptions;
@@ -63,6 +62,62 @@ public final class JJTreeStateJava
     io.println ();
     io.println ("  protected " + _nameState () + " jjtree = new " + _nameState () + "();");
     io.println ();
+    if (JJTreeOptions.isIncrementalParsing ())
+      _insertIncrementalParserMembers (io);
+  }
+
+  private static void _insertIncrementalParserMembers (final JJTreeIO io)
+  {
+    io.println ("  /* Returns the index of the next token to consume in the replay of");
+    io.println ("     the token manager. */");
+    io.println ("  private int jjtTokenIndex() {");
+    io.println ("    int index = token_source.getReplayIndex();");
+    io.println ("    for (Token t = token.next; t != null; t = t.next) {");
+    io.println ("      index--;");
+    io.println ("    }");
+    io.println ("    return index;");
+    io.println ("  }");
+    io.println ();
+    io.println ("  /* Returns the index after the last token the parser looked at. */");
+    io.println ("  private int jjtReachIndex() {");
+    io.println ("    return token_source.getReplayIndex();");
+    io.println ("  }");
+    io.println ();
+    io.println ("  /* Reuses the node the production with the given node id created");
+    io.println ("     at the next token in the last parse, if its tokens did not change,");
+    io.println ("     and skips them.  The choice points inside the node are not run");
+    io.println ("     again, so a ParseException at the token after the node does not");
+    io.println ("     list the tokens they expected there. */");
+    io.println ("  private boolean jjtReuse(final int id) {");
+    io.println ("    if (token_source.getReplayIndex() < 0) {");
+    io.println ("      return false;");
+    io.println ("    }");
+    io.println ("    final int index = jjtTokenIndex();");
+    io.println ("    final int end = jjtree.reuseNode(id, index, token_source.getReplayedIndex(index),");
+    io.println ("                                     token_source.getReplayDamageFrom());");
+    io.println ("    if (end < 0) {");
+    io.println ("      return false;");
+    io.println ("    }");
+    io.println ("    token = token_source.replayTo(end - 1);");
+    if (Options.isErrorReporting () && !Options.isLazyErrorReporting ())
+    {
+      // Like consuming a token, so earlier choice points are not reported
+      io.println ("    jj_gen++;");
+    }
+    if (Options.isCacheTokens ())
+    {
+      io.println ("    jj_nt = token.next;");
+      io.println ("    if (jj_nt == null) {");
+      io.println ("      token.next = jj_nt = token_source.getNextToken();");
+      io.println ("    }");
+    }
+    else
+    {
+      io.println ("    jj_ntk = -1;");
+    }
+    io.println ("    return true;");
+    io.println ("  }");
+    io.println ();
   }
 
   @Nonnull
@@ -89,27 +144,99 @@ public final class JJTreeStateJava
 
   private static void _insertState (@Nonnull final PrintWriter ostr)
   {
-    final EJDKVersion eJavaVersion = Options.getJdkVersion ();
-    final boolean bEmptyImplType = eJavaVersion.isNewerOrEqualsThan (EJDKVersion.JDK_1_7);
+    final boolean bIncremental = JJTreeOptions.isIncrementalParsing ();
+    final boolean bArena = JJTreeOptions.isNodeStorageArena ();
+    final boolean bArenaTokens = bArena && JJTreeOptions.isTrackTokens ();
+    final String sArena = JJTreeArenaJava.nameArena ();
 
     ostr.println ("public class " + _nameState () + " implements java.io.Serializable {");
 
-    ostr.println ("  private java.util.List<Node> nodes;");
-    ostr.println ("  private java.util.List<Integer> marks;");
+    ostr.println ("  private Node[] nodes;");
+    ostr.println ("  private int[] marks;");
+    if (bArena)
+    {
+      ostr.println ();
+      ostr.println ("  /* The nodes are only on the stack while they are built.  The tree");
+      ostr.println ("     is kept in the arena, the node objects are not linked. */");
+      ostr.println ("  private " + sArena + " arena;");
+      ostr.println ("  /* arena index of each node on the stack */");
+      ostr.println ("  private int[] handles;");
+      if (bArenaTokens)
+      {
+        ostr.println ("  /* first token of each open node scope */");
+        ostr.println ("  private Token[] firsts;");
+      }
+      ostr.println ("  /* the node popped last and its arena index, to keep its subtree");
+      ostr.println ("     if it is pushed again */");
+      ostr.println ("  private Node popped;");
+      ostr.println ("  private int popped_handle;");
+    }
+    if (bIncremental)
+    {
+      ostr.println ();
+      ostr.println ("  /* The token range of a node, kept to reuse the node in the next");
+      ostr.println ("     parse.  Token indexes count from the first token of the parse,");
+      ostr.println ("     the starts of the children from the start of the node. */");
+      ostr.println ("  private static final class Span implements java.io.Serializable {");
+      ostr.println ("    final Node node;");
+      ostr.println ("    /* Node id if the node is the node of a reusable production, else -1 */");
+      ostr.println ("    final int id;");
+      ostr.println ("    final int length;");
+      ostr.println ("    /* Number of tokens behind the node the parser looked at */");
+      ostr.println ("    final int reach;");
+      ostr.println ("    final int[] childStarts;");
+      ostr.println ("    final Span[] children;");
+      ostr.println ();
+      ostr.println ("    Span(final Node node, final int id, final int length, final int reach,");
+      ostr.println ("         final int[] childStarts, final Span[] children) {");
+      ostr.println ("      this.node = node;");
+      ostr.println ("      this.id = id;");
+      ostr.println ("      this.length = length;");
+      ostr.println ("      this.reach = reach;");
+      ostr.println ("      this.childStarts = childStarts;");
+      ostr.println ("      this.children = children;");
+      ostr.println ("    }");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* span and first token index of each node on the stack */");
+      ostr.println ("  private Span[] spans;");
+      ostr.println ("  private int[] starts;");
+      ostr.println ("  /* token index at each open node scope */");
+      ostr.println ("  private int[] opens;");
+      ostr.println ("  /* root of the last parse */");
+      ostr.println ("  private Span old_root;");
+      ostr.println ("  private int old_root_start;");
+      ostr.println ("  /* index after the furthest token looked at by reused nodes */");
+      ostr.println ("  private int reuse_reach;");
+    }
 
     ostr.println ();
     ostr.println ("  /* number of nodes on stack */");
     ostr.println ("  private int sp;");
+    ostr.println ("  /* number of marks on stack */");
+    ostr.println ("  private int mp;");
     ostr.println ("  /* current mark */");
     ostr.println ("  private int mk;");
     ostr.println ("  private boolean node_created;");
     ostr.println ();
     ostr.println ("  public " + _nameState () + "() {");
-
-    ostr.println ("    nodes = new java.util.ArrayList<" + (bEmptyImplType ? "" : "Node") + ">();");
-    ostr.println ("    marks = new java.util.ArrayList<" + (bEmptyImplType ? "" : "Integer") + ">();");
-
+    ostr.println ("    nodes = new Node[32];");
+    ostr.println ("    marks = new int[32];");
+    if (bArena)
+    {
+      ostr.println ("    arena = new " + sArena + "();");
+      ostr.println ("    handles = new int[32];");
+      if (bArenaTokens)
+        ostr.println ("    firsts = new Token[32];");
+    }
+    if (bIncremental)
+    {
+      ostr.println ("    spans = new Span[32];");
+      ostr.println ("    starts = new int[32];");
+      ostr.println ("    opens = new int[32];");
+    }
     ostr.println ("    sp = 0;");
+    ostr.println ("    mp = 0;");
     ostr.println ("    mk = 0;");
     ostr.println ("  }");
     ostr.println ();
@@ -122,38 +249,103 @@ public final class JJTreeStateJava
     ostr.println ();
     ostr.println ("  /* Call this to reinitialize the node stack.  It is called");
     ostr.println ("     automatically by the parser's ReInit() method. */");
+    if (bIncremental)
+    {
+      ostr.println ("  /* The tree of the last parse is kept for reuse if the parse");
+      ostr.println ("     created a root node. */");
+    }
     ostr.println ("  public void reset() {");
-    ostr.println ("    nodes.clear();");
-    ostr.println ("    marks.clear();");
+    if (bIncremental)
+    {
+      ostr.println ("    old_root = sp == 1 ? spans[0] : null;");
+      ostr.println ("    old_root_start = sp == 1 ? starts[0] : 0;");
+      ostr.println ("    java.util.Arrays.fill(spans, 0, sp, null);");
+      ostr.println ("    reuse_reach = 0;");
+    }
+    if (bArena)
+    {
+      ostr.println ("    arena = new " + sArena + "();");
+      ostr.println ("    popped = null;");
+    }
+    ostr.println ("    java.util.Arrays.fill(nodes, 0, sp, null);");
     ostr.println ("    sp = 0;");
+    ostr.println ("    mp = 0;");
     ostr.println ("    mk = 0;");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Returns the root node of the AST.  It only makes sense to call");
     ostr.println ("     this after a successful parse. */");
     ostr.println ("  public Node rootNode() {");
-    ostr.println ("    return nodes.get(0);");
+    ostr.println ("    return nodes[0];");
     ostr.println ("  }");
+    if (bArena)
+    {
+      ostr.println ();
+      ostr.println ("  /* Returns the arena holding the tree of the current parse.  A call");
+      ostr.println ("     to reset() starts a new arena. */");
+      ostr.println ("  public " + sArena + " arena() {");
+      ostr.println ("    return arena;");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Returns the arena index of the root node.  It only makes sense to");
+      ostr.println ("     call this after a successful parse. */");
+      ostr.println ("  public int rootIndex() {");
+      ostr.println ("    return handles[0];");
+      ostr.println ("  }");
+    }
     ostr.println ();
     ostr.println ("  /* Pushes a node on to the stack. */");
     ostr.println ("  public void pushNode(Node n) {");
-    ostr.println ("    nodes.add(n);");
-    ostr.println ("    ++sp;");
+    if (bArena)
+    {
+      ostr.println ("    pushNode(n, n == popped ? popped_handle : arena.add(n.getId()" +
+                    (bArenaTokens ? ", null, null" : "") +
+                    "));");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  private void pushNode(final Node n, final int handle) {");
+    }
+    if (bIncremental)
+    {
+      ostr.println ("    pushNode(n, null, -1);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  private void pushNode(final Node n, final Span span, final int start) {");
+    }
+    ostr.println ("    if (sp == nodes.length) {");
+    ostr.println ("      growNodes();");
+    ostr.println ("    }");
+    if (bIncremental)
+    {
+      ostr.println ("    spans[sp] = span;");
+      ostr.println ("    starts[sp] = start;");
+    }
+    if (bArena)
+      ostr.println ("    handles[sp] = handle;");
+    ostr.println ("    nodes[sp++] = n;");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Returns the node on the top of the stack, and remove it from the");
     ostr.println ("     stack.  */");
     ostr.println ("  public Node popNode() {");
-    ostr.println ("   --sp;");
-    ostr.println ("    if (sp < mk) {");
-    ostr.println ("      mk = marks.remove(marks.size()-1).intValue();");
+    ostr.println ("    if (--sp < mk) {");
+    ostr.println ("      mk = marks[--mp];");
     ostr.println ("    }");
-    ostr.println ("    return nodes.remove(nodes.size()-1);");
+    if (bIncremental)
+      ostr.println ("    spans[sp] = null;");
+    ostr.println ("    final Node n = nodes[sp];");
+    ostr.println ("    nodes[sp] = null;");
+    if (bArena)
+    {
+      ostr.println ("    popped = n;");
+      ostr.println ("    popped_handle = handles[sp];");
+    }
+    ostr.println ("    return n;");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Returns the node currently on the top of the stack. */");
     ostr.println ("  public Node peekNode() {");
-    ostr.println ("    return nodes.get(nodes.size()-1);");
+    ostr.println ("    return nodes[sp-1];");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Returns the number of children on the stack in the current node");
@@ -167,11 +359,47 @@ public final class JJTreeStateJava
     ostr.println ("    while (sp > mk) {");
     ostr.println ("      popNode();");
     ostr.println ("    }");
-    ostr.println ("    mk = marks.remove(marks.size()-1).intValue();");
+    ostr.println ("    mk = marks[--mp];");
     ostr.println ("  }");
     ostr.println ();
+    if (JJTreeOptions.isElideUnaryNodes ())
+    {
+      ostr.println ("  /* Opens the scope of a node that is only created when the scope is");
+      ostr.println ("     closed, if it is needed at all. */");
+      ostr.println ("  public void openNodeScope() {");
+      ostr.println ("    if (mp == marks.length) {");
+      ostr.println ("      growMarks();");
+      ostr.println ("    }");
+      ostr.println ("    marks[mp++] = mk;");
+      ostr.println ("    mk = sp;");
+      ostr.println ("  }");
+      ostr.println ();
+    }
     ostr.println ("  public void openNodeScope(final Node n) {");
-    ostr.println ("    marks.add(Integer.valueOf(mk));");
+    if (bIncremental)
+    {
+      ostr.println ("    openNodeScope(n, -1);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Opens a node scope at the token with the given index. */");
+      ostr.println ("  public void openNodeScope(final Node n, final int index) {");
+    }
+    if (bArenaTokens)
+    {
+      ostr.println ("    openNodeScope(n, null);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Opens a node scope whose first token is first. */");
+      ostr.println ("  public void openNodeScope(final Node n, final Token first) {");
+    }
+    ostr.println ("    if (mp == marks.length) {");
+    ostr.println ("      growMarks();");
+    ostr.println ("    }");
+    if (bIncremental)
+      ostr.println ("    opens[mp] = index;");
+    if (bArenaTokens)
+      ostr.println ("    firsts[mp] = first;");
+    ostr.println ("    marks[mp++] = mk;");
     ostr.println ("    mk = sp;");
     ostr.println ("    n.jjtOpen();");
     ostr.println ("  }");
@@ -180,16 +408,38 @@ public final class JJTreeStateJava
     ostr.println ("     children.  That number of nodes are popped from the stack and");
     ostr.println ("     made the children of the definite node.  Then the definite node");
     ostr.println ("     is pushed on to the stack. */");
-    ostr.println ("  public void closeNodeScope(final Node n, final int numIn) {");
-    ostr.println ("    mk = marks.remove(marks.size()-1).intValue();");
-    ostr.println ("    int num = numIn;");
-    ostr.println ("    while (num-- > 0) {");
-    ostr.println ("      Node c = popNode();");
-    ostr.println ("      c.jjtSetParent(n);");
-    ostr.println ("      n.jjtAddChild(c, num);");
-    ostr.println ("    }");
+    ostr.println ("  public void closeNodeScope(final Node n, final int num) {");
+    if (bIncremental)
+    {
+      ostr.println ("    closeNodeScope(n, num, -1, -1);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Closes a definite node scope before the token with index end.  The");
+      ostr.println ("     parser looked at the tokens up to index reach (exclusive). */");
+      ostr.println ("  public void closeNodeScope(final Node n, final int num, final int end, final int reach) {");
+      ostr.println ("    final int open = opens[mp-1];");
+      ostr.println ("    final int start = spanStart(open, num);");
+      ostr.println ("    final Span span = newSpan(n, -1, start, num, end, reach);");
+    }
+    if (bArenaTokens)
+    {
+      ostr.println ("    closeNodeScope(n, num, null);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Closes a definite node scope whose last token is last. */");
+      ostr.println ("  public void closeNodeScope(final Node n, final int num, final Token last) {");
+      ostr.println ("    final Token first = firsts[mp-1];");
+    }
+    ostr.println ("    mk = marks[--mp];");
+    if (bArena)
+    {
+      ostr.println ("    final int node = arena.add(n.getId()" + (bArenaTokens ? ", first, last" : "") + ");");
+      ostr.println ("    popChildren(node, num);");
+    }
+    else
+      ostr.println ("    popChildren(n, num);");
     ostr.println ("    n.jjtClose();");
-    ostr.println ("    pushNode(n);");
+    ostr.println ("    pushNode(n" + (bIncremental ? ", span, start" : bArena ? ", node" : "") + ");");
     ostr.println ("    node_created = true;");
     ostr.println ("  }");
     ostr.println ();
@@ -200,22 +450,228 @@ public final class JJTreeStateJava
     ostr.println ("     on to the stack.  If the condition is false the node is not");
     ostr.println ("     constructed and they are left on the stack. */");
     ostr.println ("  public void closeNodeScope(final Node n, final boolean condition) {");
+    if (bIncremental)
+    {
+      ostr.println ("    closeNodeScope(n, condition, -1, -1, -1);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Closes a conditional node scope before the token with index end.");
+      ostr.println ("     The parser looked at the tokens up to index reach (exclusive). */");
+      ostr.println ("  public void closeNodeScope(final Node n, final boolean condition, final int end, final int reach) {");
+      ostr.println ("    closeNodeScope(n, condition, -1, end, reach);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Closes the node scope of a production whose node can be reused");
+      ostr.println ("     by the next parse. */");
+      ostr.println ("  public void closeReusableNodeScope(final Node n, final int end, final int reach) {");
+      ostr.println ("    closeNodeScope(n, true, n.getId(), end, reach);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  private void closeNodeScope(final Node n, final boolean condition, final int id, final int end, final int reach) {");
+    }
+    if (bArenaTokens)
+    {
+      ostr.println ("    closeNodeScope(n, condition, null);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Closes a conditional node scope whose last token is last. */");
+      ostr.println ("  public void closeNodeScope(final Node n, final boolean condition, final Token last) {");
+    }
     ostr.println ("    if (condition) {");
-    ostr.println ("      int a = nodeArity();");
-    ostr.println ("      mk = marks.remove(marks.size()-1).intValue();");
-    ostr.println ("      while (a-- > 0) {");
-    ostr.println ("        final Node c = popNode();");
-    ostr.println ("        c.jjtSetParent(n);");
-    ostr.println ("        n.jjtAddChild(c, a);");
-    ostr.println ("      }");
+    ostr.println ("      final int a = nodeArity();");
+    if (bIncremental)
+    {
+      ostr.println ("      final int start = spanStart(opens[mp-1], a);");
+      ostr.println ("      final Span span = newSpan(n, id, start, a, end, reach);");
+    }
+    if (bArenaTokens)
+      ostr.println ("      final Token first = firsts[mp-1];");
+    ostr.println ("      mk = marks[--mp];");
+    if (bArena)
+    {
+      ostr.println ("      final int node = arena.add(n.getId()" + (bArenaTokens ? ", first, last" : "") + ");");
+      ostr.println ("      popChildren(node, a);");
+    }
+    else
+      ostr.println ("      popChildren(n, a);");
     ostr.println ("      n.jjtClose();");
-    ostr.println ("      pushNode(n);");
+    ostr.println ("      pushNode(n" + (bIncremental ? ", span, start" : bArena ? ", node" : "") + ");");
     ostr.println ("      node_created = true;");
     ostr.println ("    } else {");
-    ostr.println ("      mk = marks.remove(marks.size()-1).intValue();");
+    ostr.println ("      mk = marks[--mp];");
     ostr.println ("      node_created = false;");
     ostr.println ("    }");
     ostr.println ("  }");
+    ostr.println ();
+    if (bArena)
+    {
+      ostr.println ("  /* Makes the top num nodes the children of the arena node and removes");
+      ostr.println ("     them from the stack. */");
+      ostr.println ("  private void popChildren(final int node, final int num) {");
+    }
+    else
+    {
+      ostr.println ("  /* Makes the top num nodes the children of n and removes them from");
+      ostr.println ("     the stack.  The last child is added first, so that the node can");
+      ostr.println ("     allocate all its children at once. */");
+      ostr.println ("  private void popChildren(final Node n, final int num) {");
+    }
+    ostr.println ("    final int base = sp - num;");
+    ostr.println ("    if (base >= mk) {");
+    ostr.println ("      sp = base;");
+    ostr.println ("    } else {");
+    ostr.println ("      /* Children beyond the current mark close the enclosing scopes */");
+    ostr.println ("      while (sp > base) {");
+    ostr.println ("        if (--sp < mk) {");
+    ostr.println ("          mk = marks[--mp];");
+    ostr.println ("        }");
+    ostr.println ("      }");
+    ostr.println ("    }");
+    if (bArena)
+    {
+      ostr.println ("    arena.setChildren(node, handles, base, num);");
+      ostr.println ("    java.util.Arrays.fill(nodes, base, base + num, null);");
+    }
+    else
+    {
+      ostr.println ("    for (int i = num - 1; i >= 0; i--) {");
+      ostr.println ("      final Node c = nodes[base + i];");
+      ostr.println ("      nodes[base + i] = null;");
+      if (bIncremental)
+        ostr.println ("      spans[base + i] = null;");
+      ostr.println ("      c.jjtSetParent(n);");
+      ostr.println ("      n.jjtAddChild(c, i);");
+      ostr.println ("    }");
+    }
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private void growNodes() {");
+    ostr.println ("    final Node[] n = new Node[nodes.length * 2];");
+    ostr.println ("    System.arraycopy(nodes, 0, n, 0, sp);");
+    ostr.println ("    nodes = n;");
+    if (bArena)
+    {
+      ostr.println ("    final int[] h = new int[n.length];");
+      ostr.println ("    System.arraycopy(handles, 0, h, 0, sp);");
+      ostr.println ("    handles = h;");
+    }
+    if (bIncremental)
+    {
+      ostr.println ("    final Span[] s = new Span[n.length];");
+      ostr.println ("    System.arraycopy(spans, 0, s, 0, sp);");
+      ostr.println ("    spans = s;");
+      ostr.println ("    final int[] t = new int[n.length];");
+      ostr.println ("    System.arraycopy(starts, 0, t, 0, sp);");
+      ostr.println ("    starts = t;");
+    }
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private void growMarks() {");
+    ostr.println ("    final int[] m = new int[marks.length * 2];");
+    ostr.println ("    System.arraycopy(marks, 0, m, 0, mp);");
+    ostr.println ("    marks = m;");
+    if (bArenaTokens)
+    {
+      ostr.println ("    final Token[] f = new Token[m.length];");
+      ostr.println ("    System.arraycopy(firsts, 0, f, 0, mp);");
+      ostr.println ("    firsts = f;");
+    }
+    if (bIncremental)
+    {
+      ostr.println ("    final int[] o = new int[m.length];");
+      ostr.println ("    System.arraycopy(opens, 0, o, 0, mp);");
+      ostr.println ("    opens = o;");
+    }
+    ostr.println ("  }");
+    if (bIncremental)
+      _insertIncrementalState (ostr);
     ostr.println ("}");
   }
+
+  private static void _insertIncrementalState (@Nonnull final PrintWriter ostr)
+  {
+    ostr.println ();
+    ostr.println ("  /* Returns the index of the first token of a node that is opened at");
+    ostr.println ("     index open and gets the top num nodes as children, -1 if unknown. */");
+    ostr.println ("  private int spanStart(final int open, final int num) {");
+    ostr.println ("    int start = open;");
+    ostr.println ("    for (int i = sp - num; i < sp; i++) {");
+    ostr.println ("      final int s = starts[i];");
+    ostr.println ("      if (spans[i] != null && (start < 0 || s < start)) {");
+    ostr.println ("        start = s;");
+    ostr.println ("      }");
+    ostr.println ("    }");
+    ostr.println ("    return start;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Creates the span of a node with the top num nodes as children. */");
+    ostr.println ("  private Span newSpan(final Node n, final int id, final int start, final int num,");
+    ostr.println ("                      final int end, final int reach) {");
+    ostr.println ("    if (start < 0 || end < start) {");
+    ostr.println ("      return null;");
+    ostr.println ("    }");
+    ostr.println ("    int count = 0;");
+    ostr.println ("    for (int i = sp - num; i < sp; i++) {");
+    ostr.println ("      if (spans[i] != null) {");
+    ostr.println ("        count++;");
+    ostr.println ("      }");
+    ostr.println ("    }");
+    ostr.println ("    final int[] childStarts = new int[count];");
+    ostr.println ("    final Span[] children = new Span[count];");
+    ostr.println ("    count = 0;");
+    ostr.println ("    for (int i = sp - num; i < sp; i++) {");
+    ostr.println ("      final Span c = spans[i];");
+    ostr.println ("      if (c != null) {");
+    ostr.println ("        childStarts[count] = starts[i] - start;");
+    ostr.println ("        children[count++] = c;");
+    ostr.println ("      }");
+    ostr.println ("    }");
+    ostr.println ("    return new Span(n, id, end - start, Math.max(0, Math.max(reach, reuse_reach) - end),");
+    ostr.println ("                    childStarts, children);");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Pushes the node the production with the given node id created at");
+    ostr.println ("     the token with index oldIndex in the last parse, if there is one");
+    ostr.println ("     and none of the tokens the parser looked at for it were replaced");
+    ostr.println ("     since.  damageFrom is the index of the first replaced token of the");
+    ostr.println ("     last parse.  Returns the index after the last token of the node in");
+    ostr.println ("     this parse, where it starts at index, or -1 if there is no node");
+    ostr.println ("     to reuse. */");
+    ostr.println ("  public int reuseNode(final int id, final int index, final int oldIndex, final int damageFrom) {");
+    ostr.println ("    if (oldIndex < 0) {");
+    ostr.println ("      return -1;");
+    ostr.println ("    }");
+    ostr.println ("    Span s = old_root;");
+    ostr.println ("    int start = old_root_start;");
+    ostr.println ("    while (s != null && oldIndex >= start && oldIndex < start + s.length) {");
+    ostr.println ("      if (start == oldIndex && s.id == id && s.length > 0) {");
+    ostr.println ("        if (oldIndex < damageFrom && start + s.length + s.reach > damageFrom) {");
+    ostr.println ("          return -1;");
+    ostr.println ("        }");
+    ostr.println ("        s.node.jjtSetParent(null);");
+    ostr.println ("        pushNode(s.node, s, index);");
+    ostr.println ("        reuse_reach = Math.max(reuse_reach, index + s.length + s.reach);");
+    ostr.println ("        return index + s.length;");
+    ostr.println ("      }");
+    ostr.println ("      /* Descend into the last child starting at or before oldIndex */");
+    ostr.println ("      final int[] childStarts = s.childStarts;");
+    ostr.println ("      int lo = 0;");
+    ostr.println ("      int hi = childStarts.length;");
+    ostr.println ("      while (lo < hi) {");
+    ostr.println ("        final int mid = (lo + hi) >>> 1;");
+    ostr.println ("        if (start + childStarts[mid] <= oldIndex) {");
+    ostr.println ("          lo = mid + 1;");
+    ostr.println ("        } else {");
+    ostr.println ("          hi = mid;");
+    ostr.println ("        }");
+    ostr.println ("      }");
+    ostr.println ("      if (lo == 0) {");
+    ostr.println ("        return -1;");
+    ostr.println ("      }");
+    ostr.println ("      start += childStarts[lo - 1];");
+    ostr.println ("      s = s.children[lo - 1];");
+    ostr.println ("    }");
+    ostr.println ("    return -1;");
+    ostr.println ("  }");
+  }
 }
@@ -0,0 +1,695 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.jjtree.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.pgcc.jjtree.ASTNodeDescriptor;
+import com.helger.pgcc.jjtree.JJTreeGlobals;
+import com.helger.pgcc.jjtree.JJTreeOptions;
+import com.helger.pgcc.output.OutputFile;
+
+/**
+ * Generate the class that writes trees to a compact binary file and reads them
+ * back if the option <code>TREE_FILE</code> is set.
+ */
+@Immutable
+public final class JJTreeTreeFileJava
+{
+  private JJTreeTreeFileJava ()
+  {}
+
+  @Nonnull
+  @Nonempty
+  public static String nameTreeFile ()
+  {
+    return "JJT" + JJTreeGlobals.s_parserName + "TreeFile";
+  }
+
+  public static void generateTreeFile_java ()
+  {
+    final File aFile = new File (JJTreeOptions.getJJTreeOutputDirectory (), nameTreeFile () + ".java");
+
+    try (final OutputFile aOutputFile = new OutputFile (aFile); final PrintWriter ostr = aOutputFile.getPrintWriter ())
+    {
+      NodeFilesJava.generatePrologue (ostr);
+      _insertTreeFile (ostr);
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  /**
+   * @return The class the token accessors of a node are called on. That is
+   *         NODE_CLASS if set, because the MULTI node classes extend it.
+   */
+  private static String _tokenNodeType ()
+  {
+    if (JJTreeOptions.getNodeClass ().length () > 0)
+      return JJTreeOptions.getNodeClass ();
+    return "SimpleNode";
+  }
+
+  /**
+   * @return The expression that creates a node of the given class the way the
+   *         parser does, with a null parser.
+   */
+  private static String _newNode (final String nodeClass, final String id)
+  {
+    final String parserArg = JJTreeOptions.isNodeUsesParser () ? ("(" + JJTreeGlobals.s_parserName + ") null, ") : "";
+    if (JJTreeOptions.getNodeFactory ().equals ("*"))
+      return nodeClass + ".jjtCreate(" + parserArg + id + ")";
+    if (JJTreeOptions.getNodeFactory ().length () > 0)
+      return JJTreeOptions.getNodeFactory () + ".jjtCreate(" + parserArg + id + ")";
+    return "new " + nodeClass + "(" + parserArg + id + ")";
+  }
+
+  private static void _insertTreeFile (@Nonnull final PrintWriter ostr)
+  {
+    final boolean bTokens = JJTreeOptions.isTrackTokens ();
+    final boolean bLineColumn = bTokens && JJTreeOptions.isKeepLineColumn ();
+    final String sImage = JJTreeOptions.isLazyTokenImage () ? "getImage()" : "image";
+    final String sTokenNode = _tokenNodeType ();
+    final String sView = "View";
+
+    ostr.println ("/* Writes trees to a compact binary file and reads them back, either");
+    ostr.println ("   as nodes or through a View that works directly on the bytes of a");
+    ostr.println ("   memory-mapped file.");
+    ostr.println ();
+    ostr.println ("   Layout, ints are big-endian and varints unsigned LEB128:");
+    ostr.println ("     header   magic, version, flags, number of strings, of tokens and");
+    ostr.println ("              of nodes, offset of the tokens, offset of the root node");
+    ostr.println ("     strings  one int offset per string, then the strings as varint");
+    ostr.println ("              length and UTF-8 bytes");
+    ostr.println ("     tokens   one int offset per token, then per token the varint kind,");
+    ostr.println ("              the varint index of its image in the strings plus 1 and,");
+    ostr.println ("              with line and column information, varint begin line,");
+    ostr.println ("              begin column, end line - begin line and end column");
+    ostr.println ("     nodes    in pre-order, per node a varint (id << 1 | 1 if a next");
+    ostr.println ("              sibling follows), the varint number of children, if there");
+    ostr.println ("              are any the varint size in bytes of the children and, with");
+    ostr.println ("              tokens, varint indexes of the first and last token plus 1");
+    ostr.println ();
+    ostr.println ("   Tokens are shared between the nodes that refer to them, but their");
+    ostr.println ("   next and specialToken fields are not stored.  Node values are not");
+    ostr.println ("   stored either. */");
+    ostr.println ("public final class " + nameTreeFile () + " {");
+    ostr.println ("  public static final int MAGIC = 0x4A4A5442;");
+    ostr.println ("  public static final int VERSION = 1;");
+    ostr.println ();
+    ostr.println ("  /* flags */");
+    ostr.println ("  private static final int TOKENS = 1;");
+    ostr.println ("  private static final int LINE_COLUMN = 2;");
+    ostr.println ("  private static final int FLAGS = " +
+                  (bTokens ? "TOKENS" : "0") +
+                  (bLineColumn ? " | LINE_COLUMN" : "") +
+                  ";");
+    ostr.println ();
+    ostr.println ("  private static final int HEADER_SIZE = 32;");
+    ostr.println ("  private static final java.nio.charset.Charset UTF8 = java.nio.charset.Charset.forName(\"UTF-8\");");
+    ostr.println ();
+    ostr.println ("  private " + nameTreeFile () + "() {");
+    ostr.println ("  }");
+    ostr.println ();
+
+    // Writing
+    ostr.println ("  public static void write(final Node root, final java.io.File file) throws java.io.IOException {");
+    ostr.println ("    final java.io.OutputStream out = new java.io.FileOutputStream(file);");
+    ostr.println ("    try {");
+    ostr.println ("      write(root, out);");
+    ostr.println ("    } finally {");
+    ostr.println ("      out.close();");
+    ostr.println ("    }");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Writes the tree to os, which is flushed but not closed. */");
+    ostr.println ("  public static void write(final Node root, final java.io.OutputStream os) throws java.io.IOException {");
+    ostr.println ("    /* Collect the nodes in pre-order with an explicit stack */");
+    ostr.println ("    Node[] order = new Node[64];");
+    ostr.println ("    int[] parents = new int[64];");
+    ostr.println ("    boolean[] next = new boolean[64];");
+    ostr.println ("    int count = 0;");
+    ostr.println ("    Node[] stack = new Node[32];");
+    ostr.println ("    int[] stackParents = new int[32];");
+    ostr.println ("    boolean[] stackNext = new boolean[32];");
+    ostr.println ("    int sp = 0;");
+    ostr.println ("    stack[sp] = root;");
+    ostr.println ("    stackParents[sp] = -1;");
+    ostr.println ("    stackNext[sp++] = false;");
+    ostr.println ("    while (sp > 0) {");
+    ostr.println ("      final Node n = stack[--sp];");
+    ostr.println ("      if (count == order.length) {");
+    ostr.println ("        order = java.util.Arrays.copyOf(order, count * 2);");
+    ostr.println ("        parents = java.util.Arrays.copyOf(parents, count * 2);");
+    ostr.println ("        next = java.util.Arrays.copyOf(next, count * 2);");
+    ostr.println ("      }");
+    ostr.println ("      order[count] = n;");
+    ostr.println ("      parents[count] = stackParents[sp];");
+    ostr.println ("      next[count] = stackNext[sp];");
+    ostr.println ("      stack[sp] = null;");
+    ostr.println ("      final int num = n.jjtGetNumChildren();");
+    ostr.println ("      if (sp + num > stack.length) {");
+    ostr.println ("        final int len = Math.max(stack.length * 2, sp + num);");
+    ostr.println ("        stack = java.util.Arrays.copyOf(stack, len);");
+    ostr.println ("        stackParents = java.util.Arrays.copyOf(stackParents, len);");
+    ostr.println ("        stackNext = java.util.Arrays.copyOf(stackNext, len);");
+    ostr.println ("      }");
+    ostr.println ("      /* Push the children last-first, so they are popped in order */");
+    ostr.println ("      for (int i = num - 1; i >= 0; i--) {");
+    ostr.println ("        stack[sp] = n.jjtGetChild(i);");
+    ostr.println ("        stackParents[sp] = count;");
+    ostr.println ("        stackNext[sp++] = i < num - 1;");
+    ostr.println ("      }");
+    ostr.println ("      count++;");
+    ostr.println ("    }");
+    ostr.println ();
+    if (bTokens)
+    {
+      ostr.println ("    /* Number the tokens and their images */");
+      ostr.println ("    final java.util.Map<Token, Integer> tokenIndex = new java.util.IdentityHashMap<Token, Integer>();");
+      ostr.println ("    final java.util.List<Token> tokens = new java.util.ArrayList<Token>();");
+      ostr.println ("    final java.util.Map<String, Integer> stringIndex = new java.util.HashMap<String, Integer>();");
+      ostr.println ("    final java.util.List<byte[]> strings = new java.util.ArrayList<byte[]>();");
+      ostr.println ("    final int[] firsts = new int[count];");
+      ostr.println ("    final int[] lasts = new int[count];");
+      ostr.println ("    for (int i = 0; i < count; i++) {");
+      ostr.println ("      final " + sTokenNode + " n = (" + sTokenNode + ") order[i];");
+      ostr.println ("      firsts[i] = tokenNumber(n.jjtGetFirstToken(), tokenIndex, tokens, stringIndex, strings);");
+      ostr.println ("      lasts[i] = tokenNumber(n.jjtGetLastToken(), tokenIndex, tokens, stringIndex, strings);");
+      ostr.println ("    }");
+      ostr.println ();
+    }
+    ostr.println ("    /* Children follow their parent, so the sizes of all children are");
+    ostr.println ("       known when the loop reaches the parent */");
+    ostr.println ("    final int[] childBytes = new int[count];");
+    ostr.println ("    for (int i = count - 1; i > 0; i--) {");
+    ostr.println ("      childBytes[parents[i]] += nodeSize(order[i], next[i], childBytes[i]" +
+                  (bTokens ? ", firsts[i], lasts[i]" : "") +
+                  ");");
+    ostr.println ("    }");
+    ostr.println ();
+    if (bTokens)
+    {
+      ostr.println ("    int stringBytes = 0;");
+      ostr.println ("    for (final byte[] s : strings) {");
+      ostr.println ("      stringBytes += varintSize(s.length) + s.length;");
+      ostr.println ("    }");
+      ostr.println ("    final int stringCount = strings.size();");
+      ostr.println ("    final int tokenCount = tokens.size();");
+      ostr.println ("    final int tokenStart = HEADER_SIZE + stringCount * 4 + stringBytes;");
+      ostr.println ("    final java.io.ByteArrayOutputStream records = new java.io.ByteArrayOutputStream();");
+      ostr.println ("    final int[] tokenOffsets = new int[tokenCount];");
+      ostr.println ("    for (int i = 0; i < tokenCount; i++) {");
+      ostr.println ("      final Token t = tokens.get(i);");
+      ostr.println ("      tokenOffsets[i] = tokenStart + tokenCount * 4 + records.size();");
+      ostr.println ("      writeVarint(records, t.kind);");
+      ostr.println ("      writeVarint(records, t." + sImage + " == null ? 0 : stringIndex.get(t." + sImage + ").intValue() + 1);");
+      if (bLineColumn)
+      {
+        ostr.println ("      writeVarint(records, t.beginLine);");
+        ostr.println ("      writeVarint(records, t.beginColumn);");
+        ostr.println ("      writeVarint(records, t.endLine - t.beginLine);");
+        ostr.println ("      writeVarint(records, t.endColumn);");
+      }
+      ostr.println ("    }");
+      ostr.println ("    final int nodes = tokenStart + tokenCount * 4 + records.size();");
+    }
+    else
+    {
+      ostr.println ("    final int stringCount = 0;");
+      ostr.println ("    final int tokenCount = 0;");
+      ostr.println ("    final int tokenStart = HEADER_SIZE;");
+      ostr.println ("    final int nodes = HEADER_SIZE;");
+    }
+    ostr.println ();
+    ostr.println ("    final java.io.DataOutputStream out = new java.io.DataOutputStream(new java.io.BufferedOutputStream(os));");
+    ostr.println ("    out.writeInt(MAGIC);");
+    ostr.println ("    out.writeInt(VERSION);");
+    ostr.println ("    out.writeInt(FLAGS);");
+    ostr.println ("    out.writeInt(stringCount);");
+    ostr.println ("    out.writeInt(tokenCount);");
+    ostr.println ("    out.writeInt(count);");
+    ostr.println ("    out.writeInt(tokenStart);");
+    ostr.println ("    out.writeInt(nodes);");
+    if (bTokens)
+    {
+      ostr.println ("    int offset = HEADER_SIZE + stringCount * 4;");
+      ostr.println ("    for (final byte[] s : strings) {");
+      ostr.println ("      out.writeInt(offset);");
+      ostr.println ("      offset += varintSize(s.length) + s.length;");
+      ostr.println ("    }");
+      ostr.println ("    for (final byte[] s : strings) {");
+      ostr.println ("      writeVarint(out, s.length);");
+      ostr.println ("      out.write(s);");
+      ostr.println ("    }");
+      ostr.println ("    for (final int o : tokenOffsets) {");
+      ostr.println ("      out.writeInt(o);");
+      ostr.println ("    }");
+      ostr.println ("    records.writeTo(out);");
+    }
+    ostr.println ("    for (int i = 0; i < count; i++) {");
+    ostr.println ("      final int num = order[i].jjtGetNumChildren();");
+    ostr.println ("      writeVarint(out, order[i].getId() << 1 | (next[i] ? 1 : 0));");
+    ostr.println ("      writeVarint(out, num);");
+    ostr.println ("      if (num > 0) {");
+    ostr.println ("        writeVarint(out, childBytes[i]);");
+    ostr.println ("      }");
+    if (bTokens)
+    {
+      ostr.println ("      writeVarint(out, firsts[i]);");
+      ostr.println ("      writeVarint(out, lasts[i]);");
+    }
+    ostr.println ("    }");
+    ostr.println ("    out.flush();");
+    ostr.println ("  }");
+    ostr.println ();
+    if (bTokens)
+    {
+      ostr.println ("  /* Returns the index of t plus 1, or 0 for null, and numbers t and its");
+      ostr.println ("     image if they are new. */");
+      ostr.println ("  private static int tokenNumber(final Token t, final java.util.Map<Token, Integer> tokenIndex,");
+      ostr.println ("                                 final java.util.List<Token> tokens,");
+      ostr.println ("                                 final java.util.Map<String, Integer> stringIndex,");
+      ostr.println ("                                 final java.util.List<byte[]> strings) {");
+      ostr.println ("    if (t == null) {");
+      ostr.println ("      return 0;");
+      ostr.println ("    }");
+      ostr.println ("    final Integer index = tokenIndex.get(t);");
+      ostr.println ("    if (index != null) {");
+      ostr.println ("      return index.intValue() + 1;");
+      ostr.println ("    }");
+      ostr.println ("    final String image = t." + sImage + ";");
+      ostr.println ("    if (image != null && !stringIndex.containsKey(image)) {");
+      ostr.println ("      stringIndex.put(image, Integer.valueOf(strings.size()));");
+      ostr.println ("      final java.nio.ByteBuffer b = UTF8.encode(image);");
+      ostr.println ("      final byte[] bytes = new byte[b.remaining()];");
+      ostr.println ("      b.get(bytes);");
+      ostr.println ("      strings.add(bytes);");
+      ostr.println ("    }");
+      ostr.println ("    tokenIndex.put(t, Integer.valueOf(tokens.size()));");
+      ostr.println ("    tokens.add(t);");
+      ostr.println ("    return tokens.size();");
+      ostr.println ("  }");
+      ostr.println ();
+    }
+    ostr.println ("  /* Returns the number of bytes node n takes, including its children. */");
+    ostr.println ("  private static int nodeSize(final Node n, final boolean next, final int childBytes" +
+                  (bTokens ? ", final int first, final int last" : "") +
+                  ") {");
+    ostr.println ("    final int num = n.jjtGetNumChildren();");
+    ostr.println ("    int size = varintSize(n.getId() << 1 | (next ? 1 : 0)) + varintSize(num);");
+    ostr.println ("    if (num > 0) {");
+    ostr.println ("      size += varintSize(childBytes) + childBytes;");
+    ostr.println ("    }");
+    if (bTokens)
+      ostr.println ("    size += varintSize(first) + varintSize(last);");
+    ostr.println ("    return size;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private static int varintSize(int v) {");
+    ostr.println ("    int size = 1;");
+    ostr.println ("    while ((v & ~0x7F) != 0) {");
+    ostr.println ("      v >>>= 7;");
+    ostr.println ("      size++;");
+    ostr.println ("    }");
+    ostr.println ("    return size;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private static void writeVarint(final java.io.OutputStream out, int v) throws java.io.IOException {");
+    ostr.println ("    while ((v & ~0x7F) != 0) {");
+    ostr.println ("      out.write((v & 0x7F) | 0x80);");
+    ostr.println ("      v >>>= 7;");
+    ostr.println ("    }");
+    ostr.println ("    out.write(v);");
+    ostr.println ("  }");
+    ostr.println ();
+
+    // Reading
+    ostr.println ("  /* Maps the file into memory.  The mapping stays valid after the file");
+    ostr.println ("     is closed. */");
+    ostr.println ("  public static " + sView + " map(final java.io.File file) throws java.io.IOException {");
+    ostr.println ("    final java.io.RandomAccessFile f = new java.io.RandomAccessFile(file, \"r\");");
+    ostr.println ("    try {");
+    ostr.println ("      return new " + sView + "(f.getChannel().map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, f.length()));");
+    ostr.println ("    } finally {");
+    ostr.println ("      f.close();");
+    ostr.println ("    }");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public static Node read(final java.io.File file) throws java.io.IOException {");
+    ostr.println ("    return read(map(file));");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Creates the nodes of the tree in the view.  The children of a node");
+    ostr.println ("     are kept on a stack until the last one is read and are then added");
+    ostr.println ("     last-first, as the parser does. */");
+    ostr.println ("  public static Node read(final " + sView + " view) {");
+    if (bTokens)
+    {
+      ostr.println ("    final String[] strings = new String[view.getStringCount()];");
+      ostr.println ("    for (int i = 0; i < strings.length; i++) {");
+      ostr.println ("      strings[i] = view.getString(i);");
+      ostr.println ("    }");
+      ostr.println ("    final Token[] tokens = new Token[view.getTokenCount()];");
+      ostr.println ("    for (int i = 0; i < tokens.length; i++) {");
+      ostr.println ("      tokens[i] = view.newToken(i, strings);");
+      ostr.println ("    }");
+    }
+    ostr.println ("    Node[] values = new Node[32];");
+    ostr.println ("    int vp = 0;");
+    ostr.println ("    Node[] open = new Node[32];");
+    ostr.println ("    int[] counts = new int[32];");
+    ostr.println ("    int[] remaining = new int[32];");
+    ostr.println ("    int op = 0;");
+    ostr.println ("    int pos = view.root();");
+    ostr.println ("    for (int i = view.size(); i > 0; i--) {");
+    ostr.println ("      final int id = view.varint(pos) >>> 1;");
+    ostr.println ("      pos = view.skip(pos);");
+    ostr.println ("      final int num = view.varint(pos);");
+    ostr.println ("      pos = view.skip(pos);");
+    ostr.println ("      if (num > 0) {");
+    ostr.println ("        pos = view.skip(pos);");
+    ostr.println ("      }");
+    ostr.println ("      Node n = newNode(id);");
+    ostr.println ("      n.jjtOpen();");
+    if (bTokens)
+    {
+      ostr.println ("      final int first = view.varint(pos);");
+      ostr.println ("      pos = view.skip(pos);");
+      ostr.println ("      final int last = view.varint(pos);");
+      ostr.println ("      pos = view.skip(pos);");
+      ostr.println ("      ((" + sTokenNode + ") n).jjtSetFirstToken(first == 0 ? null : tokens[first - 1]);");
+      ostr.println ("      ((" + sTokenNode + ") n).jjtSetLastToken(last == 0 ? null : tokens[last - 1]);");
+    }
+    ostr.println ("      if (num > 0) {");
+    ostr.println ("        if (op == open.length) {");
+    ostr.println ("          open = java.util.Arrays.copyOf(open, op * 2);");
+    ostr.println ("          counts = java.util.Arrays.copyOf(counts, op * 2);");
+    ostr.println ("          remaining = java.util.Arrays.copyOf(remaining, op * 2);");
+    ostr.println ("        }");
+    ostr.println ("        open[op] = n;");
+    ostr.println ("        counts[op] = num;");
+    ostr.println ("        remaining[op++] = num;");
+    ostr.println ("        continue;");
+    ostr.println ("      }");
+    ostr.println ("      /* n is complete, and so is every open node whose last child it is */");
+    ostr.println ("      while (true) {");
+    ostr.println ("        n.jjtClose();");
+    ostr.println ("        if (vp == values.length) {");
+    ostr.println ("          values = java.util.Arrays.copyOf(values, vp * 2);");
+    ostr.println ("        }");
+    ostr.println ("        values[vp++] = n;");
+    ostr.println ("        if (op == 0 || --remaining[op - 1] > 0) {");
+    ostr.println ("          break;");
+    ostr.println ("        }");
+    ostr.println ("        n = open[--op];");
+    ostr.println ("        open[op] = null;");
+    ostr.println ("        final int c = counts[op];");
+    ostr.println ("        vp -= c;");
+    ostr.println ("        for (int j = c - 1; j >= 0; j--) {");
+    ostr.println ("          final Node child = values[vp + j];");
+    ostr.println ("          values[vp + j] = null;");
+    ostr.println ("          child.jjtSetParent(n);");
+    ostr.println ("          n.jjtAddChild(child, j);");
+    ostr.println ("        }");
+    ostr.println ("      }");
+    ostr.println ("    }");
+    ostr.println ("    return vp == 0 ? null : values[0];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private static Node newNode(final int id) {");
+    if (JJTreeOptions.isMulti ())
+    {
+      final List <String> nodeIds = ASTNodeDescriptor.getNodeIds ();
+      final List <String> nodeNames = ASTNodeDescriptor.getNodeNames ();
+      ostr.println ("    switch (id) {");
+      for (int i = 0; i < nodeNames.size (); ++i)
+      {
+        final String n = nodeNames.get (i);
+        if (n.equals ("void"))
+          continue;
+        final String sId = NodeFilesJava.nodeConstants () + "." + nodeIds.get (i);
+        ostr.println ("      case " + sId + ":");
+        ostr.println ("        return " + _newNode (JJTreeOptions.getNodePrefix () + n, sId) + ";");
+      }
+      ostr.println ("      default:");
+      ostr.println ("        throw new IllegalStateException(\"Unknown node id \" + id);");
+      ostr.println ("    }");
+    }
+    else
+    {
+      final String sNodeClass = JJTreeOptions.getNodeClass ().length () > 0 ? JJTreeOptions.getNodeClass ()
+                                                                             : "SimpleNode";
+      ostr.println ("    return " + _newNode (sNodeClass, "id") + ";");
+    }
+    ostr.println ("  }");
+    ostr.println ();
+
+    // View
+    ostr.println ("  /* A read-only view of a tree file.  A node is the offset of its");
+    ostr.println ("     record in the buffer, -1 stands for no node.  Nothing is decoded");
+    ostr.println ("     up front and the view does not change the position of the");
+    ostr.println ("     buffer, so it can be shared between threads. */");
+    ostr.println ("  public static final class " + sView + " {");
+    ostr.println ("    private final java.nio.ByteBuffer buf;");
+    if (bTokens)
+    {
+      ostr.println ("    private final int stringCount;");
+      ostr.println ("    private final int tokenCount;");
+      ostr.println ("    /* offset of the token offsets */");
+      ostr.println ("    private final int tokens;");
+    }
+    ostr.println ("    private final int size;");
+    ostr.println ("    /* offset of the first node */");
+    ostr.println ("    private final int nodes;");
+    ostr.println ();
+    ostr.println ("    public " + sView + "(final java.nio.ByteBuffer buf) throws java.io.IOException {");
+    ostr.println ("      this.buf = buf;");
+    ostr.println ("      if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC) {");
+    ostr.println ("        throw new java.io.IOException(\"Not a tree file\");");
+    ostr.println ("      }");
+    ostr.println ("      if (buf.getInt(4) != VERSION || buf.getInt(8) != FLAGS) {");
+    ostr.println ("        throw new java.io.IOException(\"Tree file version \" + buf.getInt(4) + \" with flags \" + buf.getInt(8) +");
+    ostr.println ("                                      \" is not supported\");");
+    ostr.println ("      }");
+    if (bTokens)
+    {
+      ostr.println ("      stringCount = buf.getInt(12);");
+      ostr.println ("      tokenCount = buf.getInt(16);");
+      ostr.println ("      tokens = buf.getInt(24);");
+    }
+    ostr.println ("      size = buf.getInt(20);");
+    ostr.println ("      nodes = buf.getInt(28);");
+    ostr.println ("    }");
+    ostr.println ();
+    ostr.println ("    /* Returns the number of nodes. */");
+    ostr.println ("    public int size() {");
+    ostr.println ("      return size;");
+    ostr.println ("    }");
+    ostr.println ();
+    ostr.println ("    public int root() {");
+    ostr.println ("      return size == 0 ? -1 : nodes;");
+    ostr.println ("    }");
+    ostr.println ();
+    ostr.println ("    public int getId(final int node) {");
+    ostr.println ("      return varint(node) >>> 1;");
+    ostr.println ("    }");
+    ostr.println ();
+    ostr.println ("    public String getName(final int node) {");
+    ostr.println ("      return " + NodeFilesJava.nodeConstants () + ".jjtNodeName[getId(node)];");
+    ostr.println ("    }");
+    ostr.println ();
+    ostr.println ("    public int getNumChildren(final int node) {");
+    ostr.println ("      return varint(skip(node));");
+    ostr.println ("    }");
+    ostr.println ();
+    ostr.println ("    public int getFirstChild(final int node) {");
+    ostr.println ("      final int p = skip(node);");
+    ostr.println ("      if (varint(p) == 0) {");
+    ostr.println ("        return -1;");
+    ostr.println ("      }");
+    ostr.println ("      return " + (bTokens ? "skip(skip(skip(skip(p))))" : "skip(skip(p))") + ";");
+    ostr.println ("    }");
+    ostr.println ();
+    ostr.println ("    public int getNextSibling(final int node) {");
+    ostr.println ("      if ((buf.get(node) & 1) == 0) {");
+    ostr.println ("        return -1;");
+    ostr.println ("      }");
+    ostr.println ("      int p = skip(node);");
+    ostr.println ("      final int num = varint(p);");
+    ostr.println ("      p = skip(p);");
+    ostr.println ("      int childBytes = 0;");
+    ostr.println ("      if (num > 0) {");
+    ostr.println ("        childBytes = varint(p);");
+    ostr.println ("        p = skip(p);");
+    ostr.println ("      }");
+    if (bTokens)
+      ostr.println ("      p = skip(skip(p));");
+    ostr.println ("      return p + childBytes;");
+    ostr.println ("    }");
+    ostr.println ();
+    ostr.println ("    public int getChild(final int node, final int i) {");
+    ostr.println ("      int c = getFirstChild(node);");
+    ostr.println ("      for (int j = 0; j < i; j++) {");
+    ostr.println ("        c = getNextSibling(c);");
+    ostr.println ("      }");
+    ostr.println ("      return c;");
+    ostr.println ("    }");
+    ostr.println ();
+    if (bTokens)
+    {
+      ostr.println ("    /* Returns the index of the first token of the node, or -1. */");
+      ostr.println ("    public int getFirstToken(final int node) {");
+      ostr.println ("      return varint(tokens(node)) - 1;");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    /* Returns the index of the last token of the node, or -1. */");
+      ostr.println ("    public int getLastToken(final int node) {");
+      ostr.println ("      return varint(skip(tokens(node))) - 1;");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    private int tokens(final int node) {");
+      ostr.println ("      final int p = skip(node);");
+      ostr.println ("      return varint(p) == 0 ? skip(p) : skip(skip(p));");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    public int getTokenCount() {");
+      ostr.println ("      return tokenCount;");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    private int token(final int token) {");
+      ostr.println ("      return buf.getInt(tokens + token * 4);");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    public int getTokenKind(final int token) {");
+      ostr.println ("      return varint(token(token));");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    public String getTokenImage(final int token) {");
+      ostr.println ("      final int s = varint(skip(token(token)));");
+      ostr.println ("      return s == 0 ? null : getString(s - 1);");
+      ostr.println ("    }");
+      if (bLineColumn)
+      {
+        ostr.println ();
+        ostr.println ("    public int getTokenBeginLine(final int token) {");
+        ostr.println ("      return varint(skip(skip(token(token))));");
+        ostr.println ("    }");
+        ostr.println ();
+        ostr.println ("    public int getTokenBeginColumn(final int token) {");
+        ostr.println ("      return varint(skip(skip(skip(token(token)))));");
+        ostr.println ("    }");
+        ostr.println ();
+        ostr.println ("    public int getTokenEndLine(final int token) {");
+        ostr.println ("      final int p = skip(skip(token(token)));");
+        ostr.println ("      return varint(p) + varint(skip(skip(p)));");
+        ostr.println ("    }");
+        ostr.println ();
+        ostr.println ("    public int getTokenEndColumn(final int token) {");
+        ostr.println ("      return varint(skip(skip(skip(skip(skip(token(token)))))));");
+        ostr.println ("    }");
+      }
+      ostr.println ();
+      ostr.println ("    /* Creates a token object for the token with the given index. */");
+      ostr.println ("    public Token newToken(final int token) {");
+      ostr.println ("      return newToken(token, null);");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    /* Takes the image from strings if it is not null */");
+      ostr.println ("    private Token newToken(final int token, final String[] strings) {");
+      ostr.println ("      int p = token(token);");
+      ostr.println ("      final int kind = varint(p);");
+      ostr.println ("      p = skip(p);");
+      ostr.println ("      final int s = varint(p);");
+      ostr.println ("      final String image = s == 0 ? null : strings != null ? strings[s - 1] : getString(s - 1);");
+      ostr.println ("      final Token t = Token.newToken(kind, image);");
+      if (bLineColumn)
+      {
+        ostr.println ("      p = skip(p);");
+        ostr.println ("      t.beginLine = varint(p);");
+        ostr.println ("      p = skip(p);");
+        ostr.println ("      t.beginColumn = varint(p);");
+        ostr.println ("      p = skip(p);");
+        ostr.println ("      t.endLine = t.beginLine + varint(p);");
+        ostr.println ("      t.endColumn = varint(skip(p));");
+      }
+      ostr.println ("      return t;");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    public int getStringCount() {");
+      ostr.println ("      return stringCount;");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    public String getString(final int i) {");
+      ostr.println ("      final int offset = buf.getInt(HEADER_SIZE + i * 4);");
+      ostr.println ("      final int p = skip(offset);");
+      ostr.println ("      final byte[] b = new byte[varint(offset)];");
+      ostr.println ("      for (int j = 0; j < b.length; j++) {");
+      ostr.println ("        b[j] = buf.get(p + j);");
+      ostr.println ("      }");
+      ostr.println ("      return new String(b, UTF8);");
+      ostr.println ("    }");
+    }
+    ostr.println ();
+    ostr.println ("    /* Decodes the varint at pos */");
+    ostr.println ("    private int varint(int pos) {");
+    ostr.println ("      byte b = buf.get(pos++);");
+    ostr.println ("      int v = b & 0x7F;");
+    ostr.println ("      for (int shift = 7; b < 0; shift += 7) {");
+    ostr.println ("        b = buf.get(pos++);");
+    ostr.println ("        v |= (b & 0x7F) << shift;");
+    ostr.println ("      }");
+    ostr.println ("      return v;");
+    ostr.println ("    }");
+    ostr.println ();
+    ostr.println ("    /* Returns the position after the varint at pos */");
+    ostr.println ("    private int skip(int pos) {");
+    ostr.println ("      while (buf.get(pos++) < 0) {");
+    ostr.println ("      }");
+    ostr.println ("      return pos;");
+    ostr.println ("    }");
+    ostr.println ("  }");
+    ostr.println ("}");
+  }
+}
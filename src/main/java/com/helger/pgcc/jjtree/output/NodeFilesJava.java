@@ -392,6 +392,186 @@ public final class NodeFilesJava
     }
   }
 
+  static String walkerClass ()
+  {
+    return JJTreeGlobals.s_parserName + "Walker";
+  }
+
+  public static void generateWalker_java ()
+  {
+    if (!JJTreeOptions.isVisitor ())
+    {
+      return;
+    }
+
+    final String className = walkerClass ();
+    final File file = new File (JJTreeOptions.getJJTreeOutputDirectory (), className + ".java");
+
+    try (final OutputFile outputFile = new OutputFile (file); final PrintWriter ostr = outputFile.getPrintWriter ())
+    {
+      final List <String> nodeIds = ASTNodeDescriptor.getNodeIds ();
+      final List <String> nodeNames = ASTNodeDescriptor.getNodeNames ();
+      final boolean bArena = JJTreeOptions.isNodeStorageArena ();
+      final String ve = _mergeVisitorException ();
+      // Type of the nodes passed to the callbacks
+      final String nodeArg = bArena ? "int" : "Node";
+
+      generatePrologue (ostr);
+      ostr.println ("/* Walks a tree without recursion.  enter is called for a node before");
+      ostr.println ("   its children and leave after them.  Both calls are dispatched with a");
+      ostr.println ("   switch on the node id to the methods for the node, which by default");
+      ostr.println ("   call defaultEnter and defaultLeave.  If enter returns false the");
+      ostr.println ("   children of the node are skipped. */");
+      ostr.println ("public class " + className + " {");
+      if (bArena)
+      {
+        ostr.println ("  /* The arena of the tree being walked */");
+        ostr.println ("  protected " + JJTreeArenaJava.nameArena () + " arena;");
+        ostr.println ();
+        ostr.println ("  public final void walk(final " +
+                      JJTreeArenaJava.nameArena () +
+                      " tree, final int root)" +
+                      ve +
+                      " {");
+        ostr.println ("    arena = tree;");
+        ostr.println ("    int node = root;");
+        ostr.println ("    while (true) {");
+        ostr.println ("      if (enter(node) && arena.getFirstChild(node) >= 0) {");
+        ostr.println ("        node = arena.getFirstChild(node);");
+        ostr.println ("        continue;");
+        ostr.println ("      }");
+        ostr.println ("      /* Leave the node and its parents up to the first with a next sibling */");
+        ostr.println ("      while (true) {");
+        ostr.println ("        leave(node);");
+        ostr.println ("        if (node == root) {");
+        ostr.println ("          return;");
+        ostr.println ("        }");
+        ostr.println ("        final int next = arena.getNextSibling(node);");
+        ostr.println ("        if (next >= 0) {");
+        ostr.println ("          node = next;");
+        ostr.println ("          break;");
+        ostr.println ("        }");
+        ostr.println ("        node = arena.getParent(node);");
+        ostr.println ("      }");
+        ostr.println ("    }");
+        ostr.println ("  }");
+      }
+      else
+      {
+        ostr.println ("  public final void walk(final Node root)" + ve + " {");
+        ostr.println ("    if (!enter(root)) {");
+        ostr.println ("      leave(root);");
+        ostr.println ("      return;");
+        ostr.println ("    }");
+        ostr.println ("    /* The nodes on the path to the current node and the index of the");
+        ostr.println ("       next child to visit of each */");
+        ostr.println ("    Node[] nodes = new Node[64];");
+        ostr.println ("    int[] next = new int[64];");
+        ostr.println ("    nodes[0] = root;");
+        ostr.println ("    int sp = 1;");
+        ostr.println ("    while (sp > 0) {");
+        ostr.println ("      final Node node = nodes[sp - 1];");
+        ostr.println ("      final int i = next[sp - 1];");
+        ostr.println ("      if (i < node.jjtGetNumChildren()) {");
+        ostr.println ("        next[sp - 1] = i + 1;");
+        ostr.println ("        final Node child = node.jjtGetChild(i);");
+        ostr.println ("        if (enter(child)) {");
+        ostr.println ("          if (sp == nodes.length) {");
+        ostr.println ("            final Node[] n = new Node[sp * 2];");
+        ostr.println ("            System.arraycopy(nodes, 0, n, 0, sp);");
+        ostr.println ("            nodes = n;");
+        ostr.println ("            final int[] x = new int[sp * 2];");
+        ostr.println ("            System.arraycopy(next, 0, x, 0, sp);");
+        ostr.println ("            next = x;");
+        ostr.println ("          }");
+        ostr.println ("          nodes[sp] = child;");
+        ostr.println ("          next[sp++] = 0;");
+        ostr.println ("        } else {");
+        ostr.println ("          leave(child);");
+        ostr.println ("        }");
+        ostr.println ("      } else {");
+        ostr.println ("        nodes[--sp] = null;");
+        ostr.println ("        leave(node);");
+        ostr.println ("      }");
+        ostr.println ("    }");
+        ostr.println ("  }");
+      }
+
+      for (final boolean bEnter : new boolean [] { true, false })
+      {
+        final String sWhat = bEnter ? "enter" : "leave";
+        final String sRet = bEnter ? "return " : "";
+        ostr.println ();
+        ostr.println ("  private " + (bEnter ? "boolean " : "void ") + sWhat + "(final " + nodeArg + " node)" + ve + " {");
+        ostr.println ("    switch (" + (bArena ? "arena.getId(node)" : "node.getId()") + ") {");
+        for (int i = 0; i < nodeNames.size (); ++i)
+        {
+          final String n = nodeNames.get (i);
+          if (n.equals ("void"))
+          {
+            continue;
+          }
+          final String sArg = bArena ? "node" : "(" + _walkerNodeType (n) + ") node";
+          ostr.println ("      case " + nodeConstants () + "." + nodeIds.get (i) + ":");
+          ostr.println ("        " + sRet + sWhat + _walkerMethodSuffix (n) + "(" + sArg + ");");
+          if (!bEnter)
+            ostr.println ("        break;");
+        }
+        ostr.println ("      default:");
+        ostr.println ("        " + sRet + "default" + (bEnter ? "Enter" : "Leave") + "(node);");
+        ostr.println ("    }");
+        ostr.println ("  }");
+      }
+
+      ostr.println ();
+      ostr.println ("  protected boolean defaultEnter(final " + nodeArg + " node)" + ve + " {");
+      ostr.println ("    return true;");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  protected void defaultLeave(final " + nodeArg + " node)" + ve + " {");
+      ostr.println ("  }");
+
+      for (int i = 0; i < nodeNames.size (); ++i)
+      {
+        final String n = nodeNames.get (i);
+        if (n.equals ("void"))
+        {
+          continue;
+        }
+        final String sType = bArena ? "int" : _walkerNodeType (n);
+        final String sSuffix = _walkerMethodSuffix (n);
+        ostr.println ();
+        ostr.println ("  protected boolean enter" + sSuffix + "(final " + sType + " node)" + ve + " {");
+        ostr.println ("    return defaultEnter(node);");
+        ostr.println ("  }");
+        ostr.println ();
+        ostr.println ("  protected void leave" + sSuffix + "(final " + sType + " node)" + ve + " {");
+        ostr.println ("    defaultLeave(node);");
+        ostr.println ("  }");
+      }
+      ostr.println ("}");
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  private static String _walkerNodeType (final String nodeName)
+  {
+    // Same node class as the parser creates
+    if (JJTreeOptions.isMulti ())
+      return JJTreeOptions.getNodePrefix () + nodeName;
+    if (JJTreeOptions.getNodeClass ().length () > 0)
+      return JJTreeOptions.getNodeClass ();
+    return "SimpleNode";
+  }
+
+  private static String _walkerMethodSuffix (final String nodeName)
+  {
+    return Character.toUpperCase (nodeName.charAt (0)) + nodeName.substring (1);
+  }
+
   private static String _mergeVisitorException ()
   {
     String ve = JJTreeOptions.getVisitorException ();
@@ -155,7 +155,9 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "AbstractCharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -184,7 +186,9 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "JavaCharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -213,7 +217,9 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "SimpleCharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -236,6 +242,93 @@ public class FilesJava
     }
   }
 
+  public static void gen_CharSequenceCharStream (final IJavaResourceTemplateLocations locations)
+  {
+    final File file = new File (Options.getOutputDirectory (), "CharSequenceCharStream.java");
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       charStreamVersion,
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__KEEP_LINE_COLUMN }))
+    {
+      if (!outputFile.needToWrite ())
+        return;
+
+      try (final PrintWriter ostr = outputFile.getPrintWriter ())
+      {
+        _writePackageName (ostr);
+
+        final Map <String, Object> options = _getDefaultOptions ();
+        final OutputFileGenerator generator = new OutputFileGenerator (locations.getCharSequenceCharStreamTemplateResourceUrl (),
+                                                                       options);
+
+        generator.generate (ostr);
+      }
+    }
+    catch (final IOException e)
+    {
+      JavaCCErrors.semantic_error ("Could not open file CharSequenceCharStream.java for writing.", e);
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  public static void gen_Utf8ByteCharStream (final IJavaResourceTemplateLocations locations)
+  {
+    final File file = new File (Options.getOutputDirectory (), "Utf8ByteCharStream.java");
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       charStreamVersion,
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__KEEP_LINE_COLUMN }))
+    {
+      if (!outputFile.needToWrite ())
+        return;
+
+      try (final PrintWriter ostr = outputFile.getPrintWriter ())
+      {
+        _writePackageName (ostr);
+
+        final Map <String, Object> options = _getDefaultOptions ();
+        final OutputFileGenerator generator = new OutputFileGenerator (locations.getUtf8ByteCharStreamTemplateResourceUrl (),
+                                                                       options);
+
+        generator.generate (ostr);
+      }
+    }
+    catch (final IOException e)
+    {
+      JavaCCErrors.semantic_error ("Could not open file Utf8ByteCharStream.java for writing.", e);
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  public static void gen_MappedFileCharStream (final IJavaResourceTemplateLocations locations)
+  {
+    final File file = new File (Options.getOutputDirectory (), "MappedFileCharStream.java");
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       charStreamVersion,
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__JAVA_UNICODE_ESCAPE }))
+    {
+      if (!outputFile.needToWrite ())
+        return;
+
+      try (final PrintWriter ostr = outputFile.getPrintWriter ())
+      {
+        _writePackageName (ostr);
+
+        final Map <String, Object> options = _getDefaultOptions ();
+        final OutputFileGenerator generator = new OutputFileGenerator (locations.getMappedFileCharStreamTemplateResourceUrl (),
+                                                                       options);
+
+        generator.generate (ostr);
+      }
+    }
+    catch (final IOException e)
+    {
+      JavaCCErrors.semantic_error ("Could not open file MappedFileCharStream.java for writing.", e);
+      throw new UncheckedIOException (e);
+    }
+  }
+
   public static void gen_JavaModernFiles ()
   {
     // Abstraction for char reader
@@ -249,7 +342,8 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), fileName);
     try (final OutputFile outputFile = new OutputFile (file,
                                                        parseExceptionVersion,
-                                                       new String [] { Options.USEROPTION__KEEP_LINE_COLUMN }))
+                                                       new String [] { Options.USEROPTION__KEEP_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_EXCEPTIONS }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -276,7 +370,8 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "ParseException.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        parseExceptionVersion,
-                                                       new String [] { Options.USEROPTION__KEEP_LINE_COLUMN }))
+                                                       new String [] { Options.USEROPTION__KEEP_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_EXCEPTIONS }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -304,7 +399,9 @@ public class FilesJava
     final String filename = Options.getTokenMgrErrorClass () + ".java";
     final File file = new File (Options.getOutputDirectory (), filename);
 
-    try (final OutputFile outputFile = new OutputFile (file, tokenMgrErrorVersion, new String [0]))
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       tokenMgrErrorVersion,
+                                                       new String [] { Options.USEROPTION__LAZY_EXCEPTIONS }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -334,6 +431,7 @@ public class FilesJava
                                                        tokenVersion,
                                                        new String [] { Options.USEROPTION__TOKEN_EXTENDS,
                                                                        Options.USEROPTION__KEEP_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
                                                                        Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
     {
       if (!outputFile.needToWrite ())
@@ -49,5 +49,11 @@ public interface IJavaResourceTemplateLocations
 
   String getSimpleCharStreamTemplateResourceUrl ();
 
+  String getCharSequenceCharStreamTemplateResourceUrl ();
+
+  String getUtf8ByteCharStreamTemplateResourceUrl ();
+
+  String getMappedFileCharStreamTemplateResourceUrl ();
+
   String getParseExceptionTemplateResourceUrl ();
 }
@@ -70,6 +70,21 @@ public class JavaResourceTemplateLocationImpl implements IJavaResourceTemplateLo
     return "/templates/stream/java/SimpleCharStream.template";
   }
 
+  public String getCharSequenceCharStreamTemplateResourceUrl ()
+  {
+    return "/templates/stream/java/CharSequenceCharStream.template";
+  }
+
+  public String getUtf8ByteCharStreamTemplateResourceUrl ()
+  {
+    return "/templates/stream/java/Utf8ByteCharStream.template";
+  }
+
+  public String getMappedFileCharStreamTemplateResourceUrl ()
+  {
+    return "/templates/stream/java/MappedFileCharStream.template";
+  }
+
   public String getParseExceptionTemplateResourceUrl ()
   {
     return "/templates/ParseException.template";
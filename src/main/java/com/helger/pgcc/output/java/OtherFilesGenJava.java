@@ -139,13 +139,23 @@ public class OtherFilesGenJava
       {
         FilesJava.gen_CharStream (templateLoc);
 
-        if (!Options.isJavaUserCharStream ())
+        if (Options.isJavaUserCharStream ())
+        {
+          // Ready to use CharStreams for input that is already in memory
+          FilesJava.gen_CharSequenceCharStream (templateLoc);
+          FilesJava.gen_Utf8ByteCharStream (templateLoc);
+        }
+        else
         {
           FilesJava.gen_AbstractCharStream (templateLoc);
           if (Options.isJavaUnicodeEscape ())
             FilesJava.gen_JavaCharStream (templateLoc);
           else
             FilesJava.gen_SimpleCharStream (templateLoc);
+          if (Options.isMappedFileCharStream ())
+            FilesJava.gen_MappedFileCharStream (templateLoc);
+          if (Options.isUtf8ByteCharStream ())
+            FilesJava.gen_Utf8ByteCharStream (templateLoc);
         }
       }
 
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Partition of the input alphabet into character equivalence classes: two
+ * characters belong to the same class if every one of a list of character sets
+ * either contains both or none of them. Class <code>0</code> is reserved for
+ * the characters that are contained in none of the sets.
+ */
+final class CharClassMap
+{
+  private final char [] m_charClass;
+  private final int m_classCount;
+  private final int [] [] m_setClasses;
+
+  private CharClassMap (final char [] charClass, final int classCount, final int [] [] setClasses)
+  {
+    m_charClass = charClass;
+    m_classCount = classCount;
+    m_setClasses = setClasses;
+  }
+
+  /**
+   * @param c
+   *        Input character
+   * @return The class of the passed character.
+   */
+  int getCharClass (final char c)
+  {
+    return m_charClass[c];
+  }
+
+  /**
+   * @return The number of classes including the empty class 0.
+   */
+  int getClassCount ()
+  {
+    return m_classCount;
+  }
+
+  /**
+   * @param setIndex
+   *        Index of the character set as passed to {@link #build(List)}.
+   * @return The ascending classes the characters of this set belong to.
+   */
+  int [] getClasses (final int setIndex)
+  {
+    return m_setClasses[setIndex];
+  }
+
+  /**
+   * @param charSets
+   *        The character sets to distinguish. Each array must be sorted
+   *        ascending.
+   * @return The partition of the alphabet.
+   */
+  @Nonnull
+  static CharClassMap build (@Nonnull final List <char []> charSets)
+  {
+    final int setCount = charSets.size ();
+
+    // Split the alphabet into elementary intervals at every range boundary
+    final boolean [] boundary = new boolean [Character.MAX_VALUE + 2];
+    boundary[0] = true;
+    for (final char [] chars : charSets)
+      for (int i = 0; i < chars.length; i++)
+      {
+        boundary[chars[i]] = true;
+        int j = i;
+        while (j + 1 < chars.length && chars[j + 1] == chars[j] + 1)
+          j++;
+        boundary[chars[j] + 1] = true;
+        i = j;
+      }
+    final int [] intervalOfChar = new int [Character.MAX_VALUE + 1];
+    int intervalCount = 0;
+    for (int c = 0; c <= Character.MAX_VALUE; c++)
+    {
+      if (boundary[c])
+        intervalCount++;
+      intervalOfChar[c] = intervalCount - 1;
+    }
+
+    // The signature of an interval is the set of sets containing it
+    final BitSet [] signature = new BitSet [intervalCount];
+    for (int i = 0; i < intervalCount; i++)
+      signature[i] = new BitSet ();
+    for (int set = 0; set < setCount; set++)
+      for (final char c : charSets.get (set))
+        signature[intervalOfChar[c]].set (set);
+
+    // Intervals with the same signature form one character class
+    final Map <BitSet, Integer> classBySignature = new HashMap <> ();
+    classBySignature.put (new BitSet (), Integer.valueOf (0));
+    final int [] classOfInterval = new int [intervalCount];
+    for (int i = 0; i < intervalCount; i++)
+    {
+      Integer cls = classBySignature.get (signature[i]);
+      if (cls == null)
+      {
+        cls = Integer.valueOf (classBySignature.size ());
+        classBySignature.put (signature[i], cls);
+      }
+      classOfInterval[i] = cls.intValue ();
+    }
+    final int classCount = classBySignature.size ();
+    final char [] charClass = new char [Character.MAX_VALUE + 1];
+    for (int c = 0; c <= Character.MAX_VALUE; c++)
+      charClass[c] = (char) classOfInterval[intervalOfChar[c]];
+
+    final BitSet [] classes = new BitSet [setCount];
+    for (int i = 0; i < setCount; i++)
+      classes[i] = new BitSet ();
+    for (int i = 0; i < intervalCount; i++)
+      for (int set = signature[i].nextSetBit (0); set >= 0; set = signature[i].nextSetBit (set + 1))
+        classes[set].set (classOfInterval[i]);
+    final int [] [] setClasses = new int [setCount] [];
+    for (int i = 0; i < setCount; i++)
+      setClasses[i] = classes[i].stream ().toArray ();
+
+    return new CharClassMap (charClass, classCount, setClasses);
+  }
+
+  /**
+   * Split the class map into blocks of 256 characters selected by the high
+   * byte. Identical blocks are shared, so sparse Unicode ranges cost only one
+   * index entry.
+   *
+   * @param blockIndex
+   *        Array of 256 entries that receives the start offset of the block
+   *        for each high byte.
+   * @return The concatenated distinct blocks.
+   */
+  @Nonnull
+  char [] buildBlocks (@Nonnull final char [] blockIndex)
+  {
+    final Map <String, Integer> blockOffsets = new HashMap <> ();
+    final StringBuilder blocks = new StringBuilder ();
+    for (int hi = 0; hi < 256; hi++)
+    {
+      final String block = new String (m_charClass, hi << 8, 256);
+      Integer offset = blockOffsets.get (block);
+      if (offset == null)
+      {
+        offset = Integer.valueOf (blocks.length ());
+        blockOffsets.put (block, offset);
+        blocks.append (block);
+      }
+      blockIndex[hi] = (char) offset.intValue ();
+    }
+    final char [] ret = new char [blocks.length ()];
+    blocks.getChars (0, ret.length, ret, 0);
+    return ret;
+  }
+}
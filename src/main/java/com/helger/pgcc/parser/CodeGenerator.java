@@ -142,6 +142,40 @@ public class CodeGenerator
     genCodeNewLine ();
   }
 
+  /**
+   * @return the length of the code generated so far into the current buffer,
+   *         e.g. to get the code generated after this point
+   */
+  public final int getOutputLength ()
+  {
+    return m_outputBuffer.length ();
+  }
+
+  /**
+   * @param nLength
+   *        a length returned by {@link #getOutputLength()}
+   * @return the code generated into the current buffer since then
+   */
+  public final String getOutputSince (final int nLength)
+  {
+    return m_outputBuffer.substring (nLength);
+  }
+
+  /**
+   * Remove the code generated since the given length, e.g. to generate it
+   * differently.
+   *
+   * @param nLength
+   *        a length returned by {@link #getOutputLength()}
+   * @return the removed code
+   */
+  public final String removeOutputSince (final int nLength)
+  {
+    final String ret = m_outputBuffer.substring (nLength);
+    m_outputBuffer.setLength (nLength);
+    return ret;
+  }
+
   public void saveOutput (final String fileName)
   {
     if (getOutputLanguage ().hasIncludeFile ())
@@ -477,7 +511,7 @@ public class CodeGenerator
 
   public static String getCharStreamName ()
   {
-    if (Options.isJavaUserCharStream ())
+    if (Options.isJavaUserCharStream () || Options.isUtf8ByteCharStream ())
     {
       // User interface name
       return "CharStream";
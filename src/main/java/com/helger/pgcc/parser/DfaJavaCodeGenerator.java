@@ -0,0 +1,110 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.Map;
+
+/**
+ * Token manager code generator that compiles the NFA and the string literals
+ * of every lexical state into one minimized DFA (see {@link LexicalDfa}). The
+ * generated token manager does a single table lookup per input character
+ * instead of simulating the set of active NFA states, and handles string
+ * literals and regular expressions in the same pass.<br>
+ * Select it with
+ * <code>TOKEN_MANAGER_CODE_GENERATOR="com.helger.pgcc.parser.DfaJavaCodeGenerator"</code>.
+ */
+public class DfaJavaCodeGenerator extends TableDrivenJavaCodeGenerator
+{
+  @Override
+  protected Map <String, Object> createTemplateOptions (final TokenizerData tokenizerData)
+  {
+    final Map <String, Object> options = super.createTemplateOptions (tokenizerData);
+    options.put ("MINIMIZED_DFA", Boolean.TRUE);
+    return options;
+  }
+
+  @Override
+  protected void dumpTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  {
+    final LexicalDfa dfa = LexicalDfa.build (tokenizerData);
+    if (dfa.getStateCount () > Character.MAX_VALUE)
+    {
+      JavaCCErrors.semantic_error ("The minimized lexical DFA has " +
+                                   dfa.getStateCount () +
+                                   " states which exceeds the supported maximum of " +
+                                   (int) Character.MAX_VALUE +
+                                   ".");
+      return;
+    }
+
+    final int classCount = dfa.getClassCount ();
+    final int stateCount = dfa.getStateCount ();
+    final char [] next = new char [stateCount * classCount];
+    final char [] kinds = new char [stateCount];
+    for (int s = 0; s < stateCount; s++)
+    {
+      for (int cls = 0; cls < classCount; cls++)
+        next[s * classCount + cls] = (char) dfa.getNext (s, cls);
+      // Kind 0 is EOF which is never matched by the DFA
+      final int kind = dfa.getKind (s);
+      kinds[s] = kind == LexicalDfa.NO_KIND ? 0 : (char) kind;
+    }
+
+    dumpCharClassMap (codeGenerator, dfa.getCharClassMap ());
+    dumpPackedTable (codeGenerator, "jjdfaNext", next);
+    dumpPackedTable (codeGenerator, "jjdfaKind", kinds);
+
+    if (Options.isPackedTables ())
+    {
+      final int [] starts = new int [tokenizerData.m_lexStateNames.length];
+      for (int l = 0; l < starts.length; l++)
+        starts[l] = dfa.getStartState (l);
+      PackedTableJava.genDecoders (codeGenerator, true, true, false);
+      codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] jjdfaStart", starts));
+    }
+    else
+    {
+      codeGenerator.genCode ("private static final int[] jjdfaStart = {");
+      for (int l = 0; l < tokenizerData.m_lexStateNames.length; l++)
+      {
+        if (l > 0)
+          codeGenerator.genCode (", ");
+        codeGenerator.genCode (Integer.toString (dfa.getStartState (l)));
+      }
+      codeGenerator.genCodeLine ("};");
+    }
+
+    dumpWildcardKinds (codeGenerator, tokenizerData);
+  }
+}
@@ -71,6 +71,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 
@@ -880,6 +882,7 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
       }
       params.append (")");
 
+      final int nMethodStart = codeGenerator.getOutputLength ();
       switch (eOutputLanguage)
       {
         case JAVA:
@@ -1133,6 +1136,7 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
 
       codeGenerator.genCodeLine ("   switch(curChar)");
       codeGenerator.genCodeLine ("   {");
+      final int nCasesStart = codeGenerator.getOutputLength () - nMethodStart;
 
       CaseLoop: for (int q = 0; q < keys.length; q++)
       {
@@ -1397,6 +1401,8 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
         }
       }
 
+      final int nCasesEnd = codeGenerator.getOutputLength () - nMethodStart;
+
       /*
        * default means that the current character is not in any of the strings
        * at this position.
@@ -1487,12 +1493,108 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
       }
 
       codeGenerator.genCodeLine ("}");
+      if (eOutputLanguage.isJava ())
+        _splitDfaMethod (codeGenerator,
+                         "jjMoveStringLiteralDfa" + i + LexGenJava.s_lexStateSuffix,
+                         params.toString (),
+                         i == 0,
+                         nMethodStart,
+                         nCasesStart,
+                         nCasesEnd);
     }
 
     if (!LexGenJava.s_mixed[LexGenJava.s_lexStateIndex] && NfaState.s_generatedStates != 0 && createStartNfa)
       dumpStartWithStates (codeGenerator);
   }
 
+  /**
+   * If a generated jjMoveStringLiteralDfa method is too large to be JIT
+   * compiled, move its cases to methods of their own. They return the position
+   * to return or -1 if the case breaks out of the switch. In the first method
+   * nothing follows the switch, so all its cases return.
+   */
+  private static void _splitDfaMethod (final CodeGenerator codeGenerator,
+                                       final String sMethodName,
+                                       final String sParams,
+                                       final boolean bCasesReturn,
+                                       final int nMethodStart,
+                                       final int nCasesStart,
+                                       final int nCasesEnd)
+  {
+    final String sMethod = codeGenerator.getOutputSince (nMethodStart);
+    final int nOldSize = MethodSplitterJava.estimateBytecodeSize (sMethod);
+    if (nOldSize <= MethodSplitterJava.HUGE_METHOD_LIMIT)
+      return;
+
+    // The old values of the active kinds are not used in the switch
+    final StringBuilder aParams = new StringBuilder ();
+    final StringBuilder aArgs = new StringBuilder ();
+    final Matcher m = Pattern.compile ("long (active\\d+)").matcher (sParams);
+    while (m.find ())
+    {
+      if (aArgs.length () > 0)
+      {
+        aParams.append (", ");
+        aArgs.append (", ");
+      }
+      aParams.append (m.group ());
+      aArgs.append (m.group (1));
+    }
+
+    final StringBuilder aSB = new StringBuilder (sMethod.substring (0, nCasesStart));
+    final List <String> aHelpers = new ArrayList <> ();
+    for (final MethodSplitterJava.CaseGroup aGroup : MethodSplitterJava.splitCases (sMethod.substring (nCasesStart,
+                                                                                                        nCasesEnd),
+                                                                                     "      "))
+    {
+      if (!aGroup.isClosed ())
+      {
+        // Falls through into the default case
+        aSB.append (aGroup.getCode ());
+        continue;
+      }
+
+      final String sHelperName = sMethodName + "_" + aHelpers.size ();
+      for (final String sLabel : aGroup.getLabels ())
+        aSB.append ("      ").append (sLabel).append ('\n');
+      if (bCasesReturn)
+        aSB.append ("         return ").append (sHelperName).append ('(').append (aArgs).append (");\n");
+      else
+      {
+        aSB.append ("      {\n");
+        aSB.append ("         final int pos = ").append (sHelperName).append ('(').append (aArgs).append (");\n");
+        aSB.append ("         if (pos >= 0)\n");
+        aSB.append ("            return pos;\n");
+        aSB.append ("         break;\n");
+        aSB.append ("      }\n");
+      }
+
+      final StringBuilder aHelper = new StringBuilder ();
+      aHelper.append ("private int ").append (sHelperName).append ('(').append (aParams).append (")\n");
+      aHelper.append ("{\n");
+      aHelper.append ("   switch(curChar)\n");
+      aHelper.append ("   {\n");
+      aHelper.append (aGroup.getCode ());
+      aHelper.append ("      default :\n");
+      aHelper.append ("         break;\n");
+      aHelper.append ("   }\n");
+      aHelper.append ("   return -1;\n");
+      aHelper.append ("}\n");
+      aHelpers.add (aHelper.toString ());
+    }
+    aSB.append (sMethod.substring (nCasesEnd));
+
+    codeGenerator.removeOutputSince (nMethodStart);
+    codeGenerator.genCode (aSB.toString ());
+    for (final String sHelper : aHelpers)
+      codeGenerator.genCode (sHelper);
+
+    MethodSplitterJava.reportSplit (sMethodName,
+                                    nOldSize,
+                                    MethodSplitterJava.estimateBytecodeSize (aSB.toString ()),
+                                    aHelpers.size ());
+  }
+
   static final int getStrKind (final String str)
   {
     for (int i = 0; i < s_maxStrKind; i++)
@@ -1862,6 +1964,10 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
     s_charCnt = 0;
     s_allImages = null;
     boilerPlateDumped = false;
+    literalsByLength.clear ();
+    literalKinds.clear ();
+    kindToLexicalState.clear ();
+    nfaStateMap.clear ();
   }
 
   @Override
@@ -207,13 +207,20 @@ public final class JavaCCGlobals
   public static final Map <String, Map <String, Map <String, AbstractExpRegularExpression>>> s_simple_tokens_table = new HashMap <> ();
 
   /**
-   * maskindex, jj2index, maskVals are variables that are shared between
-   * ParseEngine and ParseGen.
+   * maskindex, jj2index, memoindex, maskVals are variables that are shared
+   * between ParseEngine and ParseGen.
    */
   protected static int s_maskindex = 0;
   protected static int s_jj2index = 0;
+  protected static int s_memoindex = 0;
   public static boolean s_lookaheadNeeded;
   protected static final List <int []> s_maskVals = new ArrayList <> ();
+  /**
+   * The mask indices and the syntactic lookaheads of each choice, which are
+   * only looked at after the choice failed (LAZY_ERROR_REPORTING).
+   */
+  protected static final List <List <Integer>> s_failMaskIndices = new ArrayList <> ();
+  protected static final List <List <ExpLookahead>> s_failLookaheads = new ArrayList <> ();
 
   static ExpAction s_actForEof;
   static String s_nextStateForEof;
@@ -299,12 +306,12 @@ public final class JavaCCGlobals
 
     while (j < tmp.length () && (i = tmp.indexOf ('&', j)) != -1)
     {
-      retVal.add (tmp.substring (j, i));
+      retVal.add (tmp.substring (j, i).trim ());
       j = i + 1;
     }
 
     if (j < tmp.length ())
-      retVal.add (tmp.substring (j));
+      retVal.add (tmp.substring (j).trim ());
 
     return retVal;
   }
@@ -649,7 +656,10 @@ public final class JavaCCGlobals
     s_simple_tokens_table.clear ();
     s_maskindex = 0;
     s_jj2index = 0;
+    s_memoindex = 0;
     s_maskVals.clear ();
+    s_failMaskIndices.clear ();
+    s_failLookaheads.clear ();
     s_cline = 0;
     s_ccol = 0;
     s_actForEof = null;
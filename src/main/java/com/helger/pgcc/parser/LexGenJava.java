@@ -79,6 +79,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -100,6 +101,7 @@ public class LexGenJava extends CodeGenerator
   private static final String DUMP_STATIC_VAR_DECLARATIONS_TEMPLATE_RESOURCE_URL = "/templates/DumpStaticVarDeclarations.template";
   private static final String DUMP_DEBUG_METHODS_TEMPLATE_RESOURCE_URL = "/templates/DumpDebugMethods.template";
   private static final String BOILERPLATER_METHOD_RESOURCE_URL = "/templates/TokenManagerBoilerPlateMethods.template";
+  static final String INCREMENTAL_LEXING_TEMPLATE_RESOURCE_URL = "/templates/IncrementalLexing.template";
 
   public static String s_tokMgrClassName;
 
@@ -150,14 +152,13 @@ public class LexGenJava extends CodeGenerator
   public static TokenizerData s_tokenizerData;
   public static boolean s_generateDataOnly;
 
-  private void _printClassHead ()
+  /**
+   * Print the package and import declarations of the grammar file.
+   *
+   * @return <code>true</code> if at least one import was printed.
+   */
+  private boolean _printPackageAndImports ()
   {
-    final List <String> tn = new ArrayList <> (s_toolNames);
-    tn.add (CPG.APP_NAME);
-    // TODO :: CBA -- Require Unification of output language specific processing
-    // into a single Enum class
-    genCodeLine ("/* " + getIdString (tn, s_tokMgrClassName + getFileExtension ()) + " */");
-
     boolean bHasImport = false;
     int nIndex = 0;
     int i = 1;
@@ -204,6 +205,18 @@ public class LexGenJava extends CodeGenerator
       else
         break;
     }
+    return bHasImport;
+  }
+
+  private void _printClassHead ()
+  {
+    final List <String> tn = new ArrayList <> (s_toolNames);
+    tn.add (CPG.APP_NAME);
+    // TODO :: CBA -- Require Unification of output language specific processing
+    // into a single Enum class
+    genCodeLine ("/* " + getIdString (tn, s_tokMgrClassName + getFileExtension ()) + " */");
+
+    final boolean bHasImport = _printPackageAndImports ();
 
     genCodeNewLine ();
     genCodeLine ("/** Token Manager. */");
@@ -435,8 +448,17 @@ public class LexGenJava extends CodeGenerator
 
     s_tokMgrClassName = s_cu_name + "TokenManager";
 
-    if (!s_generateDataOnly && codeGeneratorClass == null)
-      _printClassHead ();
+    if (!s_generateDataOnly)
+    {
+      if (codeGeneratorClass == null)
+        _printClassHead ();
+      else
+      {
+        // The token manager code generator writes its own file
+        _printPackageAndImports ();
+        s_tokenizerData.setImports (getGeneratedCode ());
+      }
+    }
     _buildLexStatesTable ();
 
     boolean ignoring = false;
@@ -669,6 +691,7 @@ public class LexGenJava extends CodeGenerator
       }
       s_tokenizerData.setDefaultLexState (s_defaultLexState);
       s_tokenizerData.setLexStateNames (s_lexStateName);
+      s_tokenizerData.setMixedLexStates (s_mixed.clone ());
       s_tokenizerData.updateMatchInfo (actionStrings, newLexStateIndices, s_toSkip, s_toSpecial, s_toMore, s_toToken);
       if (!s_generateDataOnly)
       {
@@ -723,6 +746,8 @@ public class LexGenJava extends CodeGenerator
     _dumpTokenActions ();
 
     NfaState.printBoilerPlateJava (this);
+    if (Options.isPackedTables ())
+      PackedTableJava.genDecoders (this, true, true, false);
 
     final String charStreamName = CodeGenerator.getCharStreamName ();
 
@@ -739,6 +764,8 @@ public class LexGenJava extends CodeGenerator
                    Integer.toString (s_totalNumStates));
 
     _dumpStaticVarDeclarations (charStreamName);
+    if (Options.isIncrementalLexing ())
+      writeTemplate (INCREMENTAL_LEXING_TEMPLATE_RESOURCE_URL);
     genCodeLine (/* { */ "}");
 
     // TODO :: CBA -- Require Unification of output language specific processing
@@ -827,8 +854,6 @@ public class LexGenJava extends CodeGenerator
 
   private void _dumpStaticVarDeclarations (final String charStreamName) throws IOException
   {
-    final EOutputLanguage eOutputLanguage = getOutputLanguage ();
-
     genCodeNewLine ();
     genCodeLine ("/** Lexer state names. */");
     genCodeLine ("public static final String[] lexStateNames = {");
@@ -839,68 +864,37 @@ public class LexGenJava extends CodeGenerator
     {
       genCodeNewLine ();
       genCodeLine ("/** Lex State array. */");
-      genCode ("public static final int[] jjnewLexState = {");
-
-      for (int i = 0; i < s_maxOrdinal; i++)
+      if (Options.isPackedTables ())
       {
-        if (i % 25 == 0)
-          genCode ("\n   ");
-
-        if (s_newLexState[i] == null)
-          genCode ("-1, ");
-        else
-          genCode (_getIndex (s_newLexState[i]) + ", ");
+        final int [] aNewLexStates = new int [s_maxOrdinal];
+        for (int i = 0; i < s_maxOrdinal; i++)
+          aNewLexStates[i] = s_newLexState[i] == null ? -1 : _getIndex (s_newLexState[i]);
+        genCode (PackedTableJava.intTable ("public static final int[] jjnewLexState", aNewLexStates));
       }
-      genCodeLine ("\n};");
-    }
-
-    {
-      // Bit vector for TOKEN
-      genCode ("static final long[] jjtoToken = {");
-      for (int i = 0; i < s_maxOrdinal / 64 + 1; i++)
+      else
       {
-        if (i % 4 == 0)
-          genCode ("\n   ");
-        genCode (eOutputLanguage.getLongHex (s_toToken[i]) + ", ");
-      }
-      genCodeLine ("\n};");
-    }
+        genCode ("public static final int[] jjnewLexState = {");
 
-    {
-      // Bit vector for SKIP
-      genCode ("static final long[] jjtoSkip = {");
-      for (int i = 0; i < s_maxOrdinal / 64 + 1; i++)
-      {
-        if (i % 4 == 0)
-          genCode ("\n   ");
-        genCode (eOutputLanguage.getLongHex (s_toSkip[i]) + ", ");
-      }
-      genCodeLine ("\n};");
-    }
+        for (int i = 0; i < s_maxOrdinal; i++)
+        {
+          if (i % 25 == 0)
+            genCode ("\n   ");
 
-    {
-      // Bit vector for SPECIAL
-      genCode ("static final long[] jjtoSpecial = {");
-      for (int i = 0; i < s_maxOrdinal / 64 + 1; i++)
-      {
-        if (i % 4 == 0)
-          genCode ("\n   ");
-        genCode (eOutputLanguage.getLongHex (s_toSpecial[i]) + ", ");
+          if (s_newLexState[i] == null)
+            genCode ("-1, ");
+          else
+            genCode (_getIndex (s_newLexState[i]) + ", ");
+        }
+        genCodeLine ("\n};");
       }
-      genCodeLine ("\n};");
     }
 
-    {
-      // Bit vector for MORE
-      genCode ("static final long[] jjtoMore = {");
-      for (int i = 0; i < s_maxOrdinal / 64 + 1; i++)
-      {
-        if (i % 4 == 0)
-          genCode ("\n   ");
-        genCode (eOutputLanguage.getLongHex (s_toMore[i]) + ", ");
-      }
-      genCodeLine ("\n};");
-    }
+    // Bit vectors for TOKEN, SKIP, SPECIAL and MORE
+    final int nLongs = s_maxOrdinal / 64 + 1;
+    _dumpLongTable ("static final long[] jjtoToken", s_toToken, nLongs);
+    _dumpLongTable ("static final long[] jjtoSkip", s_toSkip, nLongs);
+    _dumpLongTable ("static final long[] jjtoSpecial", s_toSpecial, nLongs);
+    _dumpLongTable ("static final long[] jjtoMore", s_toMore, nLongs);
 
     writeTemplate (DUMP_STATIC_VAR_DECLARATIONS_TEMPLATE_RESOURCE_URL,
                    "charStreamName",
@@ -915,6 +909,24 @@ public class LexGenJava extends CodeGenerator
                    Integer.toString (s_lexStateName.length));
   }
 
+  private void _dumpLongTable (final String sDeclaration, final long [] aValues, final int nCount)
+  {
+    if (Options.isPackedTables ())
+    {
+      genCode (PackedTableJava.longTable (sDeclaration, Arrays.copyOf (aValues, nCount)));
+      return;
+    }
+
+    genCode (sDeclaration + " = {");
+    for (int i = 0; i < nCount; i++)
+    {
+      if (i % 4 == 0)
+        genCode ("\n   ");
+      genCode (getOutputLanguage ().getLongHex (aValues[i]) + ", ");
+    }
+    genCodeLine ("\n};");
+  }
+
   // Assumes l != 0L
   protected static char maxChar (final long l)
   {
@@ -929,6 +941,9 @@ public class LexGenJava extends CodeGenerator
   {
     final double tokenVersion = OutputHelper.getVersionDashStar ("Token.java");
     final boolean hasBinaryNewToken = tokenVersion > 4.09;
+    // The token refers to the image in the char stream buffer instead
+    final boolean bLazyImage = Options.isLazyTokenImage ();
+    final String sImage = bLazyImage ? "im" : "im == null ? input_stream.getImage() : im";
 
     genCodeLine ("protected Token jjFillToken()");
     genCodeLine ("{");
@@ -961,7 +976,7 @@ public class LexGenJava extends CodeGenerator
       genCodeLine ("   else");
       genCodeLine ("   {");
       genCodeLine ("      String im = jjstrLiteralImages[jjmatchedKind];");
-      genCodeLine ("      curTokenImage = im == null ? input_stream.getImage() : im;");
+      genCodeLine ("      curTokenImage = " + sImage + ";");
 
       if (s_keepLineCol)
       {
@@ -976,7 +991,7 @@ public class LexGenJava extends CodeGenerator
     else
     {
       genCodeLine ("   String im = jjstrLiteralImages[jjmatchedKind];");
-      genCodeLine ("   curTokenImage = im == null ? input_stream.getImage() : im;");
+      genCodeLine ("   curTokenImage = " + sImage + ";");
       if (s_keepLineCol)
       {
         genCodeLine ("   beginLine = input_stream.getBeginLine();");
@@ -999,9 +1014,18 @@ public class LexGenJava extends CodeGenerator
       {
         genCodeLine ("   t = Token.newToken(jjmatchedKind);");
         genCodeLine ("   t.kind = jjmatchedKind;");
-        genCodeLine ("   t.image = curTokenImage;");
+        if (bLazyImage)
+          genCodeLine ("   t.setImage(curTokenImage);");
+        else
+          genCodeLine ("   t.image = curTokenImage;");
       }
 
+    if (bLazyImage)
+    {
+      genCodeLine ("   if (curTokenImage == null)");
+      genCodeLine ("      input_stream.setTokenImage(t);");
+    }
+
     if (s_keepLineCol)
     {
       genCodeNewLine ();
@@ -1031,6 +1055,11 @@ public class LexGenJava extends CodeGenerator
     genCodeLine ("/** Get the next Token. */");
     genCodeLine ("public " + "Token getNextToken()" + " ");
     genCodeLine ("{");
+    if (Options.isIncrementalLexing ())
+    {
+      genCodeLine ("  if (jjreplayIndex >= 0)");
+      genCodeLine ("    return jjReplayNext();");
+    }
     if (s_hasSpecial)
     {
       genCodeLine ("  Token specialToken = null;");
@@ -1686,6 +1715,7 @@ public class LexGenJava extends CodeGenerator
     s_errorHandlingClass = null;
     s_hasEmptyMatch = false;
     s_hasLoop = false;
+    s_totalNumStates = 0;
     s_hasMore = false;
     s_hasMoreActions = false;
     s_hasNfa = null;
@@ -0,0 +1,496 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Deterministic automaton for all lexical states of a grammar, built from the
+ * {@link TokenizerData} by subset construction and minimized with Hopcroft's
+ * algorithm.<br>
+ * The input alphabet is first reduced to character classes: two characters
+ * belong to the same class if every NFA state and every string literal
+ * position treats them alike. State <code>0</code> is the dead state, all
+ * other states are numbered from <code>1</code>. Like in the NFA, the match
+ * kind is attached to the transition that completes the token, so
+ * {@link #getKind(int)} is the kind matched when <em>entering</em> a state.
+ */
+final class LexicalDfa
+{
+  /** Kind of a state that does not complete any token */
+  static final int NO_KIND = Integer.MAX_VALUE;
+
+  private final CharClassMap m_charClasses;
+  private final int m_classCount;
+  private final int m_stateCount;
+  private final int [] m_next;
+  private final int [] m_kind;
+  private final int [] m_start;
+
+  private LexicalDfa (final CharClassMap charClasses,
+                      final int classCount,
+                      final int stateCount,
+                      final int [] next,
+                      final int [] kind,
+                      final int [] start)
+  {
+    m_charClasses = charClasses;
+    m_classCount = classCount;
+    m_stateCount = stateCount;
+    m_next = next;
+    m_kind = kind;
+    m_start = start;
+  }
+
+  /**
+   * @param c
+   *        Input character
+   * @return The character class of the passed character. Class 0 never leads
+   *         to a live state.
+   */
+  int getCharClass (final char c)
+  {
+    return m_charClasses.getCharClass (c);
+  }
+
+  /**
+   * @return The character classes the alphabet was reduced to.
+   */
+  CharClassMap getCharClassMap ()
+  {
+    return m_charClasses;
+  }
+
+  int getClassCount ()
+  {
+    return m_classCount;
+  }
+
+  /**
+   * @return The number of states including the dead state 0.
+   */
+  int getStateCount ()
+  {
+    return m_stateCount;
+  }
+
+  /**
+   * @param state
+   *        Source state
+   * @param charClass
+   *        Character class to move on
+   * @return The target state, 0 if there is no transition.
+   */
+  int getNext (final int state, final int charClass)
+  {
+    return m_next[state * m_classCount + charClass];
+  }
+
+  /**
+   * @param state
+   *        State to query
+   * @return The token kind matched when entering this state or
+   *         {@link #NO_KIND}.
+   */
+  int getKind (final int state)
+  {
+    return m_kind[state];
+  }
+
+  /**
+   * @param lexState
+   *        Lexical state index
+   * @return The start state of the lexical state, 0 if nothing can be matched
+   *         in it.
+   */
+  int getStartState (final int lexState)
+  {
+    return m_start[lexState];
+  }
+
+  /** A set of active NFA states and literal positions */
+  private static final class Configuration
+  {
+    private final BitSet m_items;
+    private final int m_kind;
+
+    Configuration (final BitSet items, final int kind)
+    {
+      m_items = items;
+      m_kind = kind;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (!(o instanceof Configuration))
+        return false;
+      final Configuration rhs = (Configuration) o;
+      return m_kind == rhs.m_kind && m_items.equals (rhs.m_items);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return m_items.hashCode () * 31 + m_kind;
+    }
+  }
+
+  private static void _addCaseVariants (final char c, final boolean ignoreCase, final List <Character> chars)
+  {
+    chars.add (Character.valueOf (c));
+    if (ignoreCase)
+    {
+      final char lower = Character.toLowerCase (c);
+      final char upper = Character.toUpperCase (c);
+      if (lower != c)
+        chars.add (Character.valueOf (lower));
+      if (upper != c && upper != lower)
+        chars.add (Character.valueOf (upper));
+    }
+  }
+
+  @Nonnull
+  static LexicalDfa build (@Nonnull final TokenizerData tokenizerData)
+  {
+    final int lexStateCount = tokenizerData.m_lexStateNames.length;
+
+    // Items 0 .. nfaSize-1 are the NFA states, the items after that are the
+    // positions inside the string literals.
+    int nfaSize = 0;
+    for (final int index : tokenizerData.m_nfa.keySet ())
+      nfaSize = Math.max (nfaSize, index + 1);
+
+    final List <char []> itemChars = new ArrayList <> ();
+    final List <int []> itemTargets = new ArrayList <> ();
+    final List <Integer> itemKinds = new ArrayList <> ();
+    for (int i = 0; i < nfaSize; i++)
+    {
+      final TokenizerData.NfaState state = tokenizerData.m_nfa.get (i);
+      if (state == null)
+      {
+        itemChars.add (new char [0]);
+        itemTargets.add (new int [0]);
+        itemKinds.add (Integer.valueOf (NO_KIND));
+        continue;
+      }
+      final char [] chars = new char [state.m_characters.size ()];
+      int n = 0;
+      for (final Character c : state.m_characters)
+        chars[n++] = c.charValue ();
+      Arrays.sort (chars);
+      itemChars.add (chars);
+      final int [] targets = new int [state.m_nextStates.size ()];
+      n = 0;
+      for (final Integer next : state.m_nextStates)
+        targets[n++] = next.intValue ();
+      itemTargets.add (targets);
+      itemKinds.add (Integer.valueOf (state.m_kind));
+    }
+
+    final BitSet [] startItems = new BitSet [lexStateCount];
+    for (int l = 0; l < lexStateCount; l++)
+    {
+      startItems[l] = new BitSet ();
+      final Integer init = tokenizerData.m_initialStates.get (Integer.valueOf (l));
+      if (init != null && init.intValue () >= 0)
+      {
+        startItems[l].set (init.intValue ());
+        for (final Integer composite : tokenizerData.m_nfa.get (init).m_compositeStates)
+          startItems[l].set (composite.intValue ());
+      }
+    }
+
+    if (tokenizerData.m_literalSequence != null)
+      for (final Map.Entry <Integer, List <String>> entry : tokenizerData.m_literalSequence.entrySet ())
+      {
+        final int lexState = entry.getKey ().intValue () >>> 16;
+        final List <Integer> kinds = tokenizerData.m_literalKinds.get (entry.getKey ());
+        for (int i = 0; i < entry.getValue ().size (); i++)
+        {
+          final String literal = entry.getValue ().get (i);
+          final int kind = kinds.get (i).intValue ();
+          final TokenizerData.MatchInfo matchInfo = tokenizerData.m_allMatches.get (Integer.valueOf (kind));
+          final boolean ignoreCase = matchInfo != null && matchInfo.m_ignoreCase;
+          startItems[lexState].set (itemChars.size ());
+          for (int j = 0; j < literal.length (); j++)
+          {
+            final List <Character> variants = new ArrayList <> (3);
+            _addCaseVariants (literal.charAt (j), ignoreCase, variants);
+            final char [] chars = new char [variants.size ()];
+            for (int k = 0; k < chars.length; k++)
+              chars[k] = variants.get (k).charValue ();
+            Arrays.sort (chars);
+            final boolean last = j == literal.length () - 1;
+            itemTargets.add (last ? new int [0] : new int [] { itemChars.size () + 1 });
+            itemKinds.add (Integer.valueOf (last ? kind : NO_KIND));
+            itemChars.add (chars);
+          }
+        }
+      }
+    final int itemCount = itemChars.size ();
+
+    final CharClassMap charClasses = CharClassMap.build (itemChars);
+    final int classCount = charClasses.getClassCount ();
+    final int [] [] itemClasses = new int [itemCount] [];
+    for (int i = 0; i < itemCount; i++)
+      itemClasses[i] = charClasses.getClasses (i);
+
+    // Subset construction over all lexical states at once
+    final Map <Configuration, Integer> stateIds = new HashMap <> ();
+    final List <Configuration> states = new ArrayList <> ();
+    final List <int []> rows = new ArrayList <> ();
+    // The dead state
+    states.add (new Configuration (new BitSet (), NO_KIND));
+    rows.add (new int [classCount]);
+
+    final int [] start = new int [lexStateCount];
+    for (int l = 0; l < lexStateCount; l++)
+      if (!startItems[l].isEmpty ())
+        start[l] = _getStateId (new Configuration (startItems[l], NO_KIND), stateIds, states, rows, classCount);
+
+    for (int s = 1; s < states.size (); s++)
+    {
+      final BitSet items = states.get (s).m_items;
+      final BitSet [] targets = new BitSet [classCount];
+      final int [] kinds = new int [classCount];
+      Arrays.fill (kinds, NO_KIND);
+      for (int item = items.nextSetBit (0); item >= 0; item = items.nextSetBit (item + 1))
+      {
+        final int kind = itemKinds.get (item).intValue ();
+        for (final int cls : itemClasses[item])
+        {
+          if (targets[cls] == null)
+            targets[cls] = new BitSet ();
+          for (final int target : itemTargets.get (item))
+            targets[cls].set (target);
+          if (kind < kinds[cls])
+            kinds[cls] = kind;
+        }
+      }
+      final int [] row = rows.get (s);
+      for (int cls = 0; cls < classCount; cls++)
+        if (targets[cls] != null)
+          row[cls] = _getStateId (new Configuration (targets[cls], kinds[cls]), stateIds, states, rows, classCount);
+    }
+
+    final int [] kind = new int [states.size ()];
+    for (int s = 0; s < kind.length; s++)
+      kind[s] = states.get (s).m_kind;
+    return _minimize (charClasses, classCount, rows.toArray (new int [0] []), kind, start);
+  }
+
+  private static int _getStateId (final Configuration configuration,
+                                  final Map <Configuration, Integer> stateIds,
+                                  final List <Configuration> states,
+                                  final List <int []> rows,
+                                  final int classCount)
+  {
+    final Integer id = stateIds.get (configuration);
+    if (id != null)
+      return id.intValue ();
+    final int newId = states.size ();
+    stateIds.put (configuration, Integer.valueOf (newId));
+    states.add (configuration);
+    rows.add (new int [classCount]);
+    return newId;
+  }
+
+  /**
+   * Hopcroft's partition refinement. The initial partition groups the states
+   * by the kind they accept; the dead state 0 is a regular member so that
+   * states which can only die are merged with it.
+   */
+  private static LexicalDfa _minimize (final CharClassMap charClasses,
+                                       final int classCount,
+                                       final int [] [] rows,
+                                       final int [] kind,
+                                       final int [] start)
+  {
+    final int n = rows.length;
+
+    // Inverse transitions per class in compressed form
+    final int [] invStart = new int [classCount * n + 1];
+    for (int s = 0; s < n; s++)
+      for (int cls = 0; cls < classCount; cls++)
+        invStart[cls * n + rows[s][cls] + 1]++;
+    for (int i = 1; i < invStart.length; i++)
+      invStart[i] += invStart[i - 1];
+    final int [] inv = new int [classCount * n];
+    final int [] fill = Arrays.copyOf (invStart, invStart.length - 1);
+    for (int s = 0; s < n; s++)
+      for (int cls = 0; cls < classCount; cls++)
+        inv[fill[cls * n + rows[s][cls]]++] = s;
+
+    // Initial partition by accepted kind
+    final int [] elems = new int [n];
+    final int [] pos = new int [n];
+    final int [] blockOf = new int [n];
+    final int [] blockFirst = new int [n];
+    final int [] blockEnd = new int [n];
+    final int [] blockMarked = new int [n];
+    final boolean [] inWork = new boolean [n];
+    final Integer [] order = new Integer [n];
+    for (int s = 0; s < n; s++)
+      order[s] = Integer.valueOf (s);
+    Arrays.sort (order, (a, b) -> Integer.compare (kind[a.intValue ()], kind[b.intValue ()]));
+    int blockCount = 0;
+    for (int i = 0; i < n; i++)
+    {
+      final int s = order[i].intValue ();
+      if (i == 0 || kind[s] != kind[elems[i - 1]])
+      {
+        blockFirst[blockCount] = i;
+        blockCount++;
+      }
+      elems[i] = s;
+      pos[s] = i;
+      blockOf[s] = blockCount - 1;
+      blockEnd[blockCount - 1] = i + 1;
+    }
+
+    final Deque <Integer> work = new ArrayDeque <> ();
+    for (int b = 0; b < blockCount; b++)
+    {
+      work.add (Integer.valueOf (b));
+      inWork[b] = true;
+    }
+
+    final int [] splitter = new int [n];
+    final int [] touched = new int [n];
+    while (!work.isEmpty ())
+    {
+      final int a = work.poll ().intValue ();
+      inWork[a] = false;
+      final int splitterSize = blockEnd[a] - blockFirst[a];
+      System.arraycopy (elems, blockFirst[a], splitter, 0, splitterSize);
+
+      for (int cls = 0; cls < classCount; cls++)
+      {
+        // Mark all predecessors by moving them to the front of their block
+        int touchedCount = 0;
+        for (int i = 0; i < splitterSize; i++)
+        {
+          final int target = splitter[i];
+          for (int j = invStart[cls * n + target]; j < invStart[cls * n + target + 1]; j++)
+          {
+            final int s = inv[j];
+            final int b = blockOf[s];
+            final int marker = blockFirst[b] + blockMarked[b];
+            if (pos[s] >= marker)
+            {
+              final int other = elems[marker];
+              elems[marker] = s;
+              elems[pos[s]] = other;
+              pos[other] = pos[s];
+              pos[s] = marker;
+              if (blockMarked[b]++ == 0)
+                touched[touchedCount++] = b;
+            }
+          }
+        }
+
+        for (int i = 0; i < touchedCount; i++)
+        {
+          final int b = touched[i];
+          final int marked = blockMarked[b];
+          blockMarked[b] = 0;
+          if (marked == blockEnd[b] - blockFirst[b])
+            continue;
+
+          // Split the marked states off into a new block
+          final int nb = blockCount++;
+          blockFirst[nb] = blockFirst[b];
+          blockEnd[nb] = blockFirst[b] + marked;
+          blockFirst[b] += marked;
+          for (int p = blockFirst[nb]; p < blockEnd[nb]; p++)
+            blockOf[elems[p]] = nb;
+
+          if (inWork[b] || marked <= blockEnd[b] - blockFirst[b])
+          {
+            work.add (Integer.valueOf (nb));
+            inWork[nb] = true;
+          }
+          else
+          {
+            work.add (Integer.valueOf (b));
+            inWork[b] = true;
+          }
+        }
+      }
+    }
+
+    // Renumber the blocks in the order of their first original state, which
+    // keeps the dead state at 0
+    final int [] newId = new int [blockCount];
+    Arrays.fill (newId, -1);
+    int stateCount = 0;
+    final int [] representative = new int [blockCount];
+    for (int s = 0; s < n; s++)
+    {
+      final int b = blockOf[s];
+      if (newId[b] < 0)
+      {
+        newId[b] = stateCount++;
+        representative[newId[b]] = s;
+      }
+    }
+
+    final int [] next = new int [stateCount * classCount];
+    final int [] newKind = new int [stateCount];
+    for (int s = 0; s < stateCount; s++)
+    {
+      final int old = representative[s];
+      newKind[s] = kind[old];
+      for (int cls = 0; cls < classCount; cls++)
+        next[s * classCount + cls] = newId[blockOf[rows[old][cls]]];
+    }
+    final int [] newStart = new int [start.length];
+    for (int l = 0; l < start.length; l++)
+      newStart[l] = newId[blockOf[start[l]]];
+
+    return new LexicalDfa (charClasses, classCount, stateCount, next, newKind, newStart);
+  }
+}
@@ -0,0 +1,414 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Decision tree for a syntactic lookahead of a fixed number of tokens. The
+ * generated parser can switch over the kinds of the next tokens along the tree
+ * instead of scanning the lookahead expansion with backtracking.<br>
+ * The tree is built to decide exactly like the scan of the phase 3 routines
+ * does: a choice commits to the first alternative that matches, without
+ * backtracking into it if the rest fails, and repetitions are greedy. The
+ * lookahead succeeds as soon as the last token within the limit is matched.
+ * It is not built if semantic lookahead or a JAVACODE production is part of
+ * the expansion, or if the tree would get too large.
+ */
+final class LookaheadDecisionTree
+{
+  /** Maximum number of nodes created before the lookahead is scanned */
+  private static final int MAX_NODES = 1024;
+  /** Maximum number of switch cases before the lookahead is scanned */
+  private static final int MAX_CASES = 256;
+  /** Maximum number of nested expansions before the lookahead is scanned */
+  private static final int MAX_NESTING = 256;
+
+  /**
+   * A node of the tree. Inner nodes read the next token, leaves decide.
+   */
+  static final class Node
+  {
+    static final Node ACCEPT = new Node (null, null, null);
+    static final Node REJECT = new Node (null, null, null);
+
+    // Child per token kind, if different from the child for all other kinds
+    private final Map <Integer, Node> m_children;
+    private final Node m_otherwise;
+    // Only while building: an alternative of a choice matched here, so that
+    // the choice continues with this node whatever the other alternatives do
+    private final Node m_committed;
+
+    private Node (final Map <Integer, Node> children, final Node otherwise, final Node committed)
+    {
+      m_children = children;
+      m_otherwise = otherwise;
+      m_committed = committed;
+    }
+
+    boolean isLeaf ()
+    {
+      return m_children == null;
+    }
+
+    /**
+     * @return The children by token kind in ascending order. Only for inner
+     *         nodes.
+     */
+    @Nonnull
+    Map <Integer, Node> getChildren ()
+    {
+      return m_children;
+    }
+
+    /**
+     * @return The child for all token kinds not contained in
+     *         {@link #getChildren()}. Only for inner nodes.
+     */
+    @Nonnull
+    Node getOtherwise ()
+    {
+      return m_otherwise;
+    }
+  }
+
+  /**
+   * Thrown to give up building the tree.
+   */
+  @SuppressWarnings ("serial")
+  private static final class UndecidableException extends RuntimeException
+  {
+    UndecidableException ()
+    {
+      super (null, null, false, false);
+    }
+  }
+
+  /**
+   * The tree to continue with after an expansion, depending on the number of
+   * tokens it matched.
+   */
+  private abstract class AbstractContinuation
+  {
+    private final Map <Integer, Node> m_cache = new HashMap <> ();
+
+    protected abstract Node compute (int depth);
+
+    final Node get (final int depth)
+    {
+      if (depth == m_nLimit)
+        return Node.ACCEPT;
+      final Integer aKey = Integer.valueOf (depth);
+      Node ret = m_cache.get (aKey);
+      if (ret == null)
+      {
+        ret = compute (depth);
+        m_cache.put (aKey, ret);
+      }
+      return ret;
+    }
+  }
+
+  private final int m_nLimit;
+  private int m_nNodes;
+  private int m_nNesting;
+
+  private LookaheadDecisionTree (final int limit)
+  {
+    m_nLimit = limit;
+  }
+
+  private Node _newNode (final Map <Integer, Node> children, final Node otherwise, final Node committed)
+  {
+    if (++m_nNodes > MAX_NODES)
+      throw new UndecidableException ();
+    return new Node (children, otherwise, committed);
+  }
+
+  private Node _commit (final Node node)
+  {
+    return _newNode (null, null, node);
+  }
+
+  /**
+   * A committed node must decide on the same tokens as its content. Move the
+   * commitment down to the children of the content, so that the node can be
+   * merged with a tree that reads the next token.
+   */
+  private Node _pushDown (final Node node)
+  {
+    if (node.m_committed == null)
+      return node;
+    final Node content = _pushDown (node.m_committed);
+    if (content.isLeaf ())
+    {
+      // Decides regardless of the tokens
+      return node;
+    }
+    final Map <Integer, Node> children = new TreeMap <> ();
+    for (final Map.Entry <Integer, Node> aEntry : content.m_children.entrySet ())
+      children.put (aEntry.getKey (), _commit (aEntry.getValue ()));
+    return _newNode (children, _commit (content.m_otherwise), null);
+  }
+
+  /**
+   * Decide an alternative of a choice, falling back to the rest of the choice
+   * where the alternative does not match.
+   *
+   * @param first
+   *        Tree of the alternative, with committed nodes where it matched
+   * @param rest
+   *        Tree of the remaining alternatives at the same depth
+   */
+  private Node _merge (final Node first, final Node rest)
+  {
+    if (first.m_committed != null)
+      return first.m_committed;
+    if (first == Node.REJECT)
+      return rest;
+    if (first == Node.ACCEPT)
+    {
+      // The lookahead succeeded, whatever follows
+      return first;
+    }
+    final Node r = _pushDown (rest);
+    final TreeSet <Integer> kinds = new TreeSet <> (first.m_children.keySet ());
+    if (!r.isLeaf ())
+      kinds.addAll (r.m_children.keySet ());
+    final Node otherwise = _merge (first.m_otherwise, r.isLeaf () ? r : r.m_otherwise);
+    final Map <Integer, Node> children = new TreeMap <> ();
+    for (final Integer aKind : kinds)
+    {
+      final Node f = first.m_children.getOrDefault (aKind, first.m_otherwise);
+      final Node child = _merge (f, r.isLeaf () ? r : r.m_children.getOrDefault (aKind, r.m_otherwise));
+      if (child != otherwise)
+        children.put (aKind, child);
+    }
+    return _newNode (children, otherwise, null);
+  }
+
+  private Node _choice (final List <Expansion> choices, final int depth, final AbstractContinuation cont)
+  {
+    for (final Expansion choice : choices)
+    {
+      final ExpLookahead la = (ExpLookahead) ((ExpSequence) choice).m_units.get (0);
+      if (!la.getActionTokens ().isEmpty ())
+        throw new UndecidableException ();
+    }
+
+    final AbstractContinuation committed = new AbstractContinuation ()
+    {
+      @Override
+      protected Node compute (final int d)
+      {
+        return _commit (cont.get (d));
+      }
+    };
+    Node ret = _build (choices.get (choices.size () - 1), depth, cont);
+    for (int i = choices.size () - 2; i >= 0; i--)
+      ret = _merge (_build (choices.get (i), depth, committed), ret);
+    return ret;
+  }
+
+  /**
+   * @return The tree for the repetition of an expansion, followed by the
+   *         continuation.
+   */
+  private AbstractContinuation _repetition (final Expansion exp, final AbstractContinuation cont)
+  {
+    return new AbstractContinuation ()
+    {
+      @Override
+      protected Node compute (final int depth)
+      {
+        final AbstractContinuation self = this;
+        final AbstractContinuation committed = new AbstractContinuation ()
+        {
+          @Override
+          protected Node compute (final int d)
+          {
+            // Semanticize makes sure that a repetition can't match the empty
+            // string
+            if (d == depth)
+              throw new UndecidableException ();
+            return _commit (self.get (d));
+          }
+        };
+        return _merge (_build (exp, depth, committed), cont.get (depth));
+      }
+    };
+  }
+
+  private Node _sequence (final List <Expansion> units,
+                          final int index,
+                          final int depth,
+                          final AbstractContinuation cont)
+  {
+    if (index == units.size ())
+      return cont.get (depth);
+    return _build (units.get (index), depth, new AbstractContinuation ()
+    {
+      @Override
+      protected Node compute (final int d)
+      {
+        return _sequence (units, index + 1, d, cont);
+      }
+    });
+  }
+
+  /**
+   * @return The tree that scans the expansion at the passed depth, followed by
+   *         the continuation.
+   */
+  private Node _build (final Expansion exp, final int depth, final AbstractContinuation cont)
+  {
+    if (depth == m_nLimit)
+      return Node.ACCEPT;
+    if (++m_nNesting > MAX_NESTING)
+      throw new UndecidableException ();
+    try
+    {
+      if (exp instanceof AbstractExpRegularExpression)
+      {
+        final Map <Integer, Node> children = new TreeMap <> ();
+        children.put (Integer.valueOf (((AbstractExpRegularExpression) exp).m_ordinal), cont.get (depth + 1));
+        return _newNode (children, Node.REJECT, null);
+      }
+
+      if (exp instanceof ExpNonTerminal)
+      {
+        final NormalProduction prod = ((ExpNonTerminal) exp).getProd ();
+        if (prod instanceof AbstractCodeProduction)
+          throw new UndecidableException ();
+        return _build (prod.getExpansion (), depth, cont);
+      }
+
+      if (exp instanceof ExpChoice)
+        return _choice (((ExpChoice) exp).getChoices (), depth, cont);
+
+      if (exp instanceof ExpSequence)
+      {
+        // The first unit is the lookahead of the sequence
+        return _sequence (((ExpSequence) exp).m_units, 1, depth, cont);
+      }
+
+      if (exp instanceof ExpTryBlock)
+        return _build (((ExpTryBlock) exp).m_exp, depth, cont);
+
+      if (exp instanceof ExpOneOrMore)
+      {
+        final Expansion nested = ((ExpOneOrMore) exp).m_expansion;
+        return _build (nested, depth, _repetition (nested, cont));
+      }
+
+      if (exp instanceof ExpZeroOrMore)
+        return _repetition (((ExpZeroOrMore) exp).m_expansion, cont).get (depth);
+
+      if (exp instanceof ExpZeroOrOne)
+      {
+        final AbstractContinuation committed = new AbstractContinuation ()
+        {
+          @Override
+          protected Node compute (final int d)
+          {
+            return _commit (cont.get (d));
+          }
+        };
+        return _merge (_build (((ExpZeroOrOne) exp).m_expansion, depth, committed), cont.get (depth));
+      }
+
+      // Actions and nested lookaheads are not scanned
+      return cont.get (depth);
+    }
+    finally
+    {
+      m_nNesting--;
+    }
+  }
+
+  private static int _countCases (final Node node)
+  {
+    if (node.isLeaf ())
+      return 0;
+    int ret = node.m_children.size () + 1;
+    for (final Node child : node.m_children.values ())
+      ret += _countCases (child);
+    return ret + _countCases (node.m_otherwise);
+  }
+
+  /**
+   * Build the decision tree of a syntactic lookahead.
+   *
+   * @param la
+   *        The lookahead. May not be <code>null</code>.
+   * @return <code>null</code> if the lookahead is better decided by scanning
+   *         the next {@link ExpLookahead#getAmount()} tokens.
+   */
+  @Nullable
+  static Node build (@Nonnull final ExpLookahead la)
+  {
+    final int limit = la.getAmount ();
+    if (limit <= 0 || limit == Integer.MAX_VALUE || !la.getActionTokens ().isEmpty ())
+      return null;
+
+    final LookaheadDecisionTree aTree = new LookaheadDecisionTree (limit);
+    final Node ret;
+    try
+    {
+      ret = aTree._build (la.getLaExpansion (), 0, aTree.new AbstractContinuation ()
+      {
+        @Override
+        protected Node compute (final int depth)
+        {
+          // The lookahead expansion matched before the limit
+          return Node.ACCEPT;
+        }
+      });
+    }
+    catch (final UndecidableException ex)
+    {
+      return null;
+    }
+    if (ret.isLeaf () || _countCases (ret) > MAX_CASES)
+      return null;
+    return ret;
+  }
+}
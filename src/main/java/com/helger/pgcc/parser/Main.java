@@ -412,5 +412,6 @@ public class Main
     com.helger.pgcc.parser.Semanticize.reInit ();
     com.helger.pgcc.output.java.OtherFilesGenJava.reInit ();
     com.helger.pgcc.parser.LexGenJava.reInit ();
+    com.helger.pgcc.parser.ParseGenJava.reInit ();
   }
 }
@@ -0,0 +1,283 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Helps keeping generated Java methods below the size HotSpot still JIT
+ * compiles. The size of generated code is estimated from its tokens, and the
+ * cases of a generated <code>switch</code> statement can be split into groups
+ * that are moved to methods of their own.<br>
+ * The cases are split where a case ends with an unconditional
+ * <code>break</code> or <code>return</code> at the indentation of its body, so
+ * cases falling through into each other stay together.
+ */
+final class MethodSplitterJava
+{
+  /** HotSpot does not JIT compile methods with more bytes of bytecode */
+  static final int HUGE_METHOD_LIMIT = 8000;
+  /** Estimated maximum size of a method the cases are moved to */
+  static final int CASE_GROUP_LIMIT = HUGE_METHOD_LIMIT / 2;
+
+  // Characters of operators that may consist of more than one character
+  private static final String OPERATOR_CHARS = "=!<>&|+-*/%^";
+
+  /**
+   * Consecutive cases of a switch statement.
+   */
+  static final class CaseGroup
+  {
+    private final List <String> m_labels = new ArrayList <> ();
+    private final StringBuilder m_code = new StringBuilder ();
+    private boolean m_closed;
+    private int m_size;
+
+    /**
+     * @return the case labels of the group, e.g. <code>case 3:</code>
+     */
+    @Nonnull
+    List <String> getLabels ()
+    {
+      return m_labels;
+    }
+
+    /**
+     * @return the code of all cases of the group including their labels
+     */
+    @Nonnull
+    String getCode ()
+    {
+      return m_code.toString ();
+    }
+
+    /**
+     * @return <code>true</code> if the last case of the group does not fall
+     *         through into the cases after it, so the group can be moved to
+     *         a method of its own.
+     */
+    boolean isClosed ()
+    {
+      return m_closed;
+    }
+
+    /**
+     * @return the estimated bytecode size of the group
+     */
+    int getSize ()
+    {
+      return m_size;
+    }
+
+    void add (@Nonnull final CaseGroup aOther)
+    {
+      m_labels.addAll (aOther.m_labels);
+      m_code.append (aOther.m_code);
+      m_closed = aOther.m_closed;
+      m_size += aOther.m_size;
+    }
+  }
+
+  private MethodSplitterJava ()
+  {}
+
+  /**
+   * Estimate the bytecode size of generated Java code. javac produces between
+   * one and two bytes of bytecode per token for the code generated here.
+   *
+   * @param sCode
+   *        Java code
+   * @return the estimated number of bytes of bytecode
+   */
+  static int estimateBytecodeSize (@Nonnull final String sCode)
+  {
+    int nTokens = 0;
+    final int nLength = sCode.length ();
+    int i = 0;
+    while (i < nLength)
+    {
+      final char c = sCode.charAt (i);
+      if (Character.isWhitespace (c))
+      {
+        i++;
+        continue;
+      }
+      nTokens++;
+      if (c == '"' || c == '\'')
+      {
+        // String or character literal
+        i++;
+        while (i < nLength && sCode.charAt (i) != c)
+          i += sCode.charAt (i) == '\\' ? 2 : 1;
+        i++;
+      }
+      else
+        if (Character.isJavaIdentifierPart (c))
+        {
+          // Name, keyword or number
+          while (i < nLength && Character.isJavaIdentifierPart (sCode.charAt (i)))
+            i++;
+        }
+        else
+          if (OPERATOR_CHARS.indexOf (c) >= 0)
+          {
+            while (i < nLength && OPERATOR_CHARS.indexOf (sCode.charAt (i)) >= 0)
+              i++;
+          }
+          else
+            i++;
+    }
+    return nTokens * 3 / 2;
+  }
+
+  /**
+   * Split the cases of a generated switch statement into groups of at most
+   * {@link #CASE_GROUP_LIMIT} estimated bytes, unless a single case is larger.
+   * Only the last group may not be closed.
+   *
+   * @param sCases
+   *        the code of all cases, without the default case
+   * @param sCaseIndent
+   *        the indentation of the case labels. The body of a case is indented
+   *        by three more spaces.
+   * @return the groups in the order of the cases
+   */
+  @Nonnull
+  static List <CaseGroup> splitCases (@Nonnull final String sCases, @Nonnull final String sCaseIndent)
+  {
+    final String sBodyIndent = sCaseIndent + "   ";
+    final List <CaseGroup> ret = new ArrayList <> ();
+    CaseGroup aCase = null;
+    CaseGroup aGroup = null;
+    for (final String sLine : sCases.split ("\n"))
+    {
+      if (aCase == null && sLine.trim ().length () == 0)
+        continue;
+      if (sLine.startsWith (sCaseIndent + "case ") && (aCase == null || aCase.m_closed))
+      {
+        // A new case, as the one before does not fall through
+        if (aCase != null)
+          aGroup = _addCase (ret, aGroup, aCase);
+        aCase = new CaseGroup ();
+      }
+      if (aCase == null)
+        throw new IllegalStateException ("Code before the first case: " + sLine);
+      if (sLine.startsWith (sCaseIndent + "case "))
+        aCase.m_labels.add (sLine.trim ());
+      aCase.m_code.append (sLine).append ('\n');
+      if (sLine.trim ().length () > 0)
+        aCase.m_closed = sLine.equals (sBodyIndent + "break;") ||
+                         (sLine.startsWith (sBodyIndent + "return ") && sLine.endsWith (";"));
+    }
+    if (aCase != null)
+      _addCase (ret, aGroup, aCase);
+    return ret;
+  }
+
+  @Nonnull
+  private static CaseGroup _addCase (@Nonnull final List <CaseGroup> aGroups,
+                                     final CaseGroup aGroup,
+                                     @Nonnull final CaseGroup aCase)
+  {
+    aCase.m_size = estimateBytecodeSize (aCase.getCode ());
+    if (aGroup != null && aGroup.m_size + aCase.m_size <= CASE_GROUP_LIMIT)
+    {
+      aGroup.add (aCase);
+      return aGroup;
+    }
+    aGroups.add (aCase);
+    return aCase;
+  }
+
+  /**
+   * Report a generated method that was split.
+   *
+   * @param sMethodName
+   *        name of the split method
+   * @param nOldSize
+   *        estimated bytecode size before splitting
+   * @param nNewSize
+   *        estimated bytecode size after splitting
+   * @param nMethodCount
+   *        number of methods the cases were moved to
+   */
+  static void reportSplit (@Nonnull final String sMethodName,
+                           final int nOldSize,
+                           final int nNewSize,
+                           final int nMethodCount)
+  {
+    if (nNewSize > HUGE_METHOD_LIMIT)
+      JavaCCErrors.warning ("Method " +
+                            sMethodName +
+                            " still has about " +
+                            nNewSize +
+                            " bytes of bytecode after moving cases to " +
+                            nMethodCount +
+                            " other methods. It will not be JIT compiled.");
+    else
+      JavaCCErrors.note ("Method " +
+                         sMethodName +
+                         " had about " +
+                         nOldSize +
+                         " bytes of bytecode and was split into " +
+                         (nMethodCount + 1) +
+                         " methods to be JIT compiled.");
+  }
+
+  /**
+   * Remove leading spaces from all lines of the code.
+   *
+   * @param sCode
+   *        code with lines indented by at least the given amount
+   * @param nAmount
+   *        number of spaces to remove
+   * @return the code
+   */
+  @Nonnull
+  static String unindent (@Nonnull final String sCode, final int nAmount)
+  {
+    final StringBuilder aSB = new StringBuilder (sCode.length ());
+    for (final String sLine : sCode.split ("\n"))
+    {
+      int n = 0;
+      while (n < nAmount && n < sLine.length () && sLine.charAt (n) == ' ')
+        n++;
+      aSB.append (sLine, n, sLine.length ()).append ('\n');
+    }
+    return aSB.toString ();
+  }
+}
@@ -67,11 +67,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.helger.commons.string.StringHelper;
 import com.helger.pgcc.output.EOutputLanguage;
@@ -1002,12 +1005,7 @@ public class NfaState
             switch (eOutputLanguage)
             {
               case JAVA:
-                codeGenerator.genCodeLine ("static final " +
-                                           eOutputLanguage.getTypeLong () +
-                                           "[] jjbitVec" +
-                                           s_lohiByteCnt +
-                                           " = " +
-                                           tmp);
+                _dumpBitVectorJava (codeGenerator, s_lohiByteCnt, tmp, common);
                 break;
               case CPP:
                 codeGenerator.switchToStaticsFile ();
@@ -1046,12 +1044,7 @@ public class NfaState
             switch (eOutputLanguage)
             {
               case JAVA:
-                codeGenerator.genCodeLine ("static final " +
-                                           eOutputLanguage.getTypeLong () +
-                                           "[] jjbitVec" +
-                                           s_lohiByteCnt +
-                                           " = " +
-                                           tmp);
+                _dumpBitVectorJava (codeGenerator, s_lohiByteCnt, tmp, loBytes[i]);
                 break;
               case CPP:
                 codeGenerator.switchToStaticsFile ();
@@ -1111,12 +1104,7 @@ public class NfaState
             switch (eOutputLanguage)
             {
               case JAVA:
-                codeGenerator.genCodeLine ("static final " +
-                                           eOutputLanguage.getTypeLong () +
-                                           "[] jjbitVec" +
-                                           s_lohiByteCnt +
-                                           " = " +
-                                           tmp);
+                _dumpBitVectorJava (codeGenerator, s_lohiByteCnt, tmp, loBytes[i]);
                 break;
               case CPP:
                 codeGenerator.switchToStaticsFile ();
@@ -1211,6 +1199,17 @@ public class NfaState
     return bitVec.equals (s_allBits);
   }
 
+  private static void _dumpBitVectorJava (final CodeGenerator codeGenerator,
+                                          final int index,
+                                          final String initializer,
+                                          final long [] bits)
+  {
+    if (Options.isPackedTables ())
+      codeGenerator.genCode (PackedTableJava.longTable ("static final long[] jjbitVec" + index, bits));
+    else
+      codeGenerator.genCodeLine ("static final long[] jjbitVec" + index + " = " + initializer);
+  }
+
   static int addStartStateSet (final String stateSetString)
   {
     return _addCompositeStateSet (stateSetString, true);
@@ -1269,19 +1268,22 @@ public class NfaState
 
     if (toRet >= nameSet.length)
     {
-      if (s_dummyStateIndex == -1)
-        tmp = s_dummyStateIndex = s_generatedStates;
-      else
-        tmp = ++s_dummyStateIndex;
-
       // TODO(sreeni) : Fix this
       if (Options.getTokenManagerCodeGenerator () != null)
       {
+        // The tokenizer data needs a real state. Dummy indices would clash
+        // with the states generated after this one.
+        tmp = s_generatedStates++;
         final NfaState dummyState = new NfaState ();
         dummyState.m_isComposite = true;
         dummyState.m_compositeStates = nameSet;
         dummyState.m_stateName = tmp;
       }
+      else
+        if (s_dummyStateIndex == -1)
+          tmp = s_dummyStateIndex = s_generatedStates;
+        else
+          tmp = ++s_dummyStateIndex;
     }
     else
       tmp = nameSet[toRet];
@@ -1344,6 +1346,22 @@ public class NfaState
   {
     final EOutputLanguage eOutputLanguage = codeGenerator.getOutputLanguage ();
 
+    if (eOutputLanguage == EOutputLanguage.JAVA && Options.isPackedTables ())
+    {
+      int cnt = 0;
+      for (final int [] set : s_orderedStateSet)
+        cnt += set.length;
+
+      // Same as the array initializer, which holds a single 0 if empty
+      final int [] nextStates = new int [Math.max (cnt, 1)];
+      cnt = 0;
+      for (final int [] set : s_orderedStateSet)
+        for (final int aElement : set)
+          nextStates[cnt++] = aElement;
+      codeGenerator.genCode (PackedTableJava.intTable ("static final int[] jjnextStates", nextStates));
+      return;
+    }
+
     switch (eOutputLanguage)
     {
       case JAVA:
@@ -3104,6 +3122,7 @@ public class NfaState
 
     s_kinds[LexGenJava.s_lexStateIndex] = kindsForStates;
 
+    final int nMethodStart = codeGenerator.getOutputLength ();
     switch (eOutputLanguage)
     {
       case JAVA:
@@ -3203,10 +3222,14 @@ public class NfaState
     codeGenerator.genCodeLine ("   {");
     codeGenerator.genCodeLine ("      if (++jjround == 0x" + Integer.toHexString (Integer.MAX_VALUE) + ")");
     codeGenerator.genCodeLine ("         ReInitRounds();");
+    // Where the moves for each range of characters start and end
+    final int [] aMovesBounds = new int [6];
     codeGenerator.genCodeLine ("      if (curChar < 64)");
     codeGenerator.genCodeLine ("      {");
 
+    aMovesBounds[0] = codeGenerator.getOutputLength () - nMethodStart;
     _dumpAsciiMoves (codeGenerator, 0);
+    aMovesBounds[1] = codeGenerator.getOutputLength () - nMethodStart;
 
     codeGenerator.genCodeLine ("      }");
 
@@ -3214,14 +3237,18 @@ public class NfaState
 
     codeGenerator.genCodeLine ("      {");
 
+    aMovesBounds[2] = codeGenerator.getOutputLength () - nMethodStart;
     _dumpAsciiMoves (codeGenerator, 1);
+    aMovesBounds[3] = codeGenerator.getOutputLength () - nMethodStart;
 
     codeGenerator.genCodeLine ("      }");
 
     codeGenerator.genCodeLine ("      else");
     codeGenerator.genCodeLine ("      {");
 
+    aMovesBounds[4] = codeGenerator.getOutputLength () - nMethodStart;
     dumpCharAndRangeMoves (codeGenerator);
+    aMovesBounds[5] = codeGenerator.getOutputLength () - nMethodStart;
 
     codeGenerator.genCodeLine ("      }");
 
@@ -3396,9 +3423,164 @@ public class NfaState
     }
 
     codeGenerator.genCodeLine ("}");
+    if (eOutputLanguage.isJava ())
+      _splitMoveNfa (codeGenerator, nMethodStart, aMovesBounds);
     s_allStates.clear ();
   }
 
+  /**
+   * If the generated jjMoveNfa method is too large to be JIT compiled, move
+   * the cases for the largest ranges of characters to methods of their own
+   * until it is small enough.
+   */
+  private static void _splitMoveNfa (final CodeGenerator codeGenerator,
+                                     final int nMethodStart,
+                                     final int [] aMovesBounds)
+  {
+    final String sMethod = codeGenerator.getOutputSince (nMethodStart);
+    final int nOldSize = MethodSplitterJava.estimateBytecodeSize (sMethod);
+    if (nOldSize <= MethodSplitterJava.HUGE_METHOD_LIMIT)
+      return;
+
+    final String [] aMoves = new String [3];
+    final int [] aSizes = new int [3];
+    for (int i = 0; i < 3; i++)
+    {
+      aMoves[i] = sMethod.substring (aMovesBounds[2 * i], aMovesBounds[2 * i + 1]);
+      aSizes[i] = MethodSplitterJava.estimateBytecodeSize (aMoves[i]);
+    }
+
+    final List <String> aHelpers = new ArrayList <> ();
+    final List <String> aTables = new ArrayList <> ();
+    final boolean [] aSplit = new boolean [3];
+    int nSize = nOldSize;
+    while (nSize > MethodSplitterJava.HUGE_METHOD_LIMIT)
+    {
+      int nLargest = -1;
+      for (int i = 0; i < 3; i++)
+        if (!aSplit[i] && (nLargest < 0 || aSizes[i] > aSizes[nLargest]))
+          nLargest = i;
+      if (nLargest < 0)
+        break;
+
+      aSplit[nLargest] = true;
+      aMoves[nLargest] = _splitMoves (aMoves[nLargest], nLargest, aHelpers, aTables);
+      final int nNewSize = MethodSplitterJava.estimateBytecodeSize (aMoves[nLargest]);
+      nSize -= aSizes[nLargest] - nNewSize;
+      aSizes[nLargest] = nNewSize;
+    }
+
+    codeGenerator.removeOutputSince (nMethodStart);
+    codeGenerator.genCode (sMethod.substring (0, aMovesBounds[0]));
+    codeGenerator.genCode (aMoves[0]);
+    codeGenerator.genCode (sMethod.substring (aMovesBounds[1], aMovesBounds[2]));
+    codeGenerator.genCode (aMoves[1]);
+    codeGenerator.genCode (sMethod.substring (aMovesBounds[3], aMovesBounds[4]));
+    codeGenerator.genCode (aMoves[2]);
+    codeGenerator.genCode (sMethod.substring (aMovesBounds[5]));
+    for (final String sHelper : aHelpers)
+      codeGenerator.genCode (sHelper);
+    for (final String sTable : aTables)
+      codeGenerator.genCode (sTable);
+
+    MethodSplitterJava.reportSplit ("jjMoveNfa" + LexGenJava.s_lexStateSuffix, nOldSize, nSize, aHelpers.size ());
+  }
+
+  /**
+   * Move the cases of the switch over the states in the moves for a range of
+   * characters to methods of their own. The switch then looks up the method
+   * of a state in a table. The locals the moves declare before the switch are
+   * passed on together with the kind matched so far, which the methods
+   * return.<br>
+   * The default case only breaks, so all cases can be moved even if the last
+   * one falls through into it.
+   *
+   * @return the moves calling the new methods
+   */
+  private static String _splitMoves (final String sMoves,
+                                     final int nRange,
+                                     final List <String> aHelpers,
+                                     final List <String> aTables)
+  {
+    final String sSwitch = "            switch(jjstateSet[--i])\n";
+    final int nSwitch = sMoves.indexOf (sSwitch);
+    final int nCasesStart = nSwitch + sSwitch.length () + "            {\n".length ();
+    final int nCasesEnd = sMoves.indexOf ("               default :");
+    final String sHead = sMoves.substring (0, nSwitch);
+    final String sTail = sMoves.substring (nCasesEnd);
+    final String sDefault = sTail.substring (0, sTail.indexOf ('\n')).trim ();
+
+    final StringBuilder aParams = new StringBuilder ();
+    final StringBuilder aArgs = new StringBuilder ();
+    final Matcher m = Pattern.compile ("(int|long) (\\w+) = ").matcher (sHead);
+    while (m.find ())
+    {
+      aParams.append (", ").append (m.group (1)).append (' ').append (m.group (2));
+      aArgs.append (", ").append (m.group (2));
+    }
+
+    // Number of the group of each state, starting at 1. The states are offset
+    // by one, as the start state is -1 if there is none.
+    final String sTableName = "jjnfaGroup" + LexGenJava.s_lexStateSuffix + "_" + nRange;
+    final int [] aGroupOfState = new int [Math.max (s_generatedStates, s_dummyStateIndex + 1) + 1];
+
+    final StringBuilder aSB = new StringBuilder (sHead);
+    aSB.append ("            switch(").append (sTableName).append ("[jjstateSet[--i] + 1])\n");
+    aSB.append ("            {\n");
+    int nGroup = 0;
+    for (final MethodSplitterJava.CaseGroup aGroup : MethodSplitterJava.splitCases (sMoves.substring (nCasesStart,
+                                                                                                       nCasesEnd),
+                                                                                     "               "))
+    {
+      nGroup++;
+      for (final String sLabel : aGroup.getLabels ())
+        aGroupOfState[Integer.parseInt (sLabel.substring ("case ".length (), sLabel.length () - 1)) + 1] = nGroup;
+
+      final String sHelperName = "jjMoveNfa" + LexGenJava.s_lexStateSuffix + "_" + aHelpers.size ();
+      aSB.append ("               case ").append (nGroup).append (":\n");
+      aSB.append ("                  kind = ")
+         .append (sHelperName)
+         .append ("(jjstateSet[i]")
+         .append (aArgs)
+         .append (", kind);\n");
+      aSB.append ("                  break;\n");
+
+      final StringBuilder aHelper = new StringBuilder ();
+      aHelper.append ("private int ")
+             .append (sHelperName)
+             .append ("(int state")
+             .append (aParams)
+             .append (", int kind)\n");
+      aHelper.append ("{\n");
+      aHelper.append ("   switch(state)\n");
+      aHelper.append ("   {\n");
+      aHelper.append (MethodSplitterJava.unindent (aGroup.getCode (), 9));
+      aHelper.append ("      ").append (sDefault).append ('\n');
+      aHelper.append ("   }\n");
+      aHelper.append ("   return kind;\n");
+      aHelper.append ("}\n");
+      aHelpers.add (aHelper.toString ());
+    }
+    aSB.append (sTail);
+
+    if (Options.isPackedTables ())
+      aTables.add (PackedTableJava.intTable ("static final int[] " + sTableName, aGroupOfState));
+    else
+    {
+      final StringBuilder aTable = new StringBuilder ();
+      aTable.append ("static final int[] ").append (sTableName).append (" = {");
+      for (int i = 0; i < aGroupOfState.length; i++)
+      {
+        if (i % 16 == 0)
+          aTable.append ("\n   ");
+        aTable.append (aGroupOfState[i]).append (", ");
+      }
+      aTable.append ("\n};\n");
+      aTables.add (aTable.toString ());
+    }
+    return aSB.toString ();
+  }
+
   public static void dumpStatesForStateCPP (final CodeGenerator codeGenerator)
   {
     if (s_statesForState == null)
@@ -3632,6 +3814,10 @@ public class NfaState
     s_jjCheckNAddStatesDualNeeded = false;
     s_kinds = null;
     s_statesForState = null;
+    s_initialStates.clear ();
+    s_statesForLexicalState.clear ();
+    s_nfaStateOffset.clear ();
+    s_matchAnyChar.clear ();
   }
 
   private static final Map <Integer, NfaState> s_initialStates = new HashMap <> ();
@@ -3680,6 +3866,8 @@ public class NfaState
   {
     NfaState [] cleanStates;
     final List <NfaState> cleanStateList = new ArrayList <> ();
+    // The composite states are still named relative to their lexical state
+    final Map <NfaState, Integer> compositeOffsets = new IdentityHashMap <> ();
     for (final int l : s_statesForLexicalState.keySet ())
     {
       final int offset = s_nfaStateOffset.get (l);
@@ -3687,6 +3875,7 @@ public class NfaState
       for (int i = 0; i < states.size (); i++)
       {
         final NfaState state = states.get (i);
+        compositeOffsets.put (state, Integer.valueOf (offset));
         if (state.m_stateName == -1)
           continue;
         states.get (i).m_stateName += offset;
@@ -3717,8 +3906,10 @@ public class NfaState
       final SortedSet <Integer> composite = new TreeSet <> ();
       if (s.m_isComposite)
       {
+        final int offset = compositeOffsets.get (s).intValue ();
         for (final int c : s.m_compositeStates)
-          composite.add (c);
+          if (c != -1)
+            composite.add (c + offset);
       }
       tokenizerData.addNfaState (s.m_stateName, chars, nextStates, composite, s.m_kindToPrint);
     }
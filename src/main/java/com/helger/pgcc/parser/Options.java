@@ -147,6 +147,17 @@ public class Options
   public static final String USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC = "SUPPORT_CLASS_VISIBILITY_PUBLIC";
   public static final String USEROPTION__OUTPUT_DIRECTORY = "OUTPUT_DIRECTORY";
   public static final String USEROPTION__KEEP_LINE_COLUMN = "KEEP_LINE_COLUMN";
+  public static final String USEROPTION__LAZY_LINE_COLUMN = "LAZY_LINE_COLUMN";
+  public static final String USEROPTION__LAZY_TOKEN_IMAGE = "LAZY_TOKEN_IMAGE";
+  public static final String USEROPTION__MAPPED_FILE_CHAR_STREAM = "MAPPED_FILE_CHAR_STREAM";
+  public static final String USEROPTION__UTF8_BYTE_CHAR_STREAM = "UTF8_BYTE_CHAR_STREAM";
+  public static final String USEROPTION__MEMOIZE_LOOKAHEAD = "MEMOIZE_LOOKAHEAD";
+  public static final String USEROPTION__FIXED_LOOKAHEAD_SWITCH = "FIXED_LOOKAHEAD_SWITCH";
+  public static final String USEROPTION__LAZY_ERROR_REPORTING = "LAZY_ERROR_REPORTING";
+  public static final String USEROPTION__LAZY_EXCEPTIONS = "LAZY_EXCEPTIONS";
+  public static final String USEROPTION__THREAD_LOCAL_PARSER = "THREAD_LOCAL_PARSER";
+  public static final String USEROPTION__PACKED_TABLES = "PACKED_TABLES";
+  public static final String USEROPTION__INCREMENTAL_LEXING = "INCREMENTAL_LEXING";
   public static final String USEROPTION__GRAMMAR_ENCODING = "GRAMMAR_ENCODING";
   public static final String USEROPTION__OUTPUT_ENCODING = "OUTPUT_ENCODING";
   public static final String USEROPTION__TOKEN_FACTORY = "TOKEN_FACTORY";
@@ -216,6 +227,17 @@ public class Options
     temp.add (new OptionInfo (USEROPTION__COMMON_TOKEN_ACTION, EOptionType.BOOLEAN, Boolean.FALSE));
     temp.add (new OptionInfo (USEROPTION__CACHE_TOKENS, EOptionType.BOOLEAN, Boolean.FALSE));
     temp.add (new OptionInfo (USEROPTION__KEEP_LINE_COLUMN, EOptionType.BOOLEAN, Boolean.TRUE));
+    temp.add (new OptionInfo (USEROPTION__LAZY_LINE_COLUMN, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__LAZY_TOKEN_IMAGE, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__MAPPED_FILE_CHAR_STREAM, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__UTF8_BYTE_CHAR_STREAM, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__MEMOIZE_LOOKAHEAD, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__FIXED_LOOKAHEAD_SWITCH, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__LAZY_ERROR_REPORTING, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__LAZY_EXCEPTIONS, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__THREAD_LOCAL_PARSER, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__PACKED_TABLES, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__INCREMENTAL_LEXING, EOptionType.BOOLEAN, Boolean.FALSE));
 
     temp.add (new OptionInfo (USEROPTION__GENERATE_BOILERPLATE, EOptionType.BOOLEAN, Boolean.TRUE));
 
@@ -667,6 +689,69 @@ public class Options
       }
       s_optionValues.put (USEROPTION__DEBUG_PARSER, Boolean.TRUE);
     }
+
+    if (isLazyTokenImage () && isJavaUserCharStream ())
+    {
+      JavaCCErrors.warning ("True setting of option USER_CHAR_STREAM overrides " +
+                            "true setting of option LAZY_TOKEN_IMAGE.");
+      s_optionValues.put (USEROPTION__LAZY_TOKEN_IMAGE, Boolean.FALSE);
+    }
+
+    if (isLazyTokenImage () && isUtf8ByteCharStream ())
+    {
+      JavaCCErrors.warning ("True setting of option UTF8_BYTE_CHAR_STREAM overrides " +
+                            "true setting of option LAZY_TOKEN_IMAGE.");
+      s_optionValues.put (USEROPTION__LAZY_TOKEN_IMAGE, Boolean.FALSE);
+    }
+
+    if (isMappedFileCharStream () && isJavaUserCharStream ())
+    {
+      JavaCCErrors.warning ("True setting of option USER_CHAR_STREAM overrides " +
+                            "true setting of option MAPPED_FILE_CHAR_STREAM.");
+      s_optionValues.put (USEROPTION__MAPPED_FILE_CHAR_STREAM, Boolean.FALSE);
+    }
+
+    if (isMemoizeLookahead () && hasDepthLimit ())
+    {
+      JavaCCErrors.warning ("Setting of option DEPTH_LIMIT overrides " +
+                            "true setting of option MEMOIZE_LOOKAHEAD.");
+      s_optionValues.put (USEROPTION__MEMOIZE_LOOKAHEAD, Boolean.FALSE);
+    }
+
+    if (isFixedLookaheadSwitch () && hasDepthLimit ())
+    {
+      JavaCCErrors.warning ("Setting of option DEPTH_LIMIT overrides " +
+                            "true setting of option FIXED_LOOKAHEAD_SWITCH.");
+      s_optionValues.put (USEROPTION__FIXED_LOOKAHEAD_SWITCH, Boolean.FALSE);
+    }
+
+    if (isFixedLookaheadSwitch () && isDebugLookahead ())
+    {
+      JavaCCErrors.warning ("True setting of option DEBUG_LOOKAHEAD overrides " +
+                            "true setting of option FIXED_LOOKAHEAD_SWITCH.");
+      s_optionValues.put (USEROPTION__FIXED_LOOKAHEAD_SWITCH, Boolean.FALSE);
+    }
+
+    if (isLazyErrorReporting () && !isErrorReporting ())
+    {
+      JavaCCErrors.warning ("False setting of option ERROR_REPORTING overrides " +
+                            "true setting of option LAZY_ERROR_REPORTING.");
+      s_optionValues.put (USEROPTION__LAZY_ERROR_REPORTING, Boolean.FALSE);
+    }
+
+    if (isLazyErrorReporting () && getOutputLanguage ().isJava ())
+    {
+      JavaCCErrors.warning ("Option LAZY_ERROR_REPORTING keeps all tokens since the parser was " +
+                            "created or reinitialised in memory, and a parse error parses them " +
+                            "all again. Call ReInit for each input.");
+    }
+
+    if (isIncrementalLexing () && isJavaUnicodeEscape ())
+    {
+      JavaCCErrors.warning ("True setting of option JAVA_UNICODE_ESCAPE overrides " +
+                            "true setting of option INCREMENTAL_LEXING.");
+      s_optionValues.put (USEROPTION__INCREMENTAL_LEXING, Boolean.FALSE);
+    }
   }
 
   /**
@@ -889,6 +974,143 @@ public class Options
     return booleanValue (USEROPTION__KEEP_LINE_COLUMN);
   }
 
+  /**
+   * Find the lazy line column value. Only relevant if the line and column
+   * numbers are kept at all.
+   *
+   * @return The requested lazy line column value.
+   */
+  public static boolean isLazyLineColumn ()
+  {
+    return booleanValue (USEROPTION__LAZY_LINE_COLUMN);
+  }
+
+  /**
+   * Find the lazy token image value. If true, tokens refer to the chars of
+   * their image in the char stream buffer and only create the String on
+   * demand.
+   *
+   * @return The requested lazy token image value.
+   */
+  public static boolean isLazyTokenImage ()
+  {
+    return booleanValue (USEROPTION__LAZY_TOKEN_IMAGE);
+  }
+
+  /**
+   * Find the mapped file char stream value. If true, a char stream reading
+   * memory mapped files is generated in addition to the regular one.
+   *
+   * @return The requested mapped file char stream value.
+   */
+  public static boolean isMappedFileCharStream ()
+  {
+    return booleanValue (USEROPTION__MAPPED_FILE_CHAR_STREAM);
+  }
+
+  /**
+   * Find the UTF-8 byte char stream value. If true, a char stream reading UTF-8
+   * encoded bytes is generated in addition to the regular one, and the token
+   * manager accepts any CharStream.
+   *
+   * @return The requested UTF-8 byte char stream value.
+   */
+  public static boolean isUtf8ByteCharStream ()
+  {
+    return booleanValue (USEROPTION__UTF8_BYTE_CHAR_STREAM);
+  }
+
+  /**
+   * Find the memoize lookahead value. If true, the results of the syntactic
+   * lookahead routines of each production are remembered per token position,
+   * so that no production is scanned twice at the same position.
+   *
+   * @return The requested memoize lookahead value.
+   */
+  public static boolean isMemoizeLookahead ()
+  {
+    return booleanValue (USEROPTION__MEMOIZE_LOOKAHEAD);
+  }
+
+  /**
+   * Find the fixed lookahead switch value. If true, a syntactic lookahead of a
+   * fixed number of tokens is decided by switching over the kinds of the next
+   * tokens instead of scanning, wherever the token kinds alone decide it.
+   *
+   * @return The requested fixed lookahead switch value.
+   */
+  public static boolean isFixedLookaheadSwitch ()
+  {
+    return booleanValue (USEROPTION__FIXED_LOOKAHEAD_SWITCH);
+  }
+
+  /**
+   * Find the lazy error reporting value. If true, the parser does no error
+   * reporting bookkeeping while parsing. Only on an error, the tokens are
+   * parsed again without the actions to work out the expected tokens. The
+   * parser keeps all tokens since (Re)Init for that, so memory use and the
+   * cost of an error grow with the input read since then.
+   *
+   * @return The requested lazy error reporting value.
+   */
+  public static boolean isLazyErrorReporting ()
+  {
+    return booleanValue (USEROPTION__LAZY_ERROR_REPORTING);
+  }
+
+  /**
+   * Find the lazy exceptions value. If true, the ParseException and
+   * TokenMgrError classes do not fill in a stack trace. The exceptions thrown
+   * by the generated parser and token manager only keep the raw error details
+   * and build their message when it is asked for.
+   *
+   * @return The requested lazy exceptions value.
+   */
+  public static boolean isLazyExceptions ()
+  {
+    return booleanValue (USEROPTION__LAZY_EXCEPTIONS);
+  }
+
+  /**
+   * Find the thread local parser value. If true, the parser class gets a static
+   * <code>getThreadParser</code> method that hands out one parser per thread,
+   * together with its token manager and char stream, reinitialised for each new
+   * input instead of being created again. The parser lives as long as its
+   * thread unless <code>removeThreadParser</code> is called.
+   *
+   * @return The requested thread local parser value.
+   */
+  public static boolean isThreadLocalParser ()
+  {
+    return booleanValue (USEROPTION__THREAD_LOCAL_PARSER);
+  }
+
+  /**
+   * Find the packed tables value. If true, the static tables of the generated
+   * token manager and parser are stored in string constants that are decoded
+   * once when the class is initialized, instead of array initializers.
+   *
+   * @return The requested packed tables value.
+   */
+  public static boolean isPackedTables ()
+  {
+    return booleanValue (USEROPTION__PACKED_TABLES);
+  }
+
+  /**
+   * Find the incremental lexing value. If true, the generated token manager
+   * records a checkpoint of offset and lexical state for every token and can
+   * re-lex an edited text from the checkpoint before the edit until the
+   * tokens re-synchronize with the old ones. A parser constructed or
+   * re-initialized with such a token manager parses the tokens it holds.
+   *
+   * @return The requested incremental lexing value.
+   */
+  public static boolean isIncrementalLexing ()
+  {
+    return booleanValue (USEROPTION__INCREMENTAL_LEXING);
+  }
+
   /**
    * Find the JDK version.
    *
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Emits static tables of generated Java classes as string constants that are
+ * decoded once when the class is initialized. An array initializer needs
+ * several bytecodes per element in the static initializer, whereas a string
+ * constant is a single entry in the constant pool.<br>
+ * Numbers are stored plus one in groups of 15 bits, the lowest group first.
+ * The top bit of a char tells that another group of the same number follows,
+ * so small numbers including -1 need a single char.
+ */
+final class PackedTableJava
+{
+  // Keeps every string constant well below the 64K class file limit, even if
+  // each char needs 3 bytes in modified UTF-8.
+  static final int MAX_STRING_CONSTANT_LENGTH = 16000;
+
+  private static final int GROUP_BITS = 15;
+  private static final int GROUP_MASK = (1 << GROUP_BITS) - 1;
+  private static final int MORE_GROUPS = 1 << GROUP_BITS;
+
+  private PackedTableJava ()
+  {}
+
+  /**
+   * @param aData
+   *        The numbers to pack.
+   * @return The packed numbers as decoded by <code>jjUnpackInts</code>.
+   */
+  @Nonnull
+  static String packInts (@Nonnull final int [] aData)
+  {
+    final StringBuilder aSB = new StringBuilder (aData.length);
+    for (final int nValue : aData)
+    {
+      int nRest = nValue + 1;
+      while ((nRest & ~GROUP_MASK) != 0)
+      {
+        aSB.append ((char) (MORE_GROUPS | (nRest & GROUP_MASK)));
+        nRest >>>= GROUP_BITS;
+      }
+      aSB.append ((char) nRest);
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * @param aData
+   *        The numbers to pack.
+   * @return The packed numbers as decoded by <code>jjUnpackLongs</code>.
+   */
+  @Nonnull
+  static String packLongs (@Nonnull final long [] aData)
+  {
+    final StringBuilder aSB = new StringBuilder (aData.length);
+    for (final long nValue : aData)
+    {
+      long nRest = nValue + 1;
+      while ((nRest & ~GROUP_MASK) != 0)
+      {
+        aSB.append ((char) (MORE_GROUPS | (nRest & GROUP_MASK)));
+        nRest >>>= GROUP_BITS;
+      }
+      aSB.append ((char) nRest);
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * Create the assignment of a field or variable from a decoder call.
+   *
+   * @param sTarget
+   *        The field declaration or variable to assign, e.g.
+   *        <code>static final int[] jjnextStates</code>.
+   * @param sDecoder
+   *        Name of the decoding method.
+   * @param sPacked
+   *        The packed table.
+   * @param sSizes
+   *        The size arguments of the decoding method.
+   * @return The Java code including a trailing newline.
+   */
+  @Nonnull
+  static String unpackCall (@Nonnull final String sTarget,
+                            @Nonnull final String sDecoder,
+                            @Nonnull final String sPacked,
+                            @Nonnull final String sSizes)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    aSB.append (sTarget).append (" = ").append (sDecoder).append ("(new String[] {\n");
+    for (int nStart = 0; nStart < sPacked.length (); nStart += MAX_STRING_CONSTANT_LENGTH)
+    {
+      final int nEnd = Math.min (sPacked.length (), nStart + MAX_STRING_CONSTANT_LENGTH);
+      aSB.append ("  \"");
+      int nLineLength = 0;
+      for (int i = nStart; i < nEnd; i++)
+      {
+        final String sEscaped = _escape (sPacked.charAt (i));
+        if (nLineLength + sEscaped.length () > 72)
+        {
+          aSB.append ("\" +\n  \"");
+          nLineLength = 0;
+        }
+        aSB.append (sEscaped);
+        nLineLength += sEscaped.length ();
+      }
+      aSB.append ("\",\n");
+    }
+    aSB.append ("}, ").append (sSizes).append (");\n");
+    return aSB.toString ();
+  }
+
+  /**
+   * @param sTarget
+   *        The field declaration or variable to assign.
+   * @param aData
+   *        The table content.
+   * @return The Java code assigning the table decoded by
+   *         <code>jjUnpackInts</code>.
+   */
+  @Nonnull
+  static String intTable (@Nonnull final String sTarget, @Nonnull final int [] aData)
+  {
+    return unpackCall (sTarget, "jjUnpackInts", packInts (aData), Integer.toString (aData.length));
+  }
+
+  /**
+   * @param sTarget
+   *        The field declaration or variable to assign.
+   * @param aData
+   *        The table content.
+   * @return The Java code assigning the table decoded by
+   *         <code>jjUnpackLongs</code>.
+   */
+  @Nonnull
+  static String longTable (@Nonnull final String sTarget, @Nonnull final long [] aData)
+  {
+    return unpackCall (sTarget, "jjUnpackLongs", packLongs (aData), Integer.toString (aData.length));
+  }
+
+  /**
+   * @param sTarget
+   *        The field declaration or variable to assign.
+   * @param aRows
+   *        The table content.
+   * @return The Java code assigning the table decoded by
+   *         <code>jjUnpackIntRows</code>. Each row is stored as its length
+   *         followed by its elements.
+   */
+  @Nonnull
+  static String intRowsTable (@Nonnull final String sTarget, @Nonnull final int [] [] aRows)
+  {
+    int nSize = aRows.length;
+    for (final int [] aRow : aRows)
+      nSize += aRow.length;
+    final int [] aData = new int [nSize];
+    int n = 0;
+    for (final int [] aRow : aRows)
+    {
+      aData[n++] = aRow.length;
+      System.arraycopy (aRow, 0, aData, n, aRow.length);
+      n += aRow.length;
+    }
+    return unpackCall (sTarget, "jjUnpackIntRows", packInts (aData), aRows.length + ", " + nSize);
+  }
+
+  /**
+   * Emit the decoding methods of the packed tables.
+   *
+   * @param aCodeGenerator
+   *        Code generator to write to.
+   * @param bInts
+   *        <code>true</code> to emit <code>jjUnpackInts</code>
+   * @param bLongs
+   *        <code>true</code> to emit <code>jjUnpackLongs</code>
+   * @param bIntRows
+   *        <code>true</code> to emit <code>jjUnpackIntRows</code>, which
+   *        requires <code>jjUnpackInts</code>
+   */
+  static void genDecoders (@Nonnull final CodeGenerator aCodeGenerator,
+                           final boolean bInts,
+                           final boolean bLongs,
+                           final boolean bIntRows)
+  {
+    if (bInts)
+      _genDecoder (aCodeGenerator, "int", "jjUnpackInts", "(c & 0x7fff) << shift");
+    if (bLongs)
+      _genDecoder (aCodeGenerator, "long", "jjUnpackLongs", "(long) (c & 0x7fff) << shift");
+    if (bIntRows)
+    {
+      aCodeGenerator.genCodeLine ("private static int[][] jjUnpackIntRows(final String[] packed, final int rows, final int size)");
+      aCodeGenerator.genCodeLine ("{");
+      aCodeGenerator.genCodeLine ("   // Each row is stored as its length followed by its elements");
+      aCodeGenerator.genCodeLine ("   final int[] data = jjUnpackInts(packed, size);");
+      aCodeGenerator.genCodeLine ("   final int[][] result = new int[rows][];");
+      aCodeGenerator.genCodeLine ("   int n = 0;");
+      aCodeGenerator.genCodeLine ("   for (int i = 0; i < rows; i++)");
+      aCodeGenerator.genCodeLine ("   {");
+      aCodeGenerator.genCodeLine ("      result[i] = new int[data[n++]];");
+      aCodeGenerator.genCodeLine ("      System.arraycopy(data, n, result[i], 0, result[i].length);");
+      aCodeGenerator.genCodeLine ("      n += result[i].length;");
+      aCodeGenerator.genCodeLine ("   }");
+      aCodeGenerator.genCodeLine ("   return result;");
+      aCodeGenerator.genCodeLine ("}");
+    }
+  }
+
+  private static void _genDecoder (final CodeGenerator aCodeGenerator,
+                                   final String sType,
+                                   final String sName,
+                                   final String sGroup)
+  {
+    aCodeGenerator.genCodeLine ("private static " + sType + "[] " + sName + "(final String[] packed, final int size)");
+    aCodeGenerator.genCodeLine ("{");
+    aCodeGenerator.genCodeLine ("   // Each value plus one in groups of 15 bits, the lowest group first. The");
+    aCodeGenerator.genCodeLine ("   // top bit of a char tells that another group of the value follows.");
+    aCodeGenerator.genCodeLine ("   final " + sType + "[] result = new " + sType + "[size];");
+    aCodeGenerator.genCodeLine ("   int n = 0;");
+    aCodeGenerator.genCodeLine ("   " + sType + " value = 0;");
+    aCodeGenerator.genCodeLine ("   int shift = 0;");
+    aCodeGenerator.genCodeLine ("   for (final String s : packed)");
+    aCodeGenerator.genCodeLine ("   {");
+    aCodeGenerator.genCodeLine ("      for (int i = 0; i < s.length(); i++)");
+    aCodeGenerator.genCodeLine ("      {");
+    aCodeGenerator.genCodeLine ("         final int c = s.charAt(i);");
+    aCodeGenerator.genCodeLine ("         value |= " + sGroup + ";");
+    aCodeGenerator.genCodeLine ("         if ((c & 0x8000) != 0)");
+    aCodeGenerator.genCodeLine ("            shift += 15;");
+    aCodeGenerator.genCodeLine ("         else");
+    aCodeGenerator.genCodeLine ("         {");
+    aCodeGenerator.genCodeLine ("            result[n++] = value - 1;");
+    aCodeGenerator.genCodeLine ("            value = 0;");
+    aCodeGenerator.genCodeLine ("            shift = 0;");
+    aCodeGenerator.genCodeLine ("         }");
+    aCodeGenerator.genCodeLine ("      }");
+    aCodeGenerator.genCodeLine ("   }");
+    aCodeGenerator.genCodeLine ("   return result;");
+    aCodeGenerator.genCodeLine ("}");
+  }
+
+  @Nonnull
+  private static String _escape (final char c)
+  {
+    if (c == '"' || c == '\\')
+      return "\\" + c;
+    if (c >= 0x20 && c < 0x7f)
+      return Character.toString (c);
+    if (c <= 0xff)
+    {
+      // Always 3 digits so that a following digit is not consumed
+      final String octal = Integer.toOctalString (c);
+      return "\\" + "000".substring (octal.length ()) + octal;
+    }
+    final String hex = Integer.toHexString (c);
+    return "\\u" + "0000".substring (hex.length ()) + hex;
+  }
+}
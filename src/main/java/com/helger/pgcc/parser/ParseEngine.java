@@ -67,23 +67,29 @@ import static com.helger.pgcc.parser.JavaCCGlobals.s_bnfproductions;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_ccol;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cline;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_name;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_failLookaheads;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_failMaskIndices;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_jj2index;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_lookaheadNeeded;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_maskVals;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_maskindex;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_memoindex;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_names_of_tokens;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_production_table;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_tokenCount;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 
 import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.string.StringHelper;
 import com.helger.pgcc.PGPrinter;
 import com.helger.pgcc.output.EOutputLanguage;
@@ -94,6 +100,13 @@ public class ParseEngine
   private int m_nGenSymbolIndex = 0;
   private int m_indentamt;
   private boolean m_bJJ2LA;
+  /** Failure index of the choice passed to the next buildLookaheadChecker */
+  private int m_nFailIndex = -1;
+  /**
+   * Whether the routine that parses a production again to find the expected
+   * tokens of an error is generated (LAZY_ERROR_REPORTING)
+   */
+  private boolean m_bTracking;
   private CodeGenerator m_codeGenerator;
 
   /**
@@ -116,6 +129,10 @@ public class ParseEngine
   private final ICommonsList <ExpLookahead> m_phase2list = new CommonsArrayList <> ();
   private final ICommonsList <Phase3Data> m_phase3list = new CommonsArrayList <> ();
   private final ICommonsMap <Expansion, Phase3Data> m_phase3table = new CommonsHashMap <> ();
+  /** Index of each phase 3 routine of a production that is memoized */
+  private final ICommonsMap <Expansion, Integer> m_memoTable = new CommonsHashMap <> ();
+  /** Decision tree of each phase 2 routine that does not need to scan */
+  private final ICommonsMap <ExpLookahead, LookaheadDecisionTree.Node> m_decisionTrees = new CommonsHashMap <> ();
 
   public ParseEngine ()
   {}
@@ -340,6 +357,52 @@ public class ParseEngine
     }
   }
 
+  /**
+   * @return <code>true</code> if the generated parser only works out the
+   *         expected tokens after a choice failed.
+   */
+  static boolean isLazyErrorReporting ()
+  {
+    return Options.isLazyErrorReporting () && Options.getOutputLanguage ().isJava ();
+  }
+
+  /**
+   * @return <code>true</code> if the generated parser scans the syntactic
+   *         lookaheads again to find the expected tokens of an error. With
+   *         LAZY_EXCEPTIONS the expected token kinds are enough.
+   */
+  static boolean isRescanningLookaheads ()
+  {
+    return Options.isErrorReporting () && !(Options.isLazyExceptions () && Options.getOutputLanguage ().isJava ());
+  }
+
+  /**
+   * @return <code>true</code> if each call of a phase 2 routine is saved for
+   *         the rescan.
+   */
+  private static boolean _isSavingLookaheads ()
+  {
+    return isRescanningLookaheads () && !isLazyErrorReporting ();
+  }
+
+  /**
+   * Record the choice point with the current mask index. Unless error reporting
+   * is lazy, the generated parser remembers that the choice point was passed.
+   * Otherwise it is only remembered in the choice, whose failure is reported
+   * with the index <code>nFailIndex</code>, and in the tracking routines.
+   */
+  private String _genChoicePoint (final int nFailIndex)
+  {
+    String retval = "";
+    if (!isLazyErrorReporting () || m_bTracking)
+      retval = "\njj_la1[" + s_maskindex + "] = jj_gen;";
+    else
+      if (nFailIndex >= 0)
+        s_failMaskIndices.get (nFailIndex).add (Integer.valueOf (s_maskindex));
+    s_maskindex++;
+    return retval;
+  }
+
   /**
    * This method takes two parameters - an array of Lookahead's "conds", and an
    * array of String's "actions". "actions" contains exactly one element more
@@ -353,6 +416,8 @@ public class ParseEngine
    */
   String buildLookaheadChecker (final ExpLookahead [] conds, final String [] actions)
   {
+    final int nFailIndex = m_nFailIndex;
+    m_nFailIndex = -1;
     // The state variables.
     EState state = EState.NOOPENSTM;
     int indentAmt = 0;
@@ -408,10 +473,7 @@ public class ParseEngine
           case OPENSWITCH:
             retval += INDENT_DEC + "\n" + "default:" + INDENT_INC;
             if (Options.isErrorReporting ())
-            {
-              retval += "\njj_la1[" + s_maskindex + "] = jj_gen;";
-              s_maskindex++;
-            }
+              retval += _genChoicePoint (nFailIndex);
             s_maskVals.add (tokenMask);
             retval += "\n" + "if (";
             indentAmt++;
@@ -540,10 +602,7 @@ public class ParseEngine
           case OPENSWITCH:
             retval += INDENT_DEC + "\ndefault:" + INDENT_INC;
             if (Options.isErrorReporting ())
-            {
-              retval += "\njj_la1[" + s_maskindex + "] = jj_gen;";
-              s_maskindex++;
-            }
+              retval += _genChoicePoint (nFailIndex);
             s_maskVals.add (tokenMask);
             retval += "\nif (";
             indentAmt++;
@@ -551,12 +610,26 @@ public class ParseEngine
           default:
             throw new IllegalStateException ();
         }
-        s_jj2index++;
-        // At this point, la.la_expansion.internal_name must be "".
-        assert la.getLaExpansion ().getInternalName ().equals ("");
-        la.getLaExpansion ().setInternalName ("_", s_jj2index);
-        m_phase2list.add (la);
-        retval += "jj_2" + la.getLaExpansion ().getInternalName () + "(" + la.getAmount () + ")";
+        if (m_bTracking)
+        {
+          // The lookahead was numbered by the production routine
+          if (isRescanningLookaheads ())
+            retval += "jj_track_2";
+          else
+            retval += "jj_2";
+        }
+        else
+        {
+          s_jj2index++;
+          // At this point, la.la_expansion.internal_name must be "".
+          assert la.getLaExpansion ().getInternalName ().equals ("");
+          la.getLaExpansion ().setInternalName ("_", s_jj2index);
+          m_phase2list.add (la);
+          if (nFailIndex >= 0)
+            s_failLookaheads.get (nFailIndex).add (la);
+          retval += "jj_2";
+        }
+        retval += la.getLaExpansion ().getInternalName () + "(" + la.getAmount () + ")";
         if (la.getActionTokens ().size () != 0)
         {
           // In addition, there is also a semantic lookahead. So concatenate
@@ -594,9 +667,8 @@ public class ParseEngine
         retval += INDENT_DEC + "\n" + "default:" + INDENT_INC;
         if (Options.isErrorReporting ())
         {
-          retval += "\njj_la1[" + s_maskindex + "] = jj_gen;";
           s_maskVals.add (tokenMask);
-          s_maskindex++;
+          retval += _genChoicePoint (nFailIndex);
         }
         retval += actions[index];
         break;
@@ -1034,6 +1106,119 @@ public class ParseEngine
     m_codeGenerator.genCodeNewLine ();
   }
 
+  /**
+   * Generate the routine that parses production <code>p</code> again for the
+   * expected tokens of an error (LAZY_ERROR_REPORTING). It leaves out the
+   * actions, but remembers the choice points and lookaheads like the production
+   * routine does without LAZY_ERROR_REPORTING. <code>nMaskIndex</code> is the
+   * first mask index of the production routine. If the production cannot be
+   * parsed without its actions, the routine gives up.
+   */
+  private void _buildTrackingRoutine (final NormalProduction p, final int nMaskIndex)
+  {
+    m_codeGenerator.genCode ("  private void jj_track_" + p.getLhs () + "() {");
+    if (!(p instanceof BNFProduction) || _isLookaheadUsingLocals ((BNFProduction) p))
+    {
+      m_codeGenerator.genCodeNewLine ();
+      m_codeGenerator.genCodeLine ("    throw jj_track_stop;");
+    }
+    else
+    {
+      // The same mask indices as in the production routine
+      final int nEndMaskIndex = s_maskindex;
+      final int nMaskVals = s_maskVals.size ();
+      s_maskindex = nMaskIndex;
+      m_bTracking = true;
+      m_indentamt = 4;
+      dumpFormattedString (_phase1ExpansionGen (p.getExpansion ()));
+      m_bTracking = false;
+      m_codeGenerator.genCodeNewLine ();
+      assert s_maskindex == nEndMaskIndex;
+      s_maskVals.subList (nMaskVals, s_maskVals.size ()).clear ();
+    }
+    m_codeGenerator.genCodeLine ("  }");
+    m_codeGenerator.genCodeNewLine ();
+  }
+
+  /**
+   * Add the names declared in the Java code <code>tokens</code> to
+   * <code>names</code>: an identifier after a type and before "=", ";", ",",
+   * ")" or ":".
+   */
+  private static void _addDeclaredNames (final List <Token> tokens, final ICommonsSet <String> names)
+  {
+    for (int i = 1; i < tokens.size () - 1; i++)
+      if (tokens.get (i).kind == JavaCCParserConstants.IDENTIFIER)
+      {
+        switch (tokens.get (i - 1).kind)
+        {
+          case JavaCCParserConstants.IDENTIFIER:
+          case JavaCCParserConstants.GT:
+          case JavaCCParserConstants.RBRACKET:
+          case JavaCCParserConstants.BOOLEAN:
+          case JavaCCParserConstants.BYTE:
+          case JavaCCParserConstants.CHAR:
+          case JavaCCParserConstants.SHORT:
+          case JavaCCParserConstants.INT:
+          case JavaCCParserConstants.LONG:
+          case JavaCCParserConstants.FLOAT:
+          case JavaCCParserConstants.DOUBLE:
+            switch (tokens.get (i + 1).kind)
+            {
+              case JavaCCParserConstants.ASSIGN:
+              case JavaCCParserConstants.SEMICOLON:
+              case JavaCCParserConstants.COMMA:
+              case JavaCCParserConstants.RPAREN:
+              case JavaCCParserConstants.COLON:
+                names.add (tokens.get (i).image);
+                break;
+              default:
+                break;
+            }
+            break;
+          default:
+            break;
+        }
+      }
+  }
+
+  /**
+   * @return <code>true</code> if a semantic lookahead of production
+   *         <code>p</code> may use a parameter or local variable, which the
+   *         tracking routine does not have.
+   */
+  private static boolean _isLookaheadUsingLocals (final BNFProduction p)
+  {
+    final ICommonsSet <String> aLocals = new CommonsHashSet <> ();
+    final ICommonsList <List <Token>> aLookaheads = new CommonsArrayList <> ();
+    // The last parameter is followed by nothing
+    final ICommonsList <Token> aParams = new CommonsArrayList <> (p.getParameterListTokens ());
+    aParams.add (new Token (JavaCCParserConstants.RPAREN, ")"));
+    _addDeclaredNames (aParams, aLocals);
+    _addDeclaredNames (p.getDeclarationTokens (), aLocals);
+    ExpansionTreeWalker.preOrderWalk (p.getExpansion (), new ITreeWalkerOperation ()
+    {
+      public boolean goDeeper (final Expansion e)
+      {
+        return true;
+      }
+
+      public void action (final Expansion e)
+      {
+        if (e instanceof ExpAction)
+          _addDeclaredNames (((ExpAction) e).getActionTokens (), aLocals);
+        else
+          if (e instanceof ExpLookahead)
+            aLookaheads.add (((ExpLookahead) e).getActionTokens ());
+      }
+    });
+    for (final List <Token> aTokens : aLookaheads)
+      for (final Token aToken : aTokens)
+        if (aToken.kind == JavaCCParserConstants.IDENTIFIER && aLocals.contains (aToken.image))
+          return true;
+    return false;
+  }
+
   void phase1NewLine ()
   {
     m_codeGenerator.genCodeNewLine ();
@@ -1051,6 +1236,11 @@ public class ParseEngine
     {
       final AbstractExpRegularExpression e_nrw = (AbstractExpRegularExpression) e;
       retval += "\n";
+      if (m_bTracking)
+      {
+        final String label = e_nrw.m_label.length () != 0 ? e_nrw.m_label : _getTokenLabel (e_nrw.m_ordinal);
+        return retval + "jj_track_consume_token(" + label + ");";
+      }
       if (e_nrw.m_lhsTokens.size () != 0)
       {
         m_codeGenerator.printTokenSetup (e_nrw.m_lhsTokens.get (0));
@@ -1115,6 +1305,8 @@ public class ParseEngine
       {
         final ExpNonTerminal e_nrw = (ExpNonTerminal) e;
         retval += "\n";
+        if (m_bTracking)
+          return retval + "jj_track_" + e_nrw.getName () + "();";
         if (e_nrw.getLhsTokens ().size () != 0)
         {
           m_codeGenerator.printTokenSetup (e_nrw.getLhsTokens ().get (0));
@@ -1156,6 +1348,9 @@ public class ParseEngine
       else
         if (e instanceof ExpAction)
         {
+          // The actions are not run again when tracking
+          if (m_bTracking)
+            return retval;
           final ExpAction e_nrw = (ExpAction) e;
           retval += INDENT_OFF + "\n";
           if (!Options.booleanValue (Options.USEROPTION__CPP_IGNORE_ACTIONS) && e_nrw.getActionTokens ().size () != 0)
@@ -1179,10 +1374,22 @@ public class ParseEngine
             actions = new String [e_nrw.getChoices ().size () + 1];
 
             String sChoice;
+            int nFailIndex = -1;
             switch (eOutputLanguage)
             {
               case JAVA:
                 sChoice = "\n" + "jj_consume_token(-1);\n" + "throw new ParseException();";
+                if (m_bTracking)
+                  sChoice = "\n" + "jj_track_consume_token(-1);";
+                else
+                  if (Options.isErrorReporting () && isLazyErrorReporting ())
+                  {
+                    // Tell generateParseException which choice failed
+                    nFailIndex = s_failMaskIndices.size ();
+                    s_failMaskIndices.add (new CommonsArrayList <> ());
+                    s_failLookaheads.add (new CommonsArrayList <> ());
+                    sChoice = "\n" + "jj_failed = " + nFailIndex + ";" + sChoice;
+                  }
                 break;
               case CPP:
                 sChoice = "\n" +
@@ -1205,6 +1412,7 @@ public class ParseEngine
               actions[i] = _phase1ExpansionGen (nestedSeq);
               conds[i] = (ExpLookahead) nestedSeq.m_units.get (0);
             }
+            m_nFailIndex = nFailIndex;
             retval = buildLookaheadChecker (conds, actions);
           }
           else
@@ -1410,6 +1618,9 @@ public class ParseEngine
                     {
                       final ExpTryBlock e_nrw = (ExpTryBlock) e;
                       final Expansion nested_e = e_nrw.m_exp;
+                      // The handlers are actions, too
+                      if (m_bTracking)
+                        return _phase1ExpansionGen (nested_e);
                       List <Token> list;
                       retval += "\n";
                       retval += "try {" + INDENT_INC;
@@ -1487,7 +1698,7 @@ public class ParseEngine
     switch (eOutputLanguage)
     {
       case JAVA:
-        m_codeGenerator.genCodeLine ("  private boolean jj_2" + e.getInternalName () + "(int xla)");
+        m_codeGenerator.genCodeLine ("  private boolean jj_" + (m_bTracking ? "track_" : "") + "2" + e.getInternalName () + "(int xla)");
         break;
       case CPP:
         m_codeGenerator.genCodeLine (" inline bool jj_2" + e.getInternalName () + "(int xla)");
@@ -1496,9 +1707,39 @@ public class ParseEngine
         throw new UnsupportedOutputLanguageException (eOutputLanguage);
     }
     m_codeGenerator.genCodeLine (" {");
+    final LookaheadDecisionTree.Node aTree = m_decisionTrees.get (la);
+    if (aTree != null)
+    {
+      m_codeGenerator.genCodeLine ("    Token xt = token;");
+      if (_isSavingLookaheads () || m_bTracking)
+      {
+        // jj_save needs the number of tokens looked at
+        m_codeGenerator.genCodeLine ("    jj_la = xla;");
+        m_codeGenerator.genCodeLine ("    try {");
+        _genDecision (aTree, "      ");
+        m_codeGenerator.genCodeLine ("    }");
+        m_codeGenerator.genCodeLine ("    finally { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
+      }
+      else
+        _genDecision (aTree, "    ");
+      m_codeGenerator.genCodeLine ("  }");
+      m_codeGenerator.genCodeNewLine ();
+      return;
+    }
+    if (m_bTracking)
+    {
+      // The scan leaves the number of tokens looked at in jj_la
+      m_codeGenerator.genCodeLine ("    try { return jj_2" + e.getInternalName () + "(xla); }");
+      m_codeGenerator.genCodeLine ("    finally { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
+      m_codeGenerator.genCodeLine ("  }");
+      m_codeGenerator.genCodeNewLine ();
+      return;
+    }
     m_codeGenerator.genCodeLine ("    jj_la = xla;");
     m_codeGenerator.genCodeLine ("    jj_scanpos = token;");
     m_codeGenerator.genCodeLine ("    jj_lastpos = token;");
+    if (!m_memoTable.isEmpty ())
+      m_codeGenerator.genCodeLine ("    jj_memo_begin(xla);");
 
     String ret_suffix = "";
     if (Options.hasDepthLimit ())
@@ -1509,8 +1750,8 @@ public class ParseEngine
     switch (eOutputLanguage)
     {
       case JAVA:
-        m_codeGenerator.genCodeLine ("    try { return (!jj_3" + e.getInternalName () + "()" + ret_suffix + "); }");
-        m_codeGenerator.genCodeLine ("    catch(LookaheadSuccess ls) { return true; }");
+        m_codeGenerator.genCodeLine ("    jj_done = false;");
+        m_codeGenerator.genCodeLine ("    try { return (!jj_3" + e.getInternalName () + "()" + ret_suffix + ") || jj_done; }");
         break;
       case CPP:
         m_codeGenerator.genCodeLine ("    jj_done = false;");
@@ -1519,25 +1760,80 @@ public class ParseEngine
       default:
         throw new UnsupportedOutputLanguageException (eOutputLanguage);
     }
-    if (Options.isErrorReporting ())
+    switch (eOutputLanguage)
     {
-      switch (eOutputLanguage)
+      case JAVA:
       {
-        case JAVA:
-          m_codeGenerator.genCodeLine ("    finally { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
-          break;
-        case CPP:
-          m_codeGenerator.genCodeLine (" { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
-          break;
-        default:
-          throw new UnsupportedOutputLanguageException (eOutputLanguage);
+        // Release the scanned tokens, so that they can be collected once they
+        // are consumed
+        String sFinally = "jj_scanpos = jj_lastpos = null; }";
+        if (!m_memoTable.isEmpty ())
+          sFinally = "jj_memo_end(); " + sFinally;
+        if (_isSavingLookaheads ())
+          sFinally = "jj_save(" + (e.getInternalIndex () - 1) + ", xla); " + sFinally;
+        m_codeGenerator.genCodeLine ("    finally { " + sFinally);
+        break;
       }
+      case CPP:
+        if (Options.isErrorReporting ())
+          m_codeGenerator.genCodeLine (" { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
+        break;
+      default:
+        throw new UnsupportedOutputLanguageException (eOutputLanguage);
     }
     m_codeGenerator.genCodeLine ("  }");
     m_codeGenerator.genCodeNewLine ();
-    final Phase3Data p3d = new Phase3Data (e, la.getAmount ());
-    m_phase3list.add (p3d);
-    m_phase3table.put (e, p3d);
+  }
+
+  private static String _getTokenLabel (final int kind)
+  {
+    final String s = s_names_of_tokens.get (Integer.valueOf (kind));
+    return s != null ? s : Integer.toString (kind);
+  }
+
+  private void _genDecisionCases (final LookaheadDecisionTree.Node node,
+                                  final LookaheadDecisionTree.Node leaf,
+                                  final String indent)
+  {
+    boolean bAny = false;
+    for (final Map.Entry <Integer, LookaheadDecisionTree.Node> aEntry : node.getChildren ().entrySet ())
+      if (aEntry.getValue () == leaf)
+      {
+        m_codeGenerator.genCodeLine (indent + "  case " + _getTokenLabel (aEntry.getKey ().intValue ()) + ":");
+        bAny = true;
+      }
+    if (bAny)
+      _genDecision (leaf, indent + "    ");
+  }
+
+  /**
+   * Generate the nested switch statements that decide a lookahead by the kinds
+   * of the tokens following <code>xt</code>.
+   */
+  private void _genDecision (final LookaheadDecisionTree.Node node, final String indent)
+  {
+    if (node.isLeaf ())
+    {
+      m_codeGenerator.genCodeLine (indent + "return " + (node == LookaheadDecisionTree.Node.ACCEPT) + ";");
+      return;
+    }
+    m_codeGenerator.genCodeLine (indent + "if (xt.next == null) xt.next = token_source.getNextToken();");
+    m_codeGenerator.genCodeLine (indent + "xt = xt.next;");
+    if (_isSavingLookaheads () || m_bTracking)
+      m_codeGenerator.genCodeLine (indent + "jj_la--;");
+    m_codeGenerator.genCodeLine (indent + "switch (xt.kind) {");
+    // Cases that decide right away share their return statement
+    _genDecisionCases (node, LookaheadDecisionTree.Node.ACCEPT, indent);
+    _genDecisionCases (node, LookaheadDecisionTree.Node.REJECT, indent);
+    for (final Map.Entry <Integer, LookaheadDecisionTree.Node> aEntry : node.getChildren ().entrySet ())
+      if (!aEntry.getValue ().isLeaf ())
+      {
+        m_codeGenerator.genCodeLine (indent + "  case " + _getTokenLabel (aEntry.getKey ().intValue ()) + ":");
+        _genDecision (aEntry.getValue (), indent + "    ");
+      }
+    m_codeGenerator.genCodeLine (indent + "  default:");
+    _genDecision (node.getOtherwise (), indent + "    ");
+    m_codeGenerator.genCodeLine (indent + "}");
   }
 
   private boolean m_xsp_declared;
@@ -1706,6 +2002,93 @@ public class ParseEngine
     return "jj_3" + sInternalName + "()";
   }
 
+  /**
+   * Generate the routine that looks up the result of a production scanned at
+   * the current position, and only scans it if it is not remembered yet.
+   *
+   * @param sName
+   *        Name of the phase 3 routine of the production
+   * @param nMemoIndex
+   *        Index of the production in the memo
+   */
+  private void _genMemoRoutine (final String sName, final int nMemoIndex)
+  {
+    final String sType = m_codeGenerator.getOutputLanguage ().getTypeBoolean ();
+    m_codeGenerator.genCodeLine ("  private " + sType + " " + sName + "()");
+    m_codeGenerator.genCodeLine (" {");
+    m_codeGenerator.genCodeLine ("    if (!jj_memoizing) return " + sName + "_scan();");
+    m_codeGenerator.genCodeLine ("    final Token xstart = jj_scanpos;");
+    m_codeGenerator.genCodeLine ("    final int xslot = jj_memo_find(" + nMemoIndex + ", xstart);");
+    m_codeGenerator.genCodeLine ("    if (xslot >= 0) {");
+    m_codeGenerator.genCodeLine ("      if (jj_memo_ends[xslot] == null) return true;");
+    m_codeGenerator.genCodeLine ("      jj_scanpos = jj_memo_ends[xslot];");
+    m_codeGenerator.genCodeLine ("      return false;");
+    m_codeGenerator.genCodeLine ("    }");
+    m_codeGenerator.genCodeLine ("    final " + sType + " xfailed = " + sName + "_scan();");
+    // A lookahead that reached its limit says nothing about the routine
+    m_codeGenerator.genCodeLine ("    if (!jj_done) jj_memo_put(" + nMemoIndex + ", xstart, xfailed ? null : jj_scanpos);");
+    m_codeGenerator.genCodeLine ("    return xfailed;");
+    m_codeGenerator.genCodeLine ("  }");
+    m_codeGenerator.genCodeNewLine ();
+  }
+
+  /**
+   * Check if a phase 3 routine scans a JAVACODE production. As such a
+   * production can't be scanned, the lookahead takes everything up to the
+   * furthest token scanned so far, which depends on the scans before.
+   *
+   * @param e
+   *        Expansion of the phase 3 routine
+   * @return <code>true</code> if a JAVACODE production is scanned
+   */
+  private static boolean _scansCodeProduction (final Expansion e)
+  {
+    if (e instanceof ExpNonTerminal)
+      return s_production_table.get (((ExpNonTerminal) e).getName ()) instanceof AbstractCodeProduction;
+    if (e instanceof ExpSequence)
+    {
+      final ExpSequence e_nrw = (ExpSequence) e;
+      // The first element is the Lookahead object
+      for (int i = 1; i < e_nrw.m_units.size (); i++)
+        if (_scansCodeProduction (e_nrw.m_units.get (i)))
+          return true;
+      return false;
+    }
+    if (e instanceof ExpTryBlock)
+      return _scansCodeProduction (((ExpTryBlock) e).m_exp);
+    return false;
+  }
+
+  /**
+   * Decide which phase 3 routines remember their results, if the option
+   * MEMOIZE_LOOKAHEAD is set. These are the routines of whole productions.
+   */
+  private void _setupMemoTable ()
+  {
+    if (!Options.isMemoizeLookahead () || m_codeGenerator.getOutputLanguage () != EOutputLanguage.JAVA)
+      return;
+
+    for (final Phase3Data inf : m_phase3table.values ())
+      if (_scansCodeProduction (inf.m_exp))
+      {
+        JavaCCErrors.warning ("Option MEMOIZE_LOOKAHEAD is ignored, because a JAVACODE production is part of a syntactic lookahead.");
+        return;
+      }
+
+    // Use the list to get the same indices on every run
+    for (final Phase3Data inf : m_phase3list)
+    {
+      final Expansion e = inf.m_exp;
+      if (e.m_parent instanceof NormalProduction &&
+          !e.getInternalName ().startsWith ("jj_scan_token") &&
+          !m_memoTable.containsKey (e))
+      {
+        m_memoTable.put (e, Integer.valueOf (s_memoindex));
+        s_memoindex++;
+      }
+    }
+  }
+
   void buildPhase3Routine (final Phase3Data inf, final boolean recursive_call)
   {
     final Expansion e = inf.m_exp;
@@ -1719,12 +2102,17 @@ public class ParseEngine
       switch (eOutputLanguage)
       {
         case JAVA:
-          m_codeGenerator.genCodeLine ("  private " +
-                                       eOutputLanguage.getTypeBoolean () +
-                                       " jj_3" +
-                                       e.getInternalName () +
-                                       "()");
+        {
+          String sName = "jj_3" + e.getInternalName ();
+          final Integer aMemoIndex = m_memoTable.get (e);
+          if (aMemoIndex != null)
+          {
+            _genMemoRoutine (sName, aMemoIndex.intValue ());
+            sName += "_scan";
+          }
+          m_codeGenerator.genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " " + sName + "()");
           break;
+        }
         case CPP:
           m_codeGenerator.genCodeLine (" inline bool jj_3" + e.getInternalName () + "()");
           break;
@@ -1733,12 +2121,12 @@ public class ParseEngine
       }
 
       m_codeGenerator.genCodeLine (" {");
+      m_codeGenerator.genCodeLine ("    if (jj_done) return true;");
       switch (eOutputLanguage)
       {
         case JAVA:
           break;
         case CPP:
-          m_codeGenerator.genCodeLine ("    if (jj_done) return true;");
           if (Options.hasDepthLimit ())
             m_codeGenerator.genCodeLine ("#define __ERROR_RET__ true");
           break;
@@ -2281,18 +2669,49 @@ public class ParseEngine
           }
           codeGenerator.genCodeLine ("  }");
           codeGenerator.genCodeNewLine ();
+          if (isLazyErrorReporting ())
+            _buildTrackingRoutine (jp, s_maskindex);
         }
         else
         {
+          final int nStart = codeGenerator.getOutputLength ();
+          final int nMaskIndex = s_maskindex;
           buildPhase1Routine ((BNFProduction) p);
+          if (eOutputLanguage.isJava ())
+          {
+            // User actions share the locals of the method, so it cannot be
+            // split automatically
+            final int nSize = MethodSplitterJava.estimateBytecodeSize (codeGenerator.getOutputSince (nStart));
+            if (nSize > MethodSplitterJava.HUGE_METHOD_LIMIT)
+              JavaCCErrors.warning (p,
+                                    "The method generated for production " +
+                                       p.getLhs () +
+                                       " has about " +
+                                       nSize +
+                                       " bytes of bytecode and will not be JIT compiled. Consider splitting the production.");
+          }
+          if (isLazyErrorReporting ())
+            _buildTrackingRoutine (p, nMaskIndex);
         }
     }
 
     codeGenerator.switchToIncludeFile ();
 
-    for (int i = 0; i < m_phase2list.size (); i++)
+    for (final ExpLookahead la : m_phase2list)
     {
-      _buildPhase2Routine (m_phase2list.get (i));
+      if (Options.isFixedLookaheadSwitch () && eOutputLanguage.isJava ())
+      {
+        final LookaheadDecisionTree.Node aTree = LookaheadDecisionTree.build (la);
+        if (aTree != null)
+          m_decisionTrees.put (la, aTree);
+      }
+      // The scan is still needed to find the expected tokens on errors
+      if (!m_decisionTrees.containsKey (la) || isRescanningLookaheads ())
+      {
+        final Phase3Data p3d = new Phase3Data (la.getLaExpansion (), la.getAmount ());
+        m_phase3list.add (p3d);
+        m_phase3table.put (p3d.m_exp, p3d);
+      }
     }
 
     int phase3index = 0;
@@ -2304,6 +2723,23 @@ public class ParseEngine
       }
     }
 
+    // The phase 2 routines need to know whether anything is memoized
+    _setupMemoTable ();
+
+    for (final ExpLookahead la : m_phase2list)
+    {
+      _buildPhase2Routine (la);
+    }
+
+    if (isLazyErrorReporting () && isRescanningLookaheads ())
+    {
+      // The tracking routines save the lookaheads for the rescan
+      m_bTracking = true;
+      for (final ExpLookahead la : m_phase2list)
+        _buildPhase2Routine (la);
+      m_bTracking = false;
+    }
+
     for (final Phase3Data data : m_phase3table.values ())
     {
       buildPhase3Routine (data, false);
@@ -2327,9 +2763,12 @@ public class ParseEngine
     m_nGenSymbolIndex = 0;
     m_indentamt = 0;
     m_bJJ2LA = false;
+    m_bTracking = false;
     m_phase2list.clear ();
     m_phase3list.clear ();
     m_phase3table.clear ();
+    m_memoTable.clear ();
+    m_decisionTrees.clear ();
     m_firstSet = null;
     m_xsp_declared = false;
     m_jj3_expansion = null;
@@ -65,15 +65,19 @@ package com.helger.pgcc.parser;
 
 import static com.helger.pgcc.parser.JavaCCGlobals.getFileExtension;
 import static com.helger.pgcc.parser.JavaCCGlobals.getIdString;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_bnfproductions;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_from_insertion_point_2;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_name;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_to_insertion_point_1;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_to_insertion_point_2;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_failLookaheads;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_failMaskIndices;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_jj2index;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_jjtreeGenerated;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_lookaheadNeeded;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_maskVals;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_maskindex;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_memoindex;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_tokenCount;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_toolNames;
 
@@ -102,6 +106,8 @@ public class ParseGenJava extends CodeGenerator
     final EJDKVersion eJavaVersion = Options.getJdkVersion ();
     final boolean bHasCharset = eJavaVersion.isNewerOrEqualsThan (EJDKVersion.JDK_1_6);
     final boolean bEmptyTypeVar = eJavaVersion.isNewerOrEqualsThan (EJDKVersion.JDK_1_7);
+    // Lazy token images are only available via the getter
+    final String sImageAccess = Options.isLazyTokenImage () ? ".getImage()" : ".image";
 
     final List <String> tn = new ArrayList <> (s_toolNames);
     tn.add (CPG.APP_NAME);
@@ -158,6 +164,14 @@ public class ParseGenJava extends CodeGenerator
 
     new ParseEngine ().build (this);
 
+    // Whether choice points and lookaheads are remembered while parsing
+    final boolean bTrackErrors = Options.isErrorReporting () && !Options.isLazyErrorReporting ();
+    // Whether the syntactic lookaheads are scanned again for the expected tokens
+    final boolean bRescan = s_jj2index != 0 && ParseEngine.isRescanningLookaheads ();
+    final boolean bSaveLookaheads = bRescan && bTrackErrors;
+    // Whether the tokens are parsed again for the expected tokens of an error
+    final boolean bLazyErrors = Options.isErrorReporting () && !bTrackErrors;
+
     if (Options.isUserTokenManager ())
     {
       genCodeLine ("  /** User defined Token Manager. */");
@@ -196,6 +210,8 @@ public class ParseGenJava extends CodeGenerator
     {
       genCodeLine ("  private Token jj_scanpos, jj_lastpos;");
       genCodeLine ("  private int jj_la;");
+      genCodeLine ("  /** Whether the lookahead limit was reached. */");
+      genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_done;");
       if (s_lookaheadNeeded)
       {
         genCodeLine ("  /** Whether we are looking ahead. */");
@@ -203,10 +219,73 @@ public class ParseGenJava extends CodeGenerator
         genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_semLA;");
       }
     }
+    if (s_memoindex > 0)
+    {
+      genCodeLine ("  /** Whether the results of the lookahead routines are remembered. */");
+      genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_memoizing;");
+      genCodeLine ("  // Remembered results by start token and routine: the end token, or null if the routine failed");
+      genCodeLine ("  private Token[] jj_memo_keys = new Token[64];");
+      genCodeLine ("  private int[] jj_memo_rtns = new int[64];");
+      genCodeLine ("  private Token[] jj_memo_ends = new Token[64];");
+      genCodeLine ("  private int[] jj_memo_used = new int[32];");
+      genCodeLine ("  private int jj_memo_count;");
+      genCodeLine ("  // Whether the current token moved since the remembered results were cleared");
+      genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_memo_moved;");
+      genCodeLine ("  // The current token, the furthest token scanned for the remembered results and the number of tokens up to it");
+      genCodeLine ("  private Token jj_memo_token, jj_memo_lastpos;");
+      genCodeLine ("  private int jj_memo_depth;");
+    }
     if (Options.isErrorReporting ())
     {
-      genCodeLine ("  private int jj_gen;");
-      genCodeLine ("  final private int[] jj_la1 = new int[" + s_maskindex + "];");
+      if (bTrackErrors)
+      {
+        genCodeLine ("  private int jj_gen;");
+        genCodeLine ("  final private int[] jj_la1 = new int[" + s_maskindex + "];");
+      }
+      else
+      {
+        genCodeLine ("  // The token before the first one since (Re)Init, from which the tokens are parsed again on errors.");
+        genCodeLine ("  // It keeps all tokens since then in memory.");
+        genCodeLine ("  private Token jj_first;");
+        genCodeLine ("  // Only used while the tokens are parsed again");
+        genCodeLine ("  private int jj_gen;");
+        genCodeLine ("  final private int[] jj_la1 = new int[" + s_maskindex + "];");
+        genCodeLine ("  private Token jj_track_end;");
+        genCodeLine ("  /** Stops parsing the tokens again. */");
+        genCodeLine ("  static private final RuntimeException jj_track_stop = new RuntimeException() {");
+        genCodeLine ("    private static final long serialVersionUID = 1L;");
+        genCodeLine ("    @Override");
+        genCodeLine ("    public Throwable fillInStackTrace() {");
+        genCodeLine ("      return this;");
+        genCodeLine ("    }");
+        genCodeLine ("  };");
+        genCodeLine ("  /** Index of the choice that failed or -1 */");
+        genCodeLine ("  private int jj_failed = -1;");
+        if (Options.isPackedTables ())
+        {
+          final int [] [] aFailedLa1 = new int [s_failMaskIndices.size ()] [];
+          for (int i = 0; i < aFailedLa1.length; i++)
+          {
+            final List <Integer> aMaskIndices = s_failMaskIndices.get (i);
+            aFailedLa1[i] = new int [aMaskIndices.size ()];
+            for (int j = 0; j < aFailedLa1[i].length; j++)
+              aFailedLa1[i][j] = aMaskIndices.get (j).intValue ();
+          }
+          genCode (PackedTableJava.intRowsTable ("  static private final int[][] jj_failed_la1", aFailedLa1));
+        }
+        else
+        {
+          genCode ("  static private final int[][] jj_failed_la1 = {");
+          for (final List <Integer> aMaskIndices : s_failMaskIndices)
+          {
+            genCode (" {");
+            for (final Integer aMaskIndex : aMaskIndices)
+              genCode (aMaskIndex + ",");
+            genCode ("},");
+          }
+          genCodeLine (" };");
+        }
+      }
       final int tokenMaskSize = (s_tokenCount - 1) / 32 + 1;
       for (int i = 0; i < tokenMaskSize; i++)
       {
@@ -221,18 +300,36 @@ public class ParseGenJava extends CodeGenerator
       for (int i = 0; i < tokenMaskSize; i++)
       {
         genCodeLine ("	private static void jj_la1_init_" + i + "() {");
-        genCode ("	   jj_la1_" + i + " = new int[] {");
-        for (final int [] tokenMask : s_maskVals)
-          genCode ("0x" + Integer.toHexString (tokenMask[i]) + ",");
-        genCodeLine ("};");
+        if (Options.isPackedTables ())
+        {
+          final int [] aMasks = new int [s_maskVals.size ()];
+          for (int j = 0; j < aMasks.length; j++)
+            aMasks[j] = s_maskVals.get (j)[i];
+          genCode (PackedTableJava.intTable ("	   jj_la1_" + i, aMasks));
+        }
+        else
+        {
+          genCode ("	   jj_la1_" + i + " = new int[] {");
+          for (final int [] tokenMask : s_maskVals)
+            genCode ("0x" + Integer.toHexString (tokenMask[i]) + ",");
+          genCodeLine ("};");
+        }
         genCodeLine ("	}");
       }
+      if (Options.isPackedTables ())
+        PackedTableJava.genDecoders (this, true, false, !bTrackErrors);
     }
     if (s_jj2index != 0 && Options.isErrorReporting ())
     {
-      genCodeLine ("  private final JJCalls[] jj_2_rtns = new JJCalls[" + s_jj2index + "];");
+      if (bRescan)
+        genCodeLine ("  private final JJCalls[] jj_2_rtns = new JJCalls[" + s_jj2index + "];");
       genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_rescan = false;");
-      genCodeLine ("  private int jj_gc = 0;");
+      if (bSaveLookaheads)
+      {
+        genCodeLine ("  private int jj_gc = 0;");
+        genCodeLine ("  // The highest generation of a saved lookahead");
+        genCodeLine ("  private int jj_maxgen = 0;");
+      }
     }
     genCodeNewLine ();
 
@@ -240,95 +337,7 @@ public class ParseGenJava extends CodeGenerator
     {
       if (Options.isJavaUserCharStream ())
       {
-        genCodeLine ("  /**");
-        genCodeLine ("   * Constructor with user supplied CharStream.");
-        genCodeLine ("   * @param stream stream to init with");
-        genCodeLine ("   */");
-        genCodeLine ("  public " + s_cu_name + "(final CharStream stream) {");
-        if (Options.isTokenManagerUsesParser ())
-          genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(this, stream);");
-        else
-          genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(stream);");
-        genCodeLine ("	 token = new Token();");
-        if (Options.isCacheTokens ())
-        {
-          genCodeLine ("   jj_nt = token_source.getNextToken();");
-          genCodeLine ("   token.next = jj_nt;");
-        }
-        else
-        {
-          genCodeLine ("	 jj_ntk = -1;");
-        }
-        if (Options.hasDepthLimit ())
-        {
-          genCodeLine ("    jj_depth = -1;");
-        }
-        if (Options.isErrorReporting ())
-        {
-          genCodeLine ("	 jj_gen = 0;");
-          if (s_maskindex > 0)
-          {
-            genCodeLine ("	 for (int i = 0; i < " + s_maskindex + "; i++) jj_la1[i] = -1;");
-          }
-          if (s_jj2index != 0)
-          {
-            genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
-          }
-        }
-        genCodeLine ("  }");
-        genCodeNewLine ();
-        genCodeLine ("  /**");
-        genCodeLine ("   * Reinitialise.");
-        genCodeLine ("   * @param stream stream to init with");
-        genCodeLine ("   */");
-        genCodeLine ("  public void ReInit(final CharStream stream) {");
-
-        if (Options.isTokenManagerRequiresParserAccess ())
-        {
-          genCodeLine ("	 token_source.ReInit(this,stream);");
-        }
-        else
-        {
-          genCodeLine ("	 token_source.ReInit(stream);");
-        }
-
-        genCodeLine ("	 token = new Token();");
-        if (Options.isCacheTokens ())
-        {
-          genCodeLine ("   jj_nt = token_source.getNextToken();");
-          genCodeLine ("   token.next = jj_nt;");
-        }
-        else
-        {
-          genCodeLine ("	 jj_ntk = -1;");
-        }
-        if (Options.hasDepthLimit ())
-        {
-          genCodeLine ("    jj_depth = -1;");
-        }
-        if (s_lookaheadNeeded)
-        {
-          genCodeLine ("	 jj_lookingAhead = false;");
-        }
-        if (s_jjtreeGenerated)
-        {
-          genCodeLine ("	 jjtree.reset();");
-        }
-        if (Options.isErrorReporting ())
-        {
-          genCodeLine ("	 jj_gen = 0;");
-          if (s_maskindex > 0)
-          {
-            genCodeLine ("   for (int i = 0; i < " + s_maskindex + "; i++)");
-            genCodeLine ("     jj_la1[i] = -1;");
-          }
-          if (s_jj2index != 0)
-          {
-            genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
-            genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
-          }
-        }
-        genCodeLine ("  }");
+        _genCharStreamConstructor (bTrackErrors, bSaveLookaheads, bLazyErrors);
       }
       else
       {
@@ -372,7 +381,7 @@ public class ParseGenJava extends CodeGenerator
             genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(this, jj_input_stream);");
           else
             genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(jj_input_stream);");
-          genCodeLine ("	 token = new Token();");
+          _genNewToken (bLazyErrors);
           if (Options.isCacheTokens ())
           {
             genCodeLine ("   jj_nt = token_source.getNextToken();");
@@ -386,14 +395,14 @@ public class ParseGenJava extends CodeGenerator
           {
             genCodeLine ("    jj_depth = -1;");
           }
-          if (Options.isErrorReporting ())
+          if (bTrackErrors)
           {
             genCodeLine ("	 jj_gen = 0;");
             if (s_maskindex > 0)
             {
               genCodeLine ("	 for (int i = 0; i < " + s_maskindex + "; i++) jj_la1[i] = -1;");
             }
-            if (s_jj2index != 0)
+            if (bSaveLookaheads)
             {
               genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
             }
@@ -417,13 +426,35 @@ public class ParseGenJava extends CodeGenerator
           if (bHasCharset)
           {
             genCodeLine ("  public void ReInit(final java.io.InputStream stream, final java.nio.charset.Charset encoding) {");
-            genCodeLine ("    jj_input_stream.reInit(stream, encoding, 1, 1);");
+            if (Options.isUtf8ByteCharStream ())
+            {
+              // The parser may have been created with a CharStream
+              genCodeLine ("    if (jj_input_stream == null)");
+              genCodeLine ("      jj_input_stream = new " +
+                           (Options.isJavaUnicodeEscape () ? "JavaCharStream" : "SimpleCharStream") +
+                           "(stream, encoding, 1, 1);");
+              genCodeLine ("    else");
+              genCodeLine ("      jj_input_stream.reInit(stream, encoding, 1, 1);");
+            }
+            else
+              genCodeLine ("    jj_input_stream.reInit(stream, encoding, 1, 1);");
           }
           else
           {
             genCodeLine ("  public void ReInit(final java.io.InputStream stream, final String encoding) {");
             genCodeLine ("	  try {");
-            genCodeLine ("      jj_input_stream.reInit(stream, encoding, 1, 1);");
+            if (Options.isUtf8ByteCharStream ())
+            {
+              // The parser may have been created with a CharStream
+              genCodeLine ("      if (jj_input_stream == null)");
+              genCodeLine ("        jj_input_stream = new " +
+                           (Options.isJavaUnicodeEscape () ? "JavaCharStream" : "SimpleCharStream") +
+                           "(stream, encoding, 1, 1);");
+              genCodeLine ("      else");
+              genCodeLine ("        jj_input_stream.reInit(stream, encoding, 1, 1);");
+            }
+            else
+              genCodeLine ("      jj_input_stream.reInit(stream, encoding, 1, 1);");
             genCodeLine ("    } catch(final java.io.UnsupportedEncodingException e) { ");
             genCodeLine ("      throw new IllegalStateException(e);");
             genCodeLine ("    }");
@@ -438,7 +469,7 @@ public class ParseGenJava extends CodeGenerator
             genCodeLine ("	 token_source.ReInit(jj_input_stream);");
           }
 
-          genCodeLine ("	 token = new Token();");
+          _genNewToken (bLazyErrors);
           if (Options.isCacheTokens ())
           {
             genCodeLine ("   jj_nt = token_source.getNextToken();");
@@ -456,15 +487,8 @@ public class ParseGenJava extends CodeGenerator
           {
             genCodeLine ("	 jjtree.reset();");
           }
-          if (Options.isErrorReporting ())
-          {
-            genCodeLine ("	 jj_gen = 0;");
-            genCodeLine ("	 for (int i = 0; i < " + s_maskindex + "; i++) jj_la1[i] = -1;");
-            if (s_jj2index != 0)
-            {
-              genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
-            }
-          }
+          if (bTrackErrors)
+            _genReInitErrorTracking (bSaveLookaheads);
           genCodeLine ("  }");
           genCodeNewLine ();
 
@@ -494,7 +518,7 @@ public class ParseGenJava extends CodeGenerator
         {
           genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(jj_input_stream);");
         }
-        genCodeLine ("	 token = new Token();");
+        _genNewToken (bLazyErrors);
         if (Options.isCacheTokens ())
         {
           genCodeLine ("	 token.next = jj_nt = token_source.getNextToken();");
@@ -507,7 +531,7 @@ public class ParseGenJava extends CodeGenerator
         {
           genCodeLine ("    jj_depth = -1;");
         }
-        if (Options.isErrorReporting ())
+        if (bTrackErrors)
         {
           genCodeLine ("	 jj_gen = 0;");
           if (s_maskindex > 0)
@@ -515,7 +539,7 @@ public class ParseGenJava extends CodeGenerator
             genCodeLine ("   for (int i = 0; i < " + s_maskindex + "; i++)");
             genCodeLine ("     jj_la1[i] = -1;");
           }
-          if (s_jj2index != 0)
+          if (bSaveLookaheads)
           {
             genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
             genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
@@ -586,7 +610,7 @@ public class ParseGenJava extends CodeGenerator
           genCodeLine ("	 token_source.ReInit(jj_input_stream);");
         }
 
-        genCodeLine ("	 token = new Token();");
+        _genNewToken (bLazyErrors);
         if (Options.isCacheTokens ())
         {
           genCodeLine ("	 token.next = jj_nt = token_source.getNextToken();");
@@ -603,22 +627,16 @@ public class ParseGenJava extends CodeGenerator
         {
           genCodeLine ("	 jjtree.reset();");
         }
-        if (Options.isErrorReporting ())
-        {
-          genCodeLine ("	 jj_gen = 0;");
-          if (s_maskindex > 0)
-          {
-            genCodeLine ("   for (int i = 0; i < " + s_maskindex + "; i++)");
-            genCodeLine ("     jj_la1[i] = -1;");
-          }
-          if (s_jj2index != 0)
-          {
-            genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
-            genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
-          }
-        }
+        if (bTrackErrors)
+          _genReInitErrorTracking (bSaveLookaheads);
         genCodeLine ("  }");
 
+        if (Options.isUtf8ByteCharStream ())
+        {
+          // The token manager takes any CharStream, e.g. Utf8ByteCharStream
+          genCodeNewLine ();
+          _genCharStreamConstructor (bTrackErrors, bSaveLookaheads, bLazyErrors);
+        }
       }
     }
     genCodeNewLine ();
@@ -639,7 +657,11 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("  public " + s_cu_name + "(final " + s_cu_name + "TokenManager tm) {");
     }
     genCodeLine ("	 token_source = tm;");
-    genCodeLine ("	 token = new Token();");
+    if (Options.isIncrementalLexing () && !Options.isUserTokenManager ())
+    {
+      genCodeLine ("	 tm.startReplay();");
+    }
+    _genNewToken (bLazyErrors);
     if (Options.isCacheTokens ())
     {
       genCodeLine ("	 token.next = jj_nt = token_source.getNextToken();");
@@ -652,14 +674,14 @@ public class ParseGenJava extends CodeGenerator
     {
       genCodeLine ("    jj_depth = -1;");
     }
-    if (Options.isErrorReporting ())
+    if (bTrackErrors)
     {
       genCodeLine ("	 jj_gen = 0;");
       if (s_maskindex > 0)
       {
         genCodeLine ("	 for (int i = 0; i < " + s_maskindex + "; i++) jj_la1[i] = -1;");
       }
-      if (s_jj2index != 0)
+      if (bSaveLookaheads)
       {
         genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
       }
@@ -683,7 +705,11 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("  public void ReInit(final " + s_cu_name + "TokenManager tm) {");
     }
     genCodeLine ("	 token_source = tm;");
-    genCodeLine ("	 token = new Token();");
+    if (Options.isIncrementalLexing () && !Options.isUserTokenManager ())
+    {
+      genCodeLine ("	 tm.startReplay();");
+    }
+    _genNewToken (bLazyErrors);
     if (Options.isCacheTokens ())
     {
       genCodeLine ("	 token.next = jj_nt = token_source.getNextToken();");
@@ -700,22 +726,65 @@ public class ParseGenJava extends CodeGenerator
     {
       genCodeLine ("	 jjtree.reset();");
     }
-    if (Options.isErrorReporting ())
-    {
-      genCodeLine ("	 jj_gen = 0;");
-      if (s_maskindex > 0)
-      {
-        genCodeLine ("	 for (int i = 0; i < " + s_maskindex + "; i++) jj_la1[i] = -1;");
-      }
-      if (s_jj2index != 0)
-      {
-        genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
-      }
-    }
+    if (bTrackErrors)
+      _genReInitErrorTracking (bSaveLookaheads);
     genCodeLine ("  }");
     genCodeNewLine ();
+    if (Options.isThreadLocalParser ())
+    {
+      final String sInputType;
+      if (Options.isUserTokenManager ())
+        sInputType = "TokenManager";
+      else
+        if (Options.isJavaUserCharStream ())
+          sInputType = "CharStream";
+        else
+          sInputType = bIsJavaModernMode ? "Provider" : "java.io.Reader";
+      genCodeLine ("  /** The parser of each thread, see getThreadParser */");
+      genCodeLine ("  private static final ThreadLocal<" +
+                   s_cu_name +
+                   "> jj_thread_parser = new ThreadLocal<" +
+                   (bEmptyTypeVar ? "" : s_cu_name) +
+                   ">();");
+      genCodeNewLine ();
+      genCodeLine ("  /**");
+      genCodeLine ("   * Get the parser of the current thread, ready to parse the given input.");
+      genCodeLine ("   * The parser, its token manager and its char stream are created on the");
+      genCodeLine ("   * first call of a thread and only reinitialised on later calls. So the");
+      genCodeLine ("   * returned parser must not be used any more after the next call.");
+      genCodeLine ("   * <p>");
+      genCodeLine ("   * The parser stays referenced by the thread, together with the buffer of");
+      genCodeLine ("   * its char stream and the tokens of the last input, until the thread ends.");
+      genCodeLine ("   * Threads of a pool live long and may also keep the class loader of the");
+      genCodeLine ("   * parser alive, so call removeThreadParser when a task is done.");
+      genCodeLine ("   * </p>");
+      genCodeLine ("   * @param stream input to parse");
+      genCodeLine ("   * @return the parser of the current thread");
+      genCodeLine ("   */");
+      genCodeLine ("  public static " + s_cu_name + " getThreadParser(final " + sInputType + " stream) {");
+      genCodeLine ("    " + s_cu_name + " parser = jj_thread_parser.get();");
+      genCodeLine ("    if (parser == null) {");
+      genCodeLine ("      parser = new " + s_cu_name + "(stream);");
+      genCodeLine ("      jj_thread_parser.set(parser);");
+      genCodeLine ("    } else {");
+      genCodeLine ("      parser.ReInit(stream);");
+      genCodeLine ("    }");
+      genCodeLine ("    return parser;");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+      genCodeLine ("  /**");
+      genCodeLine ("   * Drop the parser of the current thread, see getThreadParser. The next");
+      genCodeLine ("   * call of getThreadParser in this thread creates a new parser.");
+      genCodeLine ("   */");
+      genCodeLine ("  public static void removeThreadParser() {");
+      genCodeLine ("    jj_thread_parser.remove();");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+    }
     genCodeLine ("  private Token jj_consume_token(final int kind) throws ParseException {");
     genCodeLine ("    final Token oldToken = token;");
+    if (s_memoindex > 0)
+      genCodeLine ("    if (jj_memo_lastpos != null) jj_memo_next();");
     if (Options.isCacheTokens ())
     {
       genCodeLine ("    token = jj_nt;");
@@ -737,10 +806,10 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("    jj_ntk = -1;");
     }
     genCodeLine ("    if (token.kind == kind) {");
-    if (Options.isErrorReporting ())
+    if (bTrackErrors)
     {
       genCodeLine ("      jj_gen++;");
-      if (s_jj2index != 0)
+      if (bSaveLookaheads)
       {
         genCodeLine ("      if (++jj_gc > 100) {");
         genCodeLine ("        jj_gc = 0;");
@@ -773,12 +842,53 @@ public class ParseGenJava extends CodeGenerator
     genCodeLine ("    throw generateParseException();");
     genCodeLine ("  }");
     genCodeNewLine ();
+    if (bLazyErrors)
+    {
+      // Consumes like jj_consume_token while the tokens are parsed again
+      genCodeLine ("  private void jj_track_consume_token(final int kind) {");
+      genCodeLine ("    final Token oldToken = token;");
+      if (s_memoindex > 0)
+        genCodeLine ("    if (jj_memo_lastpos != null) jj_memo_next();");
+      if (Options.isCacheTokens ())
+      {
+        genCodeLine ("    token = jj_nt;");
+        genCodeLine ("    if (token.next != null)");
+        genCodeLine ("      jj_nt = jj_nt.next;");
+        genCodeLine ("    else {");
+        genCodeLine ("      jj_nt.next = token_source.getNextToken();");
+        genCodeLine ("      jj_nt = jj_nt.next;");
+        genCodeLine ("    }");
+      }
+      else
+      {
+        genCodeLine ("    if (token.next != null)");
+        genCodeLine ("      token = token.next;");
+        genCodeLine ("    else {");
+        genCodeLine ("      token.next = token_source.getNextToken();");
+        genCodeLine ("      token = token.next;");
+        genCodeLine ("    }");
+        genCodeLine ("    jj_ntk = -1;");
+      }
+      genCodeLine ("    if (token.kind == kind) {");
+      genCodeLine ("      // Past the error, so the parse went another way");
+      genCodeLine ("      if (oldToken == jj_track_end) throw jj_track_stop;");
+      genCodeLine ("      jj_gen++;");
+      genCodeLine ("      return;");
+      genCodeLine ("    }");
+      if (Options.isCacheTokens ())
+      {
+        genCodeLine ("    jj_nt = token;");
+      }
+      genCodeLine ("    token = oldToken;");
+      genCodeLine ("    jj_kind = kind;");
+      genCodeLine ("    throw jj_track_stop;");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+    }
     if (s_jj2index != 0)
     {
-      genCodeLine ("  @SuppressWarnings(\"serial\")");
-      genCodeLine ("  private static final class LookaheadSuccess extends IllegalStateException { }");
-      genCodeLine ("  private final LookaheadSuccess jj_ls = new LookaheadSuccess();");
       genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_scan_token(int kind) {");
+      genCodeLine ("	 if (jj_done) return true;");
       genCodeLine ("	 if (jj_scanpos == jj_lastpos) {");
       genCodeLine ("	   jj_la--;");
       genCodeLine ("	   if (jj_scanpos.next == null) {");
@@ -789,7 +899,7 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("	 } else {");
       genCodeLine ("	   jj_scanpos = jj_scanpos.next;");
       genCodeLine ("	 }");
-      if (Options.isErrorReporting ())
+      if (bRescan)
       {
         genCodeLine ("	 if (jj_rescan) {");
         genCodeLine ("	   int i = 0; Token tok = token;");
@@ -808,16 +918,110 @@ public class ParseGenJava extends CodeGenerator
           genCodeLine ("	 trace_scan(jj_scanpos, kind);");
         }
       genCodeLine ("	 if (jj_scanpos.kind != kind) return true;");
-      genCodeLine ("	 if (jj_la == 0 && jj_scanpos == jj_lastpos) throw jj_ls;");
+      // The lookahead ends successfully by failing all remaining scans
+      genCodeLine ("	 if (jj_la == 0 && jj_scanpos == jj_lastpos) return jj_done = true;");
       genCodeLine ("	 return false;");
       genCodeLine ("  }");
       genCodeNewLine ();
     }
+    if (s_memoindex > 0)
+    {
+      // Only the unlimited syntactic lookahead is memoized, as the result of a
+      // limited one also depends on the number of tokens left to look at.
+      // The remembered results are kept until all tokens scanned for them are
+      // consumed, so that consumed tokens can still be collected
+      genCodeLine ("  private void jj_memo_begin(int xla) {");
+      genCodeLine ("	 if (jj_memo_token != token) jj_memo_reset();");
+      genCodeLine ("	 jj_memoizing = xla == Integer.MAX_VALUE;");
+      genCodeLine ("	 if (jj_memoizing && jj_memo_lastpos != null) {");
+      genCodeLine ("	   // A remembered end token may lie after the tokens scanned so far");
+      genCodeLine ("	   jj_lastpos = jj_memo_lastpos;");
+      genCodeLine ("	   jj_la = xla - jj_memo_depth;");
+      genCodeLine ("	 }");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+      genCodeLine ("  private void jj_memo_end() {");
+      genCodeLine ("	 if (jj_memoizing) {");
+      genCodeLine ("	   jj_memo_token = token;");
+      genCodeLine ("	   jj_memo_lastpos = jj_lastpos;");
+      genCodeLine ("	   jj_memo_depth = Integer.MAX_VALUE - jj_la;");
+      genCodeLine ("	   jj_memoizing = false;");
+      genCodeLine ("	 }");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+      genCodeLine ("  private void jj_memo_next() {");
+      genCodeLine ("	 if (token == jj_memo_lastpos || token != jj_memo_token) {");
+      genCodeLine ("	   jj_memo_reset();");
+      genCodeLine ("	 } else {");
+      genCodeLine ("	   jj_memo_token = token.next;");
+      genCodeLine ("	   jj_memo_depth--;");
+      genCodeLine ("	   jj_memo_moved = true;");
+      genCodeLine ("	 }");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+      genCodeLine ("  private void jj_memo_reset() {");
+      genCodeLine ("	 jj_memo_clear();");
+      genCodeLine ("	 jj_memo_token = jj_memo_lastpos = null;");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+      genCodeLine ("  private void jj_memo_clear() {");
+      genCodeLine ("	 for (int i = 0; i < jj_memo_count; i++) {");
+      genCodeLine ("	   jj_memo_keys[jj_memo_used[i]] = null;");
+      genCodeLine ("	   jj_memo_ends[jj_memo_used[i]] = null;");
+      genCodeLine ("	 }");
+      genCodeLine ("	 jj_memo_count = 0;");
+      genCodeLine ("	 jj_memo_moved = false;");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+      genCodeLine ("  private int jj_memo_find(int rtn, Token start) {");
+      genCodeLine ("	 final int mask = jj_memo_keys.length - 1;");
+      genCodeLine ("	 int slot = (System.identityHashCode(start) * 31 + rtn) & mask;");
+      genCodeLine ("	 while (jj_memo_keys[slot] != null) {");
+      genCodeLine ("	   if (jj_memo_keys[slot] == start && jj_memo_rtns[slot] == rtn) return slot;");
+      genCodeLine ("	   slot = (slot + 1) & mask;");
+      genCodeLine ("	 }");
+      genCodeLine ("	 return -1 - slot;");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+      genCodeLine ("  private void jj_memo_put(int rtn, Token start, Token end) {");
+      genCodeLine ("	 if ((jj_memo_count + 1) * 2 > jj_memo_keys.length) {");
+      genCodeLine ("	   // Most results remembered before the current token moved start behind it");
+      genCodeLine ("	   if (jj_memo_moved) jj_memo_clear();");
+      genCodeLine ("	   else jj_memo_grow();");
+      genCodeLine ("	 }");
+      genCodeLine ("	 int slot = jj_memo_find(rtn, start);");
+      genCodeLine ("	 if (slot < 0) {");
+      genCodeLine ("	   slot = -1 - slot;");
+      genCodeLine ("	   jj_memo_keys[slot] = start;");
+      genCodeLine ("	   jj_memo_rtns[slot] = rtn;");
+      genCodeLine ("	   jj_memo_used[jj_memo_count++] = slot;");
+      genCodeLine ("	 }");
+      genCodeLine ("	 jj_memo_ends[slot] = end;");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+      genCodeLine ("  private void jj_memo_grow() {");
+      genCodeLine ("	 final Token[] keys = jj_memo_keys;");
+      genCodeLine ("	 final int[] rtns = jj_memo_rtns;");
+      genCodeLine ("	 final Token[] ends = jj_memo_ends;");
+      genCodeLine ("	 final int[] used = jj_memo_used;");
+      genCodeLine ("	 final int count = jj_memo_count;");
+      genCodeLine ("	 jj_memo_keys = new Token[keys.length * 2];");
+      genCodeLine ("	 jj_memo_rtns = new int[keys.length * 2];");
+      genCodeLine ("	 jj_memo_ends = new Token[keys.length * 2];");
+      genCodeLine ("	 jj_memo_used = new int[keys.length];");
+      genCodeLine ("	 jj_memo_count = 0;");
+      genCodeLine ("	 for (int i = 0; i < count; i++)");
+      genCodeLine ("	   jj_memo_put(rtns[used[i]], keys[used[i]], ends[used[i]]);");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+    }
     genCodeNewLine ();
     genCodeLine ("  /**");
     genCodeLine ("   * @return the next Token.");
     genCodeLine ("   */");
     genCodeLine ("  public final Token getNextToken() {");
+    if (s_memoindex > 0)
+      genCodeLine ("   if (jj_memo_lastpos != null) jj_memo_next();");
     if (Options.isCacheTokens ())
     {
       genCodeLine ("   token = jj_nt;");
@@ -834,7 +1038,7 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("     token = token.next = token_source.getNextToken();");
       genCodeLine ("	 jj_ntk = -1;");
     }
-    if (Options.isErrorReporting ())
+    if (bTrackErrors)
     {
       genCodeLine ("	 jj_gen++;");
     }
@@ -878,12 +1082,15 @@ public class ParseGenJava extends CodeGenerator
     }
     if (Options.isErrorReporting ())
     {
-      genCodeLine ("  private java.util.List<int[]> jj_expentries = new java.util.ArrayList<" +
-                   (bEmptyTypeVar ? "" : "int[]") +
-                   ">();");
-      genCodeLine ("  private int[] jj_expentry;");
+      if (!Options.isLazyExceptions ())
+      {
+        genCodeLine ("  private java.util.List<int[]> jj_expentries = new java.util.ArrayList<" +
+                     (bEmptyTypeVar ? "" : "int[]") +
+                     ">();");
+        genCodeLine ("  private int[] jj_expentry;");
+      }
       genCodeLine ("  private int jj_kind = -1;");
-      if (s_jj2index != 0)
+      if (bRescan)
       {
         genCodeLine ("  private int[] jj_lasttokens = new int[100];");
         genCodeLine ("  private int jj_endpos;");
@@ -931,64 +1138,124 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("   * @return new Exception object. Never <code>null</code>");
       genCodeLine ("   */");
       genCodeLine ("  public ParseException generateParseException() {");
-      genCodeLine ("    jj_expentries.clear();");
-      genCodeLine ("    " +
-                   eOutputLanguage.getTypeBoolean () +
-                   "[] la1tokens = new " +
-                   eOutputLanguage.getTypeBoolean () +
-                   "[" +
-                   s_tokenCount +
-                   "];");
-      genCodeLine ("    if (jj_kind >= 0) {");
-      genCodeLine ("      la1tokens[jj_kind] = true;");
-      genCodeLine ("      jj_kind = -1;");
-      genCodeLine ("    }");
+      if (bLazyErrors)
+        genCodeLine ("    final boolean tracked = jj_track();");
+      final boolean bLazyExceptions = Options.isLazyExceptions ();
+      final int tokenMaskSize = (s_tokenCount - 1) / 32 + 1;
+      if (bLazyExceptions)
+      {
+        // Only the expected token kinds are handed to the exception
+        genCodeLine ("    final int[] expected = new int[" + tokenMaskSize + "];");
+        genCodeLine ("    if (jj_kind >= 0) {");
+        genCodeLine ("      expected[jj_kind >> 5] |= 1 << (jj_kind & 31);");
+        genCodeLine ("      jj_kind = -1;");
+        genCodeLine ("    }");
+      }
+      else
+      {
+        genCodeLine ("    jj_expentries.clear();");
+        genCodeLine ("    " +
+                     eOutputLanguage.getTypeBoolean () +
+                     "[] la1tokens = new " +
+                     eOutputLanguage.getTypeBoolean () +
+                     "[" +
+                     s_tokenCount +
+                     "];");
+        genCodeLine ("    if (jj_kind >= 0) {");
+        genCodeLine ("      la1tokens[jj_kind] = true;");
+        genCodeLine ("      jj_kind = -1;");
+        genCodeLine ("    }");
+      }
+      if (bLazyErrors)
+      {
+        genCodeLine ("    if (!tracked) {");
+        genCodeLine ("      // Only the choice that failed is known");
+        genCodeLine ("      jj_gen = 0;");
+        if (s_maskindex > 0)
+          genCodeLine ("      java.util.Arrays.fill(jj_la1, -1);");
+        genCodeLine ("      if (jj_failed >= 0)");
+        genCodeLine ("        for (final int i : jj_failed_la1[jj_failed]) jj_la1[i] = 0;");
+        genCodeLine ("    }");
+      }
       genCodeLine ("    for (int i = 0; i < " + s_maskindex + "; i++) {");
       genCodeLine ("      if (jj_la1[i] == jj_gen) {");
-      genCodeLine ("        for (int j = 0; j < 32; j++) {");
-      for (int i = 0; i < (s_tokenCount - 1) / 32 + 1; i++)
+      if (bLazyExceptions)
       {
-        genCodeLine ("          if ((jj_la1_" + i + "[i] & (1<<j)) != 0) {");
-        genCode ("            la1tokens[");
-        if (i != 0)
-          genCode ((32 * i) + "+");
-        genCodeLine ("j] = true;");
-        genCodeLine ("          }");
+        for (int i = 0; i < tokenMaskSize; i++)
+          genCodeLine ("        expected[" + i + "] |= jj_la1_" + i + "[i];");
+      }
+      else
+      {
+        genCodeLine ("        for (int j = 0; j < 32; j++) {");
+        for (int i = 0; i < tokenMaskSize; i++)
+        {
+          genCodeLine ("          if ((jj_la1_" + i + "[i] & (1<<j)) != 0) {");
+          genCode ("            la1tokens[");
+          if (i != 0)
+            genCode ((32 * i) + "+");
+          genCodeLine ("j] = true;");
+          genCodeLine ("          }");
+        }
+        genCodeLine ("        }");
       }
-      genCodeLine ("        }");
-      genCodeLine ("      }");
-      genCodeLine ("    }");
-      genCodeLine ("    for (int i = 0; i < " + s_tokenCount + "; i++) {");
-      genCodeLine ("      if (la1tokens[i]) {");
-      genCodeLine ("        jj_expentry = new int[1];");
-      genCodeLine ("        jj_expentry[0] = i;");
-      genCodeLine ("        jj_expentries.add(jj_expentry);");
       genCodeLine ("      }");
       genCodeLine ("    }");
-      if (s_jj2index != 0)
+      if (!bLazyExceptions)
+      {
+        genCodeLine ("    for (int i = 0; i < " + s_tokenCount + "; i++) {");
+        genCodeLine ("      if (la1tokens[i]) {");
+        genCodeLine ("        jj_expentry = new int[1];");
+        genCodeLine ("        jj_expentry[0] = i;");
+        genCodeLine ("        jj_expentries.add(jj_expentry);");
+        genCodeLine ("      }");
+        genCodeLine ("    }");
+      }
+      if (bRescan)
       {
         genCodeLine ("    jj_endpos = 0;");
-        genCodeLine ("    jj_rescan_token();");
+        if (bLazyErrors)
+          genCodeLine ("    if (tracked) jj_rescan_token(); else jj_rescan_failed();");
+        else
+          genCodeLine ("    jj_rescan_token();");
         genCodeLine ("    jj_add_error_token(0, 0);");
       }
-      genCodeLine ("    int[][] exptokseq = new int[jj_expentries.size()][];");
-      genCodeLine ("    for (int i = 0; i < jj_expentries.size(); i++) {");
-      genCodeLine ("      exptokseq[i] = jj_expentries.get(i);");
-      genCodeLine ("    }");
+      if (bLazyErrors)
+        genCodeLine ("    jj_failed = -1;");
+      final String sExpected;
+      if (bLazyExceptions)
+        sExpected = "expected";
+      else
+      {
+        genCodeLine ("    int[][] exptokseq = new int[jj_expentries.size()][];");
+        genCodeLine ("    for (int i = 0; i < jj_expentries.size(); i++) {");
+        genCodeLine ("      exptokseq[i] = jj_expentries.get(i);");
+        genCodeLine ("    }");
+        sExpected = "exptokseq";
+      }
 
       if (bIsJavaModernMode && !Options.isUserTokenManager ())
       {
         // Add the lexical state onto the exception message
-        genCodeLine ("    return new ParseException(token, exptokseq, tokenImage, token_source == null ? null : " +
+        genCodeLine ("    return new ParseException(token, " +
+                     sExpected +
+                     ", tokenImage, token_source == null ? null : " +
                      s_cu_name +
                      "TokenManager.lexStateNames[token_source.curLexState]);");
       }
       else
-      {
-        genCodeLine ("    return new ParseException(token, exptokseq, tokenImage);");
-      }
+        if (bIsJavaModernMode && bLazyExceptions)
+        {
+          // The lazy constructor always takes the lexical state
+          genCodeLine ("    return new ParseException(token, " + sExpected + ", tokenImage, null);");
+        }
+        else
+        {
+          genCodeLine ("    return new ParseException(token, " + sExpected + ", tokenImage);");
+        }
 
       genCodeLine ("  }");
+      if (bLazyErrors)
+        _genTrackErrors (bRescan);
     }
     else
     {
@@ -1000,7 +1267,7 @@ public class ParseGenJava extends CodeGenerator
         genCodeLine ("  final int line = errortok.beginLine;");
         genCodeLine ("  final int column = errortok.beginColumn;");
       }
-      genCodeLine ("  final String mess = errortok.kind == 0 ? tokenImage[0] : errortok.image;");
+      genCodeLine ("  final String mess = errortok.kind == 0 ? tokenImage[0] : errortok" + sImageAccess + ";");
       if (Options.isKeepLineColumn ())
       {
         genCodeLine ("  return new ParseException(" +
@@ -1071,11 +1338,13 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("        tracePS.print(\" \");");
       genCodeLine ("      }");
       genCodeLine ("      tracePS.print(\"Consumed token: <\" + tokenImage[t.kind]);");
-      genCodeLine ("      if (t.kind != 0 && !tokenImage[t.kind].equals(\"\\\"\" + t.image + \"\\\"\")) {");
+      genCodeLine ("      if (t.kind != 0 && !tokenImage[t.kind].equals(\"\\\"\" + t" + sImageAccess + " + \"\\\"\")) {");
       genCodeLine ("        tracePS.print(\": \\\"\" + " +
                    Options.getTokenMgrErrorClass () +
                    ".addEscapes(" +
-                   "t.image) + \"\\\"\");");
+                   "t" +
+                   sImageAccess +
+                   ") + \"\\\"\");");
       genCodeLine ("      }");
       genCodeLine ("      tracePS.println(\" at line \" + t.beginLine + " +
                    "\" column \" + t.beginColumn + \">\" + where);");
@@ -1086,11 +1355,13 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("    if (trace_enabled) {");
       genCodeLine ("      for (int i = 0; i < trace_indent; i++) { tracePS.print(\" \"); }");
       genCodeLine ("      tracePS.print(\"Visited token: <\" + tokenImage[t1.kind]);");
-      genCodeLine ("      if (t1.kind != 0 && !tokenImage[t1.kind].equals(\"\\\"\" + t1.image + \"\\\"\")) {");
+      genCodeLine ("      if (t1.kind != 0 && !tokenImage[t1.kind].equals(\"\\\"\" + t1" + sImageAccess + " + \"\\\"\")) {");
       genCodeLine ("        tracePS.print(\": \\\"\" + " +
                    Options.getTokenMgrErrorClass () +
                    ".addEscapes(" +
-                   "t1.image) + \"\\\"\");");
+                   "t1" +
+                   sImageAccess +
+                   ") + \"\\\"\");");
       genCodeLine ("      }");
       genCodeLine ("      tracePS.println(\" at line \" + t1.beginLine + \"" +
                    " column \" + t1.beginColumn + \">; Expected token: <\" + tokenImage[t2] + \">\");");
@@ -1115,29 +1386,55 @@ public class ParseGenJava extends CodeGenerator
       genCodeNewLine ();
     }
 
-    if (s_jj2index != 0 && Options.isErrorReporting ())
+    if (bRescan && bLazyErrors)
+    {
+      // Only scan the syntactic lookaheads of the choice that failed
+      genCodeLine ("  private void jj_rescan_failed() {");
+      genCodeLine ("    jj_rescan = true;");
+      genCodeLine ("    switch (jj_failed) {");
+      for (int i = 0; i < s_failLookaheads.size (); i++)
+        if (!s_failLookaheads.get (i).isEmpty ())
+        {
+          genCodeLine ("      case " + i + ":");
+          for (final ExpLookahead aLa : s_failLookaheads.get (i))
+          {
+            genCodeLine ("        jj_done = false;");
+            genCodeLine ("        jj_la = " + aLa.getAmount () + ";");
+            genCodeLine ("        jj_scanpos = jj_lastpos = token;");
+            genCodeLine ("        jj_3" + aLa.getLaExpansion ().getInternalName () + "();");
+          }
+          genCodeLine ("        break;");
+        }
+      genCodeLine ("    }");
+      genCodeLine ("    jj_done = false;");
+      genCodeLine ("    jj_rescan = false;");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+    }
+
+    if (bRescan)
     {
       genCodeLine ("  private void jj_rescan_token() {");
       genCodeLine ("    jj_rescan = true;");
       genCodeLine ("    for (int i = 0; i < " + s_jj2index + "; i++) {");
-      genCodeLine ("      try {");
-      genCodeLine ("        JJCalls p = jj_2_rtns[i];");
-      genCodeLine ("        do {");
-      genCodeLine ("          if (p.gen > jj_gen) {");
-      genCodeLine ("            jj_la = p.arg;");
-      genCodeLine ("            jj_scanpos = p.first;");
-      genCodeLine ("            jj_lastpos = p.first;");
-      genCodeLine ("            switch (i) {");
+      genCodeLine ("      jj_done = false;");
+      genCodeLine ("      JJCalls p = jj_2_rtns[i];");
+      genCodeLine ("      do {");
+      genCodeLine ("        if (p.gen > jj_gen) {");
+      genCodeLine ("          jj_la = p.arg;");
+      genCodeLine ("          jj_scanpos = p.first;");
+      genCodeLine ("          jj_lastpos = p.first;");
+      genCodeLine ("          switch (i) {");
       for (int i = 0; i < s_jj2index; i++)
       {
-        genCodeLine ("              case " + i + ": jj_3_" + (i + 1) + "(); break;");
+        genCodeLine ("            case " + i + ": jj_3_" + (i + 1) + "(); break;");
       }
-      genCodeLine ("            }");
       genCodeLine ("          }");
-      genCodeLine ("          p = p.next;");
-      genCodeLine ("        } while (p != null);");
-      genCodeLine ("      } catch(LookaheadSuccess ls) { /* ignore */ }");
+      genCodeLine ("        }");
+      genCodeLine ("        p = p.next;");
+      genCodeLine ("      } while (p != null && !jj_done);");
       genCodeLine ("    }");
+      genCodeLine ("    jj_done = false;");
       genCodeLine ("    jj_rescan = false;");
       genCodeLine ("  }");
       genCodeNewLine ();
@@ -1152,13 +1449,15 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("      p = p.next;");
       genCodeLine ("    }");
       genCodeLine ("    p.gen = jj_gen + xla - jj_la; ");
+      if (bSaveLookaheads)
+        genCodeLine ("    if (p.gen > jj_maxgen) jj_maxgen = p.gen;");
       genCodeLine ("    p.first = token;");
       genCodeLine ("    p.arg = xla;");
       genCodeLine ("  }");
       genCodeNewLine ();
     }
 
-    if (s_jj2index != 0 && Options.isErrorReporting ())
+    if (bRescan)
     {
       genCodeLine ("  static final class JJCalls {");
       genCodeLine ("	 int gen;");
@@ -1186,6 +1485,225 @@ public class ParseGenJava extends CodeGenerator
     saveOutput (Options.getOutputDirectory () + File.separator + s_cu_name + getFileExtension ());
   }
 
+  /**
+   * Generate the constructor and the ReInit method that take a CharStream.
+   */
+  private void _genCharStreamConstructor (final boolean bTrackErrors,
+                                          final boolean bSaveLookaheads,
+                                          final boolean bLazyErrors)
+  {
+    genCodeLine ("  /**");
+    genCodeLine ("   * Constructor with user supplied CharStream.");
+    genCodeLine ("   * @param stream stream to init with");
+    genCodeLine ("   */");
+    genCodeLine ("  public " + s_cu_name + "(final CharStream stream) {");
+    if (Options.isTokenManagerUsesParser ())
+      genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(this, stream);");
+    else
+      genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(stream);");
+    _genNewToken (bLazyErrors);
+    if (Options.isCacheTokens ())
+    {
+      genCodeLine ("   jj_nt = token_source.getNextToken();");
+      genCodeLine ("   token.next = jj_nt;");
+    }
+    else
+    {
+      genCodeLine ("	 jj_ntk = -1;");
+    }
+    if (Options.hasDepthLimit ())
+    {
+      genCodeLine ("    jj_depth = -1;");
+    }
+    if (bTrackErrors)
+    {
+      genCodeLine ("	 jj_gen = 0;");
+      if (s_maskindex > 0)
+      {
+        genCodeLine ("	 for (int i = 0; i < " + s_maskindex + "; i++) jj_la1[i] = -1;");
+      }
+      if (bSaveLookaheads)
+      {
+        genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+      }
+    }
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  /**");
+    genCodeLine ("   * Reinitialise.");
+    genCodeLine ("   * @param stream stream to init with");
+    genCodeLine ("   */");
+    genCodeLine ("  public void ReInit(final CharStream stream) {");
+
+    if (Options.isTokenManagerRequiresParserAccess ())
+    {
+      genCodeLine ("	 token_source.ReInit(this,stream);");
+    }
+    else
+    {
+      genCodeLine ("	 token_source.ReInit(stream);");
+    }
+
+    _genNewToken (bLazyErrors);
+    if (Options.isCacheTokens ())
+    {
+      genCodeLine ("   jj_nt = token_source.getNextToken();");
+      genCodeLine ("   token.next = jj_nt;");
+    }
+    else
+    {
+      genCodeLine ("	 jj_ntk = -1;");
+    }
+    if (Options.hasDepthLimit ())
+    {
+      genCodeLine ("    jj_depth = -1;");
+    }
+    if (s_lookaheadNeeded)
+    {
+      genCodeLine ("	 jj_lookingAhead = false;");
+    }
+    if (s_jjtreeGenerated)
+    {
+      genCodeLine ("	 jjtree.reset();");
+    }
+    if (bTrackErrors)
+      _genReInitErrorTracking (bSaveLookaheads);
+    genCodeLine ("  }");
+  }
+
+  /**
+   * Generate the routines that parse the tokens since (Re)Init again to find
+   * the expected tokens of an error like without LAZY_ERROR_REPORTING. The
+   * parse starts with the outermost production on the call stack and runs its
+   * tracking routine, which leaves out the actions.
+   *
+   * @param bRescan
+   *        <code>true</code> if the syntactic lookaheads are scanned again
+   */
+  private void _genTrackErrors (final boolean bRescan)
+  {
+    genCodeNewLine ();
+    genCodeLine ("  /**");
+    genCodeLine ("   * Parse the tokens again up to the error, remembering the choice points");
+    genCodeLine ("   * and lookaheads passed.");
+    genCodeLine ("   * @return <code>true</code> if the parse ended with the same error");
+    genCodeLine ("   */");
+    genCodeLine ("  private boolean jj_track() {");
+    genCodeLine ("    final Token end = token;");
+    genCodeLine ("    final Token nt = jj_nt;");
+    if (!Options.isCacheTokens ())
+      genCodeLine ("    final int ntk = jj_ntk;");
+    genCodeLine ("    final int kind = jj_kind;");
+    genCodeLine ("    boolean reached = false;");
+    genCodeLine ("    final StackTraceElement[] stack = new Throwable().getStackTrace();");
+    genCodeLine ("    for (int i = stack.length - 1; i >= 0; i--) {");
+    genCodeLine ("      final int rtn = jj_track_rtn(stack[i]);");
+    genCodeLine ("      if (rtn >= 0) {");
+    genCodeLine ("        reached = jj_track_parse(rtn, end, kind);");
+    genCodeLine ("        break;");
+    genCodeLine ("      }");
+    genCodeLine ("    }");
+    genCodeLine ("    token = end;");
+    genCodeLine ("    jj_nt = nt;");
+    if (!Options.isCacheTokens ())
+      genCodeLine ("    jj_ntk = ntk;");
+    genCodeLine ("    jj_kind = kind;");
+    genCodeLine ("    return reached;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private static int jj_track_rtn(final StackTraceElement e) {");
+    genCodeLine ("    if (!e.getClassName().equals(" + s_cu_name + ".class.getName())) return -1;");
+    genCodeLine ("    final String name = e.getMethodName();");
+    for (int i = 0; i < s_bnfproductions.size (); i++)
+      genCodeLine ("    if (name.equals(\"" + s_bnfproductions.get (i).getLhs () + "\")) return " + i + ";");
+    genCodeLine ("    return -1;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private boolean jj_track_parse(final int rtn, final Token end, final int kind) {");
+    genCodeLine ("    token = jj_first;");
+    if (Options.isCacheTokens ())
+      genCodeLine ("    jj_nt = token.next;");
+    else
+      genCodeLine ("    jj_ntk = -1;");
+    genCodeLine ("    jj_gen = 0;");
+    if (s_maskindex > 0)
+      genCodeLine ("    java.util.Arrays.fill(jj_la1, -1);");
+    if (bRescan)
+      genCodeLine ("    for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+    genCodeLine ("    jj_kind = -1;");
+    genCodeLine ("    jj_track_end = end;");
+    genCodeLine ("    try {");
+    genCodeLine ("      Token start;");
+    genCodeLine ("      do {");
+    genCodeLine ("        start = token;");
+    genCodeLine ("        switch (rtn) {");
+    for (int i = 0; i < s_bnfproductions.size (); i++)
+      genCodeLine ("          case " + i + ": jj_track_" + s_bnfproductions.get (i).getLhs () + "(); break;");
+    genCodeLine ("        }");
+    genCodeLine ("        // The production may have been parsed more than once");
+    genCodeLine ("      } while (token != start);");
+    genCodeLine ("      return false;");
+    genCodeLine ("    } catch (final RuntimeException ex) {");
+    genCodeLine ("      return ex == jj_track_stop && token == end && jj_kind == kind;");
+    genCodeLine ("    } catch (final StackOverflowError ex) {");
+    genCodeLine ("      // The parse runs on top of the one that failed");
+    genCodeLine ("      return false;");
+    genCodeLine ("    } finally {");
+    genCodeLine ("      jj_track_end = null;");
+    genCodeLine ("    }");
+    genCodeLine ("  }");
+  }
+
+  /**
+   * Generate the start of a new token chain. With LAZY_ERROR_REPORTING it is
+   * remembered, to parse the tokens again for the expected tokens of an error.
+   *
+   * @param bLazyErrors
+   *        LAZY_ERROR_REPORTING on?
+   */
+  private void _genNewToken (final boolean bLazyErrors)
+  {
+    genCodeLine ("	 token = new Token();");
+    if (bLazyErrors)
+      genCodeLine ("	 jj_first = token;");
+  }
+
+  /**
+   * Generate the error tracking part of a ReInit method. Instead of clearing
+   * <code>jj_la1</code> and the saved lookaheads, the parser moves on to a
+   * generation none of them belongs to, so reusing a parser allocates nothing.
+   * They are only cleared if the generation counter nears its limit. The saved
+   * lookaheads drop their first token in any case, so that a reused parser does
+   * not keep the tokens of the last input alive.
+   *
+   * @param bSaveLookaheads
+   *        <code>true</code> if the parser saves its syntactic lookaheads
+   */
+  private void _genReInitErrorTracking (final boolean bSaveLookaheads)
+  {
+    if (bSaveLookaheads)
+      genCodeLine ("	 jj_gen = Math.max(jj_gen, jj_maxgen) + 1;");
+    else
+      genCodeLine ("	 jj_gen++;");
+    genCodeLine ("	 final boolean wrap = jj_gen >= 0x40000000;");
+    genCodeLine ("	 if (wrap) {");
+    genCodeLine ("	   jj_gen = 0;");
+    if (s_maskindex > 0)
+      genCodeLine ("	   java.util.Arrays.fill(jj_la1, -1);");
+    if (bSaveLookaheads)
+      genCodeLine ("	   jj_maxgen = 0;");
+    genCodeLine ("	 }");
+    if (bSaveLookaheads)
+    {
+      genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) {");
+      genCodeLine ("	   for (JJCalls c = jj_2_rtns[i]; c != null; c = c.next) {");
+      genCodeLine ("	     if (wrap) c.gen = 0;");
+      genCodeLine ("	     c.first = null;");
+      genCodeLine ("	   }");
+      genCodeLine ("	 }");
+    }
+  }
+
   public static void reInit ()
   {
     s_lookaheadNeeded = false;
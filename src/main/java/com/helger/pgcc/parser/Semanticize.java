@@ -35,6 +35,7 @@ package com.helger.pgcc.parser;
 
 import static com.helger.pgcc.parser.JavaCCGlobals.s_actForEof;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_bnfproductions;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_to_insertion_point_1;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_lexstate_I2S;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_lexstate_S2I;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_named_tokens_table;
@@ -75,6 +76,34 @@ public class Semanticize
     s_aItemList.clear ();
   }
 
+  /**
+   * With LAZY_TOKEN_IMAGE the image field of a token is private, because it
+   * stays null until getImage() is called. Warn about each access to ".image"
+   * in the Java code of the grammar, starting at the compilation unit, so it
+   * is reported before the generated code fails to compile.
+   */
+  /**
+   * Warn about each access to a field with the passed name in the Java code of
+   * the grammar.
+   *
+   * @param sField
+   *        Name of the field
+   * @param sMessage
+   *        The warning
+   */
+  private static void _checkFieldAccess (final String sField, final String sMessage)
+  {
+    if (s_cu_to_insertion_point_1.isEmpty ())
+      return;
+
+    for (Token t = s_cu_to_insertion_point_1.get (0); t != null && t.next != null; t = t.next)
+    {
+      final Token aName = t.next;
+      if (".".equals (t.image) && sField.equals (aName.image))
+        JavaCCErrors.warning (aName, sMessage);
+    }
+  }
+
   public static void start () throws MetaParseException
   {
     if (JavaCCErrors.getErrorCount () != 0)
@@ -86,6 +115,16 @@ public class Semanticize
                             "is more than 1.  Set option FORCE_LA_CHECK to true to force checking.");
     }
 
+    if (Options.isLazyTokenImage ())
+      _checkFieldAccess ("image",
+                         "The image field of Token is private with option LAZY_TOKEN_IMAGE. " +
+                                  "Use getImage() or setImage(String) instead.");
+
+    if (Options.isLazyExceptions () && Options.getOutputLanguage ().isJava ())
+      _checkFieldAccess ("expectedTokenSequences",
+                         "The expectedTokenSequences field of ParseException is only filled by " +
+                                                   "getExpectedTokenSequences() or getMessage() with option LAZY_EXCEPTIONS.");
+
     /*
      * The following walks the entire parse tree to convert all LOOKAHEAD's that
      * are not at choice points (but at beginning of sequences) and converts
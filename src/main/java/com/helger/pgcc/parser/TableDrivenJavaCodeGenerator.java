@@ -35,10 +35,16 @@ package com.helger.pgcc.parser;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import com.helger.commons.string.StringHelper;
 import com.helger.pgcc.output.EOutputLanguage;
@@ -54,6 +60,28 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
 
   @Override
   public void generateCode (final TokenizerData tokenizerData)
+  {
+    final Map <String, Object> options = createTemplateOptions (tokenizerData);
+    try
+    {
+      m_codeGenerator.writeTemplate (TokenManagerTemplate, options);
+      if (Options.isIncrementalLexing ())
+        m_codeGenerator.writeTemplate (LexGenJava.INCREMENTAL_LEXING_TEMPLATE_RESOURCE_URL, options);
+      dumpTables (m_codeGenerator, tokenizerData);
+      _dumpMatchInfo (m_codeGenerator, tokenizerData);
+    }
+    catch (final IOException ioe)
+    {
+      assert (false);
+    }
+  }
+
+  /**
+   * @param tokenizerData
+   *        The tokenizer data. Never <code>null</code>.
+   * @return The variables used to expand the token manager template.
+   */
+  protected Map <String, Object> createTemplateOptions (final TokenizerData tokenizerData)
   {
     final String superClass = (String) Options.getAllOptions ().get (Options.USEROPTION__TOKEN_MANAGER_SUPER_CLASS);
 
@@ -67,20 +95,26 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     options.put ("charStreamName", CodeGenerator.getCharStreamName ());
     options.put ("defaultLexState", tokenizerData.m_defaultLexState);
     options.put ("decls", tokenizerData.m_decls);
+    options.put ("imports", tokenizerData.m_imports == null ? "" : tokenizerData.m_imports);
     options.put ("superClass", StringHelper.hasNoText (superClass) ? "" : "extends " + superClass);
     options.put ("noDfa", Options.isNoDfa ());
     options.put ("generatedStates", tokenizerData.m_nfa.size ());
-    try
-    {
-      m_codeGenerator.writeTemplate (TokenManagerTemplate, options);
-      _dumpDfaTables (m_codeGenerator, tokenizerData);
-      dumpNfaTables (m_codeGenerator, tokenizerData);
-      _dumpMatchInfo (m_codeGenerator, tokenizerData);
-    }
-    catch (final IOException ioe)
-    {
-      assert (false);
-    }
+    options.put ("MIXED_LEX_STATES", Boolean.valueOf (_isMixed (tokenizerData)));
+    return options;
+  }
+
+  /**
+   * Emit the tables driving the matching loop of the template.
+   *
+   * @param codeGenerator
+   *        The code generator to write to.
+   * @param tokenizerData
+   *        The tokenizer data.
+   */
+  protected void dumpTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  {
+    _dumpDfaTables (codeGenerator, tokenizerData);
+    dumpNfaTables (codeGenerator, tokenizerData);
   }
 
   public void finish (final TokenizerData tokenizerData)
@@ -96,108 +130,210 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     m_codeGenerator.saveOutput (fileName);
   }
 
+  private static boolean _isMixed (final TokenizerData tokenizerData)
+  {
+    if (tokenizerData.m_mixedLexStates != null)
+      for (final boolean bMixed : tokenizerData.m_mixedLexStates)
+        if (bMixed)
+          return true;
+    return false;
+  }
+
   private void _dumpDfaTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
   {
+    // An IGNORE_CASE literal is also looked up with the other cases of its
+    // first character
+    final Map <Integer, List <Integer>> literalsByKey = new TreeMap <> ();
+    for (final Map.Entry <Integer, List <Integer>> entry : tokenizerData.m_literalKinds.entrySet ())
+    {
+      final int key = entry.getKey ().intValue ();
+      for (final Integer kind : entry.getValue ())
+      {
+        final char c = (char) (key & 0xffff);
+        final Set <Character> firstChars = new LinkedHashSet <> ();
+        firstChars.add (Character.valueOf (c));
+        if (tokenizerData.m_allMatches.get (kind).m_ignoreCase)
+        {
+          firstChars.add (Character.valueOf (Character.toLowerCase (c)));
+          firstChars.add (Character.valueOf (Character.toUpperCase (c)));
+        }
+        for (final Character aFirstChar : firstChars)
+          literalsByKey.computeIfAbsent (Integer.valueOf (key & 0xffff0000 | aFirstChar.charValue ()),
+                                         k -> new ArrayList <> ())
+                       .add (kind);
+      }
+    }
+
+    final Map <Integer, String> images = new HashMap <> ();
+    for (final Map.Entry <Integer, List <String>> entry : tokenizerData.m_literalSequence.entrySet ())
+    {
+      final List <Integer> kinds = tokenizerData.m_literalKinds.get (entry.getKey ());
+      for (int j = 0; j < kinds.size (); j++)
+        images.put (kinds.get (j), entry.getValue ().get (j));
+    }
+
     final Map <Integer, int []> startAndSize = new HashMap <> ();
+    final List <int []> literals = new ArrayList <> ();
     int i = 0;
 
-    codeGenerator.genCodeLine ("private static final int[] stringLiterals = {");
-    for (final int key : tokenizerData.m_literalSequence.keySet ())
+    for (final Map.Entry <Integer, List <Integer>> entry : literalsByKey.entrySet ())
     {
       final int [] arr = new int [2];
-      final List <String> l = tokenizerData.m_literalSequence.get (key);
-      final List <Integer> kinds = tokenizerData.m_literalKinds.get (key);
+      final List <Integer> kinds = entry.getValue ();
+      // Longest first, so that the first match is the longest one
+      kinds.sort ( (a, b) -> images.get (b).length () - images.get (a).length ());
       arr[0] = i;
-      arr[1] = l.size ();
-      int j = 0;
-      if (i > 0)
-        codeGenerator.genCodeLine (", ");
-      for (final String s : l)
+      arr[1] = kinds.size ();
+      for (final Integer aKind : kinds)
       {
-        if (j > 0)
-          codeGenerator.genCodeLine (", ");
-        codeGenerator.genCode (Integer.toString (s.length ()));
+        final String s = images.get (aKind);
+        final int kind = aKind.intValue ();
+        // Length, ignore case flag, characters, kind and the NFA state to
+        // continue with
+        final int [] literal = new int [s.length () + 4];
+        literal[0] = s.length ();
+        literal[1] = tokenizerData.m_allMatches.get (aKind).m_ignoreCase ? 1 : 0;
         for (int k = 0; k < s.length (); k++)
+          literal[k + 2] = s.charAt (k);
+        literal[s.length () + 2] = kind;
+        literal[s.length () + 3] = tokenizerData.m_kindToNfaStartState.get (kind).intValue ();
+        literals.add (literal);
+        i += literal.length;
+      }
+      startAndSize.put (entry.getKey (), arr);
+    }
+
+    if (Options.isPackedTables ())
+    {
+      final int [] flat = new int [i];
+      int n = 0;
+      for (final int [] literal : literals)
+        for (final int value : literal)
+          flat[n++] = value;
+      codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] stringLiterals", flat));
+    }
+    else
+    {
+      codeGenerator.genCodeLine ("private static final int[] stringLiterals = {");
+      int n = 0;
+      for (final int [] literal : literals)
+      {
+        if (n++ > 0)
+          codeGenerator.genCodeLine (", ");
+        for (int k = 0; k < literal.length; k++)
         {
-          codeGenerator.genCode (", ");
-          codeGenerator.genCode (Integer.toString (s.charAt (k)));
-          i++;
+          if (k > 0)
+            codeGenerator.genCode (", ");
+          codeGenerator.genCode (Integer.toString (literal[k]));
         }
-        final int kind = kinds.get (j);
-        codeGenerator.genCode (", " + kind);
-        codeGenerator.genCode (", " + tokenizerData.m_kindToNfaStartState.get (kind));
-        i += 3;
-        j++;
       }
-      startAndSize.put (key, arr);
+      codeGenerator.genCodeLine ("};");
+    }
+
+    // The literals starting with each character of a lexical state, as flat
+    // tables over the range of first characters of the state.
+    final int nLexStates = tokenizerData.m_lexStateNames.length;
+    final int [] low = new int [nLexStates];
+    final int [] high = new int [nLexStates];
+    Arrays.fill (low, Integer.MAX_VALUE);
+    for (final int key : startAndSize.keySet ())
+    {
+      final int lexState = key >>> 16;
+      final int c = key & 0xffff;
+      low[lexState] = Math.min (low[lexState], c);
+      high[lexState] = Math.max (high[lexState], c + 1);
+    }
+    final int [] base = new int [nLexStates];
+    int size = 0;
+    for (int lexState = 0; lexState < nLexStates; lexState++)
+    {
+      if (high[lexState] == 0)
+        low[lexState] = 0;
+      base[lexState] = size - low[lexState];
+      size += high[lexState] - low[lexState];
+    }
+    final int [] start = new int [size];
+    final int [] count = new int [size];
+    for (final Map.Entry <Integer, int []> entry : startAndSize.entrySet ())
+    {
+      final int key = entry.getKey ().intValue ();
+      final int index = base[key >>> 16] + (key & 0xffff);
+      start[index] = entry.getValue ()[0];
+      count[index] = entry.getValue ()[1];
     }
-    codeGenerator.genCodeLine ("};");
 
-    codeGenerator.genCodeLine ("private static final java.util.Map<Integer, int[]> startAndSize =\n" +
-                               "    new java.util.HashMap<Integer, int[]>();");
+    PackedTableJava.genDecoders (codeGenerator, true, Options.isPackedTables (), Options.isPackedTables ());
+    codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] jjliteralLow", low));
+    codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] jjliteralHigh", high));
+    codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] jjliteralBase", base));
+    codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] jjliteralStart", start));
+    codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] jjliteralCount", count));
 
-    // Static block to actually initialize the map from the int array above.
-    codeGenerator.genCodeLine ("static {");
-    for (final int key : tokenizerData.m_literalSequence.keySet ())
+    if (_isMixed (tokenizerData))
     {
-      final int [] arr = startAndSize.get (key);
-      codeGenerator.genCodeLine ("startAndSize.put(" + key + ", new int[]{" + arr[0] + ", " + arr[1] + "});");
+      codeGenerator.genCode ("private static final boolean[] jjmixedLexState = {");
+      for (int lexState = 0; lexState < nLexStates; lexState++)
+      {
+        if (lexState > 0)
+          codeGenerator.genCode (", ");
+        codeGenerator.genCode (Boolean.toString (tokenizerData.m_mixedLexStates[lexState]));
+      }
+      codeGenerator.genCodeLine ("};");
     }
-    codeGenerator.genCodeLine ("}");
   }
 
   private void dumpNfaTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
   {
-    final EOutputLanguage eOutputLanguage = codeGenerator.getOutputLanguage ();
-
-    // WE do the following for java so that the generated code is reasonable
-    // size and can be compiled. May not be needed for other languages.
-    codeGenerator.genCodeLine ("private static final " + eOutputLanguage.getTypeLong () + "[][] jjCharData = {");
     final Map <Integer, TokenizerData.NfaState> nfa = tokenizerData.m_nfa;
+
+    // Reduce the alphabet to the character classes the NFA states can
+    // distinguish, so each state needs one entry per class instead of a bit
+    // per character.
+    final List <char []> stateChars = new ArrayList <> (nfa.size ());
     for (int i = 0; i < nfa.size (); i++)
     {
       final TokenizerData.NfaState tmp = nfa.get (i);
-      if (i > 0)
-        codeGenerator.genCodeLine (",");
-      if (tmp == null)
+      final char [] chars = new char [tmp == null ? 0 : tmp.m_characters.size ()];
+      if (tmp != null)
       {
-        codeGenerator.genCode ("{}");
-        continue;
+        int n = 0;
+        for (final Character c : tmp.m_characters)
+          chars[n++] = c.charValue ();
+        Arrays.sort (chars);
       }
-      codeGenerator.genCode ("{");
-      final BitSet bits = new BitSet ();
-      for (final char c : tmp.m_characters)
-      {
-        bits.set (c);
-      }
-      final long [] longs = bits.toLongArray ();
-      for (int k = 0; k < longs.length; k++)
+      stateChars.add (chars);
+    }
+    final CharClassMap charClasses = CharClassMap.build (stateChars);
+    final int classCount = charClasses.getClassCount ();
+    final char [] moves = new char [nfa.size () * classCount];
+    for (int i = 0; i < nfa.size (); i++)
+      for (final int cls : charClasses.getClasses (i))
+        moves[i * classCount + cls] = 1;
+    dumpCharClassMap (codeGenerator, charClasses);
+    dumpPackedTable (codeGenerator, "jjstateMoves", moves);
+
+    if (Options.isPackedTables ())
+    {
+      final int [] [] compositeStates = new int [nfa.size ()] [];
+      final int [] matchKinds = new int [nfa.size ()];
+      final int [] [] nextStates = new int [nfa.size ()] [];
+      for (int i = 0; i < nfa.size (); i++)
       {
-        int rep = 1;
-        while (k + rep < longs.length && longs[k + rep] == longs[k])
-          rep++;
-        if (k > 0)
-          codeGenerator.genCode (", ");
-        codeGenerator.genCode (rep + ", ");
-        codeGenerator.genCode (eOutputLanguage.getLongHex (longs[k]));
-        k += rep - 1;
+        final TokenizerData.NfaState tmp = nfa.get (i);
+        compositeStates[i] = tmp == null ? new int [0] : _toIntArray (tmp.m_compositeStates);
+        matchKinds[i] = tmp == null ? Integer.MAX_VALUE : tmp.m_kind;
+        nextStates[i] = tmp == null ? new int [0] : _toIntArray (tmp.m_nextStates);
       }
-      codeGenerator.genCode ("}");
+      codeGenerator.genCode (PackedTableJava.intRowsTable ("private static final int[][] jjcompositeState",
+                                                           compositeStates));
+      codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] jjmatchKinds", matchKinds));
+      codeGenerator.genCode (PackedTableJava.intRowsTable ("private static final int[][] jjnextStateSet",
+                                                           nextStates));
+      codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] jjInitStates",
+                                                       _toIntArray (tokenizerData.m_initialStates.values ())));
+      dumpWildcardKinds (codeGenerator, tokenizerData);
+      return;
     }
-    codeGenerator.genCodeLine ("};");
-
-    codeGenerator.genCodeLine ("private static final long[][] jjChars = ");
-    codeGenerator.genCodeLine ("    new long[" + tokenizerData.m_nfa.size () + "][(Character.MAX_VALUE >> 6) + 1]; ");
-    codeGenerator.genCodeLine ("static { ");
-    codeGenerator.genCodeLine ("  for (int i = 0; i < " + tokenizerData.m_nfa.size () + "; i++) { ");
-    codeGenerator.genCodeLine ("    int ind = 0; ");
-    codeGenerator.genCodeLine ("    for (int j = 0; j < jjCharData[i].length; j += 2) { ");
-    codeGenerator.genCodeLine ("      for (int k = 0; k < (int)jjCharData[i][j]; k++) { ");
-    codeGenerator.genCodeLine ("        jjChars[i][ind++] = jjCharData[i][j + 1]; ");
-    codeGenerator.genCodeLine ("      } ");
-    codeGenerator.genCodeLine ("    } ");
-    codeGenerator.genCodeLine ("  } ");
-    codeGenerator.genCodeLine ("} ");
 
     codeGenerator.genCodeLine ("private static final int[][] jjcompositeState = {");
     for (int i = 0; i < nfa.size (); i++)
@@ -271,8 +407,20 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     }
     codeGenerator.genCodeLine ("};");
 
+    dumpWildcardKinds (codeGenerator, tokenizerData);
+  }
+
+  protected static void dumpWildcardKinds (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  {
+    if (Options.isPackedTables ())
+    {
+      codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] canMatchAnyChar",
+                                                       _toIntArray (tokenizerData.m_wildcardKind.values ())));
+      return;
+    }
+
     codeGenerator.genCodeLine ("private static final int[] canMatchAnyChar = {");
-    k = 0;
+    int k = 0;
     for (final Integer a : tokenizerData.m_wildcardKind.values ())
     {
       if (k++ > 0)
@@ -282,6 +430,63 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     codeGenerator.genCodeLine ("};");
   }
 
+  /**
+   * Emit the character class map as a two-level table: the high byte of a
+   * character selects a block of 256 classes in <code>jjcharClassBlocks</code>
+   * via <code>jjcharClassIndex</code>.
+   *
+   * @param codeGenerator
+   *        Code generator to write to.
+   * @param charClasses
+   *        The character classes.
+   */
+  protected static void dumpCharClassMap (final CodeGenerator codeGenerator, final CharClassMap charClasses)
+  {
+    final char [] blockIndex = new char [256];
+    final char [] blocks = charClasses.buildBlocks (blockIndex);
+    codeGenerator.genCodeLine ("private static final int jjcharClassCount = " + charClasses.getClassCount () + ";");
+    dumpPackedTable (codeGenerator, "jjcharClassIndex", blockIndex);
+    dumpPackedTable (codeGenerator, "jjcharClassBlocks", blocks);
+  }
+
+  /**
+   * Emit a char table as run length encoded (count, value) pairs in string
+   * constants, decoded by <code>jjUnpack</code> of the template.
+   *
+   * @param codeGenerator
+   *        Code generator to write to.
+   * @param name
+   *        Name of the generated field.
+   * @param data
+   *        The table content.
+   */
+  protected static void dumpPackedTable (final CodeGenerator codeGenerator, final String name, final char [] data)
+  {
+    final StringBuilder packed = new StringBuilder ();
+    for (int i = 0; i < data.length;)
+    {
+      int count = 1;
+      while (i + count < data.length && data[i + count] == data[i] && count < Character.MAX_VALUE)
+        count++;
+      packed.append ((char) count).append (data[i]);
+      i += count;
+    }
+
+    codeGenerator.genCode (PackedTableJava.unpackCall ("private static final char[] " + name,
+                                                       "jjUnpack",
+                                                       packed.toString (),
+                                                       Integer.toString (data.length)));
+  }
+
+  private static int [] _toIntArray (final Collection <Integer> values)
+  {
+    final int [] ret = new int [values.size ()];
+    int i = 0;
+    for (final Integer value : values)
+      ret[i++] = value.intValue ();
+    return ret;
+  }
+
   private void _dumpMatchInfo (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
   {
     final Map <Integer, TokenizerData.MatchInfo> allMatches = tokenizerData.m_allMatches;
@@ -311,6 +516,8 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
           toSkip.set (i);
           break;
         case SPECIAL_TOKEN:
+          // Special tokens are skipped as well
+          toSkip.set (i);
           toSpecial.set (i);
           break;
         case MORE:
@@ -358,14 +565,19 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     generateBitVector ("jjtoMore", toMore, codeGenerator);
     generateBitVector ("jjtoToken", toToken, codeGenerator);
 
-    codeGenerator.genCodeLine ("private static final int[] jjnewLexState = {");
-    for (int i = 0; i < newStates.length; i++)
+    if (Options.isPackedTables ())
+      codeGenerator.genCode (PackedTableJava.intTable ("private static final int[] jjnewLexState", newStates));
+    else
     {
-      if (i > 0)
-        codeGenerator.genCode (", ");
-      codeGenerator.genCode ("0x" + Integer.toHexString (newStates[i]));
+      codeGenerator.genCodeLine ("private static final int[] jjnewLexState = {");
+      for (int i = 0; i < newStates.length; i++)
+      {
+        if (i > 0)
+          codeGenerator.genCode (", ");
+        codeGenerator.genCode ("0x" + Integer.toHexString (newStates[i]));
+      }
+      codeGenerator.genCodeLine ("};");
     }
-    codeGenerator.genCodeLine ("};");
 
     // Action functions.
 
@@ -423,8 +635,14 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
   private static void generateBitVector (final String name, final BitSet bits, final CodeGenerator codeGenerator)
   {
     final EOutputLanguage eOutputLanguage = codeGenerator.getOutputLanguage ();
-    codeGenerator.genCodeLine ("private static final " + eOutputLanguage.getTypeLong () + "[] " + name + " = {");
     final long [] longs = bits.toLongArray ();
+    if (Options.isPackedTables ())
+    {
+      codeGenerator.genCode (PackedTableJava.longTable ("private static final long[] " + name, longs));
+      return;
+    }
+
+    codeGenerator.genCodeLine ("private static final " + eOutputLanguage.getTypeLong () + "[] " + name + " = {");
     for (int i = 0; i < longs.length; i++)
     {
       if (i > 0)
@@ -35,6 +35,7 @@ package com.helger.pgcc.parser;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,6 +49,9 @@ public class TokenizerData
   // Decls coming from TOKEN_MGR_DECLS
   public String m_decls;
 
+  // Package and import declarations of the grammar file.
+  public String m_imports;
+
   // A map of <LexState, first char> to a sequence of literals indexed by:
   // ((int0LexicalState << 16 | (int)c)
   // The literals in the list are all guaranteed to start with the char and re
@@ -119,18 +123,22 @@ public class TokenizerData
     public final int m_newLexState;
     // Any lexical state transition specified.
     public final String m_action;
+    // Whether the regular expression was declared with IGNORE_CASE.
+    public final boolean m_ignoreCase;
 
     public MatchInfo (final String image,
                       final int kind,
                       final EMatchType matchType,
                       final int newLexState,
-                      final String action)
+                      final String action,
+                      final boolean ignoreCase)
     {
       this.m_image = image;
       this.m_kind = kind;
       this.m_matchType = matchType;
       this.m_newLexState = newLexState;
       this.m_action = action;
+      this.m_ignoreCase = ignoreCase;
     }
   }
 
@@ -149,6 +157,11 @@ public class TokenizerData
   // DEFAULT lexical state index.
   public int m_defaultLexState;
 
+  // Whether a lexical state mixes IGNORE_CASE and case sensitive specs,
+  // indexed by lexical state. The NFA of such a state does not continue a
+  // string literal match.
+  public boolean [] m_mixedLexStates;
+
   public void setParserName (final String parserName)
   {
     this.m_parserName = parserName;
@@ -159,6 +172,11 @@ public class TokenizerData
     this.m_decls = decls;
   }
 
+  public void setImports (final String imports)
+  {
+    this.m_imports = imports;
+  }
+
   public void setLiteralSequence (final Map <Integer, List <String>> literalSequence)
   {
     this.m_literalSequence = literalSequence;
@@ -204,6 +222,11 @@ public class TokenizerData
     this.m_defaultLexState = defaultLexState;
   }
 
+  public void setMixedLexStates (final boolean [] mixedLexStates)
+  {
+    this.m_mixedLexStates = mixedLexStates;
+  }
+
   public void updateMatchInfo (final Map <Integer, String> actions,
                                final int [] newLexStateIndices,
                                final long [] toSkip,
@@ -216,14 +239,15 @@ public class TokenizerData
       final int vectorIndex = i >> 6;
       final long bits = (1L << (i & 077));
       EMatchType matchType = EMatchType.TOKEN;
-      if (toSkip.length > vectorIndex && (toSkip[vectorIndex] & bits) != 0L)
+      // Special tokens are also part of the skip vector, so check them first.
+      if (toSpecial.length > vectorIndex && (toSpecial[vectorIndex] & bits) != 0L)
       {
-        matchType = EMatchType.SKIP;
+        matchType = EMatchType.SPECIAL_TOKEN;
       }
       else
-        if (toSpecial.length > vectorIndex && (toSpecial[vectorIndex] & bits) != 0L)
+        if (toSkip.length > vectorIndex && (toSkip[vectorIndex] & bits) != 0L)
         {
-          matchType = EMatchType.SPECIAL_TOKEN;
+          matchType = EMatchType.SKIP;
         }
         else
           if (toMore.length > vectorIndex && (toMore[vectorIndex] & bits) != 0L)
@@ -232,14 +256,30 @@ public class TokenizerData
           }
           else
           {
-            assert (toToken.length > vectorIndex && (toToken[vectorIndex] & bits) != 0L);
+            // Also used for private regular expressions (<#X>) which are
+            // never matched on their own
             matchType = EMatchType.TOKEN;
           }
-      final MatchInfo matchInfo = new MatchInfo (Options.isIgnoreCase () ? null : ExpRStringLiteral.s_allImages[i],
+      final boolean ignoreCase = Options.isIgnoreCase () ||
+                                 (LexGenJava.s_ignoreCase != null && LexGenJava.s_ignoreCase[i]);
+      // Same rules as ExpRStringLiteral.dumpStrLiteralImages: the fixed image
+      // can only be used for plain tokens whose image is not affected by a
+      // preceding MORE or by case folding.
+      String image = ExpRStringLiteral.s_allImages[i];
+      if (image != null &&
+          (matchType != EMatchType.TOKEN ||
+           LexGenJava.s_canReachOnMore[LexGenJava.s_lexStates[i]] ||
+           (ignoreCase &&
+            (!image.equals (image.toLowerCase (Locale.US)) || !image.equals (image.toUpperCase (Locale.US))))))
+      {
+        image = null;
+      }
+      final MatchInfo matchInfo = new MatchInfo (image,
                                                  i,
                                                  matchType,
                                                  newLexStateIndices[i],
-                                                 actions.get (i));
+                                                 actions.get (i),
+                                                 ignoreCase);
       m_allMatches.put (i, matchInfo);
     }
   }
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Assume;
+
+import com.helger.commons.io.file.FileSystemIterator;
+import com.helger.commons.io.file.IFileFilter;
+
+/**
+ * Compiles the Java files created for a grammar, so that tests can run the
+ * generated parser and not only look at its source.
+ */
+public final class GeneratedJavaCompiler
+{
+  private GeneratedJavaCompiler ()
+  {}
+
+  /**
+   * Compile all Java files in the given directory into its "classes"
+   * sub-directory. The test is skipped if no system Java compiler is
+   * available.
+   *
+   * @param fSrcDir
+   *        The directory the grammar was generated into. May not be
+   *        <code>null</code>.
+   * @return A class loader for the compiled classes. Never <code>null</code>.
+   * @throws Exception
+   *         on error
+   */
+  @Nonnull
+  public static ClassLoader compile (@Nonnull final File fSrcDir) throws Exception
+  {
+    final JavaCompiler aCompiler = ToolProvider.getSystemJavaCompiler ();
+    Assume.assumeNotNull (aCompiler);
+
+    final File fClassesDir = new File (fSrcDir, "classes");
+    fClassesDir.mkdirs ();
+
+    final List <File> aSources = new ArrayList <> ();
+    for (final File f : new FileSystemIterator (fSrcDir).withFilter (IFileFilter.filenameEndsWith (".java")))
+      aSources.add (f);
+
+    try (final StandardJavaFileManager aFileManager = aCompiler.getStandardFileManager (null,
+                                                                                         null,
+                                                                                         StandardCharsets.UTF_8))
+    {
+      final List <String> aOptions = new ArrayList <> ();
+      aOptions.add ("-nowarn");
+      aOptions.add ("-encoding");
+      aOptions.add ("UTF-8");
+      aOptions.add ("-d");
+      aOptions.add (fClassesDir.getAbsolutePath ());
+      final boolean bSuccess = aCompiler.getTask (null,
+                                                  aFileManager,
+                                                  null,
+                                                  aOptions,
+                                                  null,
+                                                  aFileManager.getJavaFileObjectsFromFiles (aSources))
+                                        .call ()
+                                        .booleanValue ();
+      assertTrue ("Failed to compile the Java files in " + fSrcDir, bSuccess);
+    }
+    return new URLClassLoader (new URL [] { fClassesDir.toURI ().toURL () },
+                               GeneratedJavaCompiler.class.getClassLoader ());
+  }
+}
@@ -0,0 +1,451 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.jjtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+import com.helger.pgcc.parser.Main;
+
+/**
+ * Test that a parser generated with a JJTree option builds the same tree as
+ * the parser generated without it: same nodes with the same first and last
+ * tokens, and the same error messages. With VISITOR=true the tree is also
+ * dumped by a subclass of the generated walker. With ELIDE_UNARY_NODES=true
+ * the implicit nodes with one child are expected to be missing. With
+ * TREE_FILE=true the tree is written to a file, which must give the same tree
+ * when it is read back and when it is mapped.
+ */
+@RunWith (Parameterized.class)
+public final class GeneratedJJTreeOptionsTest
+{
+  private static final File SRC = new File ("src/test/resources/jjtree/options/grammar.jjt");
+
+  private static final String [] INPUTS = { "",
+                                            "var x = 1;",
+                                            "var x; x = 1 + 2 * 3 - -4; print x, f(x, g()), (x);",
+                                            "// comment\nif (a < b) { print a; } else if (a == b) print b; else { }",
+                                            "{ { var y = (1 + 2) * (3 + 4); } f(1); -x; }",
+                                            "print a * b * c + d + e;",
+                                            "x = ;",
+                                            "print 1, ;",
+                                            "if (a) else",
+                                            "f(1, 2;" };
+
+  /** The nodes of the grammar without a node descriptor */
+  private static final Set <String> IMPLICIT_NODES = new HashSet <> (Arrays.asList ("Expr",
+                                                                                   "Sum",
+                                                                                   "Product",
+                                                                                   "Unary",
+                                                                                   "Name",
+                                                                                   "Number"));
+
+  @Parameters (name = "{0}")
+  public static List <Object []> getAllOptions ()
+  {
+    final List <Object []> ret = new ArrayList <> ();
+    ret.add (new Object [] { "incrementalparsing",
+                             new String [] { "-INCREMENTAL_PARSING=true" },
+                             new String [] { "-INCREMENTAL_LEXING=true" } });
+    ret.add (new Object [] { "arena", new String [] { "-NODE_STORAGE=ARENA" }, new String [0] });
+    ret.add (new Object [] { "visitor", new String [] { "-VISITOR=true" }, new String [0] });
+    ret.add (new Object [] { "arenavisitor",
+                             new String [] { "-VISITOR=true", "-NODE_STORAGE=ARENA" },
+                             new String [0] });
+    ret.add (new Object [] { "elideunarynodes", new String [] { "-ELIDE_UNARY_NODES=true" }, new String [0] });
+    ret.add (new Object [] { "treefile", new String [] { "-TREE_FILE=true" }, new String [0] });
+    return ret;
+  }
+
+  @Parameter (0)
+  public String m_sName;
+
+  /** Options for JJTree only */
+  @Parameter (1)
+  public String [] m_aJJTreeOptions;
+
+  /** Options for JJTree and JavaCC */
+  @Parameter (2)
+  public String [] m_aOptions;
+
+  /**
+   * A node with its first and last token, built from the tree of a parser.
+   */
+  private static final class TreeNode
+  {
+    private final String m_sName;
+    private final String m_sTokens;
+    private final List <TreeNode> m_aChildren = new ArrayList <> ();
+
+    private TreeNode (@Nonnull final String sName, @Nonnull final String sTokens)
+    {
+      m_sName = sName;
+      m_sTokens = sTokens;
+    }
+
+    TreeNode (@Nonnull final String sName, final Object aFirstToken, final Object aLastToken)
+    {
+      m_sName = sName;
+      m_sTokens = aFirstToken + " " + aLastToken;
+    }
+
+    /**
+     * @return A copy of this tree in which each node with one of the given
+     *         names and exactly one child is replaced by that child
+     */
+    @Nonnull
+    TreeNode getElided (@Nonnull final Set <String> aNames)
+    {
+      final TreeNode ret = new TreeNode (m_sName, m_sTokens);
+      for (final TreeNode aChild : m_aChildren)
+        ret.m_aChildren.add (aChild.getElided (aNames));
+      if (aNames.contains (m_sName) && ret.m_aChildren.size () == 1)
+        return ret.m_aChildren.get (0);
+      return ret;
+    }
+
+    /**
+     * @return A copy of this tree in which the nodes with the given name have
+     *         no children
+     */
+    @Nonnull
+    TreeNode getWithoutChildrenOf (@Nonnull final String sName)
+    {
+      final TreeNode ret = new TreeNode (m_sName, m_sTokens);
+      if (!m_sName.equals (sName))
+        for (final TreeNode aChild : m_aChildren)
+          ret.m_aChildren.add (aChild.getWithoutChildrenOf (sName));
+      return ret;
+    }
+
+    private void _dump (final StringBuilder aSB, final String sIndent)
+    {
+      aSB.append (sIndent).append (m_sName).append (' ').append (m_sTokens).append ('\n');
+      for (final TreeNode aChild : m_aChildren)
+        aChild._dump (aSB, sIndent + " ");
+    }
+
+    @Override
+    public String toString ()
+    {
+      final StringBuilder aSB = new StringBuilder ();
+      _dump (aSB, "");
+      return aSB.toString ();
+    }
+  }
+
+  /**
+   * How the tree is read from the parser.
+   */
+  private enum ETree
+  {
+    /** The linked node objects */
+    NODES,
+    /** The arena of NODE_STORAGE=ARENA */
+    ARENA;
+
+    @Nonnull
+    static ETree of (@Nonnull final String [] aJJTreeOptions)
+    {
+      if (Arrays.asList (aJJTreeOptions).contains ("-NODE_STORAGE=ARENA"))
+        return ARENA;
+      return NODES;
+    }
+  }
+
+  private static final class Parser
+  {
+    private final File m_aOutDir;
+    private final ClassLoader m_aCL;
+    private final Class <?> m_aClass;
+    private final Class <?> m_aNodeClass;
+    private final Class <?> m_aSimpleNodeClass;
+    private final ETree m_eTree;
+    private final boolean m_bWalker;
+    private final boolean m_bTreeFile;
+
+    Parser (@Nonnull final String sName, @Nonnull final String [] aJJTreeOptions, @Nonnull final String [] aOptions) throws Exception
+    {
+      final File aOutDir = new File ("target/jjtree-options/" + sName);
+      // Existing support files are not overwritten, so start from scratch
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+      aOutDir.mkdirs ();
+
+      final List <String> aArgs = new ArrayList <> ();
+      aArgs.add ("-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath ());
+      for (final String sOption : aOptions)
+        aArgs.add (sOption);
+      final List <String> aJJTreeArgs = new ArrayList <> (aArgs);
+      for (final String sOption : aJJTreeOptions)
+        aJJTreeArgs.add (sOption);
+      aJJTreeArgs.add (SRC.getAbsolutePath ());
+      assertTrue (new JJTree ().main (aJJTreeArgs.toArray (new String [aJJTreeArgs.size ()])).isSuccess ());
+      aArgs.add (new File (aOutDir, "grammar.jj").getAbsolutePath ());
+      assertTrue (Main.mainProgram (aArgs.toArray (new String [aArgs.size ()])).isSuccess ());
+
+      m_eTree = ETree.of (aJJTreeOptions);
+      m_bWalker = Arrays.asList (aJJTreeOptions).contains ("-VISITOR=true");
+      m_bTreeFile = Arrays.asList (aJJTreeOptions).contains ("-TREE_FILE=true");
+      if (m_bWalker)
+      {
+        // DumpWalker extends the generated walker
+        final String sWalker = m_eTree == ETree.ARENA ? "DumpArenaWalker.java.txt" : "DumpWalker.java.txt";
+        Files.copy (new File (SRC.getParentFile (), sWalker).toPath (), new File (aOutDir, "DumpWalker.java").toPath ());
+      }
+
+      m_aOutDir = aOutDir;
+      m_aCL = GeneratedJavaCompiler.compile (aOutDir);
+      m_aClass = m_aCL.loadClass ("OptParser");
+      m_aNodeClass = m_aCL.loadClass ("Node");
+      m_aSimpleNodeClass = m_aCL.loadClass ("SimpleNode");
+    }
+
+    private TreeNode _getTree (final Object aNode) throws Exception
+    {
+      final TreeNode ret = new TreeNode (aNode.toString (),
+                                         m_aSimpleNodeClass.getMethod ("jjtGetFirstToken").invoke (aNode),
+                                         m_aSimpleNodeClass.getMethod ("jjtGetLastToken").invoke (aNode));
+      final int nChildren = ((Integer) m_aNodeClass.getMethod ("jjtGetNumChildren").invoke (aNode)).intValue ();
+      for (int i = 0; i < nChildren; i++)
+        ret.m_aChildren.add (_getTree (m_aNodeClass.getMethod ("jjtGetChild", int.class)
+                                                   .invoke (aNode, Integer.valueOf (i))));
+      return ret;
+    }
+
+    private static TreeNode _getArenaTree (final Class <?> aArenaClass,
+                                           final Object aArena,
+                                           final int nNode) throws Exception
+    {
+      final Integer aNode = Integer.valueOf (nNode);
+      final TreeNode ret = new TreeNode ((String) aArenaClass.getMethod ("getName", int.class).invoke (aArena, aNode),
+                                         aArenaClass.getMethod ("getFirstToken", int.class).invoke (aArena, aNode),
+                                         aArenaClass.getMethod ("getLastToken", int.class).invoke (aArena, aNode));
+      int nChild = ((Integer) aArenaClass.getMethod ("getFirstChild", int.class).invoke (aArena, aNode)).intValue ();
+      while (nChild >= 0)
+      {
+        assertEquals (aNode, aArenaClass.getMethod ("getParent", int.class).invoke (aArena, Integer.valueOf (nChild)));
+        ret.m_aChildren.add (_getArenaTree (aArenaClass, aArena, nChild));
+        nChild = ((Integer) aArenaClass.getMethod ("getNextSibling", int.class)
+                                       .invoke (aArena, Integer.valueOf (nChild))).intValue ();
+      }
+      return ret;
+    }
+
+    private static TreeNode _getViewTree (final Class <?> aViewClass,
+                                          final Object aView,
+                                          final int nNode) throws Exception
+    {
+      final Integer aNode = Integer.valueOf (nNode);
+      final TreeNode ret = new TreeNode ((String) aViewClass.getMethod ("getName", int.class).invoke (aView, aNode),
+                                         _getViewToken (aViewClass, aView, "getFirstToken", aNode),
+                                         _getViewToken (aViewClass, aView, "getLastToken", aNode));
+      int nChild = ((Integer) aViewClass.getMethod ("getFirstChild", int.class).invoke (aView, aNode)).intValue ();
+      while (nChild >= 0)
+      {
+        ret.m_aChildren.add (_getViewTree (aViewClass, aView, nChild));
+        nChild = ((Integer) aViewClass.getMethod ("getNextSibling", int.class)
+                                      .invoke (aView, Integer.valueOf (nChild))).intValue ();
+      }
+      assertEquals (Integer.valueOf (ret.m_aChildren.size ()),
+                    aViewClass.getMethod ("getNumChildren", int.class).invoke (aView, aNode));
+      return ret;
+    }
+
+    /**
+     * @return The image of a token of the view like Token.toString(), or
+     *         "null" if there is no token
+     */
+    private static String _getViewToken (final Class <?> aViewClass,
+                                         final Object aView,
+                                         final String sMethod,
+                                         final Integer aNode) throws Exception
+    {
+      final Integer aToken = (Integer) aViewClass.getMethod (sMethod, int.class).invoke (aView, aNode);
+      if (aToken.intValue () < 0)
+        return "null";
+      return (String) aViewClass.getMethod ("getTokenImage", int.class).invoke (aView, aToken);
+    }
+
+    /**
+     * @return A new parser for the input
+     */
+    Object create (@Nonnull final String sInput) throws Exception
+    {
+      return m_aClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    }
+
+    /**
+     * Reinitialise a parser with another input.
+     */
+    void reInit (@Nonnull final Object aParser, @Nonnull final String sInput) throws Exception
+    {
+      m_aClass.getMethod ("ReInit", Reader.class).invoke (aParser, new StringReader (sInput));
+    }
+
+    /**
+     * @return The tree of the input, or the message of the parse error
+     */
+    String run (@Nonnull final Object aParser) throws Exception
+    {
+      return run (aParser, Collections.emptySet ());
+    }
+
+    /**
+     * @return The tree of the input without the given unary nodes, or the
+     *         message of the parse error
+     */
+    String run (@Nonnull final Object aParser, @Nonnull final Set <String> aElided) throws Exception
+    {
+      final Object aRoot;
+      try
+      {
+        aRoot = m_aClass.getMethod ("parse").invoke (aParser);
+      }
+      catch (final InvocationTargetException ex)
+      {
+        assertEquals ("ParseException", ex.getCause ().getClass ().getSimpleName ());
+        return ex.getCause ().getMessage ();
+      }
+      final TreeNode aTree;
+      final Object [] aWalkArgs;
+      switch (m_eTree)
+      {
+        case ARENA:
+        {
+          final Field aField = m_aClass.getDeclaredField ("jjtree");
+          aField.setAccessible (true);
+          final Object aState = aField.get (aParser);
+          final Object aArena = aState.getClass ().getMethod ("arena").invoke (aState);
+          final Class <?> aArenaClass = m_aCL.loadClass ("JJTOptParserArena");
+          final Integer aRootIndex = (Integer) aState.getClass ().getMethod ("rootIndex").invoke (aState);
+          // The root is the last node closed and has no parent
+          assertEquals (aArenaClass.getMethod ("root").invoke (aArena), aRootIndex);
+          assertEquals (Integer.valueOf (-1), aArenaClass.getMethod ("getParent", int.class).invoke (aArena, aRootIndex));
+          aTree = _getArenaTree (aArenaClass, aArena, aRootIndex.intValue ()).getElided (aElided);
+          aWalkArgs = new Object [] { aArena, aRootIndex };
+          break;
+        }
+        default:
+          aTree = _getTree (aRoot).getElided (aElided);
+          aWalkArgs = new Object [] { aRoot };
+          break;
+      }
+      if (m_bTreeFile)
+      {
+        final Class <?> aTreeFileClass = m_aCL.loadClass ("JJTOptParserTreeFile");
+        final File aFile = new File (m_aOutDir, "tree.bin");
+        aTreeFileClass.getMethod ("write", m_aNodeClass, File.class).invoke (null, aRoot, aFile);
+        assertEquals (aTree.toString (),
+                      _getTree (aTreeFileClass.getMethod ("read", File.class).invoke (null, aFile)).toString ());
+        final Object aView = aTreeFileClass.getMethod ("map", File.class).invoke (null, aFile);
+        final Class <?> aViewClass = aView.getClass ();
+        final int nViewRoot = ((Integer) aViewClass.getMethod ("root").invoke (aView)).intValue ();
+        assertEquals (aTree.toString (), _getViewTree (aViewClass, aView, nViewRoot).toString ());
+      }
+      if (m_bWalker)
+      {
+        assertEquals (aTree.toString (), _walk (false, aWalkArgs));
+        // Returning false from enterCall skips the arguments of a call
+        assertEquals (aTree.getWithoutChildrenOf ("Call").toString (), _walk (true, aWalkArgs));
+      }
+      return aTree.toString ();
+    }
+
+    /**
+     * @return The tree as dumped by DumpWalker
+     */
+    private String _walk (final boolean bSkipCalls, @Nonnull final Object [] aWalkArgs) throws Exception
+    {
+      final Class <?> aWalkerClass = m_aCL.loadClass ("DumpWalker");
+      final Object aWalker = aWalkerClass.getConstructor (boolean.class).newInstance (Boolean.valueOf (bSkipCalls));
+      for (final Method aMethod : aWalkerClass.getMethods ())
+        if (aMethod.getName ().equals ("dump"))
+          return (String) aMethod.invoke (aWalker, aWalkArgs);
+      throw new IllegalStateException ("DumpWalker has no dump method");
+    }
+  }
+
+  private static Parser s_aDefault;
+
+  @Nonnull
+  private static synchronized Parser _getDefault () throws Exception
+  {
+    if (s_aDefault == null)
+      s_aDefault = new Parser ("default", new String [0], new String [0]);
+    return s_aDefault;
+  }
+
+  @Test
+  public void testSameAsDefault () throws Exception
+  {
+    final Parser aDefault = _getDefault ();
+    final Parser aParser = new Parser (m_sName, m_aJJTreeOptions, m_aOptions);
+    final Set <String> aElided = Arrays.asList (m_aJJTreeOptions).contains ("-ELIDE_UNARY_NODES=true") ? IMPLICIT_NODES
+                                                                                                        : Collections.emptySet ();
+    for (final String sInput : INPUTS)
+      assertEquals (sInput, aDefault.run (aDefault.create (sInput), aElided), aParser.run (aParser.create (sInput)));
+
+    // One parser for all inputs
+    final Object aReused = aParser.create ("");
+    for (final String sInput : INPUTS)
+    {
+      aParser.reInit (aReused, sInput);
+      assertEquals (sInput, aDefault.run (aDefault.create (sInput), aElided), aParser.run (aReused));
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.jjtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+import com.helger.pgcc.parser.Main;
+
+/**
+ * Test that retokenize and an incremental parse give the same tokens and tree
+ * as tokenize and a parse from scratch, across MORE and SPECIAL_TOKEN tokens
+ * and lexical state switches.
+ */
+public final class JJTreeIncrementalParsingTest
+{
+  private static Class <?> s_aTokenManagerClass;
+  private static Class <?> s_aParserClass;
+  private static Class <?> s_aNodeClass;
+  private static Constructor <?> s_aTokenManagerCtor;
+  private static Constructor <?> s_aParserCtor;
+
+  @BeforeClass
+  public static void generate () throws Exception
+  {
+    final File aSrc = new File ("src/test/resources/jjtree/incremental/grammar.jjt");
+    final File aOutDir = new File ("target/jjtree-incremental");
+    // Existing support files are not overwritten, so start from scratch
+    FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+    aOutDir.mkdirs ();
+
+    assertTrue (new JJTree ().main (new String [] { "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (),
+                                                    aSrc.getAbsolutePath () })
+                             .isSuccess ());
+    assertTrue (Main.mainProgram ("-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (),
+                                  new File (aOutDir, "grammar.jj").getAbsolutePath ())
+                    .isSuccess ());
+
+    final ClassLoader aCL = GeneratedJavaCompiler.compile (aOutDir);
+    s_aTokenManagerClass = aCL.loadClass ("IncParserTokenManager");
+    s_aParserClass = aCL.loadClass ("IncParser");
+    s_aNodeClass = aCL.loadClass ("Node");
+    s_aTokenManagerCtor = s_aTokenManagerClass.getConstructor (aCL.loadClass ("SimpleCharStream"));
+    s_aParserCtor = s_aParserClass.getConstructor (s_aTokenManagerClass);
+  }
+
+  /** The tokens and the tree, or the expected tokens of the parse error. */
+  private static final class Result
+  {
+    private final String m_sTokens;
+    private final String m_sTree;
+    private final Object m_aRoot;
+    private final Set <String> m_aExpected;
+
+    Result (final String sTokens, final String sTree, final Object aRoot, final Set <String> aExpected)
+    {
+      m_sTokens = sTokens;
+      m_sTree = sTree;
+      m_aRoot = aRoot;
+      m_aExpected = aExpected;
+    }
+  }
+
+  private static Object _newTokenManager () throws Exception
+  {
+    return s_aTokenManagerCtor.newInstance ((Object) null);
+  }
+
+  private static Result _parse (final Object aParser, final List <?> aTokens) throws Exception
+  {
+    final String sTokens = (String) s_aParserClass.getMethod ("dumpTokens", List.class).invoke (null, aTokens);
+    try
+    {
+      final Object aRoot = s_aParserClass.getMethod ("parse").invoke (aParser);
+      final String sTree = (String) s_aParserClass.getMethod ("dumpTree", s_aNodeClass).invoke (null, aRoot);
+      return new Result (sTokens, sTree, aRoot, null);
+    }
+    catch (final InvocationTargetException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (!aCause.getClass ().getSimpleName ().equals ("ParseException"))
+        throw ex;
+      final Set <String> aExpected = new TreeSet <> ();
+      for (final int [] aSequence : (int [] []) aCause.getClass ()
+                                                        .getField ("expectedTokenSequences")
+                                                        .get (aCause))
+        aExpected.add (Arrays.toString (aSequence));
+      return new Result (sTokens, null, null, aExpected);
+    }
+  }
+
+  private static Result _parseFromScratch (final CharSequence aText) throws Exception
+  {
+    final Object aTM = _newTokenManager ();
+    final List <?> aTokens = (List <?>) s_aTokenManagerClass.getMethod ("tokenize", CharSequence.class)
+                                                            .invoke (aTM, aText);
+    return _parse (s_aParserCtor.newInstance (aTM), aTokens);
+  }
+
+  /** Applies the edits one after the other and checks each result. */
+  private static final class Session
+  {
+    private final StringBuilder m_aText;
+    private final Object m_aTM;
+    private final Object m_aParser;
+    private final Method m_aRetokenize;
+    private Result m_aLast;
+
+    Session (final String sText) throws Exception
+    {
+      m_aText = new StringBuilder (sText);
+      m_aTM = _newTokenManager ();
+      m_aRetokenize = s_aTokenManagerClass.getMethod ("retokenize",
+                                                      CharSequence.class,
+                                                      int.class,
+                                                      int.class,
+                                                      int.class);
+      final List <?> aTokens = (List <?>) s_aTokenManagerClass.getMethod ("tokenize", CharSequence.class)
+                                                              .invoke (m_aTM, m_aText);
+      m_aParser = s_aParserCtor.newInstance (m_aTM);
+      m_aLast = _parse (m_aParser, aTokens);
+      _check (m_aLast, _parseFromScratch (m_aText.toString ()));
+    }
+
+    Result edit (final String sFind, final String sReplacement) throws Exception
+    {
+      final int nOffset = m_aText.indexOf (sFind);
+      assertTrue (sFind, nOffset >= 0);
+      m_aText.replace (nOffset, nOffset + sFind.length (), sReplacement);
+      final String sText = m_aText.toString ();
+      final List <?> aTokens = (List <?>) m_aRetokenize.invoke (m_aTM,
+                                                                sText,
+                                                                Integer.valueOf (nOffset),
+                                                                Integer.valueOf (sFind.length ()),
+                                                                Integer.valueOf (sReplacement.length ()));
+      s_aParserClass.getMethod ("ReInit", s_aTokenManagerClass).invoke (m_aParser, m_aTM);
+      m_aLast = _parse (m_aParser, aTokens);
+      _check (m_aLast, _parseFromScratch (sText));
+      return m_aLast;
+    }
+
+    private void _check (final Result aIncremental, final Result aFresh)
+    {
+      assertEquals (m_aText.toString (), aFresh.m_sTokens, aIncremental.m_sTokens);
+      assertEquals (m_aText.toString (), aFresh.m_sTree, aIncremental.m_sTree);
+      if (aFresh.m_aExpected != null)
+      {
+        // The choice points of a reused node are not run again
+        assertTrue (m_aText.toString (), aFresh.m_aExpected.containsAll (aIncremental.m_aExpected));
+      }
+    }
+  }
+
+  private static Object _child (final Object aNode, final int nIndex) throws Exception
+  {
+    return s_aNodeClass.getMethod ("jjtGetChild", int.class).invoke (aNode, Integer.valueOf (nIndex));
+  }
+
+  @Test
+  public void testSameAsFromScratch () throws Exception
+  {
+    final Session aSession = new Session ("// header\n" +
+                                          "var a = 1 + \"x\";\n" +
+                                          "/* block\n comment */ print a;\n" +
+                                          "{\n  var b = (a + 2);\n  print \"in /* string\";\n}\n" +
+                                          "print b; // trailing */\n");
+
+    // Inside a string
+    aSession.edit ("\"x\"", "\"x y\"");
+    // Inside a block comment, which is built from MORE tokens
+    aSession.edit ("block\n", "block\n more\n");
+    final Object aFirst = _child (aSession.m_aLast.m_aRoot, 0);
+    // The edit at the end must not rebuild the first statement
+    Result aResult = aSession.edit ("print b;", "print b + 3;");
+    assertSame (aFirst, _child (aResult.m_aRoot, 0));
+
+    // A comment that swallows the rest of the text up to the end of the line
+    // comment, then is closed early
+    aResult = aSession.edit ("print a;", "/* print a;");
+    assertEquals (Integer.valueOf (1), s_aNodeClass.getMethod ("jjtGetNumChildren").invoke (aResult.m_aRoot));
+    aSession.edit ("/* print a;", "/* */ print a;");
+
+    // A line comment that swallows a statement and is taken back
+    aSession.edit ("\n{\n", "\n// {\n");
+    aSession.edit ("// {\n", "{\n");
+
+    // A string opened in a new statement switches the lexical state
+    aSession.edit ("  print \"in", "  print \"\" + \"in");
+    aSession.edit ("var b = (a + 2);", "var b = (a + 2); var c = b;");
+
+    // Removed and added statements
+    aSession.edit ("var a = 1 + \"x y\";\n", "");
+    aResult = aSession.edit ("print b + 3;", "print b + 3; print 4;");
+    assertEquals (Integer.valueOf (4),
+                  s_aNodeClass.getMethod ("jjtGetNumChildren").invoke (aResult.m_aRoot));
+  }
+
+  @Test
+  public void testParseErrorAfterReusedNode () throws Exception
+  {
+    final Session aSession = new Session ("var a = 1;\nprint a;\n");
+    // The error is at the token after the reused first statement
+    final Result aResult = aSession.edit ("print a;", "= a;");
+    if (aResult.m_aExpected == null)
+      fail ("Expected a parse error");
+    // Fixed again, the tree is the same as from scratch
+    aSession.edit ("= a;", "print a;");
+  }
+}
@@ -34,6 +34,8 @@
 package com.helger.pgcc.jjtree;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 
@@ -155,4 +157,91 @@ public final class JJTreeOptionsTest
     JJTreeOptions.validate ();
     assertEquals (1, JavaCCErrors.getWarningCount ());
   }
+
+  @Test
+  public void testValidateIncrementalParsing ()
+  {
+    Options.setCmdLineOption ("INCREMENTAL_PARSING=true");
+    JJTreeOptions.validateGrammarOptions ();
+    assertEquals (1, JavaCCErrors.getWarningCount ());
+    assertFalse (JJTreeOptions.isIncrementalParsing ());
+
+    JJTreeOptions.init ();
+    JavaCCErrors.reInit ();
+
+    Options.setCmdLineOption ("INCREMENTAL_PARSING=true");
+    Options.setCmdLineOption ("INCREMENTAL_LEXING=true");
+    JJTreeOptions.validateGrammarOptions ();
+    assertEquals (0, JavaCCErrors.getWarningCount ());
+    assertTrue (JJTreeOptions.isIncrementalParsing ());
+  }
+
+  @Test
+  public void testValidateNodeStorage ()
+  {
+    assertFalse (JJTreeOptions.isNodeStorageArena ());
+
+    Options.setCmdLineOption ("NODE_STORAGE=arena");
+    JJTreeOptions.validateGrammarOptions ();
+    assertEquals (0, JavaCCErrors.getWarningCount ());
+    assertTrue (JJTreeOptions.isNodeStorageArena ());
+
+    JJTreeOptions.init ();
+    JavaCCErrors.reInit ();
+
+    Options.setCmdLineOption ("NODE_STORAGE=pool");
+    JJTreeOptions.validateGrammarOptions ();
+    assertEquals (1, JavaCCErrors.getWarningCount ());
+    assertEquals ("OBJECT", JJTreeOptions.getNodeStorage ());
+
+    JJTreeOptions.init ();
+    JavaCCErrors.reInit ();
+
+    Options.setCmdLineOption ("NODE_STORAGE=ARENA");
+    Options.setCmdLineOption ("INCREMENTAL_LEXING=true");
+    Options.setCmdLineOption ("INCREMENTAL_PARSING=true");
+    JJTreeOptions.validateGrammarOptions ();
+    assertEquals (1, JavaCCErrors.getWarningCount ());
+    assertFalse (JJTreeOptions.isIncrementalParsing ());
+  }
+
+  @Test
+  public void testValidateElideUnaryNodes ()
+  {
+    assertFalse (JJTreeOptions.isElideUnaryNodes ());
+
+    Options.setCmdLineOption ("ELIDE_UNARY_NODES=true");
+    JJTreeOptions.validateGrammarOptions ();
+    assertEquals (0, JavaCCErrors.getWarningCount ());
+    assertTrue (JJTreeOptions.isElideUnaryNodes ());
+
+    JJTreeOptions.init ();
+    JavaCCErrors.reInit ();
+
+    Options.setCmdLineOption ("ELIDE_UNARY_NODES=true");
+    Options.setCmdLineOption ("NODE_STORAGE=ARENA");
+    JJTreeOptions.validateGrammarOptions ();
+    assertEquals (1, JavaCCErrors.getWarningCount ());
+    assertFalse (JJTreeOptions.isElideUnaryNodes ());
+  }
+
+  @Test
+  public void testValidateTreeFile ()
+  {
+    assertFalse (JJTreeOptions.isTreeFile ());
+
+    Options.setCmdLineOption ("TREE_FILE=true");
+    JJTreeOptions.validateGrammarOptions ();
+    assertEquals (0, JavaCCErrors.getWarningCount ());
+    assertTrue (JJTreeOptions.isTreeFile ());
+
+    JJTreeOptions.init ();
+    JavaCCErrors.reInit ();
+
+    Options.setCmdLineOption ("TREE_FILE=true");
+    Options.setCmdLineOption ("NODE_STORAGE=ARENA");
+    JJTreeOptions.validateGrammarOptions ();
+    assertEquals (1, JavaCCErrors.getWarningCount ());
+    assertFalse (JJTreeOptions.isTreeFile ());
+  }
 }
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+
+/**
+ * Test that a parser generated with an option parses like the parser generated
+ * without it: same productions, same tokens with their images and positions,
+ * same special tokens and the same error messages.
+ */
+@RunWith (Parameterized.class)
+public final class GeneratedParserOptionsTest
+{
+  private static final File SRC = new File ("src/test/resources/generatedoptions/grammar.jj");
+
+  private static final String [] INPUTS = { "",
+                                            "var x = 1, y;\nx = x + 2 * (y - 3);\nprint x, y;\n",
+                                            "// line\nvar s = \"a \\\" b\"; /* block\n * comment */ print s;\n// end",
+                                            "VAR \u00dcn\u00efc\u00f6d\u00e9 = 1.5; IF (\u00dcn\u00efc\u00f6d\u00e9 <= 2) { a.b = c(1, 2); } ElSe a.c(3);",
+                                            "\tvar\tt =\t1;\r\n\twhile (t < 10)\r\n\t\tt = t + 1;",
+                                            "f(g(1), h.i(2, \"x\")); a.b(c.d, -e); ;",
+                                            "x = (1 + 2;",
+                                            "foo(1, 2;",
+                                            "a.b = ;",
+                                            "var = 3;",
+                                            "while (x) { print x + ; }",
+                                            "print",
+                                            ")",
+                                            "x = 1.y;",
+                                            "var x = 1 # 2;",
+                                            "var s = \"unterminated\nprint s;",
+                                            "x = 1; /* never closed" };
+
+  @Parameters (name = "{0}")
+  public static List <Object []> getAllOptions ()
+  {
+    final List <Object []> ret = new ArrayList <> ();
+    ret.add (new Object [] { "dfa",
+                             new String [] { "-TOKEN_MANAGER_CODE_GENERATOR=" +
+                                             DfaJavaCodeGenerator.class.getName () } });
+    ret.add (new Object [] { "tabledriven",
+                             new String [] { "-TOKEN_MANAGER_CODE_GENERATOR=" +
+                                             TableDrivenJavaCodeGenerator.class.getName () } });
+    ret.add (new Object [] { "lazylinecolumn", new String [] { "-LAZY_LINE_COLUMN=true" } });
+    ret.add (new Object [] { "lazylinecolumnunicode", new String [] { "-LAZY_LINE_COLUMN=true", JAVA_UNICODE_ESCAPE } });
+    ret.add (new Object [] { "lazytokenimage", new String [] { "-LAZY_TOKEN_IMAGE=true" } });
+    ret.add (new Object [] { "lazytokenimageunicode", new String [] { "-LAZY_TOKEN_IMAGE=true", JAVA_UNICODE_ESCAPE } });
+    ret.add (new Object [] { "lazytokenimagetabledriven",
+                             new String [] { "-LAZY_TOKEN_IMAGE=true",
+                                             "-TOKEN_MANAGER_CODE_GENERATOR=" + TableDrivenJavaCodeGenerator.class.getName () } });
+    ret.add (new Object [] { "usercharstream", new String [] { "-USER_CHAR_STREAM=true" } });
+    ret.add (new Object [] { "mappedfile", new String [] { "-MAPPED_FILE_CHAR_STREAM=true" } });
+    ret.add (new Object [] { "memoizelookahead", new String [] { "-MEMOIZE_LOOKAHEAD=true" } });
+    ret.add (new Object [] { "fixedlookaheadswitch", new String [] { "-FIXED_LOOKAHEAD_SWITCH=true" } });
+    ret.add (new Object [] { "lazyerrorreporting", new String [] { "-LAZY_ERROR_REPORTING=true" } });
+    ret.add (new Object [] { "lazyexceptions", new String [] { "-LAZY_EXCEPTIONS=true" } });
+    ret.add (new Object [] { "threadlocalparser", new String [] { "-THREAD_LOCAL_PARSER=true" } });
+    ret.add (new Object [] { "packedtables", new String [] { "-PACKED_TABLES=true" } });
+    ret.add (new Object [] { "packedtablestabledriven",
+                             new String [] { "-PACKED_TABLES=true",
+                                             "-TOKEN_MANAGER_CODE_GENERATOR=" + TableDrivenJavaCodeGenerator.class.getName () } });
+    ret.add (new Object [] { "incrementallexing", new String [] { "-INCREMENTAL_LEXING=true" } });
+    return ret;
+  }
+
+  @Parameter (0)
+  public String m_sName;
+
+  @Parameter (1)
+  public String [] m_aOptions;
+
+  /**
+   * How the input is passed to the parser.
+   */
+  private enum EInput
+  {
+    /** A Reader, with the default char stream */
+    READER,
+    /** A CharSequenceCharStream for USER_CHAR_STREAM */
+    CHAR_SEQUENCE,
+    /** A MappedFileCharStream with small windows for MAPPED_FILE_CHAR_STREAM */
+    MAPPED_FILE,
+    /** A Reader, with the reused parser of the thread for THREAD_LOCAL_PARSER */
+    THREAD_PARSER;
+
+    @Nonnull
+    static EInput of (@Nonnull final String [] aOptions)
+    {
+      final List <String> aList = Arrays.asList (aOptions);
+      if (aList.contains ("-USER_CHAR_STREAM=true"))
+        return CHAR_SEQUENCE;
+      if (aList.contains ("-MAPPED_FILE_CHAR_STREAM=true"))
+        return MAPPED_FILE;
+      if (aList.contains ("-THREAD_LOCAL_PARSER=true"))
+        return THREAD_PARSER;
+      return READER;
+    }
+  }
+
+  private static final class Parser
+  {
+    private final ClassLoader m_aCL;
+    private final Class <?> m_aClass;
+    private final EInput m_eInput;
+    private final File m_aOutDir;
+
+    Parser (@Nonnull final String sName, @Nonnull final String... aOptions) throws Exception
+    {
+      final File aOutDir = new File ("target/generatedoptions/" + sName);
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+      aOutDir.mkdirs ();
+      final String [] aArgs = new String [aOptions.length + 3];
+      aArgs[0] = "-JDK_VERSION=1.8";
+      aArgs[1] = "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath ();
+      System.arraycopy (aOptions, 0, aArgs, 2, aOptions.length);
+      aArgs[aArgs.length - 1] = SRC.getAbsolutePath ();
+      assertTrue (Main.mainProgram (aArgs).isSuccess ());
+      m_aCL = GeneratedJavaCompiler.compile (aOutDir);
+      m_aClass = m_aCL.loadClass ("OptionsParser");
+      m_eInput = EInput.of (aOptions);
+      m_aOutDir = aOutDir;
+    }
+
+    String run (@Nonnull final String sInput) throws Exception
+    {
+      final Object aParser;
+      switch (m_eInput)
+      {
+        case CHAR_SEQUENCE:
+        {
+          final Object aStream = m_aCL.loadClass ("CharSequenceCharStream")
+                                      .getConstructor (CharSequence.class)
+                                      .newInstance (sInput);
+          aParser = m_aClass.getConstructor (m_aCL.loadClass ("CharStream")).newInstance (aStream);
+          break;
+        }
+        case MAPPED_FILE:
+        {
+          final File aFile = new File (m_aOutDir, "input.txt");
+          Files.write (aFile.toPath (), sInput.getBytes (StandardCharsets.UTF_8));
+          final Class <?> aStreamClass = m_aCL.loadClass ("MappedFileCharStream");
+          final Object aStream = aStreamClass.getConstructor (File.class, Charset.class)
+                                             .newInstance (aFile, StandardCharsets.UTF_8);
+          // Remap many times within the large input
+          aStreamClass.getMethod ("setMapWindowSize", int.class).invoke (aStream, Integer.valueOf (64));
+          final Object aTM = m_aCL.loadClass ("OptionsParserTokenManager")
+                                  .getConstructor (aStreamClass.getSuperclass ())
+                                  .newInstance (aStream);
+          aParser = m_aClass.getConstructor (aTM.getClass ()).newInstance (aTM);
+          break;
+        }
+        case THREAD_PARSER:
+          aParser = m_aClass.getMethod ("getThreadParser", Reader.class).invoke (null, new StringReader (sInput));
+          break;
+        default:
+          aParser = m_aClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+          break;
+      }
+      return (String) m_aClass.getMethod ("run").invoke (aParser);
+    }
+  }
+
+  private static final String JAVA_UNICODE_ESCAPE = "-JAVA_UNICODE_ESCAPE=true";
+
+  private static Parser s_aDefault;
+  private static Parser s_aDefaultUnicodeEscape;
+
+  /**
+   * @return The parser with the default options and the same char stream as
+   *         the given options. JavaCharStream reports the end of an empty
+   *         input at line 1 and SimpleCharStream at line 0.
+   */
+  @Nonnull
+  private static synchronized Parser _getDefault (@Nonnull final String [] aOptions) throws Exception
+  {
+    if (Arrays.asList (aOptions).contains (JAVA_UNICODE_ESCAPE))
+    {
+      if (s_aDefaultUnicodeEscape == null)
+        s_aDefaultUnicodeEscape = new Parser ("defaultunicodeescape", JAVA_UNICODE_ESCAPE);
+      return s_aDefaultUnicodeEscape;
+    }
+    if (s_aDefault == null)
+      s_aDefault = new Parser ("default");
+    return s_aDefault;
+  }
+
+  /**
+   * @return An input that fills the char stream buffer many times, with
+   *         comments and strings across its bounds, and with an error at the
+   *         end
+   */
+  @Nonnull
+  private static String _getLargeInput ()
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 2000; i++)
+    {
+      aSB.append ("var v").append (i).append (" = ").append (i).append (".").append (i % 7).append (";\n");
+      aSB.append ("/* comment ").append (i).append (" */ if (v").append (i).append (" < 3) print \"").append (i);
+      aSB.append ("\\n\"; else o.f").append (i % 13).append ("(v").append (i).append (", -1);\t// line\n");
+    }
+    aSB.append ("x = ;");
+    return aSB.toString ();
+  }
+
+  /**
+   * @param sOutput
+   *        Output of a parser
+   * @return The output without the expected tokens of an error that were
+   *         already listed. The default parser may list a token more than once,
+   *         and a parser with LAZY_EXCEPTIONS lists each token once.
+   */
+  @Nonnull
+  private static String _withoutRepeatedExpectations (@Nonnull final String sOutput)
+  {
+    final int nStart = sOutput.indexOf ("Was expecting");
+    if (nStart < 0)
+      return sOutput;
+
+    final StringBuilder aSB = new StringBuilder (sOutput.substring (0, nStart));
+    final Set <String> aSeen = new HashSet <> ();
+    for (final String sLine : sOutput.substring (nStart).split ("\n", -1))
+      if (sLine.trim ().isEmpty () || aSeen.add (sLine.trim ()))
+        aSB.append (sLine.trim ()).append ('\n');
+    return aSB.toString ();
+  }
+
+  @Test
+  public void testSameAsDefault () throws Exception
+  {
+    final Parser aDefault = _getDefault (m_aOptions);
+    final Parser aParser = new Parser (m_sName, m_aOptions);
+
+    final List <String> aInputs = new ArrayList <> ();
+    for (final String sInput : INPUTS)
+      aInputs.add (sInput);
+    aInputs.add (_getLargeInput ());
+
+    final boolean bLazyExceptions = Arrays.asList (m_aOptions).contains ("-LAZY_EXCEPTIONS=true");
+    for (final String sInput : aInputs)
+      if (bLazyExceptions)
+        assertEquals (sInput, _withoutRepeatedExpectations (aDefault.run (sInput)), _withoutRepeatedExpectations (aParser.run (sInput)));
+      else
+        assertEquals (sInput, aDefault.run (sInput), aParser.run (sInput));
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.helger.commons.io.file.FileSystemIterator;
+import com.helger.commons.io.file.FilenameHelper;
+import com.helger.commons.io.file.IFileFilter;
+import com.helger.commons.state.ESuccess;
+import com.helger.pgcc.jjtree.JJTree;
+
+/**
+ * Run JJTree and JavaCC on the demo grammars with each JJTree option that
+ * changes the generated code and parse the created Java files.
+ */
+@RunWith (Parameterized.class)
+public final class GrammarsJJTreeOptionsParsingFuncTest
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (GrammarsJJTreeOptionsParsingFuncTest.class);
+
+  /** The end of the name of a file that must be generated with a JJTree option */
+  private static final Map <String, String> EXPECTED_FILE_SUFFIXES = new HashMap <> ();
+  static
+  {
+    EXPECTED_FILE_SUFFIXES.put ("-NODE_STORAGE=ARENA", "Arena.java");
+    EXPECTED_FILE_SUFFIXES.put ("-VISITOR=true", "Walker.java");
+    EXPECTED_FILE_SUFFIXES.put ("-TREE_FILE=true", "TreeFile.java");
+  }
+
+  @Parameters (name = "{0}")
+  public static List <Object []> getAllOptions ()
+  {
+    final List <Object []> ret = new ArrayList <> ();
+    ret.add (new Object [] { "incrementalparsing",
+                             new String [] { "-INCREMENTAL_PARSING=true" },
+                             new String [] { "-JAVA_UNICODE_ESCAPE=false", "-INCREMENTAL_LEXING=true" } });
+    ret.add (new Object [] { "arena", new String [] { "-NODE_STORAGE=ARENA" }, new String [0] });
+    ret.add (new Object [] { "visitor", new String [] { "-VISITOR=true" }, new String [0] });
+    ret.add (new Object [] { "arenavisitor",
+                             new String [] { "-VISITOR=true", "-NODE_STORAGE=ARENA" },
+                             new String [0] });
+    ret.add (new Object [] { "elideunarynodes", new String [] { "-ELIDE_UNARY_NODES=true" }, new String [0] });
+    ret.add (new Object [] { "treefile", new String [] { "-TREE_FILE=true" }, new String [0] });
+    return ret;
+  }
+
+  @Parameter (0)
+  public String m_sName;
+
+  /** Options for JJTree only */
+  @Parameter (1)
+  public String [] m_aJJTreeOptions;
+
+  /** Options for JJTree and JavaCC */
+  @Parameter (2)
+  public String [] m_aOptions;
+
+  @Test
+  public void testParseDemoGrammars () throws Exception
+  {
+    final File fDest = new File ("target/grammars-jjt-" + m_sName);
+    fDest.mkdirs ();
+
+    for (final File f : new FileSystemIterator (new File ("grammars")).withFilter (IFileFilter.filenameEndsWith (".jjt")))
+    {
+      s_aLogger.info ("Parsing " + f.getName () + " with " + m_sName);
+
+      final File fGrammarDest = new File (fDest, FilenameHelper.getBaseName (f));
+      fGrammarDest.mkdirs ();
+
+      final List <String> aArgs = new ArrayList <> ();
+      aArgs.add ("-OUTPUT_DIRECTORY=" + fGrammarDest.getAbsolutePath ());
+      aArgs.add ("-JDK_VERSION=1.8");
+      for (final String sOption : m_aOptions)
+        aArgs.add (sOption);
+      final List <String> aJJTreeArgs = new ArrayList <> (aArgs);
+      for (final String sOption : m_aJJTreeOptions)
+        aJJTreeArgs.add (sOption);
+      aJJTreeArgs.add (f.getAbsolutePath ());
+      ESuccess eSuccess = new JJTree ().main (aJJTreeArgs.toArray (new String [aJJTreeArgs.size ()]));
+      assertTrue (eSuccess.isSuccess ());
+
+      aArgs.add (new File (fGrammarDest, FilenameHelper.getBaseName (f) + ".jj").getAbsolutePath ());
+      eSuccess = Main.mainProgram (aArgs.toArray (new String [aArgs.size ()]));
+      assertTrue (eSuccess.isSuccess ());
+      for (final String sOption : m_aJJTreeOptions)
+        if (EXPECTED_FILE_SUFFIXES.containsKey (sOption))
+        {
+          final String sSuffix = EXPECTED_FILE_SUFFIXES.get (sOption);
+          assertTrue (sSuffix,
+                      new FileSystemIterator (fGrammarDest).withFilter (IFileFilter.filenameEndsWith (sSuffix))
+                                                           .iterator ()
+                                                           .hasNext ());
+        }
+
+      // Parse all created Java files
+      for (final File fJava : new FileSystemIterator (fGrammarDest).withFilter (IFileFilter.filenameEndsWith (".java")))
+      {
+        final CompilationUnit aCU = new JavaParser ().parse (fJava, StandardCharsets.UTF_8).getResult ().get ();
+        assertNotNull (aCU);
+      }
+    }
+  }
+}
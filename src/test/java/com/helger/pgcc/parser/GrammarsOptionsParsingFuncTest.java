@@ -0,0 +1,145 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.helger.commons.io.file.FileSystemIterator;
+import com.helger.commons.io.file.FilenameHelper;
+import com.helger.commons.io.file.IFileFilter;
+import com.helger.commons.state.ESuccess;
+
+/**
+ * Generate the demo grammars with each option that changes the generated code
+ * and parse the created Java files.
+ */
+@RunWith (Parameterized.class)
+public final class GrammarsOptionsParsingFuncTest
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (GrammarsOptionsParsingFuncTest.class);
+
+  /** Files that must be generated with an option */
+  private static final Map <String, String []> EXPECTED_FILES = new HashMap <> ();
+  static
+  {
+    EXPECTED_FILES.put ("-USER_CHAR_STREAM=true", new String [] { "CharSequenceCharStream.java", "Utf8ByteCharStream.java" });
+    EXPECTED_FILES.put ("-MAPPED_FILE_CHAR_STREAM=true", new String [] { "MappedFileCharStream.java" });
+  }
+
+  @Parameters (name = "{0}")
+  public static List <Object []> getAllOptions ()
+  {
+    final List <Object []> ret = new ArrayList <> ();
+    ret.add (new Object [] { "dfa",
+                             new String [] { "-TOKEN_MANAGER_CODE_GENERATOR=" +
+                                             DfaJavaCodeGenerator.class.getName () } });
+    ret.add (new Object [] { "tabledriven",
+                             new String [] { "-TOKEN_MANAGER_CODE_GENERATOR=" +
+                                             TableDrivenJavaCodeGenerator.class.getName () } });
+    ret.add (new Object [] { "lazylinecolumn", new String [] { "-LAZY_LINE_COLUMN=true" } });
+    ret.add (new Object [] { "lazytokenimage", new String [] { "-LAZY_TOKEN_IMAGE=true" } });
+    ret.add (new Object [] { "usercharstream", new String [] { "-USER_CHAR_STREAM=true" } });
+    ret.add (new Object [] { "mappedfile", new String [] { "-MAPPED_FILE_CHAR_STREAM=true" } });
+    ret.add (new Object [] { "memoizelookahead", new String [] { "-MEMOIZE_LOOKAHEAD=true" } });
+    ret.add (new Object [] { "fixedlookaheadswitch", new String [] { "-FIXED_LOOKAHEAD_SWITCH=true" } });
+    ret.add (new Object [] { "lazyerrorreporting", new String [] { "-LAZY_ERROR_REPORTING=true" } });
+    ret.add (new Object [] { "lazyexceptions", new String [] { "-LAZY_EXCEPTIONS=true" } });
+    ret.add (new Object [] { "threadlocalparser", new String [] { "-THREAD_LOCAL_PARSER=true" } });
+    ret.add (new Object [] { "packedtables", new String [] { "-PACKED_TABLES=true" } });
+    ret.add (new Object [] { "packedtablestabledriven",
+                             new String [] { "-PACKED_TABLES=true",
+                                             "-TOKEN_MANAGER_CODE_GENERATOR=" + TableDrivenJavaCodeGenerator.class.getName () } });
+    ret.add (new Object [] { "incrementallexing", new String [] { "-INCREMENTAL_LEXING=true" } });
+    return ret;
+  }
+
+  @Parameter (0)
+  public String m_sName;
+
+  @Parameter (1)
+  public String [] m_aOptions;
+
+  @Test
+  public void testParseDemoGrammars () throws Exception
+  {
+    final File fDest = new File ("target/grammars-" + m_sName);
+    fDest.mkdirs ();
+
+    for (final File f : new FileSystemIterator (new File ("grammars")).withFilter (IFileFilter.filenameEndsWith (".jj")))
+    {
+      s_aLogger.info ("Parsing " + f.getName () + " with " + m_sName);
+
+      final File fGrammarDest = new File (fDest, FilenameHelper.getBaseName (f));
+      fGrammarDest.mkdirs ();
+
+      final List <String> aArgs = new ArrayList <> ();
+      aArgs.add ("-OUTPUT_DIRECTORY=" + fGrammarDest.getAbsolutePath ());
+      aArgs.add ("-JDK_VERSION=1.8");
+      for (final String sOption : m_aOptions)
+        aArgs.add (sOption);
+      aArgs.add (f.getAbsolutePath ());
+      final ESuccess eSuccess = Main.mainProgram (aArgs.toArray (new String [aArgs.size ()]));
+      assertTrue (eSuccess.isSuccess ());
+      for (final String sOption : m_aOptions)
+        if (EXPECTED_FILES.containsKey (sOption))
+          for (final String sFilename : EXPECTED_FILES.get (sOption))
+            assertTrue (sFilename, new File (fGrammarDest, sFilename).exists ());
+
+      // Parse all created Java files
+      for (final File fJava : new FileSystemIterator (fGrammarDest).withFilter (IFileFilter.filenameEndsWith (".java")))
+      {
+        final CompilationUnit aCU = new JavaParser ().parse (fJava, StandardCharsets.UTF_8).getResult ().get ();
+        assertNotNull (aCU);
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+
+/**
+ * Test that retokenize gives the same tokens as tokenize of the whole text,
+ * across MORE and SPECIAL_TOKEN tokens and lexical state switches.
+ */
+public final class IncrementalLexingTest
+{
+  /** A token manager and the text it lexed last. */
+  private static final class Session
+  {
+    private final Class <?> m_aTMClass;
+    private final Constructor <?> m_aTMCtor;
+    private final Method m_aDumpTokens;
+    private final StringBuilder m_aText;
+    private final Object m_aTM;
+
+    Session (final ClassLoader aCL, final String sText) throws Exception
+    {
+      m_aTMClass = aCL.loadClass ("LexParserTokenManager");
+      m_aTMCtor = m_aTMClass.getConstructor (aCL.loadClass ("SimpleCharStream"));
+      m_aDumpTokens = aCL.loadClass ("LexParser").getMethod ("dumpTokens", List.class);
+      m_aText = new StringBuilder (sText);
+      m_aTM = m_aTMCtor.newInstance ((Object) null);
+      final Object aTokens = m_aTMClass.getMethod ("tokenize", CharSequence.class).invoke (m_aTM, m_aText);
+      assertEquals (_tokenizeFromScratch (), m_aDumpTokens.invoke (null, aTokens));
+    }
+
+    private String _tokenizeFromScratch () throws Exception
+    {
+      final Object aTM = m_aTMCtor.newInstance ((Object) null);
+      final Object aTokens = m_aTMClass.getMethod ("tokenize", CharSequence.class)
+                                       .invoke (aTM, m_aText.toString ());
+      return (String) m_aDumpTokens.invoke (null, aTokens);
+    }
+
+    /**
+     * Replace the first occurrence of sFind and retokenize.
+     *
+     * @return The index of the first token that was lexed again.
+     */
+    int edit (final String sFind, final String sReplacement) throws Exception
+    {
+      final int nOffset = m_aText.indexOf (sFind);
+      assertTrue (sFind, nOffset >= 0);
+      m_aText.replace (nOffset, nOffset + sFind.length (), sReplacement);
+      final Object aTokens = m_aTMClass.getMethod ("retokenize",
+                                                   CharSequence.class,
+                                                   int.class,
+                                                   int.class,
+                                                   int.class)
+                                       .invoke (m_aTM,
+                                                m_aText.toString (),
+                                                Integer.valueOf (nOffset),
+                                                Integer.valueOf (sFind.length ()),
+                                                Integer.valueOf (sReplacement.length ()));
+      assertEquals (m_aText.toString (), _tokenizeFromScratch (), m_aDumpTokens.invoke (null, aTokens));
+      return ((Integer) m_aTMClass.getMethod ("getRetokenizedFrom").invoke (m_aTM)).intValue ();
+    }
+  }
+
+  private static ClassLoader _generate (final String sName, final String... aOptions) throws Exception
+  {
+    final File aSrc = new File ("src/test/resources/incrementallexing/grammar.jj");
+    final File aOutDir = new File ("target/incrementallexing/" + sName);
+    FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+    aOutDir.mkdirs ();
+
+    final String [] aArgs = new String [aOptions.length + 2];
+    System.arraycopy (aOptions, 0, aArgs, 0, aOptions.length);
+    aArgs[aOptions.length] = "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath ();
+    aArgs[aOptions.length + 1] = aSrc.getAbsolutePath ();
+    assertTrue (Main.mainProgram (aArgs).isSuccess ());
+    return GeneratedJavaCompiler.compile (aOutDir);
+  }
+
+  private static void _testSameAsFromScratch (final ClassLoader aCL) throws Exception
+  {
+    final Session aSession = new Session (aCL,
+                                          "// header\n" +
+                                               "var a = 1 + \"x\";\n" +
+                                               "/* block\n comment */ print a;\n" +
+                                               "{\n\tvar b = (a + 2);\n\tprint \"in /* string\";\n}\n" +
+                                               "print b; // trailing */\n");
+
+    // Inside a string
+    aSession.edit ("\"x\"", "\"x y\"");
+    // Inside a block comment, which is built from MORE tokens
+    aSession.edit ("block\n", "block\n more\n");
+    // An edit at the end does not lex the beginning again
+    assertTrue (aSession.edit ("print b;", "print b + 3;") > 10);
+
+    // A comment that swallows the rest of the text up to the end of the line
+    // comment, then is closed early
+    aSession.edit ("print a;", "/* print a;");
+    aSession.edit ("/* print a;", "/* */ print a;");
+
+    // A line comment that swallows a line and is taken back
+    aSession.edit ("\n{\n", "\n// {\n");
+    aSession.edit ("// {\n", "{\n");
+
+    // A string opened in front of another one switches the lexical state
+    aSession.edit ("\tprint \"in", "\tprint \"\" + \"in");
+    // Columns after a tab
+    aSession.edit ("\tvar b", "\t\tvar b");
+    aSession.edit ("var b = (a + 2);", "var b = (a + 2); var c = b;");
+
+    // Removed and added lines, at the start and the end
+    aSession.edit ("// header\n", "");
+    aSession.edit ("var a = 1 + \"x y\";\n", "");
+    aSession.edit ("print b + 3;", "print b + 3; print 4;");
+    aSession.edit ("// trailing */\n", "");
+  }
+
+  @Test
+  public void testSameAsFromScratch () throws Exception
+  {
+    _testSameAsFromScratch (_generate ("default"));
+  }
+
+  @Test
+  public void testSameAsFromScratchWithTabSize () throws Exception
+  {
+    _testSameAsFromScratch (_generate ("tabsize", "-TAB_SIZE=4"));
+  }
+
+  @Test
+  public void testSameAsFromScratchTableDriven () throws Exception
+  {
+    _testSameAsFromScratch (_generate ("tabledriven",
+                                       "-TOKEN_MANAGER_CODE_GENERATOR=" + TableDrivenJavaCodeGenerator.class.getName ()));
+  }
+}
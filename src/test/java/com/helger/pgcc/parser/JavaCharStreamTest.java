@@ -0,0 +1,284 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+
+/**
+ * Test the generated JavaCharStream with unicode escapes around the end of its
+ * buffer, with lazy line and column tracking, with different buffer sizes, and
+ * at the end of its input.
+ */
+public final class JavaCharStreamTest
+{
+  private static ClassLoader _generate (final String sTemplateType) throws Exception
+  {
+    return _generate (sTemplateType, sTemplateType);
+  }
+
+  private static ClassLoader _generate (final String sName, final String sTemplateType, final String... aOptions) throws Exception
+  {
+    final File aSrc = new File ("src/test/resources/javacharstream/grammar.jj");
+    final File aOutDir = new File ("target/javacharstream/" + sName);
+    FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+    aOutDir.mkdirs ();
+    final String [] aArgs = new String [aOptions.length + 3];
+    aArgs[0] = "-JAVA_TEMPLATE_TYPE=" + sTemplateType;
+    aArgs[1] = "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath ();
+    System.arraycopy (aOptions, 0, aArgs, 2, aOptions.length);
+    aArgs[aArgs.length - 1] = aSrc.getAbsolutePath ();
+    assertTrue (Main.mainProgram (aArgs).isSuccess ());
+    return GeneratedJavaCompiler.compile (aOutDir);
+  }
+
+  private static void _testEscapesAcrossBufferEnd (final String sTemplateType) throws Exception
+  {
+    final ClassLoader aCL = _generate (sTemplateType);
+    final Class <?> aStreamClass = aCL.loadClass ("JavaCharStream");
+    final Class <?> aTMClass = aCL.loadClass ("EscapeParserTokenManager");
+    final Class <?> aTokenClass = aCL.loadClass ("Token");
+
+    // The lexer reads ahead over the end of every token, so the tokens stay in
+    // the buffer and it wraps around. Move the escapes over all positions
+    // relative to the buffer end.
+    for (int nPrefix = 0; nPrefix < 8; nPrefix++)
+    {
+      final StringBuilder aSB = new StringBuilder ();
+      final StringBuilder aExpected = new StringBuilder ();
+      for (int i = 0; i < nPrefix; i++)
+      {
+        aSB.append ('1');
+        aExpected.append ('1');
+      }
+      for (int i = 0; i < 5000; i++)
+      {
+        aSB.append ("x\\u00611");
+        aExpected.append ("xa1");
+      }
+      final String sText = aSB.toString ();
+
+      final Object aStream;
+      if (Options.JAVA_TEMPLATE_TYPE_MODERN.equals (sTemplateType))
+      {
+        final Class <?> aProviderClass = aCL.loadClass ("Provider");
+        final Object aProvider = aCL.loadClass ("StringProvider").getConstructor (String.class).newInstance (sText);
+        aStream = aStreamClass.getConstructor (aProviderClass).newInstance (aProvider);
+      }
+      else
+        aStream = aStreamClass.getConstructor (Reader.class).newInstance (new StringReader (sText));
+      final Object aTM = aTMClass.getConstructor (aStreamClass).newInstance (aStream);
+
+      final StringBuilder aImages = new StringBuilder ();
+      for (;;)
+      {
+        final Object aToken = aTMClass.getMethod ("getNextToken").invoke (aTM);
+        if (aTokenClass.getField ("kind").getInt (aToken) == 0)
+          break;
+        aImages.append (aTokenClass.getField ("image").get (aToken));
+      }
+      assertEquals (aExpected.toString (), aImages.toString ());
+    }
+  }
+
+  @Test
+  public void testClassic () throws Exception
+  {
+    _testEscapesAcrossBufferEnd (Options.JAVA_TEMPLATE_TYPE_CLASSIC);
+  }
+
+  @Test
+  public void testModern () throws Exception
+  {
+    _testEscapesAcrossBufferEnd (Options.JAVA_TEMPLATE_TYPE_MODERN);
+  }
+
+  @Test
+  public void testEndOfInput () throws Exception
+  {
+    final ClassLoader aCL = _generate (Options.JAVA_TEMPLATE_TYPE_CLASSIC);
+    final Class <?> aStreamClass = aCL.loadClass ("JavaCharStream");
+    final Method aReadChar = aStreamClass.getMethod ("readChar");
+
+    final Throwable [] aEOF = new Throwable [2];
+    for (int i = 0; i < aEOF.length; i++)
+    {
+      final Object aStream = aStreamClass.getConstructor (Reader.class).newInstance (new StringReader ("a"));
+      assertEquals (Character.valueOf ('a'), aReadChar.invoke (aStream));
+      try
+      {
+        aReadChar.invoke (aStream);
+      }
+      catch (final InvocationTargetException ex)
+      {
+        aEOF[i] = ex.getCause ();
+      }
+      assertTrue (aEOF[i] instanceof EOFException);
+      assertEquals (0, aEOF[i].getStackTrace ().length);
+    }
+
+    // Exceptions suppressed at one catch site must not show up at the next
+    assertNotSame (aEOF[0], aEOF[1]);
+    aEOF[0].addSuppressed (new IllegalStateException ());
+    assertEquals (0, aEOF[1].getSuppressed ().length);
+  }
+
+  @Test
+  public void testBufferSize () throws Exception
+  {
+    final ClassLoader aCL = _generate (Options.JAVA_TEMPLATE_TYPE_CLASSIC);
+    final Class <?> aAbstractClass = aCL.loadClass ("AbstractCharStream");
+    final Class <?> aStreamClass = aCL.loadClass ("JavaCharStream");
+    final Field aBuffer = aAbstractClass.getDeclaredField ("buffer");
+    aBuffer.setAccessible (true);
+    final Field aBufSize = aAbstractClass.getDeclaredField ("bufsize");
+    aBufSize.setAccessible (true);
+
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 100; i++)
+      aSB.append ('x');
+    final String sToken = aSB.toString ();
+
+    final Object aStream = aStreamClass.getConstructor (Reader.class, int.class, int.class, int.class)
+                                       .newInstance (new StringReader ("a"), 1, 1, 16);
+    assertEquals (Integer.valueOf (16), aStreamClass.getMethod ("getInitialBufSize").invoke (aStream));
+    assertEquals (16, ((char []) aBuffer.get (aStream)).length);
+
+    // The initial size is kept for a reInit without a buffer size
+    aStreamClass.getMethod ("setInitialBufSize", int.class).invoke (aStream, 8);
+    aStreamClass.getMethod ("reInit", Reader.class).invoke (aStream, new StringReader (sToken));
+    assertEquals (8, ((char []) aBuffer.get (aStream)).length);
+
+    // A long token grows the buffer
+    assertEquals (Character.valueOf ('x'), aStreamClass.getMethod ("beginToken").invoke (aStream));
+    for (int i = 1; i < sToken.length (); i++)
+      aStreamClass.getMethod ("readChar").invoke (aStream);
+    assertEquals (sToken, aStreamClass.getMethod ("getImage").invoke (aStream));
+    assertTrue (((char []) aBuffer.get (aStream)).length >= sToken.length ());
+
+    // and the next input starts with the initial size again
+    aStreamClass.getMethod ("reInit", Reader.class).invoke (aStream, new StringReader ("a"));
+    assertEquals (8, ((char []) aBuffer.get (aStream)).length);
+
+    try
+    {
+      aStreamClass.getMethod ("setInitialBufSize", int.class).invoke (aStream, 0);
+      fail ();
+    }
+    catch (final InvocationTargetException ex)
+    {
+      assertTrue (ex.getCause () instanceof IllegalArgumentException);
+    }
+
+    // The buffer cannot grow beyond the maximum array size
+    aBufSize.setInt (aStream, aAbstractClass.getField ("MAX_BUF_SIZE").getInt (null));
+    final Method aExpandBuff = aAbstractClass.getDeclaredMethod ("expandBuff", boolean.class);
+    aExpandBuff.setAccessible (true);
+    try
+    {
+      aExpandBuff.invoke (aStream, Boolean.FALSE);
+      fail ();
+    }
+    catch (final InvocationTargetException ex)
+    {
+      assertTrue (ex.getCause () instanceof IllegalStateException);
+    }
+  }
+
+  private static String _getPositions (final ClassLoader aCL, final String sText) throws Exception
+  {
+    final Class <?> aStreamClass = aCL.loadClass ("JavaCharStream");
+    final Class <?> aTMClass = aCL.loadClass ("EscapeParserTokenManager");
+    final Class <?> aTokenClass = aCL.loadClass ("Token");
+    final Object aStream = aStreamClass.getConstructor (Reader.class).newInstance (new StringReader (sText));
+    aStreamClass.getMethod ("setTabSize", int.class).invoke (aStream, 4);
+    final Object aTM = aTMClass.getConstructor (aStreamClass).newInstance (aStream);
+
+    final StringBuilder aSB = new StringBuilder ();
+    try
+    {
+      for (;;)
+      {
+        final Object aToken = aTMClass.getMethod ("getNextToken").invoke (aTM);
+        aSB.append (aTokenClass.getField ("image").get (aToken))
+           .append (' ')
+           .append (aTokenClass.getField ("beginLine").getInt (aToken))
+           .append (':')
+           .append (aTokenClass.getField ("beginColumn").getInt (aToken))
+           .append ('-')
+           .append (aTokenClass.getField ("endLine").getInt (aToken))
+           .append (':')
+           .append (aTokenClass.getField ("endColumn").getInt (aToken))
+           .append ('\n');
+        if (aTokenClass.getField ("kind").getInt (aToken) == 0)
+          break;
+      }
+    }
+    catch (final InvocationTargetException ex)
+    {
+      aSB.append (ex.getCause ().getMessage ());
+    }
+    return aSB.toString ();
+  }
+
+  @Test
+  public void testLazyLineColumn () throws Exception
+  {
+    final ClassLoader aEager = _generate ("eager", Options.JAVA_TEMPLATE_TYPE_CLASSIC);
+    final ClassLoader aLazy = _generate ("lazy", Options.JAVA_TEMPLATE_TYPE_CLASSIC, "-LAZY_LINE_COLUMN=true");
+
+    final String [] aTexts = { "ab \\u0063d\n \t12 \\uuu0031x 3\r\nef \\u0067\\u0068 \n",
+                               "ab\ncd \\uu0065\\u00",
+                               "ab\ncd \\uuu006",
+                               "ab\ncd \\uuu",
+                               "ab\ncd \\u00g1 ef" };
+    for (final String sText : aTexts)
+      assertEquals (sText, _getPositions (aEager, sText), _getPositions (aLazy, sText));
+  }
+}
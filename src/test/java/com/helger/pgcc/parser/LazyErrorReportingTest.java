@@ -0,0 +1,199 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+
+/**
+ * Test that the option LAZY_ERROR_REPORTING reports the same expected tokens as
+ * ERROR_REPORTING alone.
+ */
+public final class LazyErrorReportingTest
+{
+  private static final File SRC = new File ("src/test/resources/lazyerrors/grammar.jj");
+
+  // Inputs with an error the tracking routines reach again
+  private static final String [] INPUTS = { "var x = 1 var y;",
+                                            "var a, b = 2 * (3 + c;",
+                                            "x = (1 + 2;",
+                                            "foo(1, 2;",
+                                            "foo(1) 2",
+                                            "if (a) print 1; else",
+                                            "if (a) { b = 1; } c d",
+                                            "{ var a; x = 1 }",
+                                            "while (x) { print x + ; }",
+                                            "x y",
+                                            "var = 3;",
+                                            "print",
+                                            "a = 1; b = 2 c",
+                                            "a = -;",
+                                            ")" };
+
+  private static final class Parser
+  {
+    private final Class <?> m_aClass;
+    private final int m_nWarnings;
+
+    Parser (final File aOutDir, final String... aOptions) throws Exception
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+      aOutDir.mkdirs ();
+      final String [] aArgs = new String [aOptions.length + 3];
+      aArgs[0] = "-JDK_VERSION=1.8";
+      aArgs[1] = "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath ();
+      System.arraycopy (aOptions, 0, aArgs, 2, aOptions.length);
+      aArgs[aArgs.length - 1] = SRC.getAbsolutePath ();
+      assertTrue (Main.mainProgram (aArgs).isSuccess ());
+      m_nWarnings = JavaCCErrors.getWarningCount ();
+      m_aClass = GeneratedJavaCompiler.compile (aOutDir).loadClass ("LazyErrorsParser");
+    }
+
+    Object create (final String sInput) throws Exception
+    {
+      return m_aClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    }
+
+    /**
+     * @return the message of the ParseException of the first call of
+     *         <code>sMethod</code> that fails
+     */
+    String getError (final Object aParser, final String sMethod) throws Exception
+    {
+      try
+      {
+        // Only Next returns whether there is more
+        while (Boolean.TRUE.equals (m_aClass.getMethod (sMethod).invoke (aParser)))
+        {
+          // next
+        }
+      }
+      catch (final InvocationTargetException ex)
+      {
+        assertEquals ("ParseException", ex.getCause ().getClass ().getSimpleName ());
+        return ex.getCause ().getMessage ();
+      }
+      return null;
+    }
+
+    String getError (final String sInput, final String sMethod) throws Exception
+    {
+      return getError (create (sInput), sMethod);
+    }
+  }
+
+  private static void _compare (final String sName, final String... aOptions) throws Exception
+  {
+    final Parser aEager = new Parser (new File ("target/lazyerrors/" + sName + "/eager"), aOptions);
+    final String [] aLazyOptions = new String [aOptions.length + 1];
+    System.arraycopy (aOptions, 0, aLazyOptions, 0, aOptions.length);
+    aLazyOptions[aOptions.length] = "-LAZY_ERROR_REPORTING=true";
+    final Parser aLazy = new Parser (new File ("target/lazyerrors/" + sName + "/lazy"), aLazyOptions);
+    // About the tokens kept since ReInit
+    assertEquals (aEager.m_nWarnings + 1, aLazy.m_nWarnings);
+
+    for (final String sInput : INPUTS)
+    {
+      // From a method that calls the production, the production itself and
+      // statement by statement
+      for (final String sMethod : new String [] { "parse", "Unit", "Next" })
+      {
+        final String sExpected = aEager.getError (sInput, sMethod);
+        assertNotNull (sInput, sExpected);
+        assertEquals (sInput, sExpected, aLazy.getError (sInput, sMethod));
+      }
+    }
+
+    // The tokens are parsed again from ReInit
+    final Object aEagerParser = aEager.create ("a = 1;");
+    final Object aLazyParser = aLazy.create ("a = 1;");
+    aEager.getError (aEagerParser, "Unit");
+    aLazy.getError (aLazyParser, "Unit");
+    aEagerParser.getClass ().getMethod ("ReInit", Reader.class).invoke (aEagerParser, new StringReader ("b = 2 3"));
+    aLazyParser.getClass ().getMethod ("ReInit", Reader.class).invoke (aLazyParser, new StringReader ("b = 2 3"));
+    assertEquals (aEager.getError (aEagerParser, "Unit"), aLazy.getError (aLazyParser, "Unit"));
+
+    // The tracking routines give up on a semantic lookahead with a local
+    // variable and on JAVACODE productions, so only the failed choice is
+    // reported, at the same token
+    for (final String sInput : new String [] { "limit 1 2 3;", "skip 1 2; x y" })
+    {
+      final String sExpected = aEager.getError (sInput, "Unit");
+      final String sActual = aLazy.getError (sInput, "Unit");
+      assertNotNull (sInput, sActual);
+      assertEquals (sInput, sExpected.substring (0, sExpected.indexOf ('\n')), sActual.substring (0, sActual.indexOf ('\n')));
+    }
+  }
+
+  @Test
+  public void testSameMessage () throws Exception
+  {
+    _compare ("default");
+  }
+
+  @Test
+  public void testSameMessageFixedLookaheadSwitch () throws Exception
+  {
+    _compare ("switch", "-FIXED_LOOKAHEAD_SWITCH=true");
+  }
+
+  @Test
+  public void testSameMessageCacheTokens () throws Exception
+  {
+    _compare ("cache", "-CACHE_TOKENS=true");
+  }
+
+  @Test
+  public void testSameMessageMemoizeLookahead () throws Exception
+  {
+    _compare ("memoize", "-MEMOIZE_LOOKAHEAD=true");
+  }
+
+  @Test
+  public void testSameMessageLazyExceptions () throws Exception
+  {
+    _compare ("exceptions", "-LAZY_EXCEPTIONS=true");
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+
+/**
+ * Test the warning about grammar code that reads
+ * ParseException.expectedTokenSequences with the option LAZY_EXCEPTIONS, and
+ * that the expected tokens are the same as without it.
+ */
+public final class LazyExceptionsTest
+{
+  private static final File SRC = new File ("src/test/resources/lazyexceptions/grammar.jj");
+
+  private static Class <?> _generate (final String sName, final String... aOptions) throws Exception
+  {
+    final File aOutDir = new File ("target/lazyexceptions/" + sName);
+    FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+    aOutDir.mkdirs ();
+    final String [] aArgs = new String [aOptions.length + 3];
+    aArgs[0] = "-JDK_VERSION=1.8";
+    aArgs[1] = "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath ();
+    System.arraycopy (aOptions, 0, aArgs, 2, aOptions.length);
+    aArgs[aArgs.length - 1] = SRC.getAbsolutePath ();
+    assertTrue (Main.mainProgram (aArgs).isSuccess ());
+    return GeneratedJavaCompiler.compile (aOutDir).loadClass ("LazyExceptionsParser");
+  }
+
+  private static Exception _parse (final Class <?> aClass, final String sInput) throws Exception
+  {
+    final Object aParser = aClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    try
+    {
+      aClass.getMethod ("Unit").invoke (aParser);
+    }
+    catch (final InvocationTargetException ex)
+    {
+      assertEquals ("ParseException", ex.getCause ().getClass ().getSimpleName ());
+      return (Exception) ex.getCause ();
+    }
+    throw new AssertionError ("No parse error in " + sInput);
+  }
+
+  private static Set <String> _getSequences (final int [] [] aSequences)
+  {
+    final Set <String> ret = new TreeSet <> ();
+    for (final int [] aSequence : aSequences)
+    {
+      final StringBuilder aSB = new StringBuilder ();
+      for (final int nKind : aSequence)
+        aSB.append (nKind).append (' ');
+      ret.add (aSB.toString ());
+    }
+    return ret;
+  }
+
+  @Test
+  public void testWarnOnFieldAccess () throws Exception
+  {
+    _generate ("eager");
+    assertEquals (0, JavaCCErrors.getWarningCount ());
+    _generate ("warn", "-LAZY_EXCEPTIONS=true");
+    assertEquals (1, JavaCCErrors.getWarningCount ());
+  }
+
+  @Test
+  public void testExpectedTokenSequences () throws Exception
+  {
+    final Class <?> aEager = _generate ("eager");
+    final Class <?> aLazy = _generate ("lazy", "-LAZY_EXCEPTIONS=true");
+    final Class <?> aLazyException = aLazy.getClassLoader ().loadClass ("ParseException");
+
+    for (final String sInput : new String [] { "a b", "a = ;", "a (1 b", "; 1", "a = 1; b" })
+    {
+      final Exception aExpected = _parse (aEager, sInput);
+      final Exception aActual = _parse (aLazy, sInput);
+
+      // Only filled once it is asked for
+      assertNull (sInput, aLazyException.getField ("expectedTokenSequences").get (aActual));
+      assertEquals (sInput, Integer.valueOf (-1), aLazy.getMethod ("getExpectedCount", aLazyException).invoke (null, aActual));
+
+      final int [] [] aSequences = (int [] []) aLazyException.getMethod ("getExpectedTokenSequences").invoke (aActual);
+      assertSame (sInput, aSequences, aLazyException.getField ("expectedTokenSequences").get (aActual));
+      assertEquals (sInput,
+                    _getSequences ((int [] []) aExpected.getClass ().getField ("expectedTokenSequences").get (aExpected)),
+                    _getSequences (aSequences));
+    }
+
+    // getMessage fills the field as well
+    final Exception aActual = _parse (aLazy, "a b");
+    aActual.getMessage ();
+    // Only "(" is expected
+    assertEquals (Integer.valueOf (1), aLazy.getMethod ("getExpectedCount", aLazyException).invoke (null, aActual));
+  }
+}
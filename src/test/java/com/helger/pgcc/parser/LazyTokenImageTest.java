@@ -0,0 +1,128 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+
+/**
+ * Test the warning about grammar actions that access Token.image with the
+ * option LAZY_TOKEN_IMAGE, and the reuse of the char stream buffer.
+ */
+public final class LazyTokenImageTest
+{
+  @Test
+  public void testWarnOnImageAccess () throws Exception
+  {
+    final File aSrc = new File ("src/test/resources/lazytokenimage/grammar.jj");
+    final File aOutDir = new File ("target/lazytokenimage");
+    aOutDir.mkdirs ();
+    Options.init ();
+    assertTrue (Main.mainProgram ("-JDK_VERSION=1.8", "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (), aSrc.getAbsolutePath ())
+                    .isSuccess ());
+    // The assignment and the read are both reported
+    assertEquals (2, JavaCCErrors.getWarningCount ());
+  }
+
+  @Test
+  public void testBufferReuse () throws Exception
+  {
+    final File aSrc = new File ("src/test/resources/javacharstream/grammar.jj");
+    final File aOutDir = new File ("target/lazytokenimage/stream");
+    FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+    aOutDir.mkdirs ();
+    assertTrue (Main.mainProgram ("-LAZY_TOKEN_IMAGE=true", "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (), aSrc.getAbsolutePath ())
+                    .isSuccess ());
+    final ClassLoader aCL = GeneratedJavaCompiler.compile (aOutDir);
+    final Class <?> aStreamClass = aCL.loadClass ("JavaCharStream");
+    final Class <?> aTMClass = aCL.loadClass ("EscapeParserTokenManager");
+    final Class <?> aTokenClass = aCL.loadClass ("Token");
+    final Field aBuffer = aCL.loadClass ("AbstractCharStream").getDeclaredField ("buffer");
+    aBuffer.setAccessible (true);
+
+    final StringBuilder aSB = new StringBuilder ();
+    final List <String> aExpected = new ArrayList <> ();
+    for (int i = 0; i < 1000; i++)
+    {
+      final String sWord = i % 2 == 0 ? "w" + Integer.toString (i, 26).replaceAll ("[0-9]", "x") : Integer.toString (i);
+      aSB.append (sWord).append (i % 3 == 0 ? "\n" : " ");
+      aExpected.add (sWord);
+    }
+
+    final Object aStream = aStreamClass.getConstructor (Reader.class, int.class, int.class, int.class)
+                                       .newInstance (new StringReader (aSB.toString ()), 1, 1, 32);
+    final Object aTM = aTMClass.getConstructor (aStreamClass).newInstance (aStream);
+    final Object aInitialBuffer = aBuffer.get (aStream);
+
+    // All tokens stay reachable while the buffer is overwritten many times
+    final List <Object> aTokens = new ArrayList <> ();
+    for (;;)
+    {
+      final Object aToken = aTMClass.getMethod ("getNextToken").invoke (aTM);
+      if (aTokenClass.getField ("kind").getInt (aToken) == 0)
+        break;
+      aTokens.add (aToken);
+    }
+    assertSame (aInitialBuffer, aBuffer.get (aStream));
+
+    assertEquals (aExpected.size (), aTokens.size ());
+    for (int i = 0; i < aTokens.size (); i++)
+      assertEquals (aExpected.get (i), aTokenClass.getMethod ("getImage").invoke (aTokens.get (i)));
+
+    // Only a token longer than half the buffer grows it
+    final StringBuilder aLong = new StringBuilder ();
+    for (int i = 0; i < 100; i++)
+      aLong.append ('z');
+    aStreamClass.getMethod ("reInit", Reader.class).invoke (aStream, new StringReader ("ab " + aLong + " cd"));
+    final Object aFirst = aTMClass.getMethod ("getNextToken").invoke (aTM);
+    final Object aSecond = aTMClass.getMethod ("getNextToken").invoke (aTM);
+    assertNotSame (aInitialBuffer, aBuffer.get (aStream));
+    assertEquals ("ab", aTokenClass.getMethod ("getImage").invoke (aFirst));
+    assertEquals (aLong.toString (), aTokenClass.getMethod ("getImage").invoke (aSecond));
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public final class MethodSplitterJavaTest
+{
+  @Test
+  public void testEstimateBytecodeSize ()
+  {
+    assertEquals (0, MethodSplitterJava.estimateBytecodeSize ("  \n"));
+    // if ( ( 0x3ffL & l ) != 0x0L ) return jjStopAtPos ( 1 , 95 ) ;
+    assertEquals (27, MethodSplitterJava.estimateBytecodeSize ("if ((0x3ffL & l) != 0x0L)\n   return jjStopAtPos(1, 95);"));
+    // A literal is a single token, whatever it contains
+    assertEquals (MethodSplitterJava.estimateBytecodeSize ("x = \"\";"),
+                  MethodSplitterJava.estimateBytecodeSize ("x = \"a \\\" b ; c\";"));
+  }
+
+  @Test
+  public void testSplitCases ()
+  {
+    final String sCases = "      case 1:\n" +
+                          "         return 5;\n" +
+                          "      case 2:\n" +
+                          "      case 3:\n" +
+                          "         if (x)\n" +
+                          "            break;\n" +
+                          "         y = 1;\n" +
+                          "      case 4:\n" +
+                          "         y = 2;\n" +
+                          "         break;\n" +
+                          "      case 5:\n" +
+                          "         y = 3;\n";
+    final List <MethodSplitterJava.CaseGroup> aGroups = MethodSplitterJava.splitCases (sCases, "      ");
+    // All cases fit into one group
+    assertEquals (1, aGroups.size ());
+    assertEquals (Arrays.asList ("case 1:", "case 2:", "case 3:", "case 4:", "case 5:"), aGroups.get (0).getLabels ());
+    assertEquals (sCases, aGroups.get (0).getCode ());
+    // The last case falls through
+    assertFalse (aGroups.get (0).isClosed ());
+  }
+
+  @Test
+  public void testSplitCasesIntoGroups ()
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 1000; i++)
+    {
+      aSB.append ("      case ").append (i).append (":\n");
+      aSB.append ("         if ((active0 & 0x" + Long.toHexString (1L << (i % 64)) + "L) != 0x0L)\n");
+      aSB.append ("            return jjStopAtPos(1, " + i + ");\n");
+      // Every other case falls through into the next one
+      if (i % 2 == 1)
+        aSB.append ("         break;\n");
+    }
+    final List <MethodSplitterJava.CaseGroup> aGroups = MethodSplitterJava.splitCases (aSB.toString (), "      ");
+    assertTrue (aGroups.size () > 1);
+
+    int nCases = 0;
+    for (final MethodSplitterJava.CaseGroup aGroup : aGroups)
+    {
+      assertTrue (aGroup.isClosed ());
+      assertTrue (aGroup.getSize () <= MethodSplitterJava.CASE_GROUP_LIMIT);
+      // Cases falling through stay together
+      assertEquals (0, aGroup.getLabels ().size () % 2);
+      assertEquals ("case " + nCases + ":", aGroup.getLabels ().get (0));
+      nCases += aGroup.getLabels ().size ();
+    }
+    assertEquals (1000, nCases);
+  }
+
+  @Test
+  public void testUnindent ()
+  {
+    assertEquals ("case 1:\n   break;\n", MethodSplitterJava.unindent ("      case 1:\n         break;\n", 6));
+    assertEquals ("x\n", MethodSplitterJava.unindent ("  x", 6));
+  }
+}
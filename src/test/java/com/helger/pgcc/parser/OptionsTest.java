@@ -61,7 +61,7 @@ public final class OptionsTest
   @Test
   public void testDefaults ()
   {
-    assertEquals (44, Options.s_optionValues.size ());
+    assertEquals (55, Options.s_optionValues.size ());
 
     assertEquals (true, Options.isBuildParser ());
     assertEquals (true, Options.isBuildTokenManager ());
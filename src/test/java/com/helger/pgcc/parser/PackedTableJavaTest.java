@@ -0,0 +1,99 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public final class PackedTableJavaTest
+{
+  // Same as the generated jjUnpackLongs
+  private static long [] _unpack (final String sPacked, final int nSize)
+  {
+    final long [] ret = new long [nSize];
+    int n = 0;
+    long nValue = 0;
+    int nShift = 0;
+    for (int i = 0; i < sPacked.length (); i++)
+    {
+      final int c = sPacked.charAt (i);
+      nValue |= (long) (c & 0x7fff) << nShift;
+      if ((c & 0x8000) != 0)
+        nShift += 15;
+      else
+      {
+        ret[n++] = nValue - 1;
+        nValue = 0;
+        nShift = 0;
+      }
+    }
+    assertEquals (nSize, n);
+    return ret;
+  }
+
+  @Test
+  public void testPackInts ()
+  {
+    // Small numbers including -1 need a single char
+    assertEquals ("\u0000\u0001\u0002\u7fff", PackedTableJava.packInts (new int [] { -1, 0, 1, 0x7ffe }));
+
+    final int [] aData = { 0, -1, 0x7fff, 0x8000, Integer.MAX_VALUE, Integer.MIN_VALUE, -2, 123456789 };
+    final long [] aUnpacked = _unpack (PackedTableJava.packInts (aData), aData.length);
+    for (int i = 0; i < aData.length; i++)
+      assertEquals (aData[i], (int) aUnpacked[i]);
+  }
+
+  @Test
+  public void testPackLongs ()
+  {
+    final long [] aData = { 0, -1, 0xffffffffffffffffL, 0x8000000000000000L, Long.MAX_VALUE, 0x3ff000000000000L };
+    assertArrayEquals (aData, _unpack (PackedTableJava.packLongs (aData), aData.length));
+  }
+
+  @Test
+  public void testUnpackCall ()
+  {
+    assertEquals ("int[] x = jjUnpackInts(new String[] {\n  \"\\000a\\\"\\\\\\u1234\",\n}, 5);\n",
+                  PackedTableJava.unpackCall ("int[] x", "jjUnpackInts", "\u0000a\"\\\u1234", "5"));
+
+    // Long tables are split into several string constants
+    final char [] aChars = new char [PackedTableJava.MAX_STRING_CONSTANT_LENGTH + 1];
+    final String sCode = PackedTableJava.unpackCall ("int[] x", "jjUnpackInts", new String (aChars), "1");
+    assertEquals (2, sCode.split ("\",\n").length - 1);
+    assertTrue (sCode.endsWith ("}, 1);\n"));
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+
+/**
+ * Test the parser of each thread with the option THREAD_LOCAL_PARSER.
+ */
+public final class ThreadLocalParserTest
+{
+  private static final File SRC = new File ("src/test/resources/generatedoptions/grammar.jj");
+
+  private static Class <?> _generate () throws Exception
+  {
+    final File aOutDir = new File ("target/threadlocalparser");
+    FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+    aOutDir.mkdirs ();
+    assertTrue (Main.mainProgram ("-JDK_VERSION=1.8",
+                                  "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (),
+                                  "-THREAD_LOCAL_PARSER=true",
+                                  SRC.getAbsolutePath ())
+                    .isSuccess ());
+    return GeneratedJavaCompiler.compile (aOutDir).loadClass ("OptionsParser");
+  }
+
+  @Test
+  public void testReuseAcrossDocuments () throws Exception
+  {
+    final Class <?> aClass = _generate ();
+    final Method aGet = aClass.getMethod ("getThreadParser", Reader.class);
+    final Method aRun = aClass.getMethod ("run");
+
+    // Lookaheads are saved while the first input is parsed
+    final Object aParser = aGet.invoke (null, new StringReader ("a.b = 1; f(g(1), h.i(2)); x = (1 + 2;"));
+    final String sFirst = (String) aRun.invoke (aParser);
+    assertTrue (sFirst, sFirst.contains ("ParseException"));
+
+    final Field aRtns = aClass.getDeclaredField ("jj_2_rtns");
+    aRtns.setAccessible (true);
+    assertTrue (_getSavedTokenCount (aRtns.get (aParser)) > 0);
+
+    // The same parser parses the next inputs as a new one does, and does not
+    // keep the tokens of the last input
+    assertSame (aParser, aGet.invoke (null, new StringReader ("")));
+    assertEquals (0, _getSavedTokenCount (aRtns.get (aParser)));
+
+    for (final String sInput : new String [] { "print x, y;", "a.b = 1; f(g(1), h.i(2)); x = (1 + 2;", "foo(1, 2;" })
+    {
+      final Object aNew = aClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+      assertEquals (sInput, aRun.invoke (aNew), aRun.invoke (aGet.invoke (null, new StringReader (sInput))));
+    }
+
+    // Another thread has its own parser
+    final AtomicReference <Object> aOther = new AtomicReference <> ();
+    final Thread aThread = new Thread ( () -> {
+      try
+      {
+        aOther.set (aGet.invoke (null, new StringReader ("")));
+      }
+      catch (final Exception ex)
+      {
+        throw new IllegalStateException (ex);
+      }
+    });
+    aThread.start ();
+    aThread.join ();
+    assertNotSame (aParser, aOther.get ());
+
+    // A new parser after removing the old one
+    aClass.getMethod ("removeThreadParser").invoke (null);
+    assertNotSame (aParser, aGet.invoke (null, new StringReader ("")));
+  }
+
+  private static int _getSavedTokenCount (final Object aRtns) throws Exception
+  {
+    int ret = 0;
+    for (final Object aCalls : (Object []) aRtns)
+      for (Object c = aCalls; c != null; c = _get (c, "next"))
+        if (_get (c, "first") != null)
+          ret++;
+    return ret;
+  }
+
+  private static Object _get (final Object aObj, final String sField) throws Exception
+  {
+    final Field aField = aObj.getClass ().getDeclaredField (sField);
+    aField.setAccessible (true);
+    return aField.get (aObj);
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+
+/**
+ * Test that a generated parser does not keep the tokens it consumed.
+ */
+public final class TokenReleaseTest
+{
+  private static final int STATEMENTS = 200000;
+
+  /**
+   * Creates the statements while they are read, so that the input is never in
+   * memory as a whole.
+   */
+  private static final class StatementReader extends Reader
+  {
+    private int m_nRemaining;
+
+    StatementReader (final int nStatements)
+    {
+      m_nRemaining = nStatements * 3;
+    }
+
+    @Override
+    public int read (final char [] aBuf, final int nOfs, final int nLen)
+    {
+      if (m_nRemaining == 0)
+        return -1;
+      final int nCount = Math.min (nLen, m_nRemaining);
+      for (int i = 0; i < nCount; i++)
+      {
+        // "a;\n" repeated
+        final int nPos = (m_nRemaining - i) % 3;
+        aBuf[nOfs + i] = nPos == 0 ? 'a' : nPos == 2 ? ';' : '\n';
+      }
+      m_nRemaining -= nCount;
+      return nCount;
+    }
+
+    @Override
+    public void close ()
+    {}
+  }
+
+  private static void _testStatementsCollected (final String sName, final String... aOptions) throws Exception
+  {
+    final File aSrc = new File ("src/test/resources/tokenrelease/grammar.jj");
+    final File aOutDir = new File ("target/tokenrelease/" + sName);
+    FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+    aOutDir.mkdirs ();
+
+    final String [] aArgs = new String [aOptions.length + 2];
+    System.arraycopy (aOptions, 0, aArgs, 0, aOptions.length);
+    aArgs[aOptions.length] = "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath ();
+    aArgs[aOptions.length + 1] = aSrc.getAbsolutePath ();
+    assertTrue (Main.mainProgram (aArgs).isSuccess ());
+
+    final ClassLoader aCL = GeneratedJavaCompiler.compile (aOutDir);
+    final Class <?> aParserClass = aCL.loadClass ("StreamParser");
+    final Object aParser = aParserClass.getConstructor (Reader.class).newInstance (new StatementReader (STATEMENTS));
+    aParserClass.getField ("checkAfter").setInt (aParser, STATEMENTS / 2);
+    aParserClass.getMethod ("Unit").invoke (aParser);
+    assertTrue (sName, aParserClass.getField ("secondCollected").getBoolean (aParser));
+  }
+
+  @Test
+  public void testDefault () throws Exception
+  {
+    _testStatementsCollected ("default");
+  }
+
+  @Test
+  public void testNoErrorReporting () throws Exception
+  {
+    _testStatementsCollected ("noerrors", "-ERROR_REPORTING=false");
+  }
+
+  @Test
+  public void testCacheTokens () throws Exception
+  {
+    _testStatementsCollected ("cachetokens", "-CACHE_TOKENS=true");
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileSystemIterator;
+import com.helger.commons.io.file.IFileFilter;
+import com.helger.pgcc.parser.TokenizerData.EMatchType;
+import com.helger.pgcc.parser.TokenizerData.MatchInfo;
+
+/**
+ * Test the tokenizer data handed to a token manager code generator.
+ */
+public final class TokenizerDataTest
+{
+  /**
+   * Remembers the tokenizer data instead of generating code.
+   */
+  public static final class CapturingCodeGenerator implements TokenManagerCodeGenerator
+  {
+    static TokenizerData s_aData;
+
+    public void generateCode (final TokenizerData tokenizerData)
+    {
+      s_aData = tokenizerData;
+    }
+
+    public void finish (final TokenizerData tokenizerData)
+    {}
+  }
+
+  private static TokenizerData _getTokenizerData (final String sGrammar) throws Exception
+  {
+    final File aOutDir = new File ("target/tokenizerdata");
+    aOutDir.mkdirs ();
+    CapturingCodeGenerator.s_aData = null;
+    assertTrue (Main.mainProgram ("-TOKEN_MANAGER_CODE_GENERATOR=" + CapturingCodeGenerator.class.getName (),
+                                  "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (),
+                                  new File (sGrammar).getAbsolutePath ())
+                    .isSuccess ());
+    assertNotNull (CapturingCodeGenerator.s_aData);
+    return CapturingCodeGenerator.s_aData;
+  }
+
+  @Test
+  public void testMatchTypes () throws Exception
+  {
+    final TokenizerData aData = _getTokenizerData ("src/test/resources/tokenizerdata/grammar.jj");
+    assertEquals (EMatchType.SKIP, aData.m_allMatches.get (Integer.valueOf (1)).m_matchType);
+    assertEquals (EMatchType.SKIP, aData.m_allMatches.get (Integer.valueOf (2)).m_matchType);
+    // Special tokens are in the skip vector as well
+    assertEquals (EMatchType.SPECIAL_TOKEN, aData.m_allMatches.get (Integer.valueOf (3)).m_matchType);
+    assertEquals (EMatchType.TOKEN, aData.m_allMatches.get (Integer.valueOf (4)).m_matchType);
+    assertEquals (EMatchType.TOKEN, aData.m_allMatches.get (Integer.valueOf (5)).m_matchType);
+  }
+
+  @Test
+  public void testLiteralImages () throws Exception
+  {
+    final TokenizerData aData = _getTokenizerData ("src/test/resources/tokenizerdata/grammar.jj");
+
+    // Skipped literals have no token image
+    assertNull (aData.m_allMatches.get (Integer.valueOf (1)).m_image);
+
+    // The image of an IGNORE_CASE literal is the matched text
+    final MatchInfo aSelect = aData.m_allMatches.get (Integer.valueOf (4));
+    assertTrue (aSelect.m_ignoreCase);
+    assertNull (aSelect.m_image);
+
+    final MatchInfo aPlus = aData.m_allMatches.get (Integer.valueOf (6));
+    assertFalse (aPlus.m_ignoreCase);
+    assertEquals ("+", aPlus.m_image);
+  }
+
+  @Test
+  public void testNfaStatesOfAllLexicalStates () throws Exception
+  {
+    // Runs the generator several times in a row as well
+    for (final File f : new FileSystemIterator (new File ("grammars")).withFilter (IFileFilter.filenameEndsWith (".jj")))
+    {
+      final TokenizerData aData = _getTokenizerData (f.getPath ());
+
+      // Every state belongs to the NFA of one lexical state
+      final Map <Integer, Integer> aLexStateOfState = new HashMap <> ();
+      for (final Map.Entry <Integer, Integer> aEntry : aData.m_initialStates.entrySet ())
+      {
+        if (aEntry.getValue ().intValue () < 0)
+          continue;
+        final Deque <Integer> aOpen = new ArrayDeque <> ();
+        aOpen.add (aEntry.getValue ());
+        while (!aOpen.isEmpty ())
+        {
+          final Integer aIndex = aOpen.remove ();
+          final Integer aOld = aLexStateOfState.putIfAbsent (aIndex, aEntry.getKey ());
+          if (aOld != null)
+          {
+            assertEquals (f.getName () + ": state " + aIndex, aOld, aEntry.getKey ());
+            continue;
+          }
+          final TokenizerData.NfaState aState = aData.m_nfa.get (aIndex);
+          assertNotNull (f.getName () + ": state " + aIndex, aState);
+          aOpen.addAll (aState.m_nextStates);
+          aOpen.addAll (aState.m_compositeStates);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.pgcc.GeneratedJavaCompiler;
+
+/**
+ * Compare the tokens read through Utf8ByteCharStream with the tokens read
+ * through SimpleCharStream from the decoded text.
+ */
+public final class Utf8ByteCharStreamTest
+{
+  private static Class <?> s_aCharStream;
+  private static Class <?> s_aTokenManager;
+  private static Class <?> s_aToken;
+  private static Constructor <?> s_aSimpleCharStreamCtor;
+  private static Constructor <?> s_aUtf8ByteCharStreamCtor;
+  private static Constructor <?> s_aParserCtor;
+
+  @BeforeClass
+  public static void generate () throws Exception
+  {
+    final File aSrc = new File ("src/test/resources/utf8bytecharstream/grammar.jj");
+    final File aOutDir = new File ("target/utf8bytecharstream");
+    // Existing stream files are not overwritten, so start from scratch
+    FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aOutDir);
+    aOutDir.mkdirs ();
+    assertTrue (Main.mainProgram ("-JDK_VERSION=1.8", "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (), aSrc.getAbsolutePath ())
+                    .isSuccess ());
+    // Not generated without UTF8_BYTE_CHAR_STREAM or USER_CHAR_STREAM
+    assertTrue (new File (aOutDir, "SimpleCharStream.java").exists ());
+    assertTrue (new File (aOutDir, "Utf8ByteCharStream.java").exists ());
+
+    final ClassLoader aCL = GeneratedJavaCompiler.compile (aOutDir);
+    s_aCharStream = aCL.loadClass ("CharStream");
+    s_aTokenManager = aCL.loadClass ("Utf8ParserTokenManager");
+    s_aToken = aCL.loadClass ("Token");
+    s_aSimpleCharStreamCtor = aCL.loadClass ("SimpleCharStream").getConstructor (Reader.class);
+    s_aUtf8ByteCharStreamCtor = aCL.loadClass ("Utf8ByteCharStream").getConstructor (byte [].class);
+    s_aParserCtor = aCL.loadClass ("Utf8Parser").getConstructor (s_aCharStream);
+  }
+
+  private static void _appendToken (final StringBuilder aSB, final Object aToken) throws Exception
+  {
+    aSB.append (s_aToken.getField ("kind").get (aToken))
+       .append (" '")
+       .append (s_aToken.getField ("image").get (aToken))
+       .append ("' ")
+       .append (s_aToken.getField ("beginLine").get (aToken))
+       .append (':')
+       .append (s_aToken.getField ("beginColumn").get (aToken))
+       .append ('-')
+       .append (s_aToken.getField ("endLine").get (aToken))
+       .append (':')
+       .append (s_aToken.getField ("endColumn").get (aToken));
+  }
+
+  /**
+   * @return All tokens with their special tokens, or the message of the
+   *         lexical error that ended the input.
+   */
+  private static String _dumpTokens (final Object aCharStream) throws Exception
+  {
+    final Object aTM = s_aTokenManager.getConstructor (s_aCharStream).newInstance (aCharStream);
+    final Method aGetNextToken = s_aTokenManager.getMethod ("getNextToken");
+    final StringBuilder aSB = new StringBuilder ();
+    while (true)
+    {
+      final Object aToken;
+      try
+      {
+        aToken = aGetNextToken.invoke (aTM);
+      }
+      catch (final InvocationTargetException ex)
+      {
+        return aSB.append ("error ").append (ex.getCause ().getMessage ()).toString ();
+      }
+
+      // Special tokens are linked backwards from the token following them
+      final StringBuilder aSpecials = new StringBuilder ();
+      for (Object aSpecial = s_aToken.getField ("specialToken")
+                                     .get (aToken); aSpecial != null; aSpecial = s_aToken.getField ("specialToken")
+                                                                                         .get (aSpecial))
+      {
+        final StringBuilder aOne = new StringBuilder ("  special ");
+        _appendToken (aOne, aSpecial);
+        aSpecials.insert (0, aOne.append ('\n'));
+      }
+      aSB.append (aSpecials);
+      _appendToken (aSB, aToken);
+      aSB.append ('\n');
+      if (((Integer) s_aToken.getField ("kind").get (aToken)).intValue () == 0)
+        return aSB.toString ();
+    }
+  }
+
+  private static void _compare (final String sText) throws Exception
+  {
+    final String sExpected = _dumpTokens (s_aSimpleCharStreamCtor.newInstance (new StringReader (sText)));
+    final String sActual = _dumpTokens (s_aUtf8ByteCharStreamCtor.newInstance ((Object) sText.getBytes (StandardCharsets.UTF_8)));
+    assertEquals (sText, sExpected, sActual);
+  }
+
+  @Test
+  public void testSameTokensAsSimpleCharStream () throws Exception
+  {
+    _compare ("");
+    _compare ("a = 1;");
+    _compare ("abc = def + 42 ;\nx=\"y\";\n");
+    _compare ("café = \"naïve\" + über;");
+    _compare ("名前 = \"漢字\" + カナ;");
+    // Supplementary chars are read as surrogate pairs
+    _compare ("x😀y = \"𝐀\";");
+    _compare ("a\r\nb\rc\n\td\t=\t1;");
+    _compare ("// comment äöü\na /* block\n 中文 😀 */ = b; // end");
+    _compare ("/* one */ /* two */ // three\n+");
+    // Lexical errors in the default and in the comment state
+    _compare ("a = 1 # 2;");
+    _compare ("a = ä \u0001;");
+    _compare ("a /* not closed é");
+    _compare ("\"not closed\nb");
+  }
+
+  @Test
+  public void testParseFromCharStream () throws Exception
+  {
+    final Object aParser = s_aParserCtor.newInstance (s_aUtf8ByteCharStreamCtor.newInstance ((Object) "ä = \"ö\" + 1; // x\n".getBytes (StandardCharsets.UTF_8)));
+    aParser.getClass ().getMethod ("Start").invoke (aParser);
+  }
+}
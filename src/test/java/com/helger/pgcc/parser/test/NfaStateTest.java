@@ -69,6 +69,11 @@ public class NfaStateTest extends AbstractJavaCCTestCase
   {
     Options.init ();
     Main.reInitAll ();
+
+    // Keep the generated token manager out of the working directory
+    final File fDest = new File ("target/nfa-state-test");
+    fDest.mkdirs ();
+    Options.setCmdLineOption ("-OUTPUT_DIRECTORY=" + fDest.getAbsolutePath ());
   }
 
   protected void setupState ()